@@ -23,6 +23,8 @@ import com.google.firebase.FirebaseApp;
 import com.google.firebase.analytics.FirebaseAnalytics;
 import com.simplecity.amp_library.data.Repository;
 import com.simplecity.amp_library.di.app.DaggerAppComponent;
+import com.simplecity.amp_library.glide.fetcher.ArtworkMissCache;
+import com.simplecity.amp_library.glide.palette.ColorSetCache;
 import com.simplecity.amp_library.model.Genre;
 import com.simplecity.amp_library.model.Query;
 import com.simplecity.amp_library.model.UserSelectedArtwork;
@@ -36,6 +38,7 @@ import com.simplecity.amp_library.utils.LegacyUtils;
 import com.simplecity.amp_library.utils.LogUtils;
 import com.simplecity.amp_library.utils.SettingsManager;
 import com.simplecity.amp_library.utils.StringUtils;
+import com.simplecity.amp_library.utils.TagCache;
 import com.simplecity.amp_library.utils.extensions.GenreExtKt;
 import com.squareup.leakcanary.LeakCanary;
 import com.squareup.leakcanary.RefWatcher;
@@ -47,7 +50,6 @@ import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.schedulers.Schedulers;
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -56,14 +58,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.inject.Inject;
-import org.jaudiotagger.audio.AudioFile;
-import org.jaudiotagger.audio.AudioFileIO;
-import org.jaudiotagger.audio.exceptions.CannotReadException;
-import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
-import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
-import org.jaudiotagger.tag.FieldKey;
-import org.jaudiotagger.tag.Tag;
-import org.jaudiotagger.tag.TagException;
 import org.jaudiotagger.tag.TagOptionSingleton;
 
 public class ShuttleApplication extends DaggerApplication {
@@ -74,7 +68,7 @@ public class ShuttleApplication extends DaggerApplication {
 
     private RefWatcher refWatcher;
 
-    public static final Map<String, UserSelectedArtwork> userSelectedArtwork = new Map<>();
+    public static final Map<String, UserSelectedArtwork> userSelectedArtwork = new HashMap<>();
 
     private static Logger jaudioTaggerLogger1 = Logger.getLogger("org.jaudiotagger.audio");
     private static Logger jaudioTaggerLogger2 = Logger.getLogger("org.jaudiotagger");
@@ -141,6 +135,10 @@ public class ShuttleApplication extends DaggerApplication {
 
         TagOptionSingleton.getInstance().setPadNumbers(true);
 
+        TagCache.getInstance().init(this);
+        ArtworkMissCache.getInstance().init(this);
+        ColorSetCache.getInstance().init(this);
+
         settingsManager.incrementLaunchCount();
 
         Completable.fromAction(() -> {
@@ -259,7 +257,7 @@ public class ShuttleApplication extends DaggerApplication {
         }
 
         return Completable.fromAction(() -> {
-            List<Integer> playCountIds = new List<>();
+            List<Integer> playCountIds = new ArrayList<>();
 
             Query query = new Query.Builder()
                     .uri(PlayCountTable.URI)
@@ -269,7 +267,7 @@ public class ShuttleApplication extends DaggerApplication {
             SqlUtils.createActionableQuery(this, cursor ->
                     playCountIds.add(cursor.getInt(cursor.getColumnIndex(PlayCountTable.COLUMN_ID))), query);
 
-            List<Integer> songIds = new List<>();
+            List<Integer> songIds = new ArrayList<>();
 
             query = new Query.Builder()
                     .uri(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI)
@@ -341,25 +339,17 @@ public class ShuttleApplication extends DaggerApplication {
                                 File file = new File(song.path);
                                 // Don't bother checking files > 100mb, uses too much memory.
                                 if (file.exists() && file.length() < 100 * 1024 * 1024) {
-                                    try {
-                                        AudioFile audioFile = AudioFileIO.read(file);
-                                        Tag tag = audioFile.getTag();
-                                        if (tag != null) {
-                                            String year = tag.getFirst(FieldKey.YEAR);
-                                            int yearInt = StringUtils.parseInt(year);
-                                            if (yearInt > 0) {
-                                                song.year = yearInt;
-                                                ContentValues contentValues = new ContentValues();
-                                                contentValues.put(MediaStore.Audio.Media.YEAR, yearInt);
-
-                                                return Observable.just(ContentProviderOperation
-                                                        .newUpdate(ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, song.id))
-                                                        .withValues(contentValues)
-                                                        .build());
-                                            }
-                                        }
-                                    } catch (CannotReadException | IOException | TagException | ReadOnlyFileException | InvalidAudioFrameException | OutOfMemoryError e) {
-                                        LogUtils.logException(TAG, "Failed to repair media store year", e);
+                                    TagCache.Entry entry = TagCache.getInstance().get(song.path);
+                                    int yearInt = entry != null ? StringUtils.parseInt(entry.year) : 0;
+                                    if (yearInt > 0) {
+                                        song.year = yearInt;
+                                        ContentValues contentValues = new ContentValues();
+                                        contentValues.put(MediaStore.Audio.Media.YEAR, yearInt);
+
+                                        return Observable.just(ContentProviderOperation
+                                                .newUpdate(ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, song.id))
+                                                .withValues(contentValues)
+                                                .build());
                                     }
                                 }
                             }
@@ -368,7 +358,7 @@ public class ShuttleApplication extends DaggerApplication {
 
                 ).toList()
                 .doOnSuccess(contentProviderOperations -> {
-                    getContentResolver().applyBatch(MediaStore.AUTHORITY, new List<>(contentProviderOperations));
+                    getContentResolver().applyBatch(MediaStore.AUTHORITY, new ArrayList<>(contentProviderOperations));
                 })
                 .flatMapCompletable(songs -> Completable.complete());
     }
@@ -3,6 +3,7 @@ package com.simplecity.amp_library.data
 import com.jakewharton.rxrelay2.BehaviorRelay
 import com.simplecity.amp_library.data.Repository.AlbumArtistsRepository
 import com.simplecity.amp_library.data.Repository.AlbumsRepository
+import com.simplecity.amp_library.model.Album
 import com.simplecity.amp_library.model.AlbumArtist
 import com.simplecity.amp_library.utils.LogUtils
 import com.simplecity.amp_library.utils.Operators
@@ -10,6 +11,8 @@ import io.reactivex.Observable
 import io.reactivex.disposables.Disposable
 import io.reactivex.functions.Consumer
 import io.reactivex.schedulers.Schedulers
+import java.util.Collections
+import java.util.IdentityHashMap
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -19,10 +22,17 @@ class AlbumArtistsRepository @Inject constructor(private val albumsRepository: A
     private var albumArtistsSubscription: Disposable? = null
     private val albumArtistsRelay = BehaviorRelay.create<List<AlbumArtist>>()
 
+    private var albums: Set<Album> = emptySet()
+    private val albumsByAlbumArtistName = HashMap<String, MutableList<Album>>()
+    private val albumArtistsByName = LinkedHashMap<String, AlbumArtist>()
+
     override fun getAlbumArtists(): Observable<List<AlbumArtist>> {
         if (albumArtistsSubscription == null || albumArtistsSubscription?.isDisposed == true) {
+            albums = emptySet()
+            albumsByAlbumArtistName.clear()
+            albumArtistsByName.clear()
             albumArtistsSubscription = albumsRepository.getAlbums()
-                .flatMap { albums -> Observable.just(Operators.albumsToAlbumArtists(albums)) }
+                .map { albums -> applyAlbums(albums) }
                 .subscribe(
                     albumArtistsRelay,
                     Consumer { error -> LogUtils.logException(PlaylistsRepository.TAG, "Failed to get album artists", error) }
@@ -31,6 +41,43 @@ class AlbumArtistsRepository @Inject constructor(private val albumsRepository: A
         return albumArtistsRelay.subscribeOn(Schedulers.io())
     }
 
+    /**
+     * [AlbumsRepository] retains [Album] instances which haven't changed, so the albums which were added or removed since the last emission
+     * can be found by reference. Only the album artists owning those albums are rebuilt.
+     */
+    private fun applyAlbums(currentAlbums: List<Album>): List<AlbumArtist> {
+        val currentAlbumSet = Collections.newSetFromMap(IdentityHashMap<Album, Boolean>(currentAlbums.size))
+        currentAlbumSet.addAll(currentAlbums)
+
+        val affectedAlbumArtistNames = HashSet<String>()
+
+        albums.filterNot { album -> currentAlbumSet.contains(album) }
+            .forEach { album ->
+                albumsByAlbumArtistName[album.albumArtistName]?.removeAll { albumArtistAlbum -> albumArtistAlbum === album }
+                affectedAlbumArtistNames.add(album.albumArtistName)
+            }
+
+        currentAlbums.filterNot { album -> albums.contains(album) }
+            .forEach { album ->
+                albumsByAlbumArtistName.getOrPut(album.albumArtistName) { ArrayList() }.add(album)
+                affectedAlbumArtistNames.add(album.albumArtistName)
+            }
+
+        affectedAlbumArtistNames.forEach { albumArtistName ->
+            val albumArtistAlbums = albumsByAlbumArtistName[albumArtistName]
+            if (albumArtistAlbums == null || albumArtistAlbums.isEmpty()) {
+                albumsByAlbumArtistName.remove(albumArtistName)
+                albumArtistsByName.remove(albumArtistName)
+            } else {
+                albumArtistsByName[albumArtistName] = Operators.albumsToAlbumArtists(albumArtistAlbums).first()
+            }
+        }
+
+        albums = currentAlbumSet
+
+        return ArrayList(albumArtistsByName.values)
+    }
+
     companion object {
         const val TAG = "AlbumArtistsRepository"
     }
@@ -3,6 +3,7 @@ package com.simplecity.amp_library.data
 import com.jakewharton.rxrelay2.BehaviorRelay
 import com.simplecity.amp_library.data.Repository.AlbumsRepository
 import com.simplecity.amp_library.model.Album
+import com.simplecity.amp_library.model.Song
 import com.simplecity.amp_library.utils.LogUtils
 import com.simplecity.amp_library.utils.Operators
 import io.reactivex.Observable
@@ -18,10 +19,15 @@ class AlbumsRepository @Inject constructor(private val songsRepository: Reposito
     private var albumsSubscription: Disposable? = null
     private val albumsRelay = BehaviorRelay.create<List<Album>>()
 
+    private val songsByAlbumId = HashMap<Long, MutableList<Song>>()
+    private val albumsById = LinkedHashMap<Long, Album>()
+
     override fun getAlbums(): Observable<List<Album>> {
         if (albumsSubscription == null || albumsSubscription?.isDisposed == true) {
-            albumsSubscription = songsRepository.getSongs()
-                .flatMap { songs -> Observable.just(Operators.songsToAlbums(songs)) }
+            songsByAlbumId.clear()
+            albumsById.clear()
+            albumsSubscription = songsRepository.getSongsDelta()
+                .map { delta -> applyDelta(delta) }
                 .subscribe(
                     albumsRelay,
                     Consumer { error -> LogUtils.logException(PlaylistsRepository.TAG, "Failed to get albums", error) }
@@ -30,6 +36,43 @@ class AlbumsRepository @Inject constructor(private val songsRepository: Reposito
         return albumsRelay.subscribeOn(Schedulers.io())
     }
 
+    /**
+     * Patches the current set of albums with the given [SongsDelta]. Only albums containing an added, removed or changed song are rebuilt,
+     * all other [Album] instances are retained, so downstream consumers can identify unchanged albums by reference.
+     */
+    private fun applyDelta(delta: SongsDelta): List<Album> {
+        val affectedAlbumIds = HashSet<Long>()
+
+        delta.removed.forEach { song -> removeSong(song, affectedAlbumIds) }
+        delta.changed.forEach { (previousSong, song) ->
+            removeSong(previousSong, affectedAlbumIds)
+            addSong(song, affectedAlbumIds)
+        }
+        delta.added.forEach { song -> addSong(song, affectedAlbumIds) }
+
+        affectedAlbumIds.forEach { albumId ->
+            val songs = songsByAlbumId[albumId]
+            if (songs == null || songs.isEmpty()) {
+                songsByAlbumId.remove(albumId)
+                albumsById.remove(albumId)
+            } else {
+                albumsById[albumId] = Operators.songsToAlbums(songs).first()
+            }
+        }
+
+        return ArrayList(albumsById.values)
+    }
+
+    private fun addSong(song: Song, affectedAlbumIds: MutableSet<Long>) {
+        songsByAlbumId.getOrPut(song.albumId) { ArrayList() }.add(song)
+        affectedAlbumIds.add(song.albumId)
+    }
+
+    private fun removeSong(song: Song, affectedAlbumIds: MutableSet<Long>) {
+        songsByAlbumId[song.albumId]?.removeAll { albumSong -> albumSong.id == song.id }
+        affectedAlbumIds.add(song.albumId)
+    }
+
     companion object {
         const val TAG = "AlbumsRepository"
     }
@@ -0,0 +1,77 @@
+package com.simplecity.amp_library.data
+
+import android.database.Cursor
+import com.simplecity.amp_library.sql.providers.PlayCountTable
+import java.util.Arrays
+
+/**
+ * An in-memory index of the rows in [PlayCountTable], keyed by song id.
+ *
+ * The rows are held in parallel primitive arrays sorted by id, so looking up a song doesn't allocate, and the whole index costs a few
+ * bytes per row.
+ */
+class PlayCounts private constructor(
+    private val ids: LongArray,
+    private val counts: IntArray,
+    private val lastPlayed: LongArray
+) {
+
+    val size: Int
+        get() = ids.size
+
+    /**
+     * @return the index of the row for the passed in song id, or a negative value if the song has never been played.
+     */
+    fun indexOf(songId: Long): Int {
+        return Arrays.binarySearch(ids, songId)
+    }
+
+    fun getPlayCount(index: Int): Int {
+        return counts[index]
+    }
+
+    fun getLastPlayed(index: Int): Long {
+        return lastPlayed[index]
+    }
+
+    private fun sorted(): PlayCounts {
+        val order = (0 until ids.size).sortedBy { index -> ids[index] }
+        return PlayCounts(
+            LongArray(ids.size) { i -> ids[order[i]] },
+            IntArray(ids.size) { i -> counts[order[i]] },
+            LongArray(ids.size) { i -> lastPlayed[order[i]] }
+        )
+    }
+
+    companion object {
+
+        val EMPTY = PlayCounts(LongArray(0), IntArray(0), LongArray(0))
+
+        val PROJECTION = arrayOf(PlayCountTable.COLUMN_ID, PlayCountTable.COLUMN_PLAY_COUNT, PlayCountTable.COLUMN_TIME_PLAYED)
+
+        /**
+         * Builds the index from a cursor over [PROJECTION], sorted by [PlayCountTable.COLUMN_ID].
+         */
+        fun fromCursor(cursor: Cursor): PlayCounts {
+            val size = cursor.count
+            val ids = LongArray(size)
+            val counts = IntArray(size)
+            val lastPlayed = LongArray(size)
+
+            var index = 0
+            var sorted = true
+            while (index < size && cursor.moveToNext()) {
+                ids[index] = cursor.getLong(0)
+                counts[index] = cursor.getInt(1)
+                lastPlayed[index] = cursor.getLong(2)
+                if (index > 0 && ids[index] <= ids[index - 1]) {
+                    sorted = false
+                }
+                index++
+            }
+
+            val playCounts = PlayCounts(ids.copyOf(index), counts.copyOf(index), lastPlayed.copyOf(index))
+            return if (sorted) playCounts else playCounts.sorted()
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.simplecity.amp_library.model.InclExclItem
 import com.simplecity.amp_library.model.Playlist
 import com.simplecity.amp_library.model.Song
 import io.reactivex.Observable
+import io.reactivex.Single
 
 interface Repository {
 
@@ -22,11 +23,24 @@ interface Repository {
          */
         fun getSongs(predicate: ((Song) -> Boolean)? = null): Observable<List<Song>>
 
+        /**
+         * Returns a continuous stream of [SongsDelta]s, describing the changes between each emission of [getSongs].
+         *
+         * The first delta reports every song as added.
+         */
+        fun getSongsDelta(): Observable<SongsDelta>
+
         /**
          * Returns a continuous List of [Song]s belonging to the given [Playlist], excluding those which are blacklisted, podcasts, or not-whitelisted.
          */
         fun getSongs(playlist: Playlist): Observable<List<Song>>
 
+        /**
+         * As [getSongs], but returns at most [limit] songs. For the most played & recently played playlists, only the top [limit] songs are
+         * selected, rather than sorting every played song.
+         */
+        fun getSongs(playlist: Playlist, limit: Int): Observable<List<Song>>
+
         /**
          * Returns a continuous List of [Song]s belonging to the given [Album], excluding those which are blacklisted, podcasts, or not-whitelisted.
          */
@@ -91,6 +105,24 @@ interface Repository {
         fun getRecentlyPlayedPlaylist(): Playlist
     }
 
+    interface SearchRepository {
+
+        /**
+         * Returns the [Song]s whose name matches the query. Fuzzy matches must score above the threshold, and are ordered by score.
+         */
+        fun searchSongs(query: String, fuzzy: Boolean, threshold: Double): Single<List<Song>>
+
+        /**
+         * Returns the [Album]s whose name matches the query. Fuzzy matches must score above the threshold, and are ordered by score.
+         */
+        fun searchAlbums(query: String, fuzzy: Boolean, threshold: Double): Single<List<Album>>
+
+        /**
+         * Returns the [AlbumArtist]s whose name matches the query. Fuzzy matches must score above the threshold, and are ordered by score.
+         */
+        fun searchAlbumArtists(query: String, fuzzy: Boolean, threshold: Double): Single<List<AlbumArtist>>
+    }
+
     interface InclExclRepository {
 
         fun add(inclExclItem: InclExclItem)
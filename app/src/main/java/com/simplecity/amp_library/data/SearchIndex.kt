@@ -0,0 +1,268 @@
+package com.simplecity.amp_library.data
+
+import com.simplecity.amp_library.utils.JaroWinklerScorer
+import com.simplecity.amp_library.utils.StringUtils
+import java.util.Arrays
+import java.util.IdentityHashMap
+
+/**
+ * An in-memory index of items by name, supporting the substring & fuzzy (Jaro-Winkler) matching used by search.
+ *
+ * Names are lowercased once, when an item is added. Substring queries of 3 or more characters only test the items sharing the query's
+ * rarest trigram. Fuzzy queries score the pre-normalized names with a [JaroWinklerScorer], which gives up on a name as soon as it can no
+ * longer reach the score threshold.
+ *
+ * Items are identified by reference. Each [update] only normalizes & indexes the items which weren't present before, and only removes the
+ * postings of items which have gone, so a library change costs in proportion to the number of items which actually changed. Results are
+ * returned in the order of the most recent update's source list.
+ */
+class SearchIndex<T : Comparable<T>>(private val nameOf: (T) -> String?) {
+
+    // Per-slot state. A removed item leaves an empty slot, until there are enough of them to be worth compacting.
+    private val items = ArrayList<T?>()
+    private val names = ArrayList<String?>()
+    private val fuzzyNames = ArrayList<CharArray?>()
+    private var ranks = IntArray(16)
+
+    private val slots = IdentityHashMap<T, Int>()
+
+    private val trigrams = HashMap<Long, Postings>()
+
+    // The occupied slots, in the order of the source list
+    private var order = IntArray(0)
+
+    private var removedCount = 0
+
+    /**
+     * Updates this index to hold the passed in items, in the same order. Searches never see a partially updated index.
+     */
+    @Synchronized
+    fun update(items: List<T>) {
+        Arrays.fill(ranks, 0, this.items.size, -1)
+
+        val order = IntArray(items.size)
+        var count = 0
+        items.forEach { item ->
+            val slot = slots[item] ?: addItem(item) ?: return@forEach
+            if (ranks[slot] == -1) {
+                ranks[slot] = count
+                order[count++] = slot
+            }
+        }
+        this.order = if (count == order.size) order else order.copyOf(count)
+
+        // Anything which wasn't ranked is no longer in the source list
+        if (slots.size > count) {
+            for (slot in this.items.indices) {
+                if (ranks[slot] == -1 && this.items[slot] != null) {
+                    removeItem(slot)
+                }
+            }
+        }
+
+        compactIfNeeded()
+    }
+
+    /**
+     * @return the items whose name contains the query, ignoring case. An empty query matches all items.
+     */
+    @Synchronized
+    fun search(query: String): List<T> {
+        val normalizedQuery = query.toLowerCase()
+
+        if (normalizedQuery.length < 3) {
+            val result = ArrayList<T>()
+            order.forEach { slot ->
+                if (names[slot]!!.contains(normalizedQuery)) {
+                    result.add(items[slot]!!)
+                }
+            }
+            return result
+        }
+
+        // The postings are in slot order, so the matches are re-ordered by rank (packed above the slot, so they sort as primitives)
+        val candidates = trigramCandidates(normalizedQuery)
+        var matchCount = 0
+        val matches = LongArray(candidates.size)
+        candidates.forEach { slot ->
+            if (names[slot]!!.contains(normalizedQuery)) {
+                matches[matchCount++] = (ranks[slot].toLong() shl 32) or slot.toLong()
+            }
+        }
+        Arrays.sort(matches, 0, matchCount)
+
+        val result = ArrayList<T>(matchCount)
+        for (i in 0 until matchCount) {
+            result.add(items[matches[i].toInt()]!!)
+        }
+        return result
+    }
+
+    /**
+     * @return the items whose name scores above the threshold, using [StringUtils.getAdjustedJaroWinklerSimilarity], ordered by
+     * descending score. An empty query matches all items.
+     */
+    @Synchronized
+    fun fuzzySearch(query: String, threshold: Double): List<T> {
+        if (query.isEmpty()) {
+            return order.map { slot -> items[slot]!! }.sorted()
+        }
+
+        val scorer = JaroWinklerScorer(query)
+
+        // Matching slots and their scores
+        var matchCount = 0
+        var matchSlots = IntArray(16)
+        var matchScores = DoubleArray(16)
+
+        order.forEach { slot ->
+            val score = scorer.adjustedScore(fuzzyNames[slot]!!, threshold)
+            if (score > threshold) {
+                if (matchCount == matchSlots.size) {
+                    matchSlots = matchSlots.copyOf(matchCount * 2)
+                    matchScores = matchScores.copyOf(matchCount * 2)
+                }
+                matchSlots[matchCount] = slot
+                matchScores[matchCount] = score
+                matchCount++
+            }
+        }
+
+        return (0 until matchCount)
+            .sortedWith(Comparator { a, b ->
+                val result = java.lang.Double.compare(matchScores[b], matchScores[a])
+                if (result != 0) result else items[matchSlots[a]]!!.compareTo(items[matchSlots[b]]!!)
+            })
+            .map { match -> items[matchSlots[match]]!! }
+    }
+
+    /**
+     * @return the new item's slot, or null if the item has no name to index.
+     */
+    private fun addItem(item: T): Int? {
+        val name = nameOf(item) ?: return null
+        return addItem(item, name.toLowerCase(), JaroWinklerScorer.normalize(name))
+    }
+
+    private fun addItem(item: T, normalizedName: String, fuzzyName: CharArray): Int {
+        val slot = items.size
+
+        items.add(item)
+        names.add(normalizedName)
+        fuzzyNames.add(fuzzyName)
+        if (slot == ranks.size) {
+            ranks = ranks.copyOf(slot * 2)
+        }
+        ranks[slot] = -1
+        slots[item] = slot
+
+        // Slots only ever increase, so appending keeps each posting list in ascending order
+        nameTrigrams(normalizedName).forEach { trigram -> trigrams.getOrPut(trigram) { Postings() }.add(slot) }
+
+        return slot
+    }
+
+    private fun removeItem(slot: Int) {
+        val normalizedName = names[slot]!!
+
+        slots.remove(items[slot])
+        items[slot] = null
+        names[slot] = null
+        fuzzyNames[slot] = null
+        removedCount++
+
+        nameTrigrams(normalizedName).forEach { trigram ->
+            val postings = trigrams[trigram]!!
+            postings.remove(slot)
+            if (postings.size == 0) {
+                trigrams.remove(trigram)
+            }
+        }
+    }
+
+    /**
+     * Once more than half the slots are empty, re-packs the remaining items in source order. The normalized names are carried over, so
+     * only the postings are rebuilt.
+     */
+    private fun compactIfNeeded() {
+        if (removedCount < MIN_COMPACTION_SIZE || removedCount < slots.size) {
+            return
+        }
+
+        val previousItems = ArrayList(items)
+        val previousNames = ArrayList(names)
+        val previousFuzzyNames = ArrayList(fuzzyNames)
+        val previousOrder = order
+
+        items.clear()
+        names.clear()
+        fuzzyNames.clear()
+        slots.clear()
+        trigrams.clear()
+        removedCount = 0
+
+        order = IntArray(previousOrder.size)
+        previousOrder.forEachIndexed { rank, previousSlot ->
+            val slot = addItem(previousItems[previousSlot]!!, previousNames[previousSlot]!!, previousFuzzyNames[previousSlot]!!)
+            ranks[slot] = rank
+            order[rank] = slot
+        }
+    }
+
+    private fun trigramCandidates(query: String): IntArray {
+        var smallest: Postings? = null
+        for (i in 0..query.length - 3) {
+            val postings = trigrams[trigram(query, i)] ?: return IntArray(0)
+            if (smallest == null || postings.size < smallest.size) {
+                smallest = postings
+            }
+        }
+        return smallest!!.toArray()
+    }
+
+    /**
+     * A growable list of slots, in ascending order.
+     */
+    private class Postings {
+
+        var slots = IntArray(4)
+        var size = 0
+
+        fun add(slot: Int) {
+            if (size == slots.size) {
+                slots = slots.copyOf(size * 2)
+            }
+            slots[size++] = slot
+        }
+
+        fun remove(slot: Int) {
+            val index = Arrays.binarySearch(slots, 0, size, slot)
+            if (index >= 0) {
+                System.arraycopy(slots, index + 1, slots, index, size - index - 1)
+                size--
+            }
+        }
+
+        fun toArray(): IntArray {
+            return slots.copyOf(size)
+        }
+    }
+
+    companion object {
+
+        // Don't bother compacting small numbers of empty slots
+        private const val MIN_COMPACTION_SIZE = 64
+
+        private fun nameTrigrams(normalizedName: String): Set<Long> {
+            val nameTrigrams = HashSet<Long>()
+            for (i in 0..normalizedName.length - 3) {
+                nameTrigrams.add(trigram(normalizedName, i))
+            }
+            return nameTrigrams
+        }
+
+        private fun trigram(string: String, index: Int): Long {
+            return (string[index].toLong() shl 32) or (string[index + 1].toLong() shl 16) or string[index + 2].toLong()
+        }
+    }
+}
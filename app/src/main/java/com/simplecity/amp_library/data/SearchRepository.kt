@@ -0,0 +1,90 @@
+package com.simplecity.amp_library.data
+
+import com.jakewharton.rxrelay2.BehaviorRelay
+import com.simplecity.amp_library.model.Album
+import com.simplecity.amp_library.model.AlbumArtist
+import com.simplecity.amp_library.model.Song
+import com.simplecity.amp_library.utils.LogUtils
+import io.reactivex.Single
+import io.reactivex.disposables.Disposable
+import io.reactivex.functions.Consumer
+import io.reactivex.schedulers.Schedulers
+import javax.inject.Inject
+import javax.inject.Singleton
+
+@Singleton
+class SearchRepository @Inject constructor(
+    private val songsRepository: Repository.SongsRepository,
+    private val albumsRepository: Repository.AlbumsRepository,
+    private val albumArtistsRepository: Repository.AlbumArtistsRepository
+) : Repository.SearchRepository {
+
+    private var songsSubscription: Disposable? = null
+    private val songsIndex = SearchIndex<Song> { song -> song.name }
+    private val songsIndexRelay = BehaviorRelay.create<SearchIndex<Song>>()
+
+    private var albumsSubscription: Disposable? = null
+    private val albumsIndex = SearchIndex<Album> { album -> album.name }
+    private val albumsIndexRelay = BehaviorRelay.create<SearchIndex<Album>>()
+
+    private var albumArtistsSubscription: Disposable? = null
+    private val albumArtistsIndex = SearchIndex<AlbumArtist> { albumArtist -> albumArtist.name }
+    private val albumArtistsIndexRelay = BehaviorRelay.create<SearchIndex<AlbumArtist>>()
+
+    override fun searchSongs(query: String, fuzzy: Boolean, threshold: Double): Single<List<Song>> {
+        if (songsSubscription == null || songsSubscription?.isDisposed == true) {
+            songsSubscription = songsRepository.getSongsDelta()
+                .map { delta ->
+                    if (!delta.isEmpty()) {
+                        songsIndex.update(delta.songs)
+                    }
+                    songsIndex
+                }
+                .subscribe(
+                    songsIndexRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to index songs", error) }
+                )
+        }
+        return search(songsIndexRelay.firstOrError(), query, fuzzy, threshold)
+    }
+
+    override fun searchAlbums(query: String, fuzzy: Boolean, threshold: Double): Single<List<Album>> {
+        if (albumsSubscription == null || albumsSubscription?.isDisposed == true) {
+            albumsSubscription = albumsRepository.getAlbums()
+                .map { albums ->
+                    albumsIndex.update(albums)
+                    albumsIndex
+                }
+                .subscribe(
+                    albumsIndexRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to index albums", error) }
+                )
+        }
+        return search(albumsIndexRelay.firstOrError(), query, fuzzy, threshold)
+    }
+
+    override fun searchAlbumArtists(query: String, fuzzy: Boolean, threshold: Double): Single<List<AlbumArtist>> {
+        if (albumArtistsSubscription == null || albumArtistsSubscription?.isDisposed == true) {
+            albumArtistsSubscription = albumArtistsRepository.getAlbumArtists()
+                .map { albumArtists ->
+                    albumArtistsIndex.update(albumArtists)
+                    albumArtistsIndex
+                }
+                .subscribe(
+                    albumArtistsIndexRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to index album artists", error) }
+                )
+        }
+        return search(albumArtistsIndexRelay.firstOrError(), query, fuzzy, threshold)
+    }
+
+    private fun <T : Comparable<T>> search(index: Single<SearchIndex<T>>, query: String, fuzzy: Boolean, threshold: Double): Single<List<T>> {
+        return index
+            .map { searchIndex -> if (fuzzy) searchIndex.fuzzySearch(query, threshold) else searchIndex.search(query) }
+            .subscribeOn(Schedulers.io())
+    }
+
+    companion object {
+        const val TAG = "SearchRepository"
+    }
+}
@@ -0,0 +1,53 @@
+package com.simplecity.amp_library.data
+
+import com.simplecity.amp_library.model.Song
+
+/**
+ * Describes the difference between two consecutive emissions of a List of [Song]s.
+ *
+ * Songs are matched by [Song.id]. The repository reuses the previous [Song] instance for unchanged rows, so a song which was rebuilt
+ * between emissions is reported as changed, with both the previous and current instance, so that consumers can patch their aggregates
+ * rather than rebuilding them.
+ */
+class SongsDelta(
+    val songs: List<Song>,
+    val added: List<Song>,
+    val removed: List<Song>,
+    val changed: List<Pair<Song, Song>>
+) {
+
+    fun isEmpty(): Boolean {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty()
+    }
+
+    companion object {
+
+        val EMPTY = SongsDelta(emptyList(), emptyList(), emptyList(), emptyList())
+
+        fun between(previous: List<Song>, current: List<Song>): SongsDelta {
+            if (previous.isEmpty()) {
+                return SongsDelta(current, current, emptyList(), emptyList())
+            }
+
+            val previousById = HashMap<Long, Song>(previous.size)
+            previous.forEach { song -> previousById[song.id] = song }
+
+            val added = ArrayList<Song>()
+            val changed = ArrayList<Pair<Song, Song>>()
+
+            current.forEach { song ->
+                val previousSong = previousById.remove(song.id)
+                if (previousSong == null) {
+                    added.add(song)
+                } else if (previousSong !== song) {
+                    changed.add(Pair(previousSong, song))
+                }
+            }
+
+            // Anything left over wasn't present in the current emission
+            val removed = ArrayList(previousById.values)
+
+            return SongsDelta(current, added, removed, changed)
+        }
+    }
+}
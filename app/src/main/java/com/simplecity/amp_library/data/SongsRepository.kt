@@ -3,13 +3,11 @@ package com.simplecity.amp_library.data
 
 import android.content.Context
 import android.provider.MediaStore
-import android.util.Pair
 import com.jakewharton.rxrelay2.BehaviorRelay
 import com.simplecity.amp_library.data.Repository.SongsRepository
 import com.simplecity.amp_library.model.Album
 import com.simplecity.amp_library.model.AlbumArtist
 import com.simplecity.amp_library.model.Genre
-import com.simplecity.amp_library.model.InclExclItem
 import com.simplecity.amp_library.model.Playlist
 import com.simplecity.amp_library.model.Query
 import com.simplecity.amp_library.model.Song
@@ -17,17 +15,21 @@ import com.simplecity.amp_library.sql.providers.PlayCountTable
 import com.simplecity.amp_library.sql.sqlbrite.SqlBriteUtils
 import com.simplecity.amp_library.utils.ComparisonUtils
 import com.simplecity.amp_library.utils.LogUtils
+import com.simplecity.amp_library.utils.PathMatcher
 import com.simplecity.amp_library.utils.SettingsManager
-import com.simplecity.amp_library.utils.StringUtils
 import com.simplecity.amp_library.utils.playlists.PlaylistManager
+import com.simplecity.amp_library.utils.sorting.SortManager
 import io.reactivex.Observable
 import io.reactivex.ObservableTransformer
 import io.reactivex.disposables.Disposable
+import io.reactivex.functions.BiFunction
 import io.reactivex.functions.Consumer
 import io.reactivex.functions.Function3
 import io.reactivex.schedulers.Schedulers
 import java.util.ArrayList
 import java.util.Arrays
+import java.util.Collections
+import java.util.PriorityQueue
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -45,9 +47,27 @@ open class SongsRepository @Inject constructor(
     private var allSongsSubscription: Disposable? = null
     private val allSongsRelay = BehaviorRelay.create<List<Song>>()
 
+    private var playCountsSubscription: Disposable? = null
+    private val playCountsRelay = BehaviorRelay.create<PlayCounts>()
+
+    /**
+     * The songs from the previous [getAllSongs] emission, keyed by id. Rows which are unchanged (see [Song.isUpToDate]) are mapped to the
+     * existing [Song] instance, rather than being rebuilt from the cursor.
+     */
+    @Volatile
+    private var songsById: Map<Long, Song> = emptyMap()
+
     override fun getAllSongs(): Observable<List<Song>> {
         if (allSongsSubscription == null || allSongsSubscription?.isDisposed == true) {
-            allSongsSubscription = SqlBriteUtils.createObservableList<Song>(context, { Song(it) }, Song.getQuery())
+            allSongsSubscription = SqlBriteUtils.createObservableList<Song>(context, { cursor ->
+                val existingSong = songsById[cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID))]
+                if (existingSong != null && existingSong.isUpToDate(cursor)) {
+                    existingSong
+                } else {
+                    Song(cursor)
+                }
+            }, Song.getQuery())
+                .doOnNext { songs -> songsById = songs.associateBy { song -> song.id } }
                 .subscribe(
                     allSongsRelay,
                     Consumer { error -> LogUtils.logException(PlaylistsRepository.TAG, "Failed to get all songs", error) }
@@ -75,6 +95,13 @@ open class SongsRepository @Inject constructor(
             .subscribeOn(Schedulers.io())
     }
 
+    override fun getSongsDelta(): Observable<SongsDelta> {
+        return getSongs()
+            .scan(SongsDelta.EMPTY) { previous, songs -> SongsDelta.between(previous.songs, songs) }
+            .skip(1)
+            .filter { delta -> delta.songs.isEmpty() || !delta.isEmpty() }
+    }
+
     override fun getSongs(album: Album): Observable<List<Song>> {
         return getSongs { song -> song.albumId == album.id }
     }
@@ -92,16 +119,7 @@ open class SongsRepository @Inject constructor(
             PlaylistManager.PlaylistIds.RECENTLY_ADDED_PLAYLIST -> {
                 val numWeeks = settingsManager.numWeeks * 3600 * 24 * 7
                 return getSongs { song -> song.dateAdded > System.currentTimeMillis() / 1000 - numWeeks }
-                    .map { songs ->
-                        songs
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.year, a.year) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.track, b.track) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.discNumber, b.discNumber) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumName, b.albumName) })
-                            .sortedWith(Comparator { a, b -> ComparisonUtils.compareLong(b.dateAdded.toLong(), a.dateAdded.toLong()) })
-                    }
+                    .map { songs -> SortManager.RECENTLY_ADDED_SONGS.sorted(songs) }
             }
 
             PlaylistManager.PlaylistIds.PODCASTS_PLAYLIST -> {
@@ -111,51 +129,8 @@ open class SongsRepository @Inject constructor(
                     .map { songs -> songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareLong(a.playlistSongPlayOrder, b.playlistSongPlayOrder) }) }
             }
 
-            PlaylistManager.PlaylistIds.MOST_PLAYED_PLAYLIST -> {
-                val query = Query.Builder()
-                    .uri(PlayCountTable.URI)
-                    .projection(arrayOf(PlayCountTable.COLUMN_ID, PlayCountTable.COLUMN_PLAY_COUNT))
-                    .sort(PlayCountTable.COLUMN_PLAY_COUNT + " DESC")
-                    .build()
-
-                SqlBriteUtils.createObservableList(context, { cursor ->
-                    Pair(
-                        cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_ID)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_PLAY_COUNT))
-                    )
-                }, query)
-                    .flatMap { pairs ->
-                        getSongs { song ->
-                            pairs.firstOrNull { pair ->
-                                song.playCount = pair.second
-                                pair.first == song.id && pair.second >= 2
-                            } != null
-                        }.map { songs -> songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.playCount, a.playCount) }) }
-                    }
-            }
-
-            PlaylistManager.PlaylistIds.RECENTLY_PLAYED_PLAYLIST -> {
-                val query = Query.Builder()
-                    .uri(PlayCountTable.URI)
-                    .projection(arrayOf(PlayCountTable.COLUMN_ID, PlayCountTable.COLUMN_TIME_PLAYED))
-                    .sort(PlayCountTable.COLUMN_TIME_PLAYED + " DESC")
-                    .build()
-
-                SqlBriteUtils.createObservableList(context, { cursor ->
-                    Pair(
-                        cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_ID)),
-                        cursor.getLong(cursor.getColumnIndexOrThrow(PlayCountTable.COLUMN_TIME_PLAYED))
-                    )
-                }, query)
-                    .flatMap { pairs ->
-                        getSongs { song ->
-                            pairs.filter { pair ->
-                                song.lastPlayed = pair.second
-                                pair.first == song.id
-                            }.firstOrNull() != null
-                        }.map { songs -> songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareLong(b.lastPlayed, a.lastPlayed) }) }
-                    }
-            }
+            PlaylistManager.PlaylistIds.MOST_PLAYED_PLAYLIST,
+            PlaylistManager.PlaylistIds.RECENTLY_PLAYED_PLAYLIST -> getSongs(playlist, Int.MAX_VALUE)
 
             else -> {
                 val query = Song.getQuery()
@@ -172,38 +147,127 @@ open class SongsRepository @Inject constructor(
         }
     }
 
+    override fun getSongs(playlist: Playlist, limit: Int): Observable<List<Song>> {
+        return when (playlist.id) {
+            PlaylistManager.PlaylistIds.MOST_PLAYED_PLAYLIST -> {
+                getPlayedSongs(2, limit, Comparator { a, b ->
+                    var result = ComparisonUtils.compareInt(b.playCount, a.playCount)
+                    if (result == 0) result = ComparisonUtils.compareLong(b.lastPlayed, a.lastPlayed)
+                    if (result == 0) result = ComparisonUtils.compareLong(a.song.id, b.song.id)
+                    result
+                })
+            }
+
+            PlaylistManager.PlaylistIds.RECENTLY_PLAYED_PLAYLIST -> {
+                getPlayedSongs(0, limit, Comparator { a, b ->
+                    var result = ComparisonUtils.compareLong(b.lastPlayed, a.lastPlayed)
+                    if (result == 0) result = ComparisonUtils.compareLong(a.song.id, b.song.id)
+                    result
+                })
+            }
+
+            else -> getSongs(playlist).map { songs -> if (songs.size > limit) songs.subList(0, limit) else songs }
+        }
+    }
+
+    /**
+     * A song joined with its row in [PlayCountTable]. The shared [Song] instance isn't modified.
+     */
+    private class PlayedSong(val song: Song, val playCount: Int, val lastPlayed: Long)
+
+    /**
+     * Joins the songs against the play counts in a single pass, and returns the first [limit] songs played at least [minPlayCount]
+     * times, in the order defined by [comparator].
+     *
+     * The returned songs are copies carrying their play count & last played time, since the songs emitted by [getSongs] are shared.
+     */
+    private fun getPlayedSongs(minPlayCount: Int, limit: Int, comparator: Comparator<PlayedSong>): Observable<List<Song>> {
+        return Observable.combineLatest<List<Song>, PlayCounts, List<Song>>(
+            getSongs(),
+            getPlayCounts(),
+            BiFunction { songs: List<Song>, playCounts: PlayCounts ->
+                val playedSongs = ArrayList<PlayedSong>(Math.min(songs.size, playCounts.size))
+                songs.forEach { song ->
+                    val index = playCounts.indexOf(song.id)
+                    if (index >= 0 && playCounts.getPlayCount(index) >= minPlayCount) {
+                        playedSongs.add(PlayedSong(song, playCounts.getPlayCount(index), playCounts.getLastPlayed(index)))
+                    }
+                }
+                topSongs(playedSongs, limit, comparator)
+                    .map { playedSong -> playedSong.song.withPlayCount(playedSong.playCount, playedSong.lastPlayed) }
+            })
+    }
+
+    /**
+     * Returns a continuous [PlayCounts] index of [PlayCountTable], which is rebuilt whenever the play counts change.
+     */
+    private fun getPlayCounts(): Observable<PlayCounts> {
+        if (playCountsSubscription == null || playCountsSubscription?.isDisposed == true) {
+            val query = Query.Builder()
+                .uri(PlayCountTable.URI)
+                .projection(PlayCounts.PROJECTION)
+                .sort(PlayCountTable.COLUMN_ID + " ASC")
+                .build()
+
+            playCountsSubscription = SqlBriteUtils.createObservableFromCursor(context, { cursor -> PlayCounts.fromCursor(cursor) }, query, PlayCounts.EMPTY)
+                .subscribe(
+                    playCountsRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to get play counts", error) }
+                )
+        }
+
+        return playCountsRelay
+            .subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * @return the first [limit] songs in the order defined by [comparator]. When only some of the songs are needed, they're selected
+     * through a heap bounded to [limit] elements, rather than sorting the whole list.
+     */
+    private fun <T> topSongs(songs: List<T>, limit: Int, comparator: Comparator<T>): List<T> {
+        if (songs.size <= limit) {
+            return songs.sortedWith(comparator)
+        }
+        if (limit <= 0) {
+            return emptyList()
+        }
+
+        // The head of the heap is the 'worst' song kept so far
+        val heap = PriorityQueue<T>(limit, Collections.reverseOrder(comparator))
+        songs.forEach { song ->
+            if (heap.size < limit) {
+                heap.add(song)
+            } else if (comparator.compare(song, heap.peek()) < 0) {
+                heap.poll()
+                heap.add(song)
+            }
+        }
+        return heap.sortedWith(comparator)
+    }
+
     override fun getSongs(genre: Genre): Observable<List<Song>> {
         return getSongs()
-            .map { songs ->
-                songs.sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(b.year, a.year) })
-                    .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.track, b.track) })
-                    .sortedWith(Comparator { a, b -> ComparisonUtils.compareInt(a.discNumber, b.discNumber) })
-                    .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumName, b.albumName) })
-                    .sortedWith(Comparator { a, b -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName) })
-            }
+            .map { songs -> SortManager.GENRE_SONGS.sorted(songs) }
     }
 
     private fun getInclExclTransformer(): ObservableTransformer<List<Song>, List<Song>> {
         return ObservableTransformer { upstream ->
-            Observable.combineLatest<List<Song>, List<InclExclItem>, List<InclExclItem>, List<Song>>(
+            Observable.combineLatest<List<Song>, PathMatcher, PathMatcher, List<Song>>(
                 upstream,
-                whitelistRepository.getWhitelistItems(this),
-                blacklistRepository.getBlacklistItems(this),
-                Function3 { songs: List<Song>, inclItems: List<InclExclItem>, exclItems: List<InclExclItem> ->
+                // The matchers are only rebuilt when the include/exclude items change, not for each emission of songs
+                whitelistRepository.getWhitelistItems(this).map { inclItems -> PathMatcher(inclItems.map { inclItem -> inclItem.path }) },
+                blacklistRepository.getBlacklistItems(this).map { exclItems -> PathMatcher(exclItems.map { exclItem -> exclItem.path }) },
+                Function3 { songs: List<Song>, inclMatcher: PathMatcher, exclMatcher: PathMatcher ->
                     var result = songs
 
                     // Filter out excluded paths
-                    if (!exclItems.isEmpty()) {
-                        result = songs
-                            .filterNot { song -> exclItems.any { exclItem -> StringUtils.containsIgnoreCase(song.path, exclItem.path) } }
-                            .toList()
+                    if (!exclMatcher.isEmpty) {
+                        result = songs.filterNot { song -> exclMatcher.matches(song.path) }
                     }
 
                     // Filter out non-included paths
-                    if (!inclItems.isEmpty()) {
-                        result = result
-                            .filter { song -> inclItems.any { inclItem -> StringUtils.containsIgnoreCase(song.path, inclItem.path) } }
-                            .toList()
+                    if (!inclMatcher.isEmpty) {
+                        result = result.filter { song -> inclMatcher.matches(song.path) }
                     }
 
                     result
@@ -7,6 +7,7 @@ import com.simplecity.amp_library.data.BlacklistRepository
 import com.simplecity.amp_library.data.GenresRepository
 import com.simplecity.amp_library.data.PlaylistsRepository
 import com.simplecity.amp_library.data.Repository
+import com.simplecity.amp_library.data.SearchRepository
 import com.simplecity.amp_library.data.SongsRepository
 import com.simplecity.amp_library.data.WhitelistRepository
 import com.simplecity.amp_library.di.app.RepositoryModule.AbsRepositoryModule
@@ -53,6 +54,10 @@ class RepositoryModule {
         @Singleton
         abstract fun bindPlaylistsRepository(playlistsRepository: PlaylistsRepository): Repository.PlaylistsRepository
 
+        @Binds
+        @Singleton
+        abstract fun bindSearchRepository(searchRepository: SearchRepository): Repository.SearchRepository
+
         @Binds
         @Singleton
         abstract fun bindBlacklistRepository(blacklistRepository: BlacklistRepository): Repository.BlacklistRepository
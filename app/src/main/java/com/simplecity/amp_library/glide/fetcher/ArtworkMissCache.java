@@ -0,0 +1,198 @@
+package com.simplecity.amp_library.glide.fetcher;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LruCache;
+import com.simplecity.amp_library.model.ArtworkProvider;
+import com.simplecity.amp_library.sql.databases.ArtworkMissDbOpenHelper;
+import com.simplecity.amp_library.utils.LogUtils;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static com.simplecity.amp_library.sql.databases.ArtworkMissDbOpenHelper.COLUMN_KEY;
+import static com.simplecity.amp_library.sql.databases.ArtworkMissDbOpenHelper.COLUMN_TIME;
+import static com.simplecity.amp_library.sql.databases.ArtworkMissDbOpenHelper.COLUMN_TYPE;
+import static com.simplecity.amp_library.sql.databases.ArtworkMissDbOpenHelper.COLUMN_VALIDATOR;
+import static com.simplecity.amp_library.sql.databases.ArtworkMissDbOpenHelper.TABLE_NAME;
+
+/**
+ * A persistent record of the artwork sources which have been tried, and found to be empty, for each artwork key.
+ * <p>
+ * Each miss expires after a per-source TTL. Folder misses are also invalidated when the folder's last modified time changes, and tag
+ * misses when the file's last modified time changes.
+ */
+public final class ArtworkMissCache {
+
+    private static final String TAG = "ArtworkMissCache";
+
+    private static final int MEMORY_CACHE_SIZE = 1000;
+
+    private static final int TYPE_COUNT = 4;
+
+    private static final long[] TTL_MILLIS = new long[TYPE_COUNT];
+
+    static {
+        TTL_MILLIS[ArtworkProvider.Type.MEDIA_STORE] = TimeUnit.DAYS.toMillis(1);
+        TTL_MILLIS[ArtworkProvider.Type.TAG] = TimeUnit.DAYS.toMillis(30);
+        TTL_MILLIS[ArtworkProvider.Type.FOLDER] = TimeUnit.DAYS.toMillis(7);
+        TTL_MILLIS[ArtworkProvider.Type.REMOTE] = TimeUnit.DAYS.toMillis(1);
+    }
+
+    /**
+     * The misses for a single artwork key, indexed by {@link ArtworkProvider.Type}. A time of 0 means there's no miss.
+     */
+    private static class Misses {
+
+        final long[] times = new long[TYPE_COUNT];
+        final long[] validators = new long[TYPE_COUNT];
+    }
+
+    private static ArtworkMissCache instance;
+
+    @Nullable
+    private ArtworkMissDbOpenHelper dbOpenHelper;
+
+    private final LruCache<String, Misses> memoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+
+    public static synchronized ArtworkMissCache getInstance() {
+        if (instance == null) {
+            instance = new ArtworkMissCache();
+        }
+        return instance;
+    }
+
+    private ArtworkMissCache() {
+    }
+
+    /**
+     * Enables persistence. Until this is called, misses are only cached in memory.
+     */
+    public synchronized void init(@NonNull Context context) {
+        if (dbOpenHelper == null) {
+            dbOpenHelper = new ArtworkMissDbOpenHelper(context.getApplicationContext());
+        }
+    }
+
+    /**
+     * @return true if the passed in source is known not to have artwork for the passed in provider.
+     */
+    @WorkerThread
+    boolean isMiss(ArtworkProvider artworkProvider, @ArtworkProvider.Type int type) {
+        Misses misses = getMisses(artworkProvider.getArtworkKey());
+        long time = misses.times[type];
+        if (time == 0 || System.currentTimeMillis() - time > TTL_MILLIS[type]) {
+            return false;
+        }
+        return misses.validators[type] == getValidator(artworkProvider, type);
+    }
+
+    @WorkerThread
+    void putMiss(ArtworkProvider artworkProvider, @ArtworkProvider.Type int type) {
+        String key = artworkProvider.getArtworkKey();
+        long time = System.currentTimeMillis();
+        long validator = getValidator(artworkProvider, type);
+
+        Misses misses = getMisses(key);
+        synchronized (misses) {
+            misses.times[type] = time;
+            misses.validators[type] = validator;
+        }
+
+        SQLiteDatabase database = getDatabase();
+        if (database != null) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_KEY, key);
+            values.put(COLUMN_TYPE, type);
+            values.put(COLUMN_TIME, time);
+            values.put(COLUMN_VALIDATOR, validator);
+            try {
+                database.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            } catch (SQLiteException e) {
+                LogUtils.logException(TAG, "Failed to write artwork miss", e);
+            }
+        }
+    }
+
+    /**
+     * Forgets all misses. Called when the artwork cache is cleared.
+     */
+    @WorkerThread
+    public void clear() {
+        memoryCache.evictAll();
+
+        SQLiteDatabase database = getDatabase();
+        if (database != null) {
+            try {
+                database.delete(TABLE_NAME, null, null);
+            } catch (SQLiteException e) {
+                LogUtils.logException(TAG, "Failed to clear artwork misses", e);
+            }
+        }
+    }
+
+    /**
+     * @return a value which changes when the passed in source may have changed, or 0 if there is no such value.
+     */
+    private static long getValidator(ArtworkProvider artworkProvider, @ArtworkProvider.Type int type) {
+        String path = artworkProvider.getArtworkPath();
+        if (path == null) {
+            return 0;
+        }
+        switch (type) {
+            case ArtworkProvider.Type.FOLDER:
+                File parent = new File(path).getParentFile();
+                return parent != null ? parent.lastModified() : 0;
+            case ArtworkProvider.Type.TAG:
+                return new File(path).lastModified();
+            default:
+                return 0;
+        }
+    }
+
+    @NonNull
+    private Misses getMisses(String key) {
+        Misses misses = memoryCache.get(key);
+        if (misses != null) {
+            return misses;
+        }
+
+        misses = new Misses();
+
+        SQLiteDatabase database = getDatabase();
+        if (database != null) {
+            try (Cursor cursor = database.query(TABLE_NAME, new String[] { COLUMN_TYPE, COLUMN_TIME, COLUMN_VALIDATOR }, COLUMN_KEY + "=?", new String[] { key }, null, null, null)) {
+                while (cursor.moveToNext()) {
+                    int type = cursor.getInt(0);
+                    if (type >= 0 && type < TYPE_COUNT) {
+                        misses.times[type] = cursor.getLong(1);
+                        misses.validators[type] = cursor.getLong(2);
+                    }
+                }
+            } catch (SQLiteException e) {
+                LogUtils.logException(TAG, "Failed to query artwork misses", e);
+            }
+        }
+
+        memoryCache.put(key, misses);
+        return misses;
+    }
+
+    @Nullable
+    private synchronized SQLiteDatabase getDatabase() {
+        if (dbOpenHelper == null) {
+            return null;
+        }
+        try {
+            return dbOpenHelper.getWritableDatabase();
+        } catch (SQLiteException e) {
+            LogUtils.logException(TAG, "Failed to open artwork miss cache", e);
+            return null;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.simplecity.amp_library.glide.fetcher;
 import com.simplecity.amp_library.model.ArtworkProvider;
 import com.simplecity.amp_library.utils.ArtworkUtils;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 
 class FolderFetcher extends BaseFetcher {
@@ -22,7 +23,7 @@ class FolderFetcher extends BaseFetcher {
     }
 
     @Override
-    protected InputStream getStream() {
+    protected InputStream getStream() throws IOException {
 
         if (file == null) {
             return artworkProvider.getFolderArtwork();
@@ -0,0 +1,53 @@
+package com.simplecity.amp_library.glide.fetcher;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import com.bumptech.glide.Priority;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spaces out the start of requests to the same host, so bulk artwork downloads don't flood the artwork APIs.
+ * <p>
+ * Only bulk downloads are held back. Glide issues download-only requests (as used by ArtworkDownloadService) at {@link Priority#LOW},
+ * whereas artwork being displayed is requested at {@link Priority#NORMAL} or above, and mustn't queue up behind the bulk downloads.
+ */
+final class HostRateLimiter {
+
+    private static final long MIN_INTERVAL_MILLIS = 250;
+
+    // The earliest time the next bulk request to each host may start, in elapsed realtime
+    private static final Map<String, Long> nextRequestTimes = new HashMap<>();
+
+    private HostRateLimiter() {
+    }
+
+    /**
+     * Blocks until a request to the passed in host may start. Requests above {@link Priority#LOW} start straight away, but still delay
+     * the next bulk request.
+     */
+    static void acquire(@Nullable String host, Priority priority) throws InterruptedException {
+        if (host == null) {
+            return;
+        }
+
+        long delay;
+        synchronized (nextRequestTimes) {
+            long now = SystemClock.elapsedRealtime();
+            Long nextRequestTime = nextRequestTimes.get(host);
+            if (priority != Priority.LOW) {
+                if (nextRequestTime == null || nextRequestTime < now + MIN_INTERVAL_MILLIS) {
+                    nextRequestTimes.put(host, now + MIN_INTERVAL_MILLIS);
+                }
+                return;
+            }
+            long start = nextRequestTime == null ? now : Math.max(now, nextRequestTime);
+            nextRequestTimes.put(host, start + MIN_INTERVAL_MILLIS);
+            delay = start - now;
+        }
+
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+}
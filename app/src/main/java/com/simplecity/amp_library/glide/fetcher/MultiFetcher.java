@@ -6,6 +6,7 @@ import com.bumptech.glide.load.data.DataFetcher;
 import com.simplecity.amp_library.ShuttleApplication;
 import com.simplecity.amp_library.model.ArtworkProvider;
 import com.simplecity.amp_library.model.UserSelectedArtwork;
+import com.simplecity.amp_library.services.ArtworkDownloadQueue;
 import com.simplecity.amp_library.utils.SettingsManager;
 import com.simplecity.amp_library.utils.ShuttleUtils;
 import java.io.File;
@@ -25,6 +26,8 @@ public class MultiFetcher implements DataFetcher<InputStream> {
 
     private boolean allowOfflineDownload = false;
 
+    private volatile boolean cancelled;
+
     public MultiFetcher(Context context, ArtworkProvider artworkProvider, SettingsManager settingsManager, boolean allowOfflineDownload) {
         applicationContext = context;
         this.artworkProvider = artworkProvider;
@@ -45,6 +48,30 @@ public class MultiFetcher implements DataFetcher<InputStream> {
         return inputStream;
     }
 
+    /**
+     * Loads from the passed in source, unless it's already known not to have artwork.
+     * <p>
+     * A miss is only recorded if the fetcher ran to completion and found nothing. Failures (I/O errors, timeouts, permissions) and
+     * cancellations say nothing about whether the source has artwork, so they're not recorded.
+     */
+    private InputStream loadData(DataFetcher<InputStream> dataFetcher, Priority priority, @ArtworkProvider.Type int type) {
+        ArtworkMissCache missCache = ArtworkMissCache.getInstance();
+        if (cancelled || missCache.isMiss(artworkProvider, type)) {
+            return null;
+        }
+        InputStream inputStream;
+        try {
+            inputStream = dataFetcher.loadData(priority);
+        } catch (Exception e) {
+            dataFetcher.cleanup();
+            return null;
+        }
+        if (inputStream == null && !cancelled) {
+            missCache.putMiss(artworkProvider, type);
+        }
+        return inputStream;
+    }
+
     @Override
     public InputStream loadData(Priority priority) throws Exception {
 
@@ -75,7 +102,7 @@ public class MultiFetcher implements DataFetcher<InputStream> {
         //Check the MediaStore
         if (inputStream == null && !settingsManager.ignoreMediaStoreArtwork()) {
             dataFetcher = new MediaStoreFetcher(applicationContext, artworkProvider);
-            inputStream = loadData(dataFetcher, priority);
+            inputStream = loadData(dataFetcher, priority, ArtworkProvider.Type.MEDIA_STORE);
         }
 
         if (inputStream == null) {
@@ -83,32 +110,44 @@ public class MultiFetcher implements DataFetcher<InputStream> {
                 //Check tags
                 if (!settingsManager.ignoreEmbeddedArtwork()) {
                     dataFetcher = new TagFetcher(artworkProvider);
-                    inputStream = loadData(dataFetcher, priority);
+                    inputStream = loadData(dataFetcher, priority, ArtworkProvider.Type.TAG);
                 }
                 //Check folders
                 if (inputStream == null && !settingsManager.ignoreFolderArtwork()) {
                     dataFetcher = new FolderFetcher(artworkProvider, null);
-                    inputStream = loadData(dataFetcher, priority);
+                    inputStream = loadData(dataFetcher, priority, ArtworkProvider.Type.FOLDER);
                 }
             } else {
                 //Check folders
                 if (!settingsManager.ignoreFolderArtwork()) {
                     dataFetcher = new FolderFetcher(artworkProvider, null);
-                    inputStream = loadData(dataFetcher, priority);
+                    inputStream = loadData(dataFetcher, priority, ArtworkProvider.Type.FOLDER);
                 }
                 //Check tags
                 if (inputStream == null && !settingsManager.ignoreEmbeddedArtwork()) {
                     dataFetcher = new TagFetcher(artworkProvider);
-                    inputStream = loadData(dataFetcher, priority);
+                    inputStream = loadData(dataFetcher, priority, ArtworkProvider.Type.TAG);
                 }
             }
         }
 
-        if (inputStream == null &&
-            (allowOfflineDownload || (settingsManager.canDownloadArtworkAutomatically() && ShuttleUtils.isOnline(applicationContext, true)))) {
-            //Last FM
-            dataFetcher = new RemoteFetcher(artworkProvider);
-            inputStream = loadData(dataFetcher, priority);
+        if (inputStream == null) {
+            ArtworkDownloadQueue artworkDownloadQueue = ArtworkDownloadQueue.getInstance();
+            if (allowOfflineDownload || (settingsManager.canDownloadArtworkAutomatically() && ShuttleUtils.isOnline(applicationContext, true))) {
+                // If the download service is waiting to fetch this artwork, fetch it here instead, rather than downloading it twice.
+                boolean claimed = !allowOfflineDownload && artworkDownloadQueue.claim(artworkProvider.getArtworkKey());
+
+                //Last FM
+                dataFetcher = new RemoteFetcher(artworkProvider);
+                inputStream = loadData(dataFetcher, priority, ArtworkProvider.Type.REMOTE);
+
+                if (claimed) {
+                    artworkDownloadQueue.releaseClaim(applicationContext, artworkProvider, inputStream != null);
+                }
+            } else if (!allowOfflineDownload) {
+                // This artwork is being displayed but can't be fetched here, so if it's waiting to be downloaded, it should be downloaded next.
+                artworkDownloadQueue.prioritize(artworkProvider.getArtworkKey(), ArtworkDownloadQueue.PRIORITY_VISIBLE);
+            }
         }
         return inputStream;
     }
@@ -122,21 +161,50 @@ public class MultiFetcher implements DataFetcher<InputStream> {
 
     @Override
     public void cancel() {
+        cancelled = true;
         if (dataFetcher != null) {
             dataFetcher.cancel();
         }
     }
 
-    private String getCustomArtworkSuffix(Context context) {
-        if (((ShuttleApplication) context.getApplicationContext()).userSelectedArtwork.containsKey(artworkProvider.getArtworkKey())) {
-            UserSelectedArtwork userSelectedArtwork = ((ShuttleApplication) context.getApplicationContext()).userSelectedArtwork.get(artworkProvider.getArtworkKey());
-            return "_" + userSelectedArtwork.type + "_" + (userSelectedArtwork.path == null ? "" : userSelectedArtwork.path.hashCode());
+    /**
+     * @return an id for the artwork of the passed in provider, which changes when the user selects different artwork for it.
+     */
+    public static String getArtworkId(ArtworkProvider artworkProvider) {
+        UserSelectedArtwork userSelectedArtwork = ShuttleApplication.userSelectedArtwork.get(artworkProvider.getArtworkKey());
+        if (userSelectedArtwork != null) {
+            return artworkProvider.getArtworkKey() + "_" + userSelectedArtwork.type + "_" + (userSelectedArtwork.path == null ? "" : userSelectedArtwork.path.hashCode());
+        }
+        return artworkProvider.getArtworkKey();
+    }
+
+    /**
+     * @return an id for the source the artwork of the passed in provider is resolved from: the user selected source, or else the order
+     * of the local sources enabled in settings (remote artwork is always tried last). Changes when the user selects a different source,
+     * or changes the artwork source preferences.
+     */
+    public static String getArtworkSourceId(ArtworkProvider artworkProvider, SettingsManager settingsManager) {
+        UserSelectedArtwork userSelectedArtwork = ShuttleApplication.userSelectedArtwork.get(artworkProvider.getArtworkKey());
+        if (userSelectedArtwork != null) {
+            return "u" + userSelectedArtwork.type;
+        }
+
+        StringBuilder sourceId = new StringBuilder(4);
+        if (!settingsManager.ignoreMediaStoreArtwork()) {
+            sourceId.append('m');
+        }
+        boolean tags = !settingsManager.ignoreEmbeddedArtwork();
+        boolean folders = !settingsManager.ignoreFolderArtwork();
+        if (settingsManager.preferEmbeddedArtwork()) {
+            sourceId.append(tags ? "t" : "").append(folders ? "f" : "");
+        } else {
+            sourceId.append(folders ? "f" : "").append(tags ? "t" : "");
         }
-        return "";
+        return sourceId.append('r').toString();
     }
 
     @Override
     public String getId() {
-        return artworkProvider.getArtworkKey() + getCustomArtworkSuffix(applicationContext);
+        return getArtworkId(artworkProvider);
     }
 }
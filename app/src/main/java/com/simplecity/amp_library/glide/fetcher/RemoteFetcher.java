@@ -1,14 +1,126 @@
 package com.simplecity.amp_library.glide.fetcher;
 
-import com.bumptech.glide.load.data.HttpUrlFetcher;
-import com.bumptech.glide.load.model.GlideUrl;
+import android.net.Uri;
+import android.text.TextUtils;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.data.DataFetcher;
 import com.simplecity.amp_library.model.ArtworkProvider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
 
-public class RemoteFetcher extends HttpUrlFetcher {
+/**
+ * Fetches artwork from the artwork API.
+ * <p>
+ * Returns null only if the API responds that it has no artwork (or the fetch is cancelled). Any other failure, including a server error
+ * or timeout, is thrown, so callers can tell 'no artwork' apart from 'couldn't check'.
+ */
+public class RemoteFetcher implements DataFetcher<InputStream> {
 
     String TAG = "RemoteFetcher";
 
+    private static final int TIMEOUT_MILLIS = 2500;
+
+    private static final int MAXIMUM_REDIRECTS = 5;
+
+    private final String url;
+
+    private String host;
+
+    private HttpURLConnection urlConnection;
+
+    private InputStream stream;
+
+    private volatile boolean isCancelled;
+
     public RemoteFetcher(ArtworkProvider artworkProvider) {
-        super(new GlideUrl(artworkProvider.getRemoteArtworkUrl()));
+        url = artworkProvider.getRemoteArtworkUrl();
+        host = url != null ? Uri.parse(url).getHost() : null;
+    }
+
+    @Override
+    public InputStream loadData(Priority priority) throws Exception {
+        if (url == null) {
+            throw new IOException("No remote artwork url");
+        }
+
+        HostRateLimiter.acquire(host, priority);
+        if (isCancelled) {
+            return null;
+        }
+
+        return loadData(new URL(url), 0, null);
+    }
+
+    /**
+     * Redirects are followed here rather than by HttpURLConnection, which won't follow them from https to http, and the number of
+     * redirects is bounded.
+     */
+    private InputStream loadData(URL url, int redirects, URL lastUrl) throws IOException {
+        if (redirects >= MAXIMUM_REDIRECTS) {
+            throw new IOException("Too many (> " + MAXIMUM_REDIRECTS + ") redirects");
+        }
+        try {
+            if (lastUrl != null && url.toURI().equals(lastUrl.toURI())) {
+                throw new IOException("In re-direct loop");
+            }
+        } catch (URISyntaxException e) {
+            // Do nothing, this is best effort.
+        }
+
+        urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(TIMEOUT_MILLIS);
+        urlConnection.setUseCaches(false);
+        urlConnection.setDoInput(true);
+        urlConnection.setInstanceFollowRedirects(false);
+        urlConnection.connect();
+        if (isCancelled) {
+            return null;
+        }
+
+        int statusCode = urlConnection.getResponseCode();
+        if (statusCode / 100 == 2) {
+            stream = urlConnection.getInputStream();
+            return stream;
+        }
+        if (statusCode / 100 == 3) {
+            String redirectUrl = urlConnection.getHeaderField("Location");
+            if (TextUtils.isEmpty(redirectUrl)) {
+                throw new IOException("Received empty or null redirect url");
+            }
+            urlConnection.disconnect();
+            return loadData(new URL(url, redirectUrl), redirects + 1, url);
+        }
+        if (statusCode == HttpURLConnection.HTTP_NOT_FOUND || statusCode == HttpURLConnection.HTTP_GONE) {
+            // The API doesn't have any artwork for this item
+            return null;
+        }
+        throw new IOException("Request failed " + statusCode + ": " + urlConnection.getResponseMessage());
+    }
+
+    @Override
+    public void cleanup() {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (urlConnection != null) {
+            urlConnection.disconnect();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    @Override
+    public String getId() {
+        return url;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package com.simplecity.amp_library.glide.fetcher;
 
 import com.simplecity.amp_library.model.ArtworkProvider;
+import java.io.IOException;
 import java.io.InputStream;
 
 public class TagFetcher extends BaseFetcher {
@@ -17,7 +18,7 @@ public class TagFetcher extends BaseFetcher {
     }
 
     @Override
-    protected InputStream getStream() {
+    protected InputStream getStream() throws IOException {
         return artworkProvider.getTagArtwork();
     }
 }
\ No newline at end of file
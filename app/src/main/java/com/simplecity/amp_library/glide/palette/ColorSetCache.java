@@ -0,0 +1,158 @@
+package com.simplecity.amp_library.glide.palette;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LruCache;
+import com.simplecity.amp_library.glide.fetcher.MultiFetcher;
+import com.simplecity.amp_library.model.ArtworkProvider;
+import com.simplecity.amp_library.sql.databases.ColorSetDbOpenHelper;
+import com.simplecity.amp_library.utils.LogUtils;
+import com.simplecity.amp_library.utils.SettingsManager;
+
+import static com.simplecity.amp_library.sql.databases.ColorSetDbOpenHelper.COLUMN_ACCENT_COLOR;
+import static com.simplecity.amp_library.sql.databases.ColorSetDbOpenHelper.COLUMN_KEY;
+import static com.simplecity.amp_library.sql.databases.ColorSetDbOpenHelper.COLUMN_PRIMARY_COLOR;
+import static com.simplecity.amp_library.sql.databases.ColorSetDbOpenHelper.TABLE_NAME;
+
+/**
+ * A persistent cache of the {@link ColorSet} extracted from each piece of artwork, so the palette only needs to be generated once.
+ * <p>
+ * Entries are keyed by {@link MultiFetcher#getArtworkId(ArtworkProvider)}, which changes when the user selects different artwork, and
+ * by {@link MultiFetcher#getArtworkSourceId(ArtworkProvider, SettingsManager)}, which changes when the artwork source preferences do.
+ * Only the primary & accent colors are stored on disk, since the text colors are cheap to derive from them.
+ */
+public final class ColorSetCache {
+
+    private static final String TAG = "ColorSetCache";
+
+    private static final int MEMORY_CACHE_SIZE = 100;
+
+    private static ColorSetCache instance;
+
+    @Nullable
+    private ColorSetDbOpenHelper dbOpenHelper;
+
+    @Nullable
+    private volatile SettingsManager settingsManager;
+
+    private final LruCache<String, ColorSet> memoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+
+    public static synchronized ColorSetCache getInstance() {
+        if (instance == null) {
+            instance = new ColorSetCache();
+        }
+        return instance;
+    }
+
+    private ColorSetCache() {
+    }
+
+    /**
+     * Enables persistence. Until this is called, color sets are only cached in memory.
+     */
+    public synchronized void init(@NonNull Context context) {
+        if (dbOpenHelper == null) {
+            dbOpenHelper = new ColorSetDbOpenHelper(context.getApplicationContext());
+            settingsManager = new SettingsManager(PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext()));
+        }
+    }
+
+    /**
+     * @return the {@link ColorSet} for the passed in artwork, if it's in the memory cache. Safe to call from the main thread.
+     */
+    @Nullable
+    public ColorSet getCached(@NonNull ArtworkProvider artworkProvider) {
+        return memoryCache.get(getKey(artworkProvider));
+    }
+
+    /**
+     * @return the {@link ColorSet} for the passed in artwork, from memory or disk, or null if it hasn't been computed yet.
+     */
+    @Nullable
+    @WorkerThread
+    public ColorSet get(@NonNull Context context, @NonNull ArtworkProvider artworkProvider) {
+        String key = getKey(artworkProvider);
+
+        ColorSet colorSet = memoryCache.get(key);
+        if (colorSet != null) {
+            return colorSet;
+        }
+
+        SQLiteDatabase database = getDatabase();
+        if (database == null) {
+            return null;
+        }
+
+        try (Cursor cursor = database.query(TABLE_NAME, new String[] { COLUMN_PRIMARY_COLOR, COLUMN_ACCENT_COLOR }, COLUMN_KEY + "=?", new String[] { key }, null, null, null)) {
+            if (cursor.moveToFirst()) {
+                colorSet = ColorSet.Companion.fromPrimaryAccentColors(context, cursor.getInt(0), cursor.getInt(1));
+                memoryCache.put(key, colorSet);
+            }
+        } catch (SQLiteException e) {
+            LogUtils.logException(TAG, "Failed to query color set", e);
+        }
+        return colorSet;
+    }
+
+    @WorkerThread
+    public void put(@NonNull ArtworkProvider artworkProvider, @NonNull ColorSet colorSet) {
+        String key = getKey(artworkProvider);
+        memoryCache.put(key, colorSet);
+
+        SQLiteDatabase database = getDatabase();
+        if (database != null) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_KEY, key);
+            values.put(COLUMN_PRIMARY_COLOR, colorSet.getPrimaryColor());
+            values.put(COLUMN_ACCENT_COLOR, colorSet.getAccentColor());
+            try {
+                database.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            } catch (SQLiteException e) {
+                LogUtils.logException(TAG, "Failed to write color set", e);
+            }
+        }
+    }
+
+    /**
+     * Forgets all color sets. Called when the artwork cache is cleared.
+     */
+    @WorkerThread
+    public void clear() {
+        memoryCache.evictAll();
+
+        SQLiteDatabase database = getDatabase();
+        if (database != null) {
+            try {
+                database.delete(TABLE_NAME, null, null);
+            } catch (SQLiteException e) {
+                LogUtils.logException(TAG, "Failed to clear color sets", e);
+            }
+        }
+    }
+
+    private String getKey(ArtworkProvider artworkProvider) {
+        String key = MultiFetcher.getArtworkId(artworkProvider);
+        SettingsManager settingsManager = this.settingsManager;
+        return settingsManager != null ? key + "_" + MultiFetcher.getArtworkSourceId(artworkProvider, settingsManager) : key;
+    }
+
+    @Nullable
+    private synchronized SQLiteDatabase getDatabase() {
+        if (dbOpenHelper == null) {
+            return null;
+        }
+        try {
+            return dbOpenHelper.getWritableDatabase();
+        } catch (SQLiteException e) {
+            LogUtils.logException(TAG, "Failed to open color set cache", e);
+            return null;
+        }
+    }
+}
@@ -2,26 +2,45 @@ package com.simplecity.amp_library.glide.palette;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
 import com.bumptech.glide.load.engine.Resource;
 import com.bumptech.glide.load.resource.transcode.ResourceTranscoder;
+import com.simplecity.amp_library.model.ArtworkProvider;
 
 public class ColorSetTranscoder implements ResourceTranscoder<Bitmap, ColorSet> {
 
     private Context context;
 
+    // If set, the computed ColorSet is looked up in & stored to the ColorSetCache for this artwork
+    @Nullable
+    private ArtworkProvider artworkProvider;
+
     public ColorSetTranscoder(Context context) {
+        this(context, null);
+    }
+
+    public ColorSetTranscoder(Context context, @Nullable ArtworkProvider artworkProvider) {
         this.context = context;
+        this.artworkProvider = artworkProvider;
     }
 
     @Override
     public Resource<ColorSet> transcode(Resource<Bitmap> toTranscode) {
-        Bitmap bitmap = toTranscode.get();
+        if (artworkProvider == null) {
+            return new ColorSetResource(ColorSet.Companion.fromBitmap(context, toTranscode.get()));
+        }
 
-        return new ColorSetResource(ColorSet.Companion.fromBitmap(context, bitmap));
+        ColorSetCache colorSetCache = ColorSetCache.getInstance();
+        ColorSet colorSet = colorSetCache.get(context, artworkProvider);
+        if (colorSet == null) {
+            colorSet = ColorSet.Companion.fromBitmap(context, toTranscode.get());
+            colorSetCache.put(artworkProvider, colorSet);
+        }
+        return new ColorSetResource(colorSet);
     }
 
     @Override
     public String getId() {
         return ColorSetTranscoder.class.getName();
     }
-}
\ No newline at end of file
+}
@@ -4,30 +4,52 @@ import android.util.Log;
 import fi.iki.elonen.NanoHTTPD;
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+/**
+ * Serves the current audio file (and artwork) to cast receivers.
+ * <p>
+ * Each request gets its own read-only {@link FileChannel}, read from with positional reads, so concurrent (and multi-) range requests
+ * from one or more receivers don't share any stream state.
+ */
 public class HttpServer {
 
     private static final String TAG = "HttpServer";
 
+    private static final int MAX_TRACKS = 4;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
     private static HttpServer sHttpServer;
 
     private NanoServer server;
 
-    private String audioFileToServe;
-    private byte[] imageBytesToServe;
+    private volatile String audioFileToServe;
+    private volatile byte[] imageBytesToServe;
 
-    private FileInputStream audioInputStream;
-    private ByteArrayInputStream imageInputStream;
+    // Audio files & artwork which may be requested by id (e.g. the current & next tracks), most recently served last
+    private final Map<String, String> audioFilesById = createTrackMap();
+    private final Map<String, byte[]> imageBytesById = createTrackMap();
 
     private boolean isStarted = false;
 
     private final String TEXT_HTML = "text/html";
     private final String TEXT_PLAIN = "text/plain";
-    private final String OCTET_STREAM = "application/octet-stream"
+    private final String OCTET_STREAM = "application/octet-stream";
 
     public static HttpServer getInstance() {
         if (sHttpServer == null) {
@@ -46,12 +68,38 @@ public class HttpServer {
         }
     }
 
+    /**
+     * Makes the passed in audio file available at /audio/{id}, alongside any previously served files.
+     */
+    public void serveAudio(long id, String audioUri) {
+        if (audioUri != null) {
+            audioFilesById.put(String.valueOf(id), audioUri);
+            audioFileToServe = audioUri;
+        }
+    }
+
     public void serveImage(byte[] imageBytes) {
         if (imageBytes != null) {
             imageBytesToServe = imageBytes;
         }
     }
 
+    /**
+     * Makes the passed in artwork available at /image/{id}, alongside any previously served artwork.
+     */
+    public void serveImage(long id, byte[] imageBytes) {
+        if (imageBytes != null) {
+            imageBytesById.put(String.valueOf(id), imageBytes);
+        }
+    }
+
+    /**
+     * @return true if artwork has already been served for the passed in id.
+     */
+    public boolean hasImage(long id) {
+        return imageBytesById.containsKey(String.valueOf(id));
+    }
+
     public void clearImage() {
         imageBytesToServe = null;
     }
@@ -71,11 +119,20 @@ public class HttpServer {
         if (isStarted) {
             server.stop();
             isStarted = false;
-            cleanupAudioStream();
-            cleanupImageStream();
+            audioFilesById.clear();
+            imageBytesById.clear();
         }
     }
 
+    private static <V> Map<String, V> createTrackMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_TRACKS;
+            }
+        });
+    }
+
     private class NanoServer extends NanoHTTPD {
 
         NanoServer() {
@@ -85,98 +142,241 @@ public class HttpServer {
         @Override
         public Response serve(IHTTPSession session) {
 
-            if (audioFileToServe == null) {
-                Log.e(TAG, "Audio file to serve null");
-                return newFixedLengthResponse(Response.Status.NOT_FOUND, TEXT_HTML, "File not found");
-            }
-
             String uri = session.getUri();
             if (uri.contains("audio")) {
+                String audioFile = audioFilesById.get(uri.substring(uri.lastIndexOf('/') + 1));
+                if (audioFile == null) {
+                    audioFile = audioFileToServe;
+                }
+                if (audioFile == null) {
+                    Log.e(TAG, "Audio file to serve null");
+                    return newFixedLengthResponse(Response.Status.NOT_FOUND, TEXT_HTML, "File not found");
+                }
                 try {
-                    File file = new File(audioFileToServe);
-
-                    Map<String, String> headers = session.getHeaders();
-                    String range = null;
-                    for (String key : headers.keySet()) {
-                        if ("range".equals(key)) {
-                            range = headers.get(key);
-                        }
-                    }
-
-                    if (range == null) {
-                        range = "bytes=0-";
-                        session.getHeaders().put("range", range);
-                    }
-
-                    long start;
-                    long end;
-                    long fileLength = file.length();
-
-                    String rangeValue = range.trim().substring("bytes=".length());
-
-                    if (rangeValue.startsWith("-")) {
-                        end = fileLength - 1;
-                        start = fileLength - 1 - Long.parseLong(rangeValue.substring("-".length()));
-                    } else {
-                        String[] ranges = rangeValue.split("-");
-                        start = Long.parseLong(ranges[0]);
-                        end = ranges.length > 1 ? Long.parseLong(ranges[1]) : fileLength - 1;
-                    }
-                    if (end > fileLength - 1) {
-                        end = fileLength - 1;
-                    }
-
-                    if (start <= end) {
-                        long contentLength = end - start + 1;
-                        cleanupAudioStream();
-                        audioInputStream = new FileInputStream(file);
-                        audioInputStream.skip(start);
-                        Response response = newFixedLengthResponse(Response.Status.PARTIAL_CONTENT, getMimeType(audioFileToServe), audioInputStream, contentLength);
-                        response.addHeader("Content-Length", contentLength + "");
-                        response.addHeader("Content-Range", "bytes " + start + "-" + end + "/" + fileLength);
-                        response.addHeader("Content-Type", getMimeType(audioFileToServe));
-                        return response;
-                    } else {
-                        return newFixedLengthResponse(Response.Status.RANGE_NOT_SATISFIABLE, TEXT_HTML, range);
-                    }
+                    return serveAudio(session, audioFile);
                 } catch (IOException e) {
                     Log.e(TAG, "Error serving audio: " + e.getMessage());
-                    e.printStackTrace();
+                    return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, TEXT_HTML, "Error serving audio");
                 }
             } else if (uri.contains("image")) {
-                if (imageBytesToServe == null) {
+                byte[] imageBytes = imageBytesById.get(uri.substring(uri.lastIndexOf('/') + 1));
+                if (imageBytes == null) {
+                    imageBytes = imageBytesToServe;
+                }
+                if (imageBytes == null) {
                     return newFixedLengthResponse(Response.Status.NOT_FOUND, TEXT_HTML, "Image bytes null");
                 }
-                cleanupImageStream();
-                imageInputStream = new ByteArrayInputStream(imageBytesToServe);
-                Log.i(TAG, "Serving image bytes: " + imageBytesToServe.length);
-                return newFixedLengthResponse(Response.Status.OK, "image/png", imageInputStream, imageBytesToServe.length);
+                Log.i(TAG, "Serving image bytes: " + imageBytes.length);
+                if (session.getMethod() == Method.HEAD) {
+                    return headResponse(Response.Status.OK, "image/png", imageBytes.length);
+                }
+                return newFixedLengthResponse(Response.Status.OK, "image/png", new ByteArrayInputStream(imageBytes), imageBytes.length);
             }
             Log.e(TAG, "Returning NOT_FOUND response");
             return newFixedLengthResponse(Response.Status.NOT_FOUND, TEXT_HTML, "File not found");
         }
+
+        private Response serveAudio(IHTTPSession session, String audioFile) throws IOException {
+            File file = new File(audioFile);
+            if (!file.canRead()) {
+                return newFixedLengthResponse(Response.Status.NOT_FOUND, TEXT_HTML, "File not found");
+            }
+
+            String mimeType = getMimeType(audioFile);
+            long fileLength = file.length();
+
+            String range = session.getHeaders().get("range");
+            if (range == null) {
+                range = "bytes=0-";
+            }
+
+            List<long[]> ranges = parseRanges(range, fileLength);
+            if (ranges == null) {
+                Response response = newFixedLengthResponse(Response.Status.RANGE_NOT_SATISFIABLE, TEXT_HTML, range);
+                response.addHeader("Content-Range", "bytes */" + fileLength);
+                return response;
+            }
+
+            boolean isHead = session.getMethod() == Method.HEAD;
+
+            if (ranges.size() == 1) {
+                long start = ranges.get(0)[0];
+                long end = ranges.get(0)[1];
+                long contentLength = end - start + 1;
+
+                Response response = isHead
+                        ? headResponse(Response.Status.PARTIAL_CONTENT, mimeType, contentLength)
+                        : newFixedLengthResponse(Response.Status.PARTIAL_CONTENT, mimeType, openRegion(file, start, end), contentLength);
+                response.addHeader("Content-Length", contentLength + "");
+                response.addHeader("Content-Range", "bytes " + start + "-" + end + "/" + fileLength);
+                response.addHeader("Content-Type", mimeType);
+                response.addHeader("Accept-Ranges", "bytes");
+                return response;
+            }
+
+            // Multiple ranges are served as multipart/byteranges, all parts reading from a single channel.
+            String boundary = UUID.randomUUID().toString();
+            List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+            long contentLength = 0;
+            for (long[] byteRange : ranges) {
+                byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                        + (mimeType != null ? "Content-Type: " + mimeType + "\r\n" : "")
+                        + "Content-Range: bytes " + byteRange[0] + "-" + byteRange[1] + "/" + fileLength + "\r\n\r\n").getBytes(ASCII);
+                partHeaders.add(partHeader);
+                contentLength += partHeader.length + byteRange[1] - byteRange[0] + 1;
+            }
+            byte[] closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(ASCII);
+            contentLength += closingBoundary.length;
+
+            String contentType = "multipart/byteranges; boundary=" + boundary;
+
+            Response response;
+            if (isHead) {
+                response = headResponse(Response.Status.PARTIAL_CONTENT, contentType, contentLength);
+            } else {
+                final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+                List<InputStream> parts = new ArrayList<>(ranges.size() * 2 + 1);
+                for (int i = 0; i < ranges.size(); i++) {
+                    parts.add(new ByteArrayInputStream(partHeaders.get(i)));
+                    parts.add(new FileRegionInputStream(channel, ranges.get(i)[0], ranges.get(i)[1] + 1));
+                }
+                parts.add(new ByteArrayInputStream(closingBoundary));
+
+                InputStream body = new FilterInputStream(new SequenceInputStream(Collections.enumeration(parts))) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            channel.close();
+                        }
+                    }
+                };
+                response = newFixedLengthResponse(Response.Status.PARTIAL_CONTENT, contentType, body, contentLength);
+            }
+            response.addHeader("Content-Length", contentLength + "");
+            response.addHeader("Accept-Ranges", "bytes");
+            return response;
+        }
+
+        /**
+         * A response with the headers of a body of the passed in length, but no body.
+         */
+        private Response headResponse(Response.Status status, String mimeType, long contentLength) {
+            Response response = newFixedLengthResponse(status, mimeType, new ByteArrayInputStream(new byte[0]), 0);
+            response.addHeader("Content-Length", contentLength + "");
+            return response;
+        }
     }
 
-    void cleanupAudioStream() {
-        if (audioInputStream != null) {
+    /**
+     * Parses the passed in 'Range' header value.
+     *
+     * @return the satisfiable [start, end] (inclusive) byte ranges, or null if none of the ranges are satisfiable.
+     */
+    static List<long[]> parseRanges(String range, long fileLength) {
+        String value = range.trim();
+        if (!value.startsWith("bytes=")) {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<>();
+        for (String rangeSpec : value.substring("bytes=".length()).split(",")) {
+            rangeSpec = rangeSpec.trim();
+            int dash = rangeSpec.indexOf('-');
+            if (dash == -1) {
+                continue;
+            }
+            long start;
+            long end;
             try {
-                audioInputStream.close();
-            } catch (IOException ignored) {
+                if (dash == 0) {
+                    // Suffix range: the last n bytes
+                    long suffixLength = Long.parseLong(rangeSpec.substring(1));
+                    if (suffixLength <= 0) {
+                        continue;
+                    }
+                    start = Math.max(fileLength - suffixLength, 0);
+                    end = fileLength - 1;
+                } else {
+                    start = Long.parseLong(rangeSpec.substring(0, dash));
+                    end = dash < rangeSpec.length() - 1 ? Long.parseLong(rangeSpec.substring(dash + 1)) : fileLength - 1;
+                }
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (end > fileLength - 1) {
+                end = fileLength - 1;
+            }
+            if (start <= end) {
+                ranges.add(new long[] { start, end });
             }
         }
+        return ranges.isEmpty() ? null : ranges;
     }
 
-    void cleanupImageStream() {
-        if (imageInputStream != null) {
-            try {
-                imageInputStream.close();
-            } catch (IOException ignored) {
-                throw new IOException;
+    /**
+     * @return a stream over the [start, end] (inclusive) bytes of the passed in file, which closes the file when closed.
+     */
+    static InputStream openRegion(File file, long start, long end) throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        return new FileRegionInputStream(channel, start, end + 1) {
+            @Override
+            public void close() throws IOException {
+                channel.close();
             }
+        };
+    }
+
+    /**
+     * Reads a region of a {@link FileChannel} via positional reads, so the channel's position is never modified, and it can be shared
+     * between several streams. Closing this stream doesn't close the channel.
+     */
+    private static class FileRegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        FileRegionInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            return read(bytes, 0, 1) == -1 ? -1 : bytes[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (read <= 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(Math.min(n, end - position), 0);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
         }
     }
 
-    private final Map<String, String> MIME_TYPES = new Map<String, String>() {{
+    private final Map<String, String> MIME_TYPES = new HashMap<String, String>() {{
         put("css", "text/css");
         put("htm", TEXT_HTML);
         put("html", TEXT_HTML);
@@ -208,4 +408,4 @@ public class HttpServer {
     String getMimeType(String filePath) {
         return MIME_TYPES.get(filePath.substring(filePath.lastIndexOf(".") + 1));
     }
-}
\ No newline at end of file
+}
@@ -8,6 +8,7 @@ import com.simplecity.amp_library.utils.ArtworkUtils;
 import com.simplecity.amp_library.utils.ComparisonUtils;
 import com.simplecity.amp_library.utils.StringUtils;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URLEncoder;
@@ -52,8 +53,7 @@ public class Album implements
         this.paths = paths;
         this.songPlayCount = songPlayCount;
 
-        //Populate the artwork key & sort key properties if null.
-        setSortKey();
+        //Populate the artwork key property if null. The sort key is computed lazily, since most lists are never sorted by it.
         setArtworkKey();
     }
 
@@ -222,12 +222,12 @@ public class Album implements
 
     @Nullable
     @Override
-    public InputStream getFolderArtwork() {
+    public InputStream getFolderArtwork() throws IOException {
         return ArtworkUtils.getFolderArtwork(getArtworkPath());
     }
 
     @Override
-    public InputStream getTagArtwork() {
+    public InputStream getTagArtwork() throws IOException {
         return ArtworkUtils.getTagArtwork(getArtworkPath());
     }
 
@@ -238,7 +238,8 @@ public class Album implements
 
     @Nullable
     @WorkerThread
-    private String getArtworkPath() {
+    @Override
+    public String getArtworkPath() {
         if (paths != null && !paths.isEmpty()) {
             return paths.get(0);
         }
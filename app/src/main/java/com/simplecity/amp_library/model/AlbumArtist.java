@@ -157,6 +157,12 @@ public class AlbumArtist implements
         return Collections.emptyList();
     }
 
+    @Nullable
+    @Override
+    public String getArtworkPath() {
+        return null;
+    }
+
     @Override
     public int compareTo(@NonNull AlbumArtist albumArtist) {
         return ComparisonUtils.compare(getSortKey(), albumArtist.getSortKey());
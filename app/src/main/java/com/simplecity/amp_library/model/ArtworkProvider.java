@@ -4,6 +4,7 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 
@@ -26,11 +27,17 @@ public interface ArtworkProvider {
     InputStream getMediaStoreArtwork(Context context);
 
     @Nullable
-    InputStream getFolderArtwork();
+    InputStream getFolderArtwork() throws IOException;
 
     @Nullable
-    InputStream getTagArtwork();
+    InputStream getTagArtwork() throws IOException;
 
     @Nullable
     List<File> getFolderArtworkFiles();
+
+    /**
+     * @return the path of the file whose tags and folder are searched for artwork, or null if there is no such file.
+     */
+    @Nullable
+    String getArtworkPath();
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.simplecity.amp_library.model;
 
 import android.content.Context;
+import android.support.annotation.Nullable;
 import com.simplecity.amp_library.interfaces.FileType;
 import com.simplecity.amp_library.utils.FileHelper;
 import com.simplecity.amp_library.utils.StringUtils;
@@ -9,6 +10,10 @@ public class FileObject extends BaseFileObject {
 
     public String extension;
 
+    /**
+     * Null until the tags have been loaded.
+     */
+    @Nullable
     public TagInfo tagInfo;
 
     private long duration = 0;
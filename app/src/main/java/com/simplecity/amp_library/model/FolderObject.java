@@ -7,6 +7,11 @@ public class FolderObject extends BaseFileObject {
     public int fileCount;
     public int folderCount;
 
+    /**
+     * False if {@link #fileCount} & {@link #folderCount} haven't been loaded yet.
+     */
+    public boolean hasCounts;
+
     public FolderObject() {
         this.fileType = FileType.FOLDER;
     }
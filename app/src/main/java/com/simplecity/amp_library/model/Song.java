@@ -18,6 +18,7 @@ import com.simplecity.amp_library.utils.FileHelper;
 import com.simplecity.amp_library.utils.StringUtils;
 import io.reactivex.Single;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
@@ -42,6 +43,7 @@ public class Song implements
     public long duration;
     public int year;
     public int dateAdded;
+    public long dateModified;
     public long playlistSongId;
     public long playlistSongPlayOrder;
     public int playCount;
@@ -83,6 +85,7 @@ public class Song implements
                 MediaStore.Audio.Media.YEAR,
                 MediaStore.Audio.Media.TRACK,
                 MediaStore.Audio.Media.DATE_ADDED,
+                MediaStore.Audio.Media.DATE_MODIFIED,
                 MediaStore.Audio.Media.IS_PODCAST,
                 MediaStore.Audio.Media.BOOKMARK,
                 "album_artist"
@@ -126,6 +129,8 @@ public class Song implements
 
         dateAdded = cursor.getInt(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_ADDED));
 
+        dateModified = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED));
+
         path = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA));
 
         albumArtistName = artistName;
@@ -140,8 +145,7 @@ public class Song implements
 
         bookMark = cursor.getLong(cursor.getColumnIndex(MediaStore.Audio.Media.BOOKMARK));
 
-        //Populate the artwork key & sort key properties if null.
-        setSortKey();
+        //Populate the artwork key property if null. The sort key is computed lazily, since most lists are never sorted by it.
         setArtworkKey();
     }
 
@@ -149,6 +153,76 @@ public class Song implements
 
     }
 
+    /**
+     * @return true if this song was built from the same row as the passed in cursor's current position, and none of the columns which can
+     * change without the file being modified (bookmark, podcast flag, album artist, path) differ.
+     */
+    public boolean isUpToDate(Cursor cursor) {
+        if (dateModified != cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED))
+                || bookMark != cursor.getLong(cursor.getColumnIndex(MediaStore.Audio.Media.BOOKMARK))
+                || isPodcast != (cursor.getInt(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.IS_PODCAST)) == 1)
+                || !TextUtils.equals(path, cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA)))) {
+            return false;
+        }
+
+        String albumArtist = null;
+        int albumArtistIndex = cursor.getColumnIndex("album_artist");
+        if (albumArtistIndex != -1) {
+            albumArtist = cursor.getString(albumArtistIndex);
+        }
+        if (albumArtist == null) {
+            albumArtist = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST));
+        }
+        return TextUtils.equals(albumArtistName, albumArtist);
+    }
+
+    private Song(Song song) {
+        id = song.id;
+        name = song.name;
+        artistName = song.artistName;
+        artistId = song.artistId;
+        albumName = song.albumName;
+        albumId = song.albumId;
+        duration = song.duration;
+        year = song.year;
+        dateAdded = song.dateAdded;
+        dateModified = song.dateModified;
+        playlistSongId = song.playlistSongId;
+        playlistSongPlayOrder = song.playlistSongPlayOrder;
+        playCount = song.playCount;
+        lastPlayed = song.lastPlayed;
+        startTime = song.startTime;
+        elapsedTime = song.elapsedTime;
+        isPaused = song.isPaused;
+        track = song.track;
+        discNumber = song.discNumber;
+        isPodcast = song.isPodcast;
+        path = song.path;
+        bookMark = song.bookMark;
+        albumArtistName = song.albumArtistName;
+        tagInfo = song.tagInfo;
+        durationLabel = song.durationLabel;
+        bitrateLabel = song.bitrateLabel;
+        sampleRateLabel = song.sampleRateLabel;
+        formatLabel = song.formatLabel;
+        trackNumberLabel = song.trackNumberLabel;
+        discNumberLabel = song.discNumberLabel;
+        fileSizeLabel = song.fileSizeLabel;
+        artworkKey = song.artworkKey;
+        sortKey = song.sortKey;
+    }
+
+    /**
+     * @return a copy of this song with the passed in play count & last played time. Songs are shared between repository emissions, so
+     * values which only apply to a particular query are set on a copy.
+     */
+    public Song withPlayCount(int playCount, long lastPlayed) {
+        Song song = new Song(this);
+        song.playCount = playCount;
+        song.lastPlayed = lastPlayed;
+        return song;
+    }
+
     public Single<Genre> getGenre(Context context) {
         Query query = Genre.getQuery();
         query.uri = MediaStore.Audio.Genres.getContentUriForAudioId("external", (int) id);
@@ -210,7 +284,7 @@ public class Song implements
      *
      * @return the elapsed time of this track (in millis)
      */
-    private long getElapsedTime() {
+    public long getElapsedTime() {
         if (isPaused) {
             return elapsedTime;
         } else {
@@ -373,12 +447,12 @@ public class Song implements
     }
 
     @Override
-    public InputStream getFolderArtwork() {
+    public InputStream getFolderArtwork() throws IOException {
         return ArtworkUtils.getFolderArtwork(path);
     }
 
     @Override
-    public InputStream getTagArtwork() {
+    public InputStream getTagArtwork() throws IOException {
         return ArtworkUtils.getTagArtwork(path);
     }
 
@@ -387,6 +461,11 @@ public class Song implements
         return ArtworkUtils.getAllFolderArtwork(path);
     }
 
+    @Override
+    public String getArtworkPath() {
+        return path;
+    }
+
     @Override
     public String toString() {
         return "\nSong{" +
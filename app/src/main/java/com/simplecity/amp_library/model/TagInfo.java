@@ -2,18 +2,8 @@ package com.simplecity.amp_library.model;
 
 import android.text.TextUtils;
 import com.simplecity.amp_library.utils.StringUtils;
-import java.io.File;
-import java.io.IOException;
+import com.simplecity.amp_library.utils.TagCache;
 import java.io.Serializable;
-import org.jaudiotagger.audio.AudioFile;
-import org.jaudiotagger.audio.AudioFileIO;
-import org.jaudiotagger.audio.AudioHeader;
-import org.jaudiotagger.audio.exceptions.CannotReadException;
-import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
-import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
-import org.jaudiotagger.tag.FieldKey;
-import org.jaudiotagger.tag.Tag;
-import org.jaudiotagger.tag.TagException;
 
 /**
  * A holder for various id3 tag information associated with a file.
@@ -34,76 +24,24 @@ public class TagInfo implements Serializable {
     public String genre;
 
     public TagInfo(String filePath) {
-        if (filePath != null) {
-            File file = new File(filePath);
-            if (file.exists()) {
-                try {
-                    AudioFile audioFile = AudioFileIO.read(file);
-                    this.artistName = getTag(audioFile, FieldKey.ARTIST);
-                    this.albumArtistName = getTag(audioFile, FieldKey.ALBUM_ARTIST);
-                    this.albumName = getTag(audioFile, FieldKey.ALBUM);
-                    this.trackName = getTag(audioFile, FieldKey.TITLE);
-                    this.trackNumber = StringUtils.parseInt(getTag(audioFile, FieldKey.TRACK));
-                    this.trackTotal = StringUtils.parseInt(getTag(audioFile, FieldKey.TRACK_TOTAL));
-                    this.discNumber = StringUtils.parseInt(getTag(audioFile, FieldKey.DISC_NO));
-                    this.discTotal = StringUtils.parseInt(getTag(audioFile, FieldKey.DISC_TOTAL));
-                    this.bitrate = getBitrate(audioFile);
-                    this.format = getFormat(audioFile);
-                    this.sampleRate = getSampleRate(audioFile);
-                    this.genre = getTag(audioFile, FieldKey.GENRE);
-                } catch (CannotReadException | IOException | TagException | ReadOnlyFileException | InvalidAudioFrameException e) {
-                    e.printStackTrace();
-                }
-            }
+        TagCache.Entry entry = TagCache.getInstance().get(filePath);
+        if (entry != null && entry.readable) {
+            this.artistName = orUnknown(entry.artist);
+            this.albumArtistName = orUnknown(entry.albumArtist);
+            this.albumName = orUnknown(entry.album);
+            this.trackName = orUnknown(entry.title);
+            this.trackNumber = StringUtils.parseInt(entry.track);
+            this.trackTotal = StringUtils.parseInt(entry.trackTotal);
+            this.discNumber = StringUtils.parseInt(entry.disc);
+            this.discTotal = StringUtils.parseInt(entry.discTotal);
+            this.bitrate = orUnknown(entry.bitrate);
+            this.format = orUnknown(entry.format);
+            this.sampleRate = entry.sampleRate;
+            this.genre = orUnknown(entry.genre);
         }
     }
 
-    public String getTag(AudioFile audioFile, FieldKey key) {
-        try {
-            if (audioFile != null) {
-                Tag tag = audioFile.getTag();
-                if (tag != null) {
-                    String result = tag.getFirst(key);
-                    if (!TextUtils.isEmpty(result)) {
-                        return result;
-                    }
-                }
-            }
-        } catch (UnsupportedOperationException ignored) {
-        }
-        return "Unknown";
-    }
-
-    public static String getBitrate(AudioFile audioFile) {
-        try {
-            if (audioFile != null) {
-                AudioHeader audioHeader = audioFile.getAudioHeader();
-                return audioHeader.getBitRate();
-            }
-        } catch (UnsupportedOperationException ignored) {
-        }
-        return "Unknown";
-    }
-
-    public static String getFormat(AudioFile audioFile) {
-        try {
-            if (audioFile != null) {
-                AudioHeader audioHeader = audioFile.getAudioHeader();
-                return audioHeader.getFormat();
-            }
-        } catch (UnsupportedOperationException ignored) {
-        }
-        return "Unknown";
-    }
-
-    public static int getSampleRate(AudioFile audioFile) {
-        try {
-            if (audioFile != null) {
-                AudioHeader audioHeader = audioFile.getAudioHeader();
-                return audioHeader.getSampleRateAsNumber();
-            }
-        } catch (UnsupportedOperationException ignored) {
-        }
-        return -1;
+    private static String orUnknown(String value) {
+        return TextUtils.isEmpty(value) ? "Unknown" : value;
     }
-}
\ No newline at end of file
+}
@@ -13,6 +13,7 @@ import com.bumptech.glide.request.target.SimpleTarget
 import com.google.android.gms.cast.MediaInfo
 import com.google.android.gms.cast.MediaLoadOptions
 import com.google.android.gms.cast.MediaMetadata
+import com.google.android.gms.cast.MediaQueueItem
 import com.google.android.gms.cast.MediaStatus
 import com.google.android.gms.cast.framework.CastSession
 import com.google.android.gms.cast.framework.media.RemoteMediaClient
@@ -41,6 +42,18 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
 
     private var currentSong: Song? = null
 
+    // The song to play after the current song. It's queued on the receiver once there's a media session to queue it on.
+    private var pendingNextSong: Song? = null
+
+    // The pending next song while its artwork is being served, before it's queued
+    private var queueingSong: Song? = null
+
+    // The song queued on the receiver to play after the current song, if any
+    private var nextSong: Song? = null
+
+    // The receiver's id for the current queue item
+    private var currentItemId = MediaQueueItem.INVALID_ITEM_ID
+
     private var playerState: Int? = MediaStatus.PLAYER_STATE_UNKNOWN;
 
     // remoteMediaClient.isPlaying() returns true momentarily after it is paused, so we use this to track whether
@@ -83,22 +96,16 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
     override fun load(song: Song, playWhenReady: Boolean, seekPosition: Long, completion: ((Boolean) -> Unit)?) {
 
         HttpServer.getInstance().start()
-        HttpServer.getInstance().serveAudio(song.path)
+        HttpServer.getInstance().serveAudio(song.id, song.path)
         HttpServer.getInstance().clearImage()
 
-        val metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_MUSIC_TRACK)
-        metadata.putString(MediaMetadata.KEY_ALBUM_ARTIST, song.albumArtistName)
-        metadata.putString(MediaMetadata.KEY_ALBUM_TITLE, song.albumName)
-        metadata.putString(MediaMetadata.KEY_TITLE, song.name)
-        metadata.addImage(WebImage(Uri.parse("http://" + ShuttleUtils.getIpAddr(applicationContext) + ":5000" + "/image/" + song.id)))
-
-        val mediaInfo = MediaInfo.Builder("http://" + ShuttleUtils.getIpAddr(applicationContext) + ":5000" + "/audio/" + song.id)
-            .setStreamType(MediaInfo.STREAM_TYPE_BUFFERED)
-            .setContentType("audio/*")
-            .setMetadata(metadata)
-            .build()
+        val mediaInfo = createMediaInfo(song)
 
         currentSong = song
+        pendingNextSong = null
+        queueingSong = null
+        nextSong = null
+        currentItemId = MediaQueueItem.INVALID_ITEM_ID
         currentPosition = seekPosition
 
         fun performLoad() {
@@ -120,14 +127,45 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
             completion?.invoke(true)
         }
 
+        loadArtwork(song) { performLoad() }
+    }
+
+    private fun audioUrl(song: Song): String {
+        return "http://" + ShuttleUtils.getIpAddr(applicationContext) + ":5000" + "/audio/" + song.id
+    }
+
+    private fun createMediaInfo(song: Song): MediaInfo {
+        val metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_MUSIC_TRACK)
+        metadata.putString(MediaMetadata.KEY_ALBUM_ARTIST, song.albumArtistName)
+        metadata.putString(MediaMetadata.KEY_ALBUM_TITLE, song.albumName)
+        metadata.putString(MediaMetadata.KEY_TITLE, song.name)
+        metadata.addImage(WebImage(Uri.parse("http://" + ShuttleUtils.getIpAddr(applicationContext) + ":5000" + "/image/" + song.id)))
+
+        return MediaInfo.Builder(audioUrl(song))
+            .setStreamType(MediaInfo.STREAM_TYPE_BUFFERED)
+            .setContentType("audio/*")
+            .setMetadata(metadata)
+            .build()
+    }
+
+    /**
+     * Serves the artwork for the passed in song at /image/{id}, and then invokes onLoaded. Artwork which is already being served is
+     * reused.
+     */
+    private fun loadArtwork(song: Song, onLoaded: () -> Unit) {
+        if (HttpServer.getInstance().hasImage(song.id)) {
+            onLoaded()
+            return
+        }
+
         Glide.with(applicationContext).load(song)
             .asBitmap()
             .transcode(BitmapBytesTranscoder(), ByteArray::class.java)
             .placeholder(R.drawable.ic_placeholder_dark_large)
             .into(object : SimpleTarget<ByteArray>() {
                 override fun onResourceReady(resource: ByteArray, glideAnimation: GlideAnimation<in ByteArray>?) {
-                    HttpServer.getInstance().serveImage(resource)
-                    performLoad()
+                    HttpServer.getInstance().serveImage(song.id, resource)
+                    onLoaded()
                 }
 
                 @SuppressLint("CheckResult")
@@ -139,13 +177,13 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
                             val outputStream = ByteArrayOutputStream()
                             val bitmap = GlideUtils.drawableToBitmap(errorDrawable)
                             bitmap.compress(Bitmap.CompressFormat.JPEG, 80, outputStream)
-                            HttpServer.getInstance().serveImage(outputStream.toByteArray())
+                            HttpServer.getInstance().serveImage(song.id, outputStream.toByteArray())
                         }
                     }
                         .subscribeOn(Schedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe({
-                            performLoad()
+                            onLoaded()
                         }, { error -> LogUtils.logException(TAG, "Failed to load error drawable", error) })
                 }
             })
@@ -155,8 +193,94 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
         return false
     }
 
-    override fun setNextDataSource(path: String?) {
-        // Nothing to do
+    /**
+     * Publishes the next song on the [HttpServer], and queues it on the receiver after the current item, so the receiver can preload it
+     * and move straight on to it when the current item completes. If there's no media session yet, the song is queued from the status
+     * callback once there is.
+     */
+    override fun setNextDataSource(song: Song?) {
+        if (song?.id != nextSong?.id) {
+            removeQueuedItems()
+            nextSong = null
+        }
+
+        pendingNextSong = song
+        queuePendingNextSong()
+    }
+
+    private fun queuePendingNextSong() {
+        val song = pendingNextSong ?: return
+        if (song.id == nextSong?.id || song == queueingSong || !isInitialized || !remoteMediaClient.hasMediaSession()) {
+            return
+        }
+
+        queueingSong = song
+
+        HttpServer.getInstance().serveAudio(song.id, song.path)
+        // serveAudio(id, path) also makes this the default file. Restore the current song, in case of requests without an id.
+        currentSong?.let { currentSong -> HttpServer.getInstance().serveAudio(currentSong.id, currentSong.path) }
+
+        loadArtwork(song) {
+            if (queueingSong == song) {
+                queueingSong = null
+            }
+            // Only the song we've actually asked the receiver to queue counts as the next song
+            if (pendingNextSong == song && nextSong == null && remoteMediaClient.hasMediaSession()) {
+                val queueItem = MediaQueueItem.Builder(createMediaInfo(song))
+                    .setAutoplay(true)
+                    .setPreloadTime(PRELOAD_TIME_SECONDS)
+                    .build()
+                remoteMediaClient.queueAppendItem(queueItem, null)
+                nextSong = song
+            }
+        }
+    }
+
+    /**
+     * Removes any items queued on the receiver after the current item.
+     */
+    private fun removeQueuedItems() {
+        val mediaStatus = remoteMediaClient.mediaStatus ?: return
+        val itemIds = mediaStatus.queueItems
+            .map { queueItem -> queueItem.itemId }
+            .filter { itemId -> itemId != mediaStatus.currentItemId }
+        if (itemIds.isNotEmpty()) {
+            remoteMediaClient.queueRemoveItems(itemIds.toIntArray(), null)
+        }
+    }
+
+    private fun hasQueuedNextItem(): Boolean {
+        val mediaStatus = remoteMediaClient.mediaStatus ?: return false
+        val index = mediaStatus.getIndexById(mediaStatus.currentItemId) ?: return false
+        return nextSong != null && index < mediaStatus.queueItemCount - 1
+    }
+
+    /**
+     * @return true if the receiver has moved on to the queued [nextSong]. The next song becomes the current song.
+     */
+    private fun advanceToNextSong(): Boolean {
+        val mediaStatus = remoteMediaClient.mediaStatus ?: return false
+        val itemId = mediaStatus.currentItemId
+        if (itemId == MediaQueueItem.INVALID_ITEM_ID || itemId == currentItemId) {
+            return false
+        }
+
+        val previousItemId = currentItemId
+        currentItemId = itemId
+        if (previousItemId == MediaQueueItem.INVALID_ITEM_ID) {
+            return false
+        }
+
+        val nextSong = nextSong ?: return false
+        if (mediaStatus.getQueueItemById(itemId)?.media?.contentId != audioUrl(nextSong)) {
+            return false
+        }
+
+        currentSong = nextSong
+        this.nextSong = null
+        pendingNextSong = null
+        currentPosition = 0L
+        return true
     }
 
     override fun release() {
@@ -227,6 +351,13 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
     override val resumeWhenSwitched: Boolean = true
 
     private fun updatePlaybackState() {
+        if (advanceToNextSong()) {
+            Log.i(TAG, "Receiver moved to the next queue item, calling onTrackEnded")
+            callbacks?.onTrackEnded(this, true)
+        }
+
+        queuePendingNextSong()
+
         val playerState = remoteMediaClient.playerState
         if (playerState != this.playerState) {
             // Convert the remote playback states to media playback states.
@@ -234,7 +365,8 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
                 MediaStatus.PLAYER_STATE_IDLE -> {
                     val idleReason = remoteMediaClient.idleReason
                     Log.d(TAG, "onRemoteMediaPlayerStatusUpdated... IDLE, reason: $idleReason")
-                    if (idleReason == MediaStatus.IDLE_REASON_FINISHED) {
+                    // If the next song is queued on the receiver, it will move on to it by itself
+                    if (idleReason == MediaStatus.IDLE_REASON_FINISHED && !hasQueuedNextItem()) {
                         currentPosition = 0L
                         Log.i(TAG, "Calling onTrackEnded")
                         callbacks?.onTrackEnded(this, false)
@@ -258,6 +390,9 @@ class CastPlayback(context: Context, castSession: CastSession) : Playback {
 
     companion object {
         const val TAG = "CastPlayback"
+
+        // How long before the end of the current item the receiver should start loading the next one
+        private const val PRELOAD_TIME_SECONDS = 20.0
     }
 
     private inner class CastMediaClientCallback : RemoteMediaClient.Callback() {
@@ -9,6 +9,7 @@ import android.media.AudioAttributes
 import android.media.MediaPlayer
 import android.net.Uri
 import android.os.PowerManager
+import android.provider.MediaStore
 import android.text.TextUtils
 import android.util.Log
 import com.simplecity.amp_library.model.Song
@@ -86,7 +87,7 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
 
                     if (isInitialized) {
                         // Invalidate any old 'next data source', will be re-set via external call to setNextDataSource().
-                        setNextDataSource(null)
+                        setNextPath(null)
 
                         if (seekPosition != 0L) {
                             seekTo(seekPosition)
@@ -139,7 +140,11 @@ internal class MediaPlayerPlayback(context: Context) : LocalPlayback(context), M
         }
     }
 
-    override fun setNextDataSource(path: String?) {
+    override fun setNextDataSource(song: Song?) {
+        setNextPath(song?.let { MediaStore.Audio.Media.EXTERNAL_CONTENT_URI.toString() + "/" + song.id })
+    }
+
+    private fun setNextPath(path: String?) {
         synchronized(this) {
 
             try {
@@ -38,12 +38,10 @@ import com.simplecity.amp_library.ui.screens.queue.QueueItem;
 import com.simplecity.amp_library.utils.AnalyticsManager;
 import com.simplecity.amp_library.utils.LogUtils;
 import com.simplecity.amp_library.utils.SettingsManager;
-import com.simplecity.amp_library.utils.ShuttleUtils;
 import com.simplecity.amp_library.utils.playlists.FavoritesPlaylistManager;
 import dagger.android.AndroidInjection;
-import io.reactivex.Completable;
 import io.reactivex.disposables.CompositeDisposable;
-import io.reactivex.schedulers.Schedulers;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.List;
@@ -61,6 +59,8 @@ public class MusicService extends MediaBrowserServiceCompat {
 
     private static final String TAG = "MusicService";
 
+    private static final String QUEUE_FILE_NAME = "queue";
+
     private MusicServiceCallbacks musicServiceCallbacks = new MusicServiceCallbacks();
 
     private QueueManager queueManager;
@@ -77,6 +77,8 @@ public class MusicService extends MediaBrowserServiceCompat {
 
     private ScrobbleManager scrobbleManager;
 
+    private PlayEventLog playEventLog;
+
     private final IBinder binder = new LocalBinder(this);
 
     private BroadcastReceiver unmountReceiver = null;
@@ -140,7 +142,8 @@ public class MusicService extends MediaBrowserServiceCompat {
                 musicServiceCallbacks,
                 songsRepository,
                 playbackSettingsManager,
-                settingsManager
+                settingsManager,
+                new QueueStore(new File(getFilesDir(), QUEUE_FILE_NAME))
         );
 
         playbackManager = new PlaybackManager(
@@ -158,6 +161,8 @@ public class MusicService extends MediaBrowserServiceCompat {
 
         scrobbleManager = new ScrobbleManager(playbackSettingsManager);
 
+        playEventLog = new PlayEventLog(this);
+
         mPackageValidator = new PackageValidator(this);
 
         setSessionToken(playbackManager.getMediaSessionToken());
@@ -309,6 +314,7 @@ public class MusicService extends MediaBrowserServiceCompat {
         analyticsManager.dropBreadcrumb(TAG, "onDestroy()");
 
         saveState(true);
+        queueManager.destroy();
 
         //Shutdown the EQ
         Intent shutdownEqualizer = new Intent(MusicService.this, Equalizer.class);
@@ -1140,15 +1146,8 @@ public class MusicService extends MediaBrowserServiceCompat {
         //We're just about to change tracks, so 'current song' is the song that just finished
         Song finishedSong = queueManager.getCurrentSong();
         if (finishedSong != null) {
-            if (finishedSong.hasPlayed()) {
-                disposables.add(
-                        Completable.fromAction(() -> ShuttleUtils.incrementPlayCount(this, finishedSong))
-                                .subscribeOn(Schedulers.io())
-                                .subscribe(() -> {
-                                    // Nothing to do
-                                }, error -> LogUtils.logException(TAG, "Error incrementing play count", error))
-                );
-            }
+            // Only completed plays count towards the play count, but every track end is logged
+            playEventLog.log(finishedSong, finishedSong.getElapsedTime(), finishedSong.hasPlayed());
             scrobbleManager.scrobbleBroadcast(this, ScrobbleManager.ScrobbleStatus.COMPLETE, finishedSong);
         }
     }
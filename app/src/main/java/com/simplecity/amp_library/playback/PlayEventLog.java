@@ -0,0 +1,68 @@
+package com.simplecity.amp_library.playback;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.sql.providers.PlayCountTable;
+import com.simplecity.amp_library.utils.LogUtils;
+import io.reactivex.schedulers.Schedulers;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the end of each track to the play events log.
+ * <p>
+ * Each event is written as soon as it's logged, off the calling thread. The database runs in WAL mode, so a single insert is cheap, and
+ * nothing is held in memory where it could be lost if the process is killed.
+ * <p>
+ * Events older than {@link #RETENTION_MILLIS} are pruned when the log is created. The play counts they contributed to are kept.
+ */
+class PlayEventLog {
+
+    private static final String TAG = "PlayEventLog";
+
+    private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(90);
+
+    private final Context applicationContext;
+
+    PlayEventLog(@NonNull Context context) {
+        applicationContext = context.getApplicationContext();
+
+        Schedulers.io().scheduleDirect(this::prune);
+    }
+
+    /**
+     * Writes an event for the passed in song, which has just finished or been skipped.
+     */
+    void log(@NonNull Song song, long elapsedMillis, boolean completed) {
+        ContentValues values = new ContentValues();
+        values.put(PlayCountTable.COLUMN_EVENT_SONG_ID, song.id);
+        values.put(PlayCountTable.COLUMN_EVENT_TIME, System.currentTimeMillis());
+        values.put(PlayCountTable.COLUMN_EVENT_ELAPSED, elapsedMillis);
+        values.put(PlayCountTable.COLUMN_EVENT_COMPLETED, completed ? 1 : 0);
+
+        Schedulers.io().scheduleDirect(() -> write(values));
+    }
+
+    @WorkerThread
+    private void write(ContentValues values) {
+        try {
+            applicationContext.getContentResolver().insert(PlayCountTable.EVENTS_URI, values);
+        } catch (IllegalArgumentException | SQLiteException e) {
+            LogUtils.logException(TAG, "Failed to write play event", e);
+        }
+    }
+
+    @WorkerThread
+    private void prune() {
+        try {
+            applicationContext.getContentResolver().delete(PlayCountTable.EVENTS_URI,
+                    PlayCountTable.COLUMN_EVENT_TIME + "<?",
+                    new String[] { String.valueOf(System.currentTimeMillis() - RETENTION_MILLIS) });
+        } catch (IllegalArgumentException | SQLiteException e) {
+            LogUtils.logException(TAG, "Failed to prune play events", e);
+        }
+    }
+}
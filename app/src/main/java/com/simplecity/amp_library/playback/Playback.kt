@@ -22,7 +22,10 @@ interface Playback {
 
     fun willResumePlayback(): Boolean
 
-    fun setNextDataSource(path: String?)
+    /**
+     * Prepares the passed in song to be played once the current song completes, or clears the next song if null.
+     */
+    fun setNextDataSource(song: Song?)
 
     fun release()
 
@@ -182,7 +182,7 @@ public class PlaybackManager implements Playback.Callbacks {
                     .subscribeOn(Schedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(songs -> {
-                        queueManager.playlist = QueueItemKt.toQueueItems(songs);
+                        queueManager.playlist = new QueueList(QueueItemKt.toQueueItems(songs));
                         queueManager.queuePosition = -1;
                         queueManager.makeShuffleList();
                         queueManager.setShuffleMode(QueueManager.ShuffleMode.ON);
@@ -360,7 +360,7 @@ public class PlaybackManager implements Playback.Callbacks {
                 && !queueManager.getCurrentPlaylist().isEmpty()
                 && queueManager.nextPlayPos < queueManager.getCurrentPlaylist().size()) {
             final Song nextSong = queueManager.getCurrentPlaylist().get(queueManager.nextPlayPos).getSong();
-            playback.setNextDataSource(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI + "/" + nextSong.id);
+            playback.setNextDataSource(nextSong);
         } else {
             playback.setNextDataSource(null);
         }
@@ -30,6 +30,8 @@ class PlaybackSettingsManager @Inject constructor(sharedPreferences: SharedPrefe
         get() = getInt(KEY_SHUFFLE_MODE, QueueManager.ShuffleMode.OFF)
         set(shuffleMode) = setInt(KEY_SHUFFLE_MODE, shuffleMode)
 
+    // The queue lists are now persisted by QueueStore. These remain so that a previously saved queue can be migrated.
+
     private val KEY_QUEUE_LIST = "queue_list"
     var queueList: String?
         get() = getString(KEY_QUEUE_LIST, null)
@@ -0,0 +1,520 @@
+package com.simplecity.amp_library.playback;
+
+import android.support.annotation.NonNull;
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.ui.screens.queue.QueueItem;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A list of {@link QueueItem}s, backed by an implicit treap (a randomly balanced binary tree, ordered by position), so that positional
+ * access, insertion, removal & moves are O(log n) rather than O(n).
+ * <p>
+ * Items are also indexed by reference, so {@link #indexOf(Object)}, {@link #contains(Object)} & {@link #remove(Object)} are O(log n).
+ * A given QueueItem may only appear once in a QueueList. Items are also indexed by song, so occurrences only need to be recomputed for
+ * the songs affected by an edit (see {@link #updateOccurrence()}).
+ * <p>
+ * Not thread safe.
+ */
+final class QueueList extends AbstractList<QueueItem> {
+
+    private static final class Node {
+
+        QueueItem item;
+
+        final int priority;
+
+        Node left;
+        Node right;
+        Node parent;
+
+        int size = 1;
+
+        Node(QueueItem item, int priority) {
+            this.item = item;
+            this.priority = priority;
+        }
+    }
+
+    private Node root;
+
+    private final Map<QueueItem, Node> nodes = new IdentityHashMap<>();
+
+    private final Map<Song, Set<Node>> nodesBySong = new HashMap<>();
+
+    // Songs whose occurrences may have changed since the last call to updateOccurrence()
+    private final Set<Song> dirtySongs = new HashSet<>();
+
+    private boolean occurrencesValid;
+
+    private int seed = (int) System.nanoTime() | 1;
+
+    // The results of the last split()
+    private Node splitLeft;
+    private Node splitRight;
+
+    QueueList() {
+    }
+
+    QueueList(@NonNull Collection<QueueItem> queueItems) {
+        addAll(queueItems);
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public QueueItem get(int index) {
+        return nodeAt(index).item;
+    }
+
+    @Override
+    public QueueItem set(int index, QueueItem queueItem) {
+        Node node = nodeAt(index);
+        QueueItem previous = node.item;
+        if (previous == queueItem) {
+            return previous;
+        }
+        checkNotPresent(queueItem);
+
+        unindex(node);
+        node.item = queueItem;
+        index(node);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, QueueItem queueItem) {
+        addAll(index, Arrays.asList(queueItem));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends QueueItem> queueItems) {
+        return addAll(size(), queueItems);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends QueueItem> queueItems) {
+        checkPositionIndex(index);
+        if (queueItems.isEmpty()) {
+            return false;
+        }
+
+        // Validate everything up front, so a rejected batch leaves the list untouched
+        checkNotPresent(queueItems);
+
+        // Build the new items into a treap of their own (O(k)), and then merge it in at the passed in index (O(log n)).
+        ArrayDeque<Node> spine = new ArrayDeque<>();
+        for (QueueItem queueItem : queueItems) {
+            Node node = new Node(queueItem, nextPriority());
+            index(node);
+
+            Node last = null;
+            while (!spine.isEmpty() && spine.peekLast().priority < node.priority) {
+                last = spine.removeLast();
+            }
+            node.left = last;
+            if (!spine.isEmpty()) {
+                spine.peekLast().right = node;
+            }
+            spine.addLast(node);
+        }
+        Node subtree = spine.peekFirst();
+        updateSubtree(subtree);
+
+        split(root, index);
+        Node right = splitRight;
+        root = merge(merge(splitLeft, subtree), right);
+        root.parent = null;
+
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public QueueItem remove(int index) {
+        checkElementIndex(index);
+
+        split(root, index);
+        Node left = splitLeft;
+        split(splitRight, 1);
+        Node node = splitLeft;
+        root = merge(left, splitRight);
+        if (root != null) {
+            root.parent = null;
+        }
+
+        unindex(node);
+        modCount++;
+        return node.item;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index == -1) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(@NonNull Collection<?> c) {
+        boolean changed = false;
+        List<Object> unindexed = null;
+        for (Object o : c) {
+            Node node = o instanceof QueueItem ? nodes.get(o) : null;
+            if (node != null) {
+                remove(rank(node));
+                changed = true;
+            } else {
+                if (unindexed == null) {
+                    unindexed = new ArrayList<>();
+                }
+                unindexed.add(o);
+            }
+        }
+        if (unindexed != null) {
+            // Fall back to equality for items which aren't in this list by reference
+            changed |= super.removeAll(unindexed);
+        }
+        return changed;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        nodes.clear();
+        nodesBySong.clear();
+        dirtySongs.clear();
+        modCount++;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        Node node = o instanceof QueueItem ? nodes.get(o) : null;
+        if (node != null) {
+            return rank(node);
+        }
+        return super.indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) != -1;
+    }
+
+    @NonNull
+    @Override
+    public Iterator<QueueItem> iterator() {
+        return new Itr();
+    }
+
+    /**
+     * Moves the item at from to to.
+     */
+    void move(int from, int to) {
+        checkElementIndex(from);
+        checkElementIndex(to);
+        if (from != to) {
+            add(to, remove(from));
+        }
+    }
+
+    /**
+     * @return the items in this list whose song is one of the passed in songs, in list order.
+     */
+    @NonNull
+    List<QueueItem> itemsOf(@NonNull Collection<Song> songs) {
+        List<Node> matches = new ArrayList<>();
+        for (Song song : new HashSet<>(songs)) {
+            Set<Node> songNodes = nodesBySong.get(song);
+            if (songNodes != null) {
+                matches.addAll(songNodes);
+            }
+        }
+        return itemsInOrder(matches);
+    }
+
+    /**
+     * Sets the occurrence of each item to its (1-based) index amongst the items with the same song, as per
+     * {@link com.simplecity.amp_library.ui.screens.queue.QueueItemKt#updateOccurrence(List)}.
+     * <p>
+     * Only the songs affected by edits since the last call are recomputed, unless {@link #invalidateOccurrence()} has been called.
+     */
+    void updateOccurrence() {
+        if (!occurrencesValid) {
+            Map<Song, Integer> counts = new HashMap<>(nodesBySong.size());
+            for (QueueItem queueItem : this) {
+                Integer count = counts.get(queueItem.getSong());
+                count = count == null ? 1 : count + 1;
+                counts.put(queueItem.getSong(), count);
+                queueItem.setOccurrence(count);
+            }
+            occurrencesValid = true;
+        } else {
+            for (Song song : dirtySongs) {
+                Set<Node> songNodes = nodesBySong.get(song);
+                if (songNodes != null) {
+                    List<QueueItem> queueItems = itemsInOrder(songNodes);
+                    for (int i = 0, size = queueItems.size(); i < size; i++) {
+                        queueItems.get(i).setOccurrence(i + 1);
+                    }
+                }
+            }
+        }
+        dirtySongs.clear();
+    }
+
+    /**
+     * Forces the next {@link #updateOccurrence()} to recompute every item. Call this when the items' occurrences have been set by
+     * another list sharing the same items.
+     */
+    void invalidateOccurrence() {
+        occurrencesValid = false;
+        dirtySongs.clear();
+    }
+
+    private List<QueueItem> itemsInOrder(Collection<Node> nodes) {
+        int count = nodes.size();
+        long[] ranked = new long[count];
+        Node[] nodeArray = nodes.toArray(new Node[count]);
+        for (int i = 0; i < count; i++) {
+            ranked[i] = ((long) rank(nodeArray[i]) << 32) | i;
+        }
+        Arrays.sort(ranked);
+
+        List<QueueItem> queueItems = new ArrayList<>(count);
+        for (long rankAndIndex : ranked) {
+            queueItems.add(nodeArray[(int) rankAndIndex].item);
+        }
+        return queueItems;
+    }
+
+    private void index(Node node) {
+        nodes.put(node.item, node);
+
+        Song song = node.item.getSong();
+        Set<Node> songNodes = nodesBySong.get(song);
+        if (songNodes == null) {
+            songNodes = new HashSet<>(2);
+            nodesBySong.put(song, songNodes);
+        }
+        songNodes.add(node);
+        dirtySongs.add(song);
+    }
+
+    private void unindex(Node node) {
+        nodes.remove(node.item);
+
+        Song song = node.item.getSong();
+        Set<Node> songNodes = nodesBySong.get(song);
+        if (songNodes != null) {
+            songNodes.remove(node);
+            if (songNodes.isEmpty()) {
+                nodesBySong.remove(song);
+            }
+        }
+        dirtySongs.add(song);
+    }
+
+    private void checkNotPresent(QueueItem queueItem) {
+        if (nodes.containsKey(queueItem)) {
+            throw new IllegalArgumentException("QueueItem is already present in this list");
+        }
+    }
+
+    private void checkNotPresent(Collection<? extends QueueItem> queueItems) {
+        if (queueItems.size() == 1) {
+            checkNotPresent(queueItems.iterator().next());
+            return;
+        }
+        Set<QueueItem> seen = Collections.newSetFromMap(new IdentityHashMap<>(queueItems.size()));
+        for (QueueItem queueItem : queueItems) {
+            checkNotPresent(queueItem);
+            if (!seen.add(queueItem)) {
+                throw new IllegalArgumentException("QueueItem appears more than once");
+            }
+        }
+    }
+
+    private void checkElementIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    private void checkPositionIndex(int index) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    private Node nodeAt(int index) {
+        checkElementIndex(index);
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the passed in node, by walking up to the root.
+     */
+    private static int rank(Node node) {
+        int rank = size(node.left);
+        while (node.parent != null) {
+            if (node == node.parent.right) {
+                rank += size(node.parent.left) + 1;
+            }
+            node = node.parent;
+        }
+        return rank;
+    }
+
+    private static Node successor(Node node) {
+        if (node.right != null) {
+            node = node.right;
+            while (node.left != null) {
+                node = node.left;
+            }
+            return node;
+        }
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+    }
+
+    private static void updateSubtree(Node node) {
+        if (node != null) {
+            updateSubtree(node.left);
+            updateSubtree(node.right);
+            update(node);
+        }
+    }
+
+    /**
+     * Splits the passed in treap into {@link #splitLeft} (the first count nodes) and {@link #splitRight} (the remainder).
+     */
+    private void split(Node node, int count) {
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+        } else if (size(node.left) >= count) {
+            split(node.left, count);
+            node.left = splitRight;
+            update(node);
+            splitRight = node;
+        } else {
+            split(node.right, count - size(node.left) - 1);
+            node.right = splitLeft;
+            update(node);
+            splitLeft = node;
+        }
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+    }
+
+    private int nextPriority() {
+        // xorshift
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private class Itr implements Iterator<QueueItem> {
+
+        private Node next = root == null ? null : nodeAt(0);
+
+        private Node lastReturned;
+
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public QueueItem next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = successor(next);
+            return lastReturned.item;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            QueueList.this.remove(rank(lastReturned));
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -2,24 +2,22 @@ package com.simplecity.amp_library.playback;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import com.annimon.stream.Stream;
 import com.simplecity.amp_library.data.Repository;
 import com.simplecity.amp_library.model.Song;
 import com.simplecity.amp_library.playback.constants.InternalIntents;
 import com.simplecity.amp_library.rx.UnsafeAction;
-import com.simplecity.amp_library.rx.UnsafeConsumer;
 import com.simplecity.amp_library.ui.screens.queue.QueueItem;
 import com.simplecity.amp_library.ui.screens.queue.QueueItemKt;
 import com.simplecity.amp_library.utils.LogUtils;
 import com.simplecity.amp_library.utils.SettingsManager;
+import io.reactivex.Maybe;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 import kotlin.Unit;
 import kotlin.jvm.functions.Function0;
 
@@ -43,13 +41,11 @@ public class QueueManager {
         int LAST = 1;
     }
 
-    private final char hexDigits[] = new char[] { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
-
     @NonNull
-    List<QueueItem> playlist = new List<>();
+    QueueList playlist = new QueueList();
 
     @NonNull
-    List<QueueItem> shuffleList = new List<>();
+    QueueList shuffleList = new QueueList();
 
     @ShuffleMode
     int shuffleMode = ShuffleMode.OFF;
@@ -72,16 +68,20 @@ public class QueueManager {
 
     private SettingsManager settingsManager;
 
+    private QueueStore queueStore;
+
     public QueueManager(
             MusicService.Callbacks musicServiceCallbacks,
             Repository.SongsRepository songsRepository,
             PlaybackSettingsManager playbackSettingsManager,
-            SettingsManager settingsManager
+            SettingsManager settingsManager,
+            QueueStore queueStore
     ) {
         this.musicServiceCallbacks = musicServiceCallbacks;
         this.songsRepository = songsRepository;
         this.playbackSettingsManager = playbackSettingsManager;
         this.settingsManager = settingsManager;
+        this.queueStore = queueStore;
     }
 
     private void notifyQueueChanged() {
@@ -89,6 +89,14 @@ public class QueueManager {
         musicServiceCallbacks.notifyChange(InternalIntents.QUEUE_CHANGED);
     }
 
+    /**
+     * Journals the passed in edit, rather than rewriting the whole queue (if the {@link QueueStore} has a snapshot to apply it to).
+     */
+    private void notifyQueueChanged(@NonNull QueueStore.Edit edit) {
+        saveQueue(!queueIsSaveable || queueReloading || !queueStore.append(edit));
+        musicServiceCallbacks.notifyChange(InternalIntents.QUEUE_CHANGED);
+    }
+
     private void notifyShuffleChanged() {
         musicServiceCallbacks.notifyChange(InternalIntents.SHUFFLE_CHANGED);
     }
@@ -125,7 +133,8 @@ public class QueueManager {
             shuffleList.clear();
 
             playlist.addAll(queueItems);
-            QueueItemKt.updateOccurrence(playlist);
+            playlist.updateOccurrence();
+            shuffleList.invalidateOccurrence();
         }
 
         queuePosition = position;
@@ -157,7 +166,9 @@ public class QueueManager {
             to = getCurrentPlaylist().size() - 1;
         }
 
-        getCurrentPlaylist().add(to, getCurrentPlaylist().remove(from));
+        QueueStore.Edit edit = QueueStore.Edit.move(shuffleMode == ShuffleMode.ON, from, to);
+
+        getCurrentPlaylist().move(from, to);
 
         if (from < to) {
             if (queuePosition == from) {
@@ -173,9 +184,9 @@ public class QueueManager {
             }
         }
 
-        QueueItemKt.updateOccurrence(getCurrentPlaylist());
+        updateOccurrence();
 
-        notifyQueueChanged();
+        notifyQueueChanged(edit);
     }
 
     void clearQueue() {
@@ -193,7 +204,7 @@ public class QueueManager {
     }
 
     @NonNull
-    List<QueueItem> getCurrentPlaylist() {
+    QueueList getCurrentPlaylist() {
         if (shuffleMode == ShuffleMode.OFF) {
             return playlist;
         } else {
@@ -249,8 +260,19 @@ public class QueueManager {
 
         QueueItem currentQueueItem = getCurrentQueueItem();
 
-        playlist.remove(queueItem);
-        shuffleList.remove(queueItem);
+        int playlistIndex = playlist.indexOf(queueItem);
+        int shuffleIndex = shuffleList.indexOf(queueItem);
+        QueueStore.Edit edit = QueueStore.Edit.remove(
+                playlistIndex != -1 ? new int[] { playlistIndex } : new int[0],
+                shuffleIndex != -1 ? new int[] { shuffleIndex } : new int[0]
+        );
+
+        if (playlistIndex != -1) {
+            playlist.remove(playlistIndex);
+        }
+        if (shuffleIndex != -1) {
+            shuffleList.remove(shuffleIndex);
+        }
 
         if (queueItem == currentQueueItem) {
             onCurrentSongRemoved(stop, moveToNextTrack);
@@ -258,9 +280,9 @@ public class QueueManager {
             queuePosition = getCurrentPlaylist().indexOf(currentQueueItem);
         }
 
-        QueueItemKt.updateOccurrence(getCurrentPlaylist());
+        updateOccurrence();
 
-        notifyQueueChanged();
+        notifyQueueChanged(edit);
     }
 
     /**
@@ -272,12 +294,21 @@ public class QueueManager {
      */
     void removeQueueItems(@NonNull List<QueueItem> queueItems, UnsafeAction stop, UnsafeAction moveToNextTrack) {
 
+        QueueItem currentQueueItem = getCurrentQueueItem();
+
+        int[] playlistIndices = indicesOf(playlist, queueItems);
+        int[] shuffleIndices = indicesOf(shuffleList, queueItems);
+        QueueStore.Edit edit = QueueStore.Edit.remove(playlistIndices, shuffleIndices);
+
+        int[] currentIndices = getCurrentPlaylist() == playlist ? playlistIndices : shuffleIndices;
+        int firstRemovedIndex = currentIndices.length > 0 ? currentIndices[0] : 0;
+
         playlist.removeAll(queueItems);
         shuffleList.removeAll(queueItems);
 
-        QueueItemKt.updateOccurrence(getCurrentPlaylist());
+        updateOccurrence();
 
-        if (queueItems.contains(getCurrentQueueItem())) {
+        if (currentQueueItem != null && Arrays.binarySearch(currentIndices, queuePosition) >= 0) {
             /*
              * If we remove a list of songs from the current queue, and that list contains our currently
              * playing song, we need to figure out which song should play next. We'll play the first song
@@ -299,18 +330,50 @@ public class QueueManager {
              *
              * So after the removal, we'll play index 2, which is Song 8.
              */
-            queuePosition = Collections.indexOfSubList(getCurrentPlaylist(), queueItems);
+            queuePosition = firstRemovedIndex;
             onCurrentSongRemoved(stop, moveToNextTrack);
         } else {
-            queuePosition = getCurrentPlaylist().indexOf(getCurrentQueueItem());
+            queuePosition = getCurrentPlaylist().indexOf(currentQueueItem);
         }
 
-        notifyQueueChanged();
+        notifyQueueChanged(edit);
+    }
+
+    /**
+     * @return the (ascending) indices of the passed in items which are present in the list.
+     */
+    private static int[] indicesOf(@NonNull QueueList list, @NonNull List<QueueItem> items) {
+        int[] indices = new int[items.size()];
+        int count = 0;
+        for (QueueItem queueItem : items) {
+            int index = list.indexOf(queueItem);
+            if (index != -1) {
+                indices[count++] = index;
+            }
+        }
+        Arrays.sort(indices, 0, count);
+
+        // Drop duplicates
+        int uniqueCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (uniqueCount == 0 || indices[uniqueCount - 1] != indices[i]) {
+                indices[uniqueCount++] = indices[i];
+            }
+        }
+        return Arrays.copyOf(indices, uniqueCount);
+    }
+
+    /**
+     * Recomputes the occurrence of the items in the current playlist. The other list shares the same items, so its occurrences are
+     * invalidated.
+     */
+    private void updateOccurrence() {
+        getCurrentPlaylist().updateOccurrence();
+        (getCurrentPlaylist() == playlist ? shuffleList : playlist).invalidateOccurrence();
     }
 
     void removeSongs(@NonNull List<Song> songs, UnsafeAction stop, UnsafeAction moveToNextTrack) {
-        List<QueueItem> queueItems = Stream.of(playlist).filter(value -> songs.contains(value.getSong())).toList();
-        removeQueueItems(queueItems, stop, moveToNextTrack);
+        removeQueueItems(playlist.itemsOf(songs), stop, moveToNextTrack);
     }
 
     private void onCurrentSongRemoved(UnsafeAction stop, UnsafeAction moveToNextTrack) {
@@ -337,24 +400,32 @@ public class QueueManager {
         List<QueueItem> queueItems = QueueItemKt.toQueueItems(songs);
 
         switch (action) {
-            case EnqueueAction.NEXT:
+            case EnqueueAction.NEXT: {
                 List<QueueItem> otherList = getCurrentPlaylist() == playlist ? shuffleList : playlist;
+                QueueStore.Edit edit = getCurrentPlaylist() == playlist
+                        ? QueueStore.Edit.insert(queuePosition + 1, shuffleList.size(), queueItems)
+                        : QueueStore.Edit.insert(playlist.size(), queuePosition + 1, queueItems);
+
                 getCurrentPlaylist().addAll(queuePosition + 1, queueItems);
                 otherList.addAll(queueItems);
 
-                QueueItemKt.updateOccurrence(getCurrentPlaylist());
+                updateOccurrence();
 
                 setNextTrack.run();
-                notifyQueueChanged();
+                notifyQueueChanged(edit);
                 break;
-            case EnqueueAction.LAST:
+            }
+            case EnqueueAction.LAST: {
+                QueueStore.Edit edit = QueueStore.Edit.insert(playlist.size(), shuffleList.size(), queueItems);
+
                 playlist.addAll(queueItems);
                 shuffleList.addAll(queueItems);
 
-                QueueItemKt.updateOccurrence(getCurrentPlaylist());
+                updateOccurrence();
 
-                notifyQueueChanged();
+                notifyQueueChanged(edit);
                 break;
+            }
         }
         if (queuePosition < 0) {
             queuePosition = 0;
@@ -366,8 +437,7 @@ public class QueueManager {
     /**
      * Saves our state to preferences, including the queue position, repeat mode & shuffle mode.
      *
-     * @param saveQueue boolean whether to serialize the playlist/shuffleList and store those in preferences
-     * as well.
+     * @param saveQueue boolean whether to write the playlist/shuffleList to the {@link QueueStore} as well.
      */
     void saveQueue(boolean saveQueue) {
 
@@ -380,10 +450,7 @@ public class QueueManager {
         }
 
         if (saveQueue) {
-            playbackSettingsManager.setQueueList(serializePlaylist(playlist));
-            if (shuffleMode == ShuffleMode.ON) {
-                playbackSettingsManager.setShuffleList(serializePlaylist(shuffleList));
-            }
+            queueStore.save(playlist, shuffleMode == ShuffleMode.ON ? shuffleList : null);
         }
 
         playbackSettingsManager.setQueuePosition(queuePosition);
@@ -399,130 +466,124 @@ public class QueueManager {
 
         return songsRepository.getAllSongs()
                 .first(Collections.emptyList())
-                .map(QueueItemKt::toQueueItems)
+                .flatMapMaybe(songs -> {
+                    QueueStore.Queue queue = loadQueue(songs);
+                    return queue != null ? Maybe.just(queue) : Maybe.<QueueStore.Queue>empty();
+                })
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe((UnsafeConsumer<List<QueueItem>>) queueItems -> {
-                    String queueList = playbackSettingsManager.getQueueList();
-                    if (queueList != null) {
-                        playlist = deserializePlaylist(queueList, queueItems);
-
-                        final int queuePosition = playbackSettingsManager.getQueuePosition();
-
-                        if (queuePosition < 0 || queuePosition >= playlist.size()) {
-                            // The saved playlist is bogus, discard it
-                            playlist.clear();
-                            queueReloading = false;
-                            onComplete.invoke();
-                            return;
-                        }
+                .subscribe(queue -> {
+                    QueueList restoredPlaylist;
+                    QueueList restoredShuffleList;
+                    try {
+                        restoredPlaylist = new QueueList(queue.playlist);
+                        restoredShuffleList = queue.shuffleList != null ? new QueueList(queue.shuffleList) : null;
+                    } catch (IllegalArgumentException e) {
+                        // The saved queue is inconsistent (an item appears more than once), discard it
+                        LogUtils.logException(TAG, "Restoring queue", e);
+                        playlist = new QueueList();
+                        shuffleList = new QueueList();
+                        queueReloading = false;
+                        onComplete.invoke();
+                        return;
+                    }
 
-                        QueueManager.this.queuePosition = queuePosition;
+                    playlist = restoredPlaylist;
 
-                        if (repeatMode != RepeatMode.ALL && repeatMode != RepeatMode.ONE) {
-                            repeatMode = RepeatMode.OFF;
-                        }
-                        if (shuffleMode != ShuffleMode.ON) {
-                            shuffleMode = ShuffleMode.OFF;
-                        }
-                        if (shuffleMode == ShuffleMode.ON) {
-                            queueList = playbackSettingsManager.getShuffleList();
-                            if (queueList != null) {
-                                shuffleList = deserializePlaylist(queueList, queueItems);
-
-                                if (queuePosition >= shuffleList.size()) {
-                                    // The saved playlist is bogus, discard it
-                                    shuffleList.clear();
-                                    queueReloading = false;
-                                    onComplete.invoke();
-                                    return;
-                                }
+                    final int queuePosition = playbackSettingsManager.getQueuePosition();
+
+                    if (queuePosition < 0 || queuePosition >= playlist.size()) {
+                        // The saved playlist is bogus, discard it
+                        playlist.clear();
+                        queueReloading = false;
+                        onComplete.invoke();
+                        return;
+                    }
+
+                    QueueManager.this.queuePosition = queuePosition;
+
+                    if (repeatMode != RepeatMode.ALL && repeatMode != RepeatMode.ONE) {
+                        repeatMode = RepeatMode.OFF;
+                    }
+                    if (shuffleMode != ShuffleMode.ON) {
+                        shuffleMode = ShuffleMode.OFF;
+                    }
+                    if (shuffleMode == ShuffleMode.ON) {
+                        if (restoredShuffleList != null) {
+                            shuffleList = restoredShuffleList;
+
+                            if (queuePosition >= shuffleList.size()) {
+                                // The saved playlist is bogus, discard it
+                                shuffleList.clear();
+                                queueReloading = false;
+                                onComplete.invoke();
+                                return;
                             }
                         }
+                    }
 
-                        if (QueueManager.this.queuePosition < 0 || QueueManager.this.queuePosition >= getCurrentPlaylist().size()) {
-                            QueueManager.this.queuePosition = 0;
-                        }
+                    if (QueueManager.this.queuePosition < 0 || QueueManager.this.queuePosition >= getCurrentPlaylist().size()) {
+                        QueueManager.this.queuePosition = 0;
                     }
+
+                    updateOccurrence();
+
                     queueReloading = false;
+
+                    if (queue.isStale) {
+                        // Journaled edits are indexed against the restored queue, so the stored snapshot has to match it
+                        saveQueue(true);
+                    }
+
                     onComplete.invoke();
                 }, error -> {
                     queueReloading = false;
                     onComplete.invoke();
                     LogUtils.logException(TAG, "Reloading queue", error);
+                }, () -> {
+                    queueReloading = false;
+                    onComplete.invoke();
                 });
     }
 
     /**
-     * Converts a playlist to a String which can be saved to SharedPrefs
+     * Reads the saved queue, falling back to the legacy SharedPreferences format if the {@link QueueStore} is empty.
+     *
+     * @return the saved queue, resolved against the passed in songs, or null if there is no saved queue.
      */
-    private String serializePlaylist(List<QueueItem> queueItems) {
-
-        // The current playlist is saved as a list of "reverse hexadecimal"
-        // numbers, which we can generate faster than normal decimal or
-        // hexadecimal numbers, which in turn allows us to save the playlist
-        // more often without worrying too much about performance.
-
-        StringBuilder q = new StringBuilder();
-
-        List<Song> songs = Stream.of(queueItems).map(QueueItem::getSong).toList();
-        int len = songs.size();
-        for (int i = 0; i < len; i++) {
-            long n = songs.get(i).id;
-            if (n >= 0) {
-                if (n == 0) {
-                    q.append("0;");
-                } else {
-                    while (n != 0) {
-                        final int digit = (int) (n & 0xf);
-                        n >>>= 4;
-                        q.append(hexDigits[digit]);
-                    }
-                    q.append(";");
+    @Nullable
+    private QueueStore.Queue loadQueue(@NonNull List<Song> songs) {
+        QueueStore.Snapshot snapshot = queueStore.load();
+
+        String legacyQueueList = playbackSettingsManager.getQueueList();
+        if (legacyQueueList != null) {
+            if (snapshot == null) {
+                snapshot = QueueStore.fromLegacy(legacyQueueList, playbackSettingsManager.getShuffleList());
+                if (snapshot == null) {
+                    // The legacy data is bogus, don't try to migrate it again
+                    playbackSettingsManager.setQueueList(null);
+                    playbackSettingsManager.setShuffleList(null);
+                    return new QueueStore.Queue(new ArrayList<>(), null, false);
                 }
+                // Nothing is stored in the new format yet. The resolved queue is saved once it's been restored, and the legacy data is
+                // cleared on the next load.
+                QueueStore.Queue queue = QueueStore.toQueue(snapshot, songs);
+                return new QueueStore.Queue(queue.playlist, queue.shuffleList, true);
+            } else {
+                // The queue has been migrated, the legacy data is no longer needed.
+                playbackSettingsManager.setQueueList(null);
+                playbackSettingsManager.setShuffleList(null);
             }
         }
 
-        return q.toString();
+        return snapshot != null ? QueueStore.toQueue(snapshot, songs) : null;
     }
 
     /**
-     * Converts a string representation of a playlist from SharedPrefs into a list of songs.
+     * Writes any pending queue changes, and releases resources.
      */
-    private List<QueueItem> deserializePlaylist(String listString, List<QueueItem> queueItems) {
-        List<Long> ids = new List<>();
-        int n = 0;
-        int shift = 0;
-        for (int i = 0; i < listString.length(); i++) {
-            char c = listString.charAt(i);
-            if (c == ';') {
-                ids.add((long) n);
-                n = 0;
-                shift = 0;
-            } else {
-                if (c >= '0' && c <= '9') {
-                    n += ((c - '0') << shift);
-                } else if (c >= 'a' && c <= 'f') {
-                    n += ((10 + c - 'a') << shift);
-                } else {
-                    // bogus playlist data
-                    playlist.clear();
-                    break;
-                }
-                shift += 4;
-            }
-        }
-
-        Map<Integer, Song> map = new TreeMap<>();
-
-        Stream.of(queueItems).map(QueueItem::getSong).forEach(song -> {
-            int index = ids.indexOf(song.id);
-            if (index != -1) {
-                map.put(index, song);
-            }
-        });
-
-        return QueueItemKt.toQueueItems(new List<>(map.values()));
+    void destroy() {
+        queueStore.destroy();
     }
 
     void makeShuffleList() {
@@ -530,19 +591,21 @@ public class QueueManager {
             return;
         }
 
-        shuffleList = new List<>(playlist);
+        List<QueueItem> shuffledItems = new ArrayList<>(playlist);
         QueueItem currentSong = null;
-        if (queuePosition >= 0 && queuePosition < shuffleList.size()) {
-            currentSong = shuffleList.remove(queuePosition);
+        if (queuePosition >= 0 && queuePosition < shuffledItems.size()) {
+            currentSong = shuffledItems.remove(queuePosition);
         }
 
-        Collections.shuffle(shuffleList);
+        Collections.shuffle(shuffledItems);
 
         if (currentSong != null) {
-            shuffleList.add(0, currentSong);
+            shuffledItems.add(0, currentSong);
         }
+        shuffleList = new QueueList(shuffledItems);
         queuePosition = 0;
 
-        QueueItemKt.updateOccurrence(shuffleList);
+        shuffleList.updateOccurrence();
+        playlist.invalidateOccurrence();
     }
 }
\ No newline at end of file
@@ -0,0 +1,756 @@
+package com.simplecity.amp_library.playback;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.AtomicFile;
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.ui.screens.queue.QueueItem;
+import com.simplecity.amp_library.utils.LogUtils;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the queue (and shuffle order) to a compact binary file.
+ * <p>
+ * The playlist is stored as a list of song ids, and the shuffle list as a permutation of playlist indices. Saves are snapshotted on the
+ * calling thread, but written on a background thread, and debounced so that a burst of queue changes results in a single write.
+ * <p>
+ * Individual edits (insertions, removals & moves) can be appended to a journal via {@link #append(Edit)}, rather than rewriting the
+ * whole queue. The journal is tagged with the generation of the snapshot it applies to, and is replayed over that snapshot by
+ * {@link #load()}. Once the journal grows large enough, it's compacted into a new snapshot.
+ */
+class QueueStore {
+
+    private static final String TAG = "QueueStore";
+
+    private static final int VERSION = 2;
+
+    private static final int JOURNAL_MAGIC = 0x514a524e;
+
+    private static final long SAVE_DELAY_MS = 500;
+
+    private static final int MAX_JOURNAL_EDITS = 500;
+
+    static class Snapshot {
+
+        @NonNull
+        final long[] playlistIds;
+
+        /**
+         * Indices into {@link #playlistIds}, or null if the shuffle list isn't stored.
+         */
+        @Nullable
+        final int[] shuffleOrder;
+
+        Snapshot(@NonNull long[] playlistIds, @Nullable int[] shuffleOrder) {
+            this.playlistIds = playlistIds;
+            this.shuffleOrder = shuffleOrder;
+        }
+    }
+
+    static class Queue {
+
+        @NonNull
+        final List<QueueItem> playlist;
+
+        @Nullable
+        final List<QueueItem> shuffleList;
+
+        /**
+         * True if this queue doesn't match what's stored (items were dropped when resolving it, or it was migrated from the legacy
+         * format). It should be saved in full once restored, so that journaled edits line up with the stored snapshot.
+         */
+        final boolean isStale;
+
+        Queue(@NonNull List<QueueItem> playlist, @Nullable List<QueueItem> shuffleList, boolean isStale) {
+            this.playlist = playlist;
+            this.shuffleList = shuffleList;
+            this.isStale = isStale;
+        }
+    }
+
+    /**
+     * A single edit to the queue, as written to the journal. Indices are those before the edit is applied.
+     */
+    static final class Edit {
+
+        private static final byte INSERT = 1;
+        private static final byte REMOVE = 2;
+        private static final byte MOVE_PLAYLIST = 3;
+        private static final byte MOVE_SHUFFLE = 4;
+
+        final byte[] bytes;
+
+        private Edit(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * The passed in items are inserted into the playlist at playlistIndex, and into the shuffle list at shuffleIndex.
+         */
+        static Edit insert(int playlistIndex, int shuffleIndex, @NonNull List<QueueItem> queueItems) {
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream(13 + queueItems.size() * 8);
+            DataOutputStream outputStream = new DataOutputStream(byteStream);
+            try {
+                outputStream.writeByte(INSERT);
+                outputStream.writeInt(playlistIndex);
+                outputStream.writeInt(shuffleIndex);
+                outputStream.writeInt(queueItems.size());
+                for (QueueItem queueItem : queueItems) {
+                    outputStream.writeLong(queueItem.getSong().id);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Edit(byteStream.toByteArray());
+        }
+
+        /**
+         * The items at the passed in (ascending) indices are removed from the playlist & shuffle list respectively.
+         */
+        static Edit remove(@NonNull int[] playlistIndices, @NonNull int[] shuffleIndices) {
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream(9 + (playlistIndices.length + shuffleIndices.length) * 4);
+            DataOutputStream outputStream = new DataOutputStream(byteStream);
+            try {
+                outputStream.writeByte(REMOVE);
+                writeInts(outputStream, playlistIndices);
+                writeInts(outputStream, shuffleIndices);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Edit(byteStream.toByteArray());
+        }
+
+        /**
+         * The item at from is moved to to, in either the shuffle list or the playlist.
+         */
+        static Edit move(boolean shuffleList, int from, int to) {
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream(9);
+            DataOutputStream outputStream = new DataOutputStream(byteStream);
+            try {
+                outputStream.writeByte(shuffleList ? MOVE_SHUFFLE : MOVE_PLAYLIST);
+                outputStream.writeInt(from);
+                outputStream.writeInt(to);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Edit(byteStream.toByteArray());
+        }
+
+        private static void writeInts(DataOutputStream outputStream, int[] values) throws IOException {
+            outputStream.writeInt(values.length);
+            for (int value : values) {
+                outputStream.writeInt(value);
+            }
+        }
+
+        private static int[] readInts(DataInputStream inputStream) throws IOException {
+            int[] values = new int[inputStream.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = inputStream.readInt();
+            }
+            return values;
+        }
+
+        /**
+         * @return the result of applying this edit to the passed in snapshot, or null if the edit doesn't apply.
+         */
+        @Nullable
+        Snapshot applyTo(@NonNull Snapshot snapshot) throws IOException {
+            DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(bytes));
+            switch (inputStream.readByte()) {
+                case INSERT: {
+                    int playlistIndex = inputStream.readInt();
+                    int shuffleIndex = inputStream.readInt();
+                    long[] ids = new long[inputStream.readInt()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = inputStream.readLong();
+                    }
+                    return applyInsert(snapshot, playlistIndex, shuffleIndex, ids);
+                }
+                case REMOVE:
+                    return applyRemove(snapshot, readInts(inputStream), readInts(inputStream));
+                case MOVE_PLAYLIST:
+                    return applyMove(snapshot, false, inputStream.readInt(), inputStream.readInt());
+                case MOVE_SHUFFLE:
+                    return applyMove(snapshot, true, inputStream.readInt(), inputStream.readInt());
+                default:
+                    return null;
+            }
+        }
+
+        @Nullable
+        private static Snapshot applyInsert(Snapshot snapshot, int playlistIndex, int shuffleIndex, long[] ids) {
+            long[] playlistIds = snapshot.playlistIds;
+            if (playlistIndex < 0 || playlistIndex > playlistIds.length) {
+                return null;
+            }
+
+            long[] newPlaylistIds = new long[playlistIds.length + ids.length];
+            System.arraycopy(playlistIds, 0, newPlaylistIds, 0, playlistIndex);
+            System.arraycopy(ids, 0, newPlaylistIds, playlistIndex, ids.length);
+            System.arraycopy(playlistIds, playlistIndex, newPlaylistIds, playlistIndex + ids.length, playlistIds.length - playlistIndex);
+
+            int[] shuffleOrder = snapshot.shuffleOrder;
+            int[] newShuffleOrder = null;
+            if (shuffleOrder != null) {
+                if (shuffleIndex < 0 || shuffleIndex > shuffleOrder.length) {
+                    shuffleIndex = shuffleOrder.length;
+                }
+                newShuffleOrder = new int[shuffleOrder.length + ids.length];
+                for (int i = 0, j = 0; i < newShuffleOrder.length; i++) {
+                    if (i >= shuffleIndex && i < shuffleIndex + ids.length) {
+                        newShuffleOrder[i] = playlistIndex + (i - shuffleIndex);
+                    } else {
+                        int index = shuffleOrder[j++];
+                        newShuffleOrder[i] = index >= playlistIndex ? index + ids.length : index;
+                    }
+                }
+            }
+
+            return new Snapshot(newPlaylistIds, newShuffleOrder);
+        }
+
+        @Nullable
+        private static Snapshot applyRemove(Snapshot snapshot, int[] playlistIndices, int[] shuffleIndices) {
+            long[] playlistIds = snapshot.playlistIds;
+
+            // Maps each old playlist index to its new index, or -1 if removed
+            int[] newIndices = new int[playlistIds.length];
+            for (int index : playlistIndices) {
+                if (index < 0 || index >= playlistIds.length) {
+                    return null;
+                }
+                newIndices[index] = -1;
+            }
+
+            long[] newPlaylistIds = new long[playlistIds.length];
+            int size = 0;
+            for (int i = 0; i < playlistIds.length; i++) {
+                if (newIndices[i] != -1) {
+                    newIndices[i] = size;
+                    newPlaylistIds[size++] = playlistIds[i];
+                }
+            }
+
+            int[] shuffleOrder = snapshot.shuffleOrder;
+            int[] newShuffleOrder = null;
+            if (shuffleOrder != null) {
+                boolean[] removed = new boolean[shuffleOrder.length];
+                for (int index : shuffleIndices) {
+                    if (index >= 0 && index < shuffleOrder.length) {
+                        removed[index] = true;
+                    }
+                }
+                newShuffleOrder = new int[shuffleOrder.length];
+                int shuffleSize = 0;
+                for (int i = 0; i < shuffleOrder.length; i++) {
+                    int index = shuffleOrder[i];
+                    if (!removed[i] && index >= 0 && index < newIndices.length && newIndices[index] != -1) {
+                        newShuffleOrder[shuffleSize++] = newIndices[index];
+                    }
+                }
+                newShuffleOrder = Arrays.copyOf(newShuffleOrder, shuffleSize);
+            }
+
+            return new Snapshot(Arrays.copyOf(newPlaylistIds, size), newShuffleOrder);
+        }
+
+        @Nullable
+        private static Snapshot applyMove(Snapshot snapshot, boolean shuffleList, int from, int to) {
+            if (shuffleList) {
+                int[] shuffleOrder = snapshot.shuffleOrder;
+                if (shuffleOrder == null) {
+                    return snapshot;
+                }
+                if (from < 0 || from >= shuffleOrder.length || to < 0 || to >= shuffleOrder.length) {
+                    return null;
+                }
+                int[] newShuffleOrder = shuffleOrder.clone();
+                int index = newShuffleOrder[from];
+                if (from < to) {
+                    System.arraycopy(newShuffleOrder, from + 1, newShuffleOrder, from, to - from);
+                } else {
+                    System.arraycopy(newShuffleOrder, to, newShuffleOrder, to + 1, from - to);
+                }
+                newShuffleOrder[to] = index;
+                return new Snapshot(snapshot.playlistIds, newShuffleOrder);
+            }
+
+            long[] playlistIds = snapshot.playlistIds;
+            if (from < 0 || from >= playlistIds.length || to < 0 || to >= playlistIds.length) {
+                return null;
+            }
+            long[] newPlaylistIds = playlistIds.clone();
+            long id = newPlaylistIds[from];
+            if (from < to) {
+                System.arraycopy(newPlaylistIds, from + 1, newPlaylistIds, from, to - from);
+            } else {
+                System.arraycopy(newPlaylistIds, to, newPlaylistIds, to + 1, from - to);
+            }
+            newPlaylistIds[to] = id;
+
+            // The shuffle list refers to playlist indices, which have now shifted
+            int[] newShuffleOrder = null;
+            if (snapshot.shuffleOrder != null) {
+                newShuffleOrder = snapshot.shuffleOrder.clone();
+                for (int i = 0; i < newShuffleOrder.length; i++) {
+                    int index = newShuffleOrder[i];
+                    if (index == from) {
+                        newShuffleOrder[i] = to;
+                    } else if (from < to && index > from && index <= to) {
+                        newShuffleOrder[i] = index - 1;
+                    } else if (to < from && index >= to && index < from) {
+                        newShuffleOrder[i] = index + 1;
+                    }
+                }
+            }
+            return new Snapshot(newPlaylistIds, newShuffleOrder);
+        }
+    }
+
+    private final AtomicFile file;
+
+    private final File journalFile;
+
+    private final Random random = new Random();
+
+    private final Object lock = new Object();
+
+    // Guarded by lock
+
+    @Nullable
+    private Snapshot pendingSnapshot;
+
+    private final List<Edit> pendingEdits = new ArrayList<>();
+
+    /**
+     * The generation of the snapshot written (or pending) by this instance, or 0 if none. Edits can only be journaled against a known
+     * snapshot.
+     */
+    private long generation;
+
+    // Guarded by this
+
+    private int journalEditCount;
+
+    private final PublishRelay<Boolean> saveRelay = PublishRelay.create();
+
+    private final Disposable saveDisposable;
+
+    QueueStore(@NonNull File file) {
+        this.file = new AtomicFile(file);
+        this.journalFile = new File(file.getPath() + ".journal");
+
+        saveDisposable = saveRelay
+                .debounce(SAVE_DELAY_MS, TimeUnit.MILLISECONDS, Schedulers.io())
+                .subscribe(
+                        ignored -> flush(),
+                        error -> LogUtils.logException(TAG, "Failed to save queue", error)
+                );
+    }
+
+    /**
+     * Schedules the passed in queue to be written.
+     *
+     * @param shuffleList the shuffle list, or null if it doesn't need to be stored.
+     */
+    void save(@NonNull List<QueueItem> playlist, @Nullable List<QueueItem> shuffleList) {
+        long[] playlistIds = new long[playlist.size()];
+        Map<QueueItem, Integer> indices = shuffleList != null ? new IdentityHashMap<>(playlist.size()) : null;
+        for (int i = 0, size = playlist.size(); i < size; i++) {
+            QueueItem queueItem = playlist.get(i);
+            playlistIds[i] = queueItem.getSong().id;
+            if (indices != null) {
+                indices.put(queueItem, i);
+            }
+        }
+
+        int[] shuffleOrder = null;
+        if (shuffleList != null) {
+            shuffleOrder = new int[shuffleList.size()];
+            for (int i = 0, size = shuffleList.size(); i < size; i++) {
+                Integer index = indices.get(shuffleList.get(i));
+                shuffleOrder[i] = index != null ? index : -1;
+            }
+        }
+
+        save(new Snapshot(playlistIds, shuffleOrder));
+    }
+
+    /**
+     * Schedules the passed in snapshot to be written. Any pending edits are superseded.
+     */
+    void save(@NonNull Snapshot snapshot) {
+        synchronized (lock) {
+            pendingSnapshot = snapshot;
+            pendingEdits.clear();
+            generation = nextGeneration();
+        }
+        saveRelay.accept(true);
+    }
+
+    /**
+     * Schedules the passed in edit to be appended to the journal.
+     *
+     * Edits can only be journaled once the whole queue has been saved by this instance, since the queue resolved from {@link #load()}
+     * may differ from what's stored (songs may have been deleted in the meantime).
+     *
+     * @return false if there is no known snapshot for the edit to apply to. The caller should {@link #save(List, List)} the whole queue.
+     */
+    boolean append(@NonNull Edit edit) {
+        synchronized (lock) {
+            if (generation == 0) {
+                return false;
+            }
+            pendingEdits.add(edit);
+        }
+        saveRelay.accept(true);
+        return true;
+    }
+
+    /**
+     * Writes any pending snapshot & edits immediately.
+     */
+    @WorkerThread
+    synchronized void flush() {
+        Snapshot snapshot;
+        List<Edit> edits;
+        long generation;
+        synchronized (lock) {
+            snapshot = pendingSnapshot;
+            edits = new ArrayList<>(pendingEdits);
+            generation = this.generation;
+            pendingSnapshot = null;
+            pendingEdits.clear();
+        }
+
+        try {
+            if (snapshot != null) {
+                writeSnapshot(snapshot, generation);
+            }
+            if (!edits.isEmpty()) {
+                appendEdits(edits);
+            }
+            if (journalEditCount > MAX_JOURNAL_EDITS) {
+                compact();
+            }
+        } catch (IOException e) {
+            LogUtils.logException(TAG, "Failed to write queue", e);
+            // The journal may no longer match the snapshot. Force the next save to write the whole queue.
+            synchronized (lock) {
+                this.generation = 0;
+            }
+        }
+    }
+
+    private void writeSnapshot(@NonNull Snapshot snapshot, long generation) throws IOException {
+        FileOutputStream fileOutputStream = null;
+        try {
+            fileOutputStream = file.startWrite();
+            DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+            outputStream.writeInt(VERSION);
+            outputStream.writeLong(generation);
+            outputStream.writeInt(snapshot.playlistIds.length);
+            for (long id : snapshot.playlistIds) {
+                outputStream.writeLong(id);
+            }
+            if (snapshot.shuffleOrder != null) {
+                outputStream.writeInt(snapshot.shuffleOrder.length);
+                for (int index : snapshot.shuffleOrder) {
+                    outputStream.writeInt(index);
+                }
+            } else {
+                outputStream.writeInt(-1);
+            }
+            outputStream.flush();
+            file.finishWrite(fileOutputStream);
+        } catch (IOException e) {
+            if (fileOutputStream != null) {
+                file.failWrite(fileOutputStream);
+            }
+            throw e;
+        }
+
+        // Start a new journal. If we die before this completes, the old journal's generation won't match the new snapshot, and is ignored.
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, false)));
+        try {
+            outputStream.writeInt(JOURNAL_MAGIC);
+            outputStream.writeLong(generation);
+        } finally {
+            outputStream.close();
+        }
+        journalEditCount = 0;
+    }
+
+    private void appendEdits(@NonNull List<Edit> edits) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(journalFile, true);
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+        try {
+            for (Edit edit : edits) {
+                outputStream.writeInt(edit.bytes.length);
+                outputStream.write(edit.bytes);
+            }
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        journalEditCount += edits.size();
+    }
+
+    /**
+     * Folds the journal into a new snapshot.
+     */
+    private void compact() throws IOException {
+        Snapshot snapshot = read();
+        if (snapshot != null) {
+            long generation = nextGeneration();
+            synchronized (lock) {
+                // Edits which arrived while we were reading apply to the old generation, and will be written after the new snapshot.
+                this.generation = generation;
+            }
+            writeSnapshot(snapshot, generation);
+        }
+    }
+
+    /**
+     * @return the stored queue, with any journaled edits applied, or null if there isn't one, or it can't be read.
+     */
+    @Nullable
+    @WorkerThread
+    synchronized Snapshot load() {
+        try {
+            return read();
+        } catch (IOException e) {
+            LogUtils.logException(TAG, "Failed to read queue", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private Snapshot read() throws IOException {
+        Snapshot snapshot;
+        long generation = 0;
+
+        DataInputStream inputStream;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(file.openRead()));
+        } catch (FileNotFoundException ignored) {
+            return null;
+        }
+
+        try {
+            int version = inputStream.readInt();
+            if (version != 1 && version != VERSION) {
+                return null;
+            }
+            if (version >= 2) {
+                generation = inputStream.readLong();
+            }
+            long[] playlistIds = new long[inputStream.readInt()];
+            for (int i = 0; i < playlistIds.length; i++) {
+                playlistIds[i] = inputStream.readLong();
+            }
+            int[] shuffleOrder = null;
+            int shuffleSize = inputStream.readInt();
+            if (shuffleSize >= 0) {
+                shuffleOrder = new int[shuffleSize];
+                for (int i = 0; i < shuffleSize; i++) {
+                    shuffleOrder[i] = inputStream.readInt();
+                }
+            }
+            snapshot = new Snapshot(playlistIds, shuffleOrder);
+        } catch (NegativeArraySizeException e) {
+            return null;
+        } finally {
+            inputStream.close();
+        }
+
+        if (generation != 0) {
+            try {
+                inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            } catch (FileNotFoundException ignored) {
+                inputStream = null;
+            }
+            if (inputStream != null) {
+                try {
+                    if (inputStream.readInt() == JOURNAL_MAGIC && inputStream.readLong() == generation) {
+                        while (true) {
+                            byte[] bytes = new byte[inputStream.readInt()];
+                            inputStream.readFully(bytes);
+                            Snapshot editedSnapshot = new Edit(bytes).applyTo(snapshot);
+                            if (editedSnapshot == null) {
+                                // The journal is inconsistent with the snapshot, ignore the rest of it.
+                                break;
+                            }
+                            snapshot = editedSnapshot;
+                        }
+                    }
+                } catch (EOFException | NegativeArraySizeException ignored) {
+                    // We've reached the end of the journal, or a partially written edit.
+                } finally {
+                    inputStream.close();
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Stops accepting new saves, and writes any pending snapshot & edits on a background thread.
+     */
+    void destroy() {
+        saveDisposable.dispose();
+        Schedulers.io().scheduleDirect(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                LogUtils.logException(TAG, "Failed to save queue", e);
+            }
+        });
+    }
+
+    private long nextGeneration() {
+        long generation;
+        do {
+            generation = random.nextLong();
+        } while (generation == 0);
+        return generation;
+    }
+
+    /**
+     * Resolves the stored ids against the passed in songs. Ids which no longer resolve to a song are dropped.
+     *
+     * The shuffle list shares its {@link QueueItem}s with the playlist. Shuffle indices which are out of range, or which have already been
+     * used, are dropped, so each {@link QueueItem} appears at most once in each list.
+     *
+     * If anything is dropped, the returned queue is marked {@link Queue#isStale}.
+     */
+    @NonNull
+    static Queue toQueue(@NonNull Snapshot snapshot, @NonNull List<Song> songs) {
+        Map<Long, Song> songsById = new HashMap<>(songs.size());
+        for (Song song : songs) {
+            songsById.put(song.id, song);
+        }
+
+        QueueItem[] queueItems = new QueueItem[snapshot.playlistIds.length];
+        List<QueueItem> playlist = new ArrayList<>(snapshot.playlistIds.length);
+        for (int i = 0; i < snapshot.playlistIds.length; i++) {
+            Song song = songsById.get(snapshot.playlistIds[i]);
+            if (song != null) {
+                queueItems[i] = new QueueItem(song, 1);
+                playlist.add(queueItems[i]);
+            }
+        }
+        List<QueueItem> shuffleList = null;
+        if (snapshot.shuffleOrder != null) {
+            shuffleList = new ArrayList<>(snapshot.shuffleOrder.length);
+            boolean[] used = new boolean[queueItems.length];
+            for (int index : snapshot.shuffleOrder) {
+                if (index >= 0 && index < queueItems.length && queueItems[index] != null && !used[index]) {
+                    used[index] = true;
+                    shuffleList.add(queueItems[index]);
+                }
+            }
+        }
+
+        boolean isStale = playlist.size() != snapshot.playlistIds.length
+                || (shuffleList != null && shuffleList.size() != snapshot.shuffleOrder.length);
+
+        return new Queue(playlist, shuffleList, isStale);
+    }
+
+    /**
+     * Parses the legacy queue format, previously stored in SharedPreferences: a list of ';' separated, "reverse hexadecimal" song ids.
+     *
+     * @return the parsed queue, or null if the data is bogus.
+     */
+    @Nullable
+    static Snapshot fromLegacy(@NonNull String playlist, @Nullable String shuffleList) {
+        long[] playlistIds = parseLegacyIds(playlist);
+        if (playlistIds == null) {
+            return null;
+        }
+
+        int[] shuffleOrder = null;
+        if (shuffleList != null) {
+            long[] shuffleIds = parseLegacyIds(shuffleList);
+            if (shuffleIds != null) {
+                // A song may be queued more than once. The k-th occurrence of an id in the shuffle list maps to its k-th occurrence in the
+                // playlist.
+                Map<Long, ArrayDeque<Integer>> indices = new HashMap<>(playlistIds.length);
+                for (int i = 0; i < playlistIds.length; i++) {
+                    ArrayDeque<Integer> occurrences = indices.get(playlistIds[i]);
+                    if (occurrences == null) {
+                        occurrences = new ArrayDeque<>(1);
+                        indices.put(playlistIds[i], occurrences);
+                    }
+                    occurrences.add(i);
+                }
+                shuffleOrder = new int[shuffleIds.length];
+                for (int i = 0; i < shuffleIds.length; i++) {
+                    ArrayDeque<Integer> occurrences = indices.get(shuffleIds[i]);
+                    Integer index = occurrences != null ? occurrences.poll() : null;
+                    shuffleOrder[i] = index != null ? index : -1;
+                }
+            }
+        }
+
+        return new Snapshot(playlistIds, shuffleOrder);
+    }
+
+    @Nullable
+    private static long[] parseLegacyIds(@NonNull String listString) {
+        long[] ids = new long[16];
+        int size = 0;
+        long n = 0;
+        int shift = 0;
+        for (int i = 0; i < listString.length(); i++) {
+            char c = listString.charAt(i);
+            if (c == ';') {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = n;
+                n = 0;
+                shift = 0;
+            } else {
+                if (c >= '0' && c <= '9') {
+                    n += ((long) (c - '0') << shift);
+                } else if (c >= 'a' && c <= 'f') {
+                    n += ((long) (10 + c - 'a') << shift);
+                } else {
+                    // bogus playlist data
+                    return null;
+                }
+                shift += 4;
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+}
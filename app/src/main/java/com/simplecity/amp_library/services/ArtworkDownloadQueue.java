@@ -0,0 +1,226 @@
+package com.simplecity.amp_library.services;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import com.simplecity.amp_library.model.ArtworkProvider;
+import com.simplecity.amp_library.utils.LogUtils;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The artwork waiting to be downloaded by {@link ArtworkDownloadService}, highest priority first.
+ * <p>
+ * The keys of downloaded artwork are recorded in a file, so it isn't downloaded again, including when the service is restarted after
+ * the process is killed part way through.
+ */
+public final class ArtworkDownloadQueue {
+
+    private static final String TAG = "ArtworkDownloadQueue";
+
+    private static final String FILE_NAME = "artwork_downloads";
+
+    public static final int PRIORITY_DEFAULT = 0;
+    public static final int PRIORITY_VISIBLE = 1;
+    public static final int PRIORITY_NOW_PLAYING = 2;
+
+    private static class Item implements Comparable<Item> {
+
+        final ArtworkProvider artworkProvider;
+        final int priority;
+        final long sequence;
+
+        Item(ArtworkProvider artworkProvider, int priority, long sequence) {
+            this.artworkProvider = artworkProvider;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(@NonNull Item other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static ArtworkDownloadQueue instance;
+
+    public static synchronized ArtworkDownloadQueue getInstance() {
+        if (instance == null) {
+            instance = new ArtworkDownloadQueue();
+        }
+        return instance;
+    }
+
+    private final PriorityQueue<Item> queue = new PriorityQueue<>();
+
+    // The current item for each pending key. Prioritizing an item adds a new one to the queue, and the old one is skipped when polled.
+    private final Map<String, Item> pendingItems = new HashMap<>();
+
+    private long nextSequence;
+
+    @Nullable
+    private Set<String> downloadedKeys;
+
+    @Nullable
+    private Writer writer;
+
+    private ArtworkDownloadQueue() {
+    }
+
+    /**
+     * Loads the keys of previously downloaded artwork, if they haven't been loaded already.
+     */
+    @WorkerThread
+    synchronized void load(Context context) {
+        if (downloadedKeys != null) {
+            return;
+        }
+        downloadedKeys = new HashSet<>();
+
+        File file = getFile(context);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String key;
+            while ((key = reader.readLine()) != null) {
+                downloadedKeys.add(key);
+            }
+        } catch (IOException e) {
+            LogUtils.logException(TAG, "Failed to read downloaded artwork", e);
+        }
+    }
+
+    synchronized boolean isDownloaded(ArtworkProvider artworkProvider) {
+        return downloadedKeys != null && downloadedKeys.contains(artworkProvider.getArtworkKey());
+    }
+
+    /**
+     * Queues the passed in artwork at the default priority, unless it's already queued.
+     */
+    synchronized void add(ArtworkProvider artworkProvider) {
+        String key = artworkProvider.getArtworkKey();
+        if (!pendingItems.containsKey(key)) {
+            Item item = new Item(artworkProvider, PRIORITY_DEFAULT, nextSequence++);
+            pendingItems.put(key, item);
+            queue.add(item);
+        }
+    }
+
+    /**
+     * Moves the queued artwork with the passed in key ahead of any artwork with a lower priority. Does nothing if it isn't queued.
+     */
+    public synchronized void prioritize(String key, int priority) {
+        Item item = pendingItems.get(key);
+        if (item != null && item.priority < priority) {
+            Item prioritizedItem = new Item(item.artworkProvider, priority, nextSequence++);
+            pendingItems.put(key, prioritizedItem);
+            queue.add(prioritizedItem);
+        }
+    }
+
+    /**
+     * Takes the queued artwork with the passed in key off the queue, so it can be fetched by a request which is already loading it,
+     * rather than being fetched twice. The caller must then call {@link #releaseClaim(Context, ArtworkProvider, boolean)}.
+     *
+     * @return true if the artwork was queued.
+     */
+    public synchronized boolean claim(String key) {
+        return pendingItems.remove(key) != null;
+    }
+
+    /**
+     * Completes a successful {@link #claim(String)}. If the claiming request failed to fetch the artwork, it's queued again.
+     */
+    @WorkerThread
+    public synchronized void releaseClaim(Context context, ArtworkProvider artworkProvider, boolean downloaded) {
+        if (downloaded) {
+            setDownloaded(context, artworkProvider);
+        } else {
+            add(artworkProvider);
+        }
+    }
+
+    /**
+     * @return the highest priority queued artwork, or null if the queue is empty.
+     */
+    @Nullable
+    synchronized ArtworkProvider poll() {
+        Item item;
+        while ((item = queue.poll()) != null) {
+            String key = item.artworkProvider.getArtworkKey();
+            if (pendingItems.get(key) == item) {
+                pendingItems.remove(key);
+                return item.artworkProvider;
+            }
+        }
+        return null;
+    }
+
+    synchronized int size() {
+        return pendingItems.size();
+    }
+
+    synchronized void clearPending() {
+        queue.clear();
+        pendingItems.clear();
+    }
+
+    @WorkerThread
+    synchronized void setDownloaded(Context context, ArtworkProvider artworkProvider) {
+        String key = artworkProvider.getArtworkKey();
+        if (downloadedKeys == null || !downloadedKeys.add(key) || key.indexOf('\n') >= 0) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new FileWriter(getFile(context), true));
+            }
+            writer.write(key);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            LogUtils.logException(TAG, "Failed to record downloaded artwork", e);
+        }
+    }
+
+    /**
+     * Forgets which artwork has been downloaded. Called when the artwork cache is cleared.
+     */
+    @WorkerThread
+    public synchronized void clearDownloaded(Context context) {
+        closeWriter();
+        downloadedKeys = null;
+        if (!getFile(context).delete() && getFile(context).exists()) {
+            LogUtils.logException(TAG, "Failed to delete downloaded artwork record", null);
+        }
+    }
+
+    synchronized void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+            writer = null;
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+}
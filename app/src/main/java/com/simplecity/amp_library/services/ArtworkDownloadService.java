@@ -4,19 +4,30 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.ComponentName;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.widget.Toast;
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.FutureTarget;
 import com.bumptech.glide.request.target.SimpleTarget;
+import com.cantrowitz.rxbroadcast.RxBroadcast;
 import com.simplecity.amp_library.R;
 import com.simplecity.amp_library.data.Repository;
 import com.simplecity.amp_library.glide.loader.ArtworkModelLoader;
+import com.simplecity.amp_library.glide.palette.ColorSet;
+import com.simplecity.amp_library.glide.palette.ColorSetCache;
+import com.simplecity.amp_library.glide.palette.ColorSetTranscoder;
+import com.simplecity.amp_library.model.Album;
 import com.simplecity.amp_library.model.ArtworkProvider;
+import com.simplecity.amp_library.model.Song;
 import com.simplecity.amp_library.notifications.NotificationHelper;
+import com.simplecity.amp_library.playback.MediaManager;
+import com.simplecity.amp_library.playback.constants.InternalIntents;
 import com.simplecity.amp_library.utils.LogUtils;
 import com.simplecity.amp_library.utils.SettingsManager;
 import com.simplecity.amp_library.utils.ShuttleUtils;
@@ -33,11 +44,15 @@ import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 
 /**
- * A service which will download all artist & album artworkProvider, via an AsyncTask, and display the progress in a notification.
- * The notification includes a 'cancel' button, and the AsyncTask & associated HttpRequests can be cancelled.
+ * A service which will download all artist & album artwork, and display the progress in a notification.
+ * The notification includes a 'cancel' button, which cancels any remaining downloads.
+ * <p>
+ * Downloads are taken from the {@link ArtworkDownloadQueue}, a few at a time, so visible & now playing artwork can jump the queue.
+ * Artwork which has already been downloaded is skipped, so if the process is killed the service resumes where it left off.
  */
 public class ArtworkDownloadService extends Service {
 
@@ -47,13 +62,26 @@ public class ArtworkDownloadService extends Service {
 
     private static final int NOTIFICATION_ID = 200;
 
+    private static final int MAX_CONCURRENT_DOWNLOADS = 3;
+
+    private static final long DOWNLOAD_TIMEOUT_SECONDS = 30;
+
+    private static final long NOTIFICATION_INTERVAL_MILLIS = 500;
+
     private int progress = 0;
     private int max = 100;
 
+    private long lastNotificationTime;
+
+    // The number of downloads currently in progress
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
     private CompositeDisposable disposables = new CompositeDisposable();
 
     NotificationHelper notificationHelper;
 
+    private ArtworkDownloadQueue artworkDownloadQueue = ArtworkDownloadQueue.getInstance();
+
     @Inject
     Repository.AlbumsRepository albumsRepository;
 
@@ -63,6 +91,9 @@ public class ArtworkDownloadService extends Service {
     @Inject
     SettingsManager settingsManager;
 
+    @Inject
+    MediaManager mediaManager;
+
     private NotificationCompat.Builder getNotificationBuilder() {
 
         final ComponentName serviceName = new ComponentName(this, ArtworkDownloadService.class);
@@ -94,7 +125,7 @@ public class ArtworkDownloadService extends Service {
 
         notificationHelper.notify(NOTIFICATION_ID, getNotificationBuilder().build());
 
-        Single<List<ArtworkProvider>> sharedItemsSingle = albumArtistsRepository.getAlbumArtists()
+        Single<List<ArtworkProvider>> itemsSingle = albumArtistsRepository.getAlbumArtists()
                 .first(Collections.emptyList())
                 .<ArtworkProvider>flatMapObservable(Observable::fromIterable)
                 .mergeWith(albumsRepository.getAlbums()
@@ -102,32 +133,111 @@ public class ArtworkDownloadService extends Service {
                         .flatMapObservable(Observable::fromIterable))
                 .toList();
 
-        disposables.add(sharedItemsSingle
+        disposables.add(itemsSingle
+                .map(artworkProviders -> {
+                    artworkDownloadQueue.load(this);
+                    for (ArtworkProvider artworkProvider : artworkProviders) {
+                        if (!artworkDownloadQueue.isDownloaded(artworkProvider)) {
+                            artworkDownloadQueue.add(artworkProvider);
+                        }
+                    }
+                    return artworkProviders.size();
+                })
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(list -> {
-                    max = list.size();
-                    updateProgress();
-                }, error -> LogUtils.logException(TAG, "Error determining max", error)));
-
-        disposables.add(sharedItemsSingle.flatMapObservable(Observable::fromIterable)
-                .flatMap(artworkProvider -> Observable.just(artworkProvider)
-                        .map(artwork -> {
-                            FutureTarget<File> futureTarget = Glide.with(ArtworkDownloadService.this)
-                                    .using(new ArtworkModelLoader(this, true), InputStream.class)
-                                    .load(artwork)
-                                    .as(InputStream.class)
-                                    .downloadOnly(SimpleTarget.SIZE_ORIGINAL, SimpleTarget.SIZE_ORIGINAL);
-                            try {
-                                futureTarget.get(30, TimeUnit.SECONDS);
-                            } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                                Log.e(TAG, "Error downloading artworkProvider: " + e);
+                .doOnSuccess(count -> {
+                    max = count;
+                    progress = count - artworkDownloadQueue.size();
+                    prioritizeNowPlaying();
+                    updateNotification(true);
+                })
+                .observeOn(Schedulers.io())
+                .flatMapObservable(count -> Observable.range(0, MAX_CONCURRENT_DOWNLOADS)
+                        .flatMap(worker -> Observable.<ArtworkProvider>create(emitter -> {
+                            ArtworkProvider artworkProvider;
+                            while (!emitter.isDisposed() && (artworkProvider = artworkDownloadQueue.poll()) != null) {
+                                activeDownloads.incrementAndGet();
+                                try {
+                                    if (download(artworkProvider)) {
+                                        artworkDownloadQueue.setDownloaded(this, artworkProvider);
+                                        precomputeColorSet(artworkProvider);
+                                    }
+                                } finally {
+                                    activeDownloads.decrementAndGet();
+                                }
+                                emitter.onNext(artworkProvider);
                             }
-                            Glide.clear(futureTarget);
-                            return artwork;
-                        }))
-                .subscribeOn(Schedulers.computation())
+                            emitter.onComplete();
+                        }).subscribeOn(Schedulers.io())))
+                .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(item -> updateProgress(), error -> LogUtils.logException(TAG, "Error downloading artwork", error)));
+                .subscribe(
+                        artworkProvider -> {
+                            // Visible artwork may be claimed & fetched by the display request instead, so count what's left rather than
+                            // what this service has downloaded.
+                            progress = max - artworkDownloadQueue.size() - activeDownloads.get();
+                            updateNotification(false);
+                        },
+                        error -> {
+                            LogUtils.logException(TAG, "Error downloading artwork", error);
+                            stopSelf();
+                        },
+                        this::stopSelf));
+
+        disposables.add(RxBroadcast.fromBroadcast(this, new IntentFilter(InternalIntents.META_CHANGED))
+                .subscribe(intent -> prioritizeNowPlaying(), error -> LogUtils.logException(TAG, "Error receiving meta changed", error)));
+    }
+
+    /**
+     * @return true if the artwork was downloaded (or was already available).
+     */
+    private boolean download(ArtworkProvider artworkProvider) {
+        FutureTarget<File> futureTarget = Glide.with(ArtworkDownloadService.this)
+                .using(new ArtworkModelLoader(this, true), InputStream.class)
+                .load(artworkProvider)
+                .as(InputStream.class)
+                .downloadOnly(SimpleTarget.SIZE_ORIGINAL, SimpleTarget.SIZE_ORIGINAL);
+        try {
+            return futureTarget.get(DOWNLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS) != null;
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Log.e(TAG, "Error downloading artwork: " + e);
+            return false;
+        } finally {
+            Glide.clear(futureTarget);
+        }
+    }
+
+    /**
+     * Extracts the palette for newly downloaded album artwork, so it's ready by the time the album is played.
+     */
+    private void precomputeColorSet(ArtworkProvider artworkProvider) {
+        if (!(artworkProvider instanceof Album) || !(settingsManager.getUsePalette() || settingsManager.getUsePaletteNowPlayingOnly())) {
+            return;
+        }
+        if (ColorSetCache.getInstance().get(this, artworkProvider) != null) {
+            return;
+        }
+
+        FutureTarget<ColorSet> futureTarget = Glide.with(ArtworkDownloadService.this)
+                .load(artworkProvider)
+                .asBitmap()
+                .transcode(new ColorSetTranscoder(this, artworkProvider), ColorSet.class)
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .into(250, 250);
+        try {
+            futureTarget.get(DOWNLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Log.e(TAG, "Error extracting artwork colors: " + e);
+        } finally {
+            Glide.clear(futureTarget);
+        }
+    }
+
+    private void prioritizeNowPlaying() {
+        Song song = mediaManager.getSong();
+        if (song != null) {
+            artworkDownloadQueue.prioritize(song.getAlbum().getArtworkKey(), ArtworkDownloadQueue.PRIORITY_NOW_PLAYING);
+            artworkDownloadQueue.prioritize(song.getAlbumArtist().getArtworkKey(), ArtworkDownloadQueue.PRIORITY_NOW_PLAYING);
+        }
     }
 
     @Override
@@ -146,25 +256,31 @@ public class ArtworkDownloadService extends Service {
         if (disposables != null) {
             disposables.clear();
         }
+        artworkDownloadQueue.clearPending();
+        artworkDownloadQueue.closeWriter();
         notificationHelper.cancel(NOTIFICATION_ID);
         super.onDestroy();
     }
 
     /**
-     * Increments the progress count and updates the notification with the new value.
-     * If the progress is equal to (or greater) than our count, then this task is finished.
-     * The notification is dismissed and this service is stopped.
+     * Updates the notification with the current progress, at most every {@link #NOTIFICATION_INTERVAL_MILLIS} unless forced.
+     * Once all artwork has been downloaded, the notification is dismissed.
      */
-    private void updateProgress() {
-        progress++;
+    private void updateNotification(boolean force) {
+        if (progress >= max) {
+            notificationHelper.cancel(NOTIFICATION_ID);
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (!force && now - lastNotificationTime < NOTIFICATION_INTERVAL_MILLIS) {
+            return;
+        }
+        lastNotificationTime = now;
 
         NotificationCompat.Builder notificationBuilder = getNotificationBuilder();
         notificationBuilder.setProgress(max, progress, false);
         notificationHelper.notify(NOTIFICATION_ID, notificationBuilder.build());
-
-        if (progress >= max) {
-            notificationHelper.cancel(NOTIFICATION_ID);
-        }
     }
 
     @Override
@@ -174,11 +290,13 @@ public class ArtworkDownloadService extends Service {
             if (action != null && action.equals(ACTION_CANCEL)) {
                 //Handle a notification cancel action click:
                 disposables.clear();
+                artworkDownloadQueue.clearPending();
                 notificationHelper.cancel(NOTIFICATION_ID);
                 stopSelf();
             }
         }
-        return super.onStartCommand(intent, flags, startId);
+        // If the process is killed, restart the service so it can resume the remaining downloads.
+        return START_STICKY;
     }
 
     @Nullable
@@ -0,0 +1,44 @@
+package com.simplecity.amp_library.sql.databases;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+public class ArtworkMissDbOpenHelper extends SQLiteOpenHelper {
+
+    public static final String TABLE_NAME = "artwork_misses";
+
+    public static final String COLUMN_KEY = "artwork_key";
+    public static final String COLUMN_TYPE = "type";
+    public static final String COLUMN_TIME = "time";
+    public static final String COLUMN_VALIDATOR = "validator";
+
+    private static final String DATABASE_NAME = "artwork_misses.db";
+
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String DATABASE_CREATE = "CREATE TABLE IF NOT EXISTS "
+            + TABLE_NAME + "("
+            + COLUMN_KEY + " TEXT NOT NULL, "
+            + COLUMN_TYPE + " INTEGER NOT NULL, "
+            + COLUMN_TIME + " INTEGER NOT NULL, "
+            + COLUMN_VALIDATOR + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_KEY + ", " + COLUMN_TYPE + ")"
+            + ");";
+
+    public ArtworkMissDbOpenHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+        database.execSQL(DATABASE_CREATE);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // This is only a cache, it can always be rebuilt.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,41 @@
+package com.simplecity.amp_library.sql.databases;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+public class ColorSetDbOpenHelper extends SQLiteOpenHelper {
+
+    public static final String TABLE_NAME = "color_sets";
+
+    public static final String COLUMN_KEY = "artwork_key";
+    public static final String COLUMN_PRIMARY_COLOR = "primary_color";
+    public static final String COLUMN_ACCENT_COLOR = "accent_color";
+
+    private static final String DATABASE_NAME = "color_sets.db";
+
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String DATABASE_CREATE = "CREATE TABLE IF NOT EXISTS "
+            + TABLE_NAME + "("
+            + COLUMN_KEY + " TEXT PRIMARY KEY, "
+            + COLUMN_PRIMARY_COLOR + " INTEGER NOT NULL, "
+            + COLUMN_ACCENT_COLOR + " INTEGER NOT NULL"
+            + ");";
+
+    public ColorSetDbOpenHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+        database.execSQL(DATABASE_CREATE);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // This is only a cache, it can always be rebuilt.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,73 @@
+package com.simplecity.amp_library.sql.databases;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+public class TagCacheDbOpenHelper extends SQLiteOpenHelper {
+
+    public static final String TABLE_NAME = "tag_cache";
+
+    public static final String COLUMN_PATH = "path";
+    public static final String COLUMN_SIZE = "size";
+    public static final String COLUMN_MODIFIED = "modified";
+    public static final String COLUMN_READABLE = "readable";
+    public static final String COLUMN_ARTIST = "artist";
+    public static final String COLUMN_ALBUM_ARTIST = "album_artist";
+    public static final String COLUMN_ALBUM = "album";
+    public static final String COLUMN_TITLE = "title";
+    public static final String COLUMN_TRACK = "track";
+    public static final String COLUMN_TRACK_TOTAL = "track_total";
+    public static final String COLUMN_DISC = "disc";
+    public static final String COLUMN_DISC_TOTAL = "disc_total";
+    public static final String COLUMN_YEAR = "year";
+    public static final String COLUMN_GENRE = "genre";
+    public static final String COLUMN_BITRATE = "bitrate";
+    public static final String COLUMN_FORMAT = "format";
+    public static final String COLUMN_SAMPLE_RATE = "sample_rate";
+    public static final String COLUMN_LYRICS = "lyrics";
+    public static final String COLUMN_HAS_ARTWORK = "has_artwork";
+
+    private static final String DATABASE_NAME = "tag_cache.db";
+
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String DATABASE_CREATE = "CREATE TABLE IF NOT EXISTS "
+            + TABLE_NAME + "("
+            + COLUMN_PATH + " TEXT PRIMARY KEY, "
+            + COLUMN_SIZE + " INTEGER NOT NULL, "
+            + COLUMN_MODIFIED + " INTEGER NOT NULL, "
+            + COLUMN_READABLE + " INTEGER NOT NULL, "
+            + COLUMN_ARTIST + " TEXT, "
+            + COLUMN_ALBUM_ARTIST + " TEXT, "
+            + COLUMN_ALBUM + " TEXT, "
+            + COLUMN_TITLE + " TEXT, "
+            + COLUMN_TRACK + " TEXT, "
+            + COLUMN_TRACK_TOTAL + " TEXT, "
+            + COLUMN_DISC + " TEXT, "
+            + COLUMN_DISC_TOTAL + " TEXT, "
+            + COLUMN_YEAR + " TEXT, "
+            + COLUMN_GENRE + " TEXT, "
+            + COLUMN_BITRATE + " TEXT, "
+            + COLUMN_FORMAT + " TEXT, "
+            + COLUMN_SAMPLE_RATE + " INTEGER, "
+            + COLUMN_LYRICS + " TEXT, "
+            + COLUMN_HAS_ARTWORK + " INTEGER"
+            + ");";
+
+    public TagCacheDbOpenHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+        database.execSQL(DATABASE_CREATE);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // This is only a cache, it can always be rebuilt.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+        onCreate(db);
+    }
+}
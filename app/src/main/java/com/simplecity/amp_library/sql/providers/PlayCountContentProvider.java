@@ -7,11 +7,16 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 import com.simplecity.amp_library.BuildConfig;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class PlayCountContentProvider extends ContentProvider {
 
@@ -19,11 +24,20 @@ public class PlayCountContentProvider extends ContentProvider {
 
     private PlayCountTable database;
 
+    private static final long NOTIFY_DELAY_MILLIS = 500;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Uris with a change notification waiting to be sent by notifyPendingChanges
+    private final Set<Uri> pendingNotifications = new HashSet<>();
+
     // Used for the Uri Matcher
     private static final int PLAY_COUNT = 10;
 
     private static final int PLAY_COUNT_ID = 20;
 
+    private static final int PLAY_EVENTS = 30;
+
     private static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".play_count.contentprovider";
 
     private static final String BASE_PATH = "play_count";
@@ -33,6 +47,7 @@ public class PlayCountContentProvider extends ContentProvider {
     static {
         sURIMatcher.addURI(AUTHORITY, BASE_PATH, PLAY_COUNT);
         sURIMatcher.addURI(AUTHORITY, BASE_PATH + "/#", PLAY_COUNT_ID);
+        sURIMatcher.addURI(AUTHORITY, PlayCountTable.TABLE_PLAY_EVENTS, PLAY_EVENTS);
     }
 
     @Override
@@ -48,15 +63,17 @@ public class PlayCountContentProvider extends ContentProvider {
         // Using SQLiteQueryBuilder instead of query() method
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
 
+        int uriType = sURIMatcher.match(uri);
+
         // Check if the caller has requested a column which does not exists
-        checkColumns(projection);
+        checkColumns(projection, uriType == PLAY_EVENTS);
 
         // Set the table
-        queryBuilder.setTables(PlayCountTable.TABLE_PLAY_COUNT);
+        queryBuilder.setTables(uriType == PLAY_EVENTS ? PlayCountTable.TABLE_PLAY_EVENTS : PlayCountTable.TABLE_PLAY_COUNT);
 
-        int uriType = sURIMatcher.match(uri);
         switch (uriType) {
             case PLAY_COUNT:
+            case PLAY_EVENTS:
                 break;
             case PLAY_COUNT_ID:
                 // Adding the ID to the original query
@@ -89,11 +106,24 @@ public class PlayCountContentProvider extends ContentProvider {
             case PLAY_COUNT:
                 id = sqlDB.insert(PlayCountTable.TABLE_PLAY_COUNT, null, values);
                 break;
+            case PLAY_EVENTS:
+                // The play count is updated by a trigger as part of the same insert
+                id = sqlDB.insert(PlayCountTable.TABLE_PLAY_EVENTS, null, values);
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
         if (id != -1) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (uriType == PLAY_EVENTS) {
+                notifyChangeDelayed(uri);
+                // Only completed plays touch the play count table (via the count_play trigger)
+                Integer completed = values.getAsInteger(PlayCountTable.COLUMN_EVENT_COMPLETED);
+                if (completed != null && completed == 1) {
+                    notifyChangeDelayed(PlayCountTable.URI);
+                }
+            } else {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
         }
         return Uri.parse(BASE_PATH + "/" + id);
     }
@@ -121,6 +151,9 @@ public class PlayCountContentProvider extends ContentProvider {
                     );
                 }
                 break;
+            case PLAY_EVENTS:
+                rowsDeleted = sqlDB.delete(PlayCountTable.TABLE_PLAY_EVENTS, selection, selectionArgs);
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
@@ -167,8 +200,37 @@ public class PlayCountContentProvider extends ContentProvider {
         return rowsUpdated;
     }
 
-    private void checkColumns(String[] projection) {
-        String[] available = {
+    /**
+     * Notifies observers of the passed in uri after a short delay, so the observers of play counts, which re-query the whole table, only
+     * re-query once for events written in quick succession (e.g. skipping through several tracks).
+     */
+    private void notifyChangeDelayed(Uri uri) {
+        synchronized (pendingNotifications) {
+            if (pendingNotifications.add(uri) && pendingNotifications.size() == 1) {
+                handler.postDelayed(notifyPendingChanges, NOTIFY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private final Runnable notifyPendingChanges = () -> {
+        List<Uri> uris;
+        synchronized (pendingNotifications) {
+            uris = new ArrayList<>(pendingNotifications);
+            pendingNotifications.clear();
+        }
+        for (Uri uri : uris) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    };
+
+    private void checkColumns(String[] projection, boolean isPlayEvents) {
+        String[] available = isPlayEvents ? new String[] {
+                PlayCountTable.COLUMN_EVENT_ID,
+                PlayCountTable.COLUMN_EVENT_SONG_ID,
+                PlayCountTable.COLUMN_EVENT_TIME,
+                PlayCountTable.COLUMN_EVENT_ELAPSED,
+                PlayCountTable.COLUMN_EVENT_COMPLETED
+        } : new String[] {
                 PlayCountTable.COLUMN_ID,
                 PlayCountTable.COLUMN_PLAY_COUNT,
                 PlayCountTable.COLUMN_TIME_PLAYED
@@ -12,7 +12,7 @@ public class PlayCountTable extends SQLiteOpenHelper {
     private Context applicationContext;
 
     private static final String DATABASE_NAME = "play_count.db";
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 3;
 
     public static final String TABLE_PLAY_COUNT = "play_count";
 
@@ -28,19 +28,73 @@ public class PlayCountTable extends SQLiteOpenHelper {
             + COLUMN_TIME_PLAYED + " LONG DEFAULT 0"
             + ");";
 
+    /**
+     * An append-only log of each track which finished or was skipped. Completed plays update {@link #TABLE_PLAY_COUNT} via
+     * {@link #TRIGGER_COUNT_PLAY}, so the count & last played time are always consistent with the log.
+     */
+    public static final String TABLE_PLAY_EVENTS = "play_events";
+
+    public static final String COLUMN_EVENT_ID = "_id";
+    public static final String COLUMN_EVENT_SONG_ID = "song_id";
+    public static final String COLUMN_EVENT_TIME = "time";
+    public static final String COLUMN_EVENT_ELAPSED = "elapsed";
+    public static final String COLUMN_EVENT_COMPLETED = "completed";
+
+    private static final String PLAY_EVENTS_CREATE = "create table if not exists "
+            + TABLE_PLAY_EVENTS
+            + "("
+            + COLUMN_EVENT_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_EVENT_SONG_ID + " LONG NOT NULL, "
+            + COLUMN_EVENT_TIME + " LONG NOT NULL, "
+            + COLUMN_EVENT_ELAPSED + " LONG DEFAULT 0, "
+            + COLUMN_EVENT_COMPLETED + " INTEGER DEFAULT 0"
+            + ");";
+
+    private static final String PLAY_EVENTS_INDEX_CREATE = "create index if not exists "
+            + TABLE_PLAY_EVENTS + "_" + COLUMN_EVENT_TIME
+            + " on " + TABLE_PLAY_EVENTS + "(" + COLUMN_EVENT_TIME + ");";
+
+    private static final String TRIGGER_COUNT_PLAY = "count_play";
+
+    private static final String TRIGGER_COUNT_PLAY_CREATE = "create trigger if not exists "
+            + TRIGGER_COUNT_PLAY
+            + " after insert on " + TABLE_PLAY_EVENTS
+            + " when new." + COLUMN_EVENT_COMPLETED + " = 1"
+            + " begin"
+            + " insert or replace into " + TABLE_PLAY_COUNT + "(" + COLUMN_ID + ", " + COLUMN_PLAY_COUNT + ", " + COLUMN_TIME_PLAYED + ")"
+            + " values (new." + COLUMN_EVENT_SONG_ID + ", "
+            + "coalesce((select " + COLUMN_PLAY_COUNT + " from " + TABLE_PLAY_COUNT + " where " + COLUMN_ID + " = new." + COLUMN_EVENT_SONG_ID + "), 0) + 1, "
+            + "new." + COLUMN_EVENT_TIME + ");"
+            + " end;";
+
     public static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".play_count.contentprovider";
 
     public static final Uri URI = Uri.parse("content://" + AUTHORITY + "/" + TABLE_PLAY_COUNT);
 
+    public static final Uri EVENTS_URI = Uri.parse("content://" + AUTHORITY + "/" + TABLE_PLAY_EVENTS);
+
     public PlayCountTable(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
 
         this.applicationContext = context.getApplicationContext();
     }
 
+    @Override
+    public void onConfigure(SQLiteDatabase database) {
+        // Play events are written from the playback service while the UI reads play counts, so don't let them block each other
+        database.enableWriteAheadLogging();
+    }
+
     @Override
     public void onCreate(SQLiteDatabase database) {
         database.execSQL(DATABASE_CREATE);
+        createPlayEvents(database);
+    }
+
+    private static void createPlayEvents(SQLiteDatabase database) {
+        database.execSQL(PLAY_EVENTS_CREATE);
+        database.execSQL(PLAY_EVENTS_INDEX_CREATE);
+        database.execSQL(TRIGGER_COUNT_PLAY_CREATE);
     }
 
     @Override
@@ -110,5 +164,8 @@ public class PlayCountTable extends SQLiteOpenHelper {
             }
             //SQLiteOpenHelper will automatically setTransactionSuccessful & endTransaction for us.
         }
+        if (oldVersion < 3) {
+            createPlayEvents(db);
+        }
     }
 }
\ No newline at end of file
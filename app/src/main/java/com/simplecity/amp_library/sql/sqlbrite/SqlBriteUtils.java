@@ -47,6 +47,19 @@ public final class SqlBriteUtils {
                 .lift(new QueryToOneOperator<>(mapper, defaultValue));
     }
 
+    /**
+     * Creates an {@link Observable} that emits the result of mapping the whole {@link Cursor}, when subscribed and when the content
+     * provider notifies of a change. Emits the default value if the query returns no cursor.
+     */
+    public static <T> Observable<T> createObservableFromCursor(@NonNull Context context, @NonNull Function<Cursor, T> mapper, @NonNull Query query, T defaultValue) {
+        return createObservable(context, query)
+                .map(sqlBriteQuery -> {
+                    try (Cursor cursor = sqlBriteQuery.run()) {
+                        return cursor != null ? mapper.apply(cursor) : defaultValue;
+                    }
+                });
+    }
+
     /**
      * Creates a {@link Single} that emits an item.
      */
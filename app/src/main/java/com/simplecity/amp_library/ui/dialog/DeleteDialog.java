@@ -327,12 +327,17 @@ public class DeleteDialog extends DialogFragment implements SafManager.SafDialog
         // Remove songs from current play queue
         mediaManager.removeSongsFromQueue(deletedSongs);
 
-        // Remove songs from play count table
+        // Remove songs from play count & play events tables
         List<ContentProviderOperation> operations = Stream.of(deletedSongs).map(song -> ContentProviderOperation
                 .newDelete(PlayCountTable.URI)
                 .withSelection(PlayCountTable.COLUMN_ID + "=" + song.id, null)
                 .build())
                 .collect(Collectors.toCollection(ArrayList::new));
+        operations.addAll(Stream.of(deletedSongs).map(song -> ContentProviderOperation
+                .newDelete(PlayCountTable.EVENTS_URI)
+                .withSelection(PlayCountTable.COLUMN_EVENT_SONG_ID + "=" + song.id, null)
+                .build())
+                .toList());
         try {
             getContext().getContentResolver().applyBatch(PlayCountTable.AUTHORITY, operations);
         } catch (RemoteException | OperationApplicationException e) {
@@ -14,6 +14,7 @@ import com.simplecity.amp_library.R
 import com.simplecity.amp_library.R.id.album
 import com.simplecity.amp_library.R.id.artist
 import com.simplecity.amp_library.model.FileObject
+import com.simplecity.amp_library.model.TagInfo
 import com.simplecity.amp_library.utils.FileHelper
 
 class FileInfoDialog : DialogFragment() {
@@ -24,6 +25,10 @@ class FileInfoDialog : DialogFragment() {
         super.onAttach(context)
 
         fileObject = arguments!!.getSerializable(ARG_FILE_OBJECT) as FileObject
+        if (fileObject!!.tagInfo == null) {
+            // The folder browser may not have loaded the tags yet
+            fileObject!!.tagInfo = TagInfo(fileObject!!.path)
+        }
     }
 
     override fun onCreateDialog(savedInstanceState: Bundle?): Dialog {
@@ -35,41 +40,41 @@ class FileInfoDialog : DialogFragment() {
         val titleKey = titleView.findViewById<TextView>(R.id.key)
         titleKey.setText(R.string.song_title)
         val titleValue = titleView.findViewById<TextView>(R.id.value)
-        titleValue.text = fileObject!!.tagInfo.trackName
+        titleValue.text = fileObject!!.tagInfo!!.trackName
 
         val trackNumberView = view.findViewById<View>(R.id.track_number)
         val trackNumberKey = trackNumberView.findViewById<TextView>(R.id.key)
         trackNumberKey.setText(R.string.track_number)
         val trackNumberValue = trackNumberView.findViewById<TextView>(R.id.value)
-        if (fileObject!!.tagInfo.trackTotal != 0) {
-            trackNumberValue.text = String.format(context!!.getString(R.string.track_count), fileObject!!.tagInfo.trackNumber.toString(), fileObject!!.tagInfo.trackTotal.toString())
+        if (fileObject!!.tagInfo!!.trackTotal != 0) {
+            trackNumberValue.text = String.format(context!!.getString(R.string.track_count), fileObject!!.tagInfo!!.trackNumber.toString(), fileObject!!.tagInfo!!.trackTotal.toString())
         } else {
-            trackNumberValue.text = fileObject!!.tagInfo.trackNumber.toString()
+            trackNumberValue.text = fileObject!!.tagInfo!!.trackNumber.toString()
         }
 
         val artistView = view.findViewById<View>(artist)
         val artistKey = artistView.findViewById<TextView>(R.id.key)
         artistKey.setText(R.string.artist_title)
         val artistValue = artistView.findViewById<TextView>(R.id.value)
-        artistValue.text = fileObject!!.tagInfo.artistName
+        artistValue.text = fileObject!!.tagInfo!!.artistName
 
         val albumView = view.findViewById<View>(album)
         val albumKey = albumView.findViewById<TextView>(R.id.key)
         albumKey.setText(R.string.album_title)
         val albumValue = albumView.findViewById<TextView>(R.id.value)
-        albumValue.text = fileObject!!.tagInfo.albumName
+        albumValue.text = fileObject!!.tagInfo!!.albumName
 
         val genreView = view.findViewById<View>(R.id.genre)
         val genreKey = genreView.findViewById<TextView>(R.id.key)
         genreKey.setText(R.string.genre_title)
         val genreValue = genreView.findViewById<TextView>(R.id.value)
-        genreValue.text = fileObject!!.tagInfo.genre
+        genreValue.text = fileObject!!.tagInfo!!.genre
 
         val albumArtistView = view.findViewById<View>(R.id.album_artist)
         val albumArtistKey = albumArtistView.findViewById<TextView>(R.id.key)
         albumArtistKey.setText(R.string.album_artist_title)
         val albumArtistValue = albumArtistView.findViewById<TextView>(R.id.value)
-        albumArtistValue.text = fileObject!!.tagInfo.albumArtistName
+        albumArtistValue.text = fileObject!!.tagInfo!!.albumArtistName
 
         val durationView = view.findViewById<View>(R.id.duration)
         val durationKey = durationView.findViewById<TextView>(R.id.key)
@@ -87,10 +92,10 @@ class FileInfoDialog : DialogFragment() {
         val discNumberKey = discNumberView.findViewById<TextView>(R.id.key)
         discNumberKey.setText(R.string.disc_number)
         val discNumberValue = discNumberView.findViewById<TextView>(R.id.value)
-        if (fileObject!!.tagInfo.discTotal != 0) {
-            discNumberValue.text = String.format(context!!.getString(R.string.track_count), fileObject!!.tagInfo.discNumber.toString(), fileObject!!.tagInfo.discTotal.toString())
+        if (fileObject!!.tagInfo!!.discTotal != 0) {
+            discNumberValue.text = String.format(context!!.getString(R.string.track_count), fileObject!!.tagInfo!!.discNumber.toString(), fileObject!!.tagInfo!!.discTotal.toString())
         } else {
-            discNumberValue.text = fileObject!!.tagInfo.discNumber.toString()
+            discNumberValue.text = fileObject!!.tagInfo!!.discNumber.toString()
         }
 
         val fileSizeView = view.findViewById<View>(R.id.file_size)
@@ -103,19 +108,19 @@ class FileInfoDialog : DialogFragment() {
         val formatKey = formatView.findViewById<TextView>(R.id.key)
         formatKey.setText(R.string.song_info_format)
         val formatValue = formatView.findViewById<TextView>(R.id.value)
-        formatValue.text = fileObject!!.tagInfo.format
+        formatValue.text = fileObject!!.tagInfo!!.format
 
         val bitrateView = view.findViewById<View>(R.id.bitrate)
         val bitrateKey = bitrateView.findViewById<TextView>(R.id.key)
         bitrateKey.setText(R.string.song_info_bitrate)
         val bitrateValue = bitrateView.findViewById<TextView>(R.id.value)
-        bitrateValue.text = fileObject!!.tagInfo.bitrate + context!!.getString(R.string.song_info_bitrate_suffix)
+        bitrateValue.text = fileObject!!.tagInfo!!.bitrate + context!!.getString(R.string.song_info_bitrate_suffix)
 
         val samplingRateView = view.findViewById<View>(R.id.sample_rate)
         val samplingRateKey = samplingRateView.findViewById<TextView>(R.id.key)
         samplingRateKey.setText(R.string.song_info_sample_Rate)
         val samplingRateValue = samplingRateView.findViewById<TextView>(R.id.value)
-        samplingRateValue.text = (fileObject!!.tagInfo.sampleRate / 1000).toString() + context!!.getString(R.string.song_info_sample_rate_suffix)
+        samplingRateValue.text = (fileObject!!.tagInfo!!.sampleRate / 1000).toString() + context!!.getString(R.string.song_info_sample_rate_suffix)
 
         val playCountView = view.findViewById<View>(R.id.play_count)
         playCountView.visibility = View.GONE
@@ -173,16 +173,14 @@ public class FolderView extends BaseSelectableViewModel<FolderView.ViewHolder> {
             case FileType.FOLDER:
                 holder.overflow.setVisibility(View.VISIBLE);
                 holder.imageView.setImageDrawable(holder.folderDrawable);
-                holder.lineTwo.setText(StringUtils.makeSubfoldersLabel(holder.itemView.getContext(), ((FolderObject) baseFileObject).folderCount, ((FolderObject) baseFileObject).fileCount));
                 holder.lineThree.setVisibility(View.GONE);
-                holder.lineOne.setText(baseFileObject.name);
+                bindText(holder);
                 break;
             case FileType.FILE:
                 holder.overflow.setVisibility(View.VISIBLE);
                 holder.imageView.setImageDrawable(holder.fileDrawable);
                 holder.lineThree.setVisibility(View.VISIBLE);
-                holder.lineOne.setText(((FileObject) baseFileObject).tagInfo.trackName);
-                holder.lineTwo.setText(String.format("%s - %s", ((FileObject) baseFileObject).tagInfo.artistName, ((FileObject) baseFileObject).tagInfo.albumName));
+                bindText(holder);
                 DurationTask durationTask = new DurationTask(holder.lineThree, (FileObject) baseFileObject);
                 durationTask.execute();
                 break;
@@ -204,6 +202,8 @@ public class FolderView extends BaseSelectableViewModel<FolderView.ViewHolder> {
     public void bindView(ViewHolder holder, int position, List payloads) {
         super.bindView(holder, position, payloads);
 
+        bindText(holder);
+
         if (baseFileObject instanceof FileObject && settingsManager.getFolderBrowserShowFileNames()) {
             holder.lineFour.setText(String.format("%s.%s", ((FileObject) baseFileObject).name, ((FileObject) baseFileObject).extension));
             holder.lineFour.setVisibility(View.VISIBLE);
@@ -225,6 +225,31 @@ public class FolderView extends BaseSelectableViewModel<FolderView.ViewHolder> {
         holder.itemView.setActivated(false);
     }
 
+    /**
+     * Binds the lines which depend on the tag info or child counts, which may be loaded after the view is first bound.
+     */
+    private void bindText(ViewHolder holder) {
+        switch (baseFileObject.fileType) {
+            case FileType.FOLDER:
+                FolderObject folderObject = (FolderObject) baseFileObject;
+                holder.lineOne.setText(folderObject.name);
+                holder.lineTwo.setText(folderObject.hasCounts
+                        ? StringUtils.makeSubfoldersLabel(holder.itemView.getContext(), folderObject.folderCount, folderObject.fileCount)
+                        : null);
+                break;
+            case FileType.FILE:
+                FileObject fileObject = (FileObject) baseFileObject;
+                if (fileObject.tagInfo != null) {
+                    holder.lineOne.setText(fileObject.tagInfo.trackName);
+                    holder.lineTwo.setText(String.format("%s - %s", fileObject.tagInfo.artistName, fileObject.tagInfo.albumName));
+                } else {
+                    holder.lineOne.setText(fileObject.name);
+                    holder.lineTwo.setText(null);
+                }
+                break;
+        }
+    }
+
     @Override
     public ViewHolder createViewHolder(ViewGroup parent) {
         return new ViewHolder(createView(parent));
@@ -337,6 +362,20 @@ public class FolderView extends BaseSelectableViewModel<FolderView.ViewHolder> {
         if (other == null || getClass() != other.getClass()) return false;
         if (!super.areContentsEqual(other)) return false;
 
-        return !baseFileObject.equals(((FolderView) other).baseFileObject)
+        BaseFileObject otherFileObject = ((FolderView) other).baseFileObject;
+        if (!baseFileObject.equals(otherFileObject)) return false;
+
+        // The folder browser fills in tag info & child counts after the initial load
+        if (baseFileObject instanceof FileObject) {
+            return ((FileObject) baseFileObject).tagInfo == ((FileObject) otherFileObject).tagInfo;
+        }
+        if (baseFileObject instanceof FolderObject) {
+            FolderObject folderObject = (FolderObject) baseFileObject;
+            FolderObject otherFolderObject = (FolderObject) otherFileObject;
+            return folderObject.hasCounts == otherFolderObject.hasCounts
+                    && folderObject.folderCount == otherFolderObject.folderCount
+                    && folderObject.fileCount == otherFolderObject.fileCount;
+        }
+        return true;
     }
 }
@@ -22,11 +22,13 @@ import com.simplecity.amp_library.utils.PlaceholderProvider;
 import com.simplecity.amp_library.utils.SettingsManager;
 import com.simplecity.amp_library.utils.StringUtils;
 import com.simplecity.amp_library.utils.sorting.SortManager;
+import com.simplecityapps.recycler_adapter.model.KeyHasher;
+import com.simplecityapps.recycler_adapter.model.StableKeys;
 import com.simplecityapps.recycler_adapter.recyclerview.BaseViewHolder;
 import java.util.Arrays;
 import java.util.List;
 
-public class SongView extends BaseSelectableViewModel<SongView.ViewHolder> implements SectionedView {
+public class SongView extends BaseSelectableViewModel<SongView.ViewHolder> implements SectionedView, StableKeys {
 
     public interface ClickListener {
 
@@ -291,6 +293,31 @@ public class SongView extends BaseSelectableViewModel<SongView.ViewHolder> imple
         return false;
     }
 
+    @Override
+    public long getItemKey() {
+        long key = songKey();
+        key = KeyHasher.mix(key, editable);
+        key = KeyHasher.mix(key, showAlbumArt);
+        key = KeyHasher.mix(key, showPlayCount);
+        key = KeyHasher.mix(key, showTrackNumber);
+        key = KeyHasher.mix(key, showArtistName);
+        return KeyHasher.mix(key, showAlbumName);
+    }
+
+    @Override
+    public long getContentsHash() {
+        return KeyHasher.mix(songKey(), prefix);
+    }
+
+    private long songKey() {
+        if (song == null) {
+            return KeyHasher.SEED;
+        }
+        long key = KeyHasher.mix(KeyHasher.SEED, song.id);
+        key = KeyHasher.mix(key, song.artistId);
+        return KeyHasher.mix(key, song.albumId);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -2,6 +2,7 @@ package com.simplecity.amp_library.ui.screens.folders;
 
 import android.annotation.SuppressLint;
 import android.os.Bundle;
+import android.support.v4.util.Pair;
 import android.support.design.widget.AppBarLayout;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.PopupMenu;
@@ -21,7 +22,6 @@ import butterknife.ButterKnife;
 import butterknife.Unbinder;
 import com.afollestad.aesthetic.Aesthetic;
 import com.afollestad.aesthetic.ViewBackgroundAction;
-import com.annimon.stream.Collectors;
 import com.annimon.stream.IntStream;
 import com.annimon.stream.Stream;
 import com.simplecity.amp_library.R;
@@ -64,12 +64,15 @@ import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.annotations.Nullable;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.functions.Function3;
 import io.reactivex.schedulers.Schedulers;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.inject.Inject;
 import kotlin.Unit;
 import org.jetbrains.annotations.NotNull;
@@ -138,6 +141,9 @@ public class FolderFragment extends BaseFragment implements
     @Nullable
     private Disposable setItemsDisposable;
 
+    @Nullable
+    private Disposable changeDirDisposable;
+
     @Inject
     Repository.BlacklistRepository blacklistRepository;
 
@@ -226,6 +232,12 @@ public class FolderFragment extends BaseFragment implements
         recyclerView.setRecyclerListener(new RecyclerListener());
         recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
         recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                updateVisibleRows();
+            }
+        });
 
         compositeDisposable.add(Aesthetic.get(getContext())
                 .colorPrimary()
@@ -362,49 +374,25 @@ public class FolderFragment extends BaseFragment implements
         changeDir(new File(item.getItemPath()));
     }
 
-    @SuppressLint("CheckResult")
     public void changeDir(File newDir) {
-        disposables.add(Single.zip(
+        if (changeDirDisposable != null) {
+            disposables.remove(changeDirDisposable);
+        }
+
+        changeDirDisposable = Single.zip(
                 whitelistRepository.getWhitelistItems(songsRepository).first(Collections.emptyList()),
                 blacklistRepository.getBlacklistItems(songsRepository).first(Collections.emptyList()),
-                Single.fromCallable(() -> {
+                (whitelist, blacklist) -> new Pair<>(getPaths(whitelist), getPaths(blacklist)))
+                .flatMapObservable(inclExclPaths -> {
                     final String path = FileHelper.getPath(newDir);
                     if (TextUtils.isEmpty(path)) {
-                        return new List<>();
+                        return Observable.just(createViewModels(Collections.emptyList(), inclExclPaths.first, inclExclPaths.second));
                     }
                     currentDir = path;
-                    return fileBrowser.loadDir(new File(path));
-                }),
-                (Function3<List<InclExclItem>, List<InclExclItem>, List<BaseFileObject>, List<ViewModel>>) (whitelist, blacklist, baseFileObjects) -> {
-                    List<ViewModel> items = Stream.of(baseFileObjects)
-                            .map(baseFileObject -> {
-
-                                // Look for an existing FolderView wrapping the BaseFileObject, we'll reuse it if it exists.
-                                FolderView folderView = (FolderView) Stream.of(adapter.items)
-                                        .filter(viewModel -> viewModel instanceof FolderView && (((FolderView) viewModel).baseFileObject.equals(baseFileObject)))
-                                        .findFirst()
-                                        .orElse(null);
-
-                                if (folderView == null) {
-                                    folderView = new FolderView(baseFileObject, whitelistRepository, blacklistRepository, settingsManager,
-                                            Stream.of(whitelist).anyMatch(inclExclItem -> inclExclItem.path.equals(baseFileObject.path)),
-                                            Stream.of(blacklist).anyMatch(inclExclItem -> inclExclItem.path.equals(baseFileObject.path)));
-                                    folderView.setShowWhitelist(isShowingWhitelist);
-                                    folderView.setShowBlacklist(isShowingBlacklist);
-                                    folderView.setClickListener(FolderFragment.this);
-                                }
-
-                                return folderView;
-                            })
-                            .collect(Collectors.toList());
-
-                    if (showBreadcrumbsInList && breadcrumbsView != null) {
-                        breadcrumbsView.setBreadcrumbsPath(currentDir);
-                        breadcrumbsView.setListener(FolderFragment.this);
-                        items.add(0, breadcrumbsView);
-                    }
-                    return items;
-                }).subscribeOn(Schedulers.io())
+                    return fileBrowser.loadDir(new File(path))
+                            .map(baseFileObjects -> createViewModels(baseFileObjects, inclExclPaths.first, inclExclPaths.second));
+                })
+                .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
                         adaptableItems -> {
@@ -420,8 +408,65 @@ public class FolderFragment extends BaseFragment implements
                             }
                             updateMenuItems();
                         },
-                        error -> LogUtils.logException(TAG, "Error changing dir", error))
-        );
+                        error -> LogUtils.logException(TAG, "Error changing dir", error));
+        disposables.add(changeDirDisposable);
+    }
+
+    /**
+     * Lets the file browser know which rows are on screen, so their tags & counts are loaded first.
+     */
+    private void updateVisibleRows() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        // The breadcrumbs view isn't one of the file browser's rows
+        int offset = showBreadcrumbsInList && breadcrumbsView != null ? 1 : 0;
+        fileBrowser.setVisibleRows(layoutManager.findFirstVisibleItemPosition() - offset, layoutManager.findLastVisibleItemPosition() - offset);
+    }
+
+    private static Set<String> getPaths(List<InclExclItem> inclExclItems) {
+        Set<String> paths = new HashSet<>(inclExclItems.size());
+        for (InclExclItem inclExclItem : inclExclItems) {
+            paths.add(inclExclItem.path);
+        }
+        return paths;
+    }
+
+    private List<ViewModel> createViewModels(List<BaseFileObject> baseFileObjects, Set<String> whitelistPaths, Set<String> blacklistPaths) {
+
+        // Existing FolderViews wrapping an identical BaseFileObject are reused.
+        Map<BaseFileObject, FolderView> existingFolderViews = new HashMap<>();
+        for (ViewModel viewModel : new ArrayList<>(adapter.items)) {
+            if (viewModel instanceof FolderView) {
+                existingFolderViews.put(((FolderView) viewModel).baseFileObject, (FolderView) viewModel);
+            }
+        }
+
+        List<ViewModel> items = new ArrayList<>(baseFileObjects.size() + 1);
+        for (BaseFileObject baseFileObject : baseFileObjects) {
+            FolderView folderView = existingFolderViews.get(baseFileObject);
+
+            // The file browser emits a new BaseFileObject once its tag info or child counts are loaded
+            if (folderView == null || folderView.baseFileObject != baseFileObject) {
+                FolderView existingFolderView = folderView;
+                folderView = new FolderView(baseFileObject, whitelistRepository, blacklistRepository, settingsManager,
+                        whitelistPaths.contains(baseFileObject.path),
+                        blacklistPaths.contains(baseFileObject.path));
+                folderView.setShowWhitelist(isShowingWhitelist);
+                folderView.setShowBlacklist(isShowingBlacklist);
+                folderView.setClickListener(FolderFragment.this);
+                if (existingFolderView != null) {
+                    folderView.setSelected(existingFolderView.isSelected());
+                }
+            }
+
+            items.add(folderView);
+        }
+
+        if (showBreadcrumbsInList && breadcrumbsView != null) {
+            breadcrumbsView.setBreadcrumbsPath(currentDir);
+            breadcrumbsView.setListener(FolderFragment.this);
+            items.add(0, breadcrumbsView);
+        }
+        return items;
     }
 
     public void reload() {
@@ -13,16 +13,9 @@ import com.simplecity.amp_library.playback.constants.InternalIntents
 import com.simplecity.amp_library.sql.SqlUtils
 import com.simplecity.amp_library.ui.common.Presenter
 import com.simplecity.amp_library.utils.LogUtils
+import com.simplecity.amp_library.utils.TagCache
 import io.reactivex.BackpressureStrategy
 import io.reactivex.Observable
-import org.jaudiotagger.audio.AudioFileIO
-import org.jaudiotagger.audio.exceptions.CannotReadException
-import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException
-import org.jaudiotagger.audio.exceptions.ReadOnlyFileException
-import org.jaudiotagger.tag.FieldKey
-import org.jaudiotagger.tag.TagException
-import java.io.File
-import java.io.IOException
 import java.util.concurrent.Callable
 import javax.inject.Inject
 
@@ -95,26 +88,9 @@ constructor(
                     }
                 }
 
-                val file = File(path)
-                if (file.exists()) {
-                    try {
-                        val audioFile = AudioFileIO.read(file)
-                        if (audioFile != null) {
-                            val tag = audioFile.tag
-                            if (tag != null) {
-                                val tagLyrics = tag.getFirst(FieldKey.LYRICS)
-                                if (tagLyrics != null && tagLyrics.isNotEmpty()) {
-                                    lyrics = tagLyrics.replace("\r", "\n")
-                                }
-                            }
-                        }
-                    } catch (ignored: CannotReadException) {
-                    } catch (ignored: IOException) {
-                    } catch (ignored: TagException) {
-                    } catch (ignored: ReadOnlyFileException) {
-                    } catch (ignored: InvalidAudioFrameException) {
-                    } catch (ignored: UnsupportedOperationException) {
-                    }
+                val tagLyrics = TagCache.getInstance().get(path)?.lyrics
+                if (tagLyrics != null && tagLyrics.isNotEmpty()) {
+                    lyrics = tagLyrics.replace("\r", "\n")
                 }
                 lyrics
             })
@@ -45,6 +45,7 @@ import com.simplecity.amp_library.R;
 import com.simplecity.amp_library.cast.CastManager;
 import com.simplecity.amp_library.data.Repository;
 import com.simplecity.amp_library.glide.palette.ColorSet;
+import com.simplecity.amp_library.glide.palette.ColorSetCache;
 import com.simplecity.amp_library.glide.palette.ColorSetTranscoder;
 import com.simplecity.amp_library.model.Playlist;
 import com.simplecity.amp_library.model.Song;
@@ -504,10 +505,17 @@ public class PlayerFragment extends BaseFragment implements
                 Glide.clear(paletteTarget);
             }
 
+            // Skip decoding the artwork entirely if we already know its colors
+            ColorSet cachedColorSet = song != null ? ColorSetCache.getInstance().getCached(song) : null;
+            if (cachedColorSet != null) {
+                paletteTarget.onResourceReady(cachedColorSet, null);
+                return;
+            }
+
             Glide.with(this)
                     .load(song)
                     .asBitmap()
-                    .transcode(new ColorSetTranscoder(getContext()), ColorSet.class)
+                    .transcode(new ColorSetTranscoder(getContext(), song), ColorSet.class)
                     .override(250, 250)
                     .priority(Priority.HIGH)
                     .diskCacheStrategy(DiskCacheStrategy.ALL)
@@ -63,7 +63,7 @@ class SuggestedPresenter @Inject constructor(
         val recentlyAddedAlbumsPlaylist = playlistRepository.getRecentlyAddedPlaylist()
         lateinit var favoriteSongsPlaylist: Playlist
 
-        val mostPlayedSongs = songsRepository.getSongs(mostPlayedPlaylist)
+        val mostPlayedSongs = songsRepository.getSongs(mostPlayedPlaylist, 20)
             .take(20)
 
         val recentlyPlayedAlbums = songsRepository.getSongs(recentlyPlayedPlaylist)
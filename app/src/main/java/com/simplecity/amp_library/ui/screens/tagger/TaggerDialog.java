@@ -25,7 +25,6 @@ import com.simplecity.amp_library.R;
 import com.simplecity.amp_library.model.Album;
 import com.simplecity.amp_library.model.AlbumArtist;
 import com.simplecity.amp_library.model.Song;
-import com.simplecity.amp_library.utils.CustomMediaScanner;
 import com.simplecity.amp_library.utils.LogUtils;
 import com.simplecity.amp_library.utils.SettingsManager;
 import dagger.android.support.AndroidSupportInjection;
@@ -57,8 +56,11 @@ public class TaggerDialog extends DialogFragment {
     private AlbumArtist albumArtist;
     private Album album;
 
-    List<String> originalSongPaths = new List<>();
-    private List<DocumentFile> documentFiles = new List<>();
+    List<String> originalSongPaths = new ArrayList<>();
+    private List<DocumentFile> documentFiles = new ArrayList<>();
+
+    @Nullable
+    private ProgressDialog progressDialog;
 
     private EditText albumArtistEditText;
     private EditText artistEditText;
@@ -274,7 +276,7 @@ public class TaggerDialog extends DialogFragment {
     }
 
     private void showProgressDialog() {
-        ProgressDialog progressDialog = new ProgressDialog(getContext());
+        progressDialog = new ProgressDialog(getContext());
         progressDialog.setMessage(getString(R.string.tag_editor_check_permission));
         progressDialog.setIndeterminate(true);
         progressDialog.setCancelable(false);
@@ -283,7 +285,7 @@ public class TaggerDialog extends DialogFragment {
 
     private void checkDocumentPermissions() {
         CheckDocumentPermissionsTask task = new CheckDocumentPermissionsTask(getContext(), settingsManager, originalSongPaths, documentFiles, hasPermission -> {
-            if (isResumed() && progressDialog.isShowing()) {
+            if (isResumed() && progressDialog != null && progressDialog.isShowing()) {
                 progressDialog.dismiss();
             }
     
@@ -307,14 +309,12 @@ public class TaggerDialog extends DialogFragment {
         saveProgressDialog.setMax(originalSongPaths.size());
         saveProgressDialog.setIndeterminate(false);
         saveProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-        saveProgressDialog.setCancelable(false);
-        saveProgressDialog.show();
+        saveProgressDialog.setCancelable(true);
+        saveProgressDialog.setCanceledOnTouchOutside(false);
     
         TaggerTask.TagCompletionListener listener = new TaggerTask.TagCompletionListener() {
             @Override
             public void onSuccess() {
-                CustomMediaScanner.scanFiles(getContext(), originalSongPaths, null);
-    
                 if (getContext() != null && isResumed()) {
                     saveProgressDialog.dismiss();
                     dismiss();
@@ -355,6 +355,11 @@ public class TaggerDialog extends DialogFragment {
                 .genre(genreEditText.getText().toString())
                 .listener(listener)
                 .build();
+
+        // Files which have already been written are kept, and rescanned
+        saveProgressDialog.setOnCancelListener(dialog -> taggerTask.cancel());
+        saveProgressDialog.show();
+
         taggerTask.execute();
     }
 
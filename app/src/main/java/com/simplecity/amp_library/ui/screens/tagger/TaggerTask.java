@@ -1,18 +1,25 @@
 package com.simplecity.amp_library.ui.screens.tagger;
 
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.ParcelFileDescriptor;
+import android.support.annotation.Nullable;
 import android.support.v4.provider.DocumentFile;
 import com.simplecity.amp_library.model.TagUpdate;
-import io.reactivex.annotations.NonNull;
+import com.simplecity.amp_library.utils.CustomMediaScanner;
+import com.simplecity.amp_library.utils.FileHelper;
+import com.simplecity.amp_library.utils.LogUtils;
+import com.simplecity.amp_library.utils.TagCache;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.jaudiotagger.audio.AudioFile;
 import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.audio.exceptions.CannotReadException;
@@ -22,7 +29,19 @@ import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
 import org.jaudiotagger.tag.Tag;
 import org.jaudiotagger.tag.TagException;
 
-public class TaggerTask extends AsyncTask<Object, Integer, Boolean> {
+/**
+ * Applies a set of tag changes to a list of files, writing several files in parallel.
+ * <p>
+ * Files which don't require document tree (SAF) permission are written in place. Files which do are written to a temporary copy,
+ * which is then copied back via their {@link DocumentFile}. Once all files are done, the files which were actually modified are
+ * rescanned in a single batch.
+ */
+public class TaggerTask {
+
+    private static final String TAG = "TaggerTask";
+
+    // Each file being written is parsed into memory, so only a few are written at once.
+    private static final int MAX_CONCURRENT_WRITES = 4;
 
     public interface TagCompletionListener {
         void onSuccess();
@@ -41,7 +60,6 @@ public class TaggerTask extends AsyncTask<Object, Integer, Boolean> {
 
     private List<String> paths;
     private List<DocumentFile> documentFiles;
-    private List<File> tempFiles = new List<>();
 
     private String titleText;
     private String albumText;
@@ -56,6 +74,8 @@ public class TaggerTask extends AsyncTask<Object, Integer, Boolean> {
     private String commentText;
     private String genreText;
 
+    private final AtomicBoolean isCancelled = new AtomicBoolean();
+
     public TaggerTask(Context context) {
         this.applicationContext = context.getApplicationContext();
     }
@@ -87,102 +107,57 @@ public class TaggerTask extends AsyncTask<Object, Integer, Boolean> {
         this.tagCompletionListener = listener;
     }
 
-    @Override
-    protected Boolean doInBackground(Object... params) {
+    /**
+     * Starts writing tags. The listener is called on the main thread, once per completed file, and once when all files are done.
+     */
+    public void execute() {
+        final List<String> paths = this.paths != null ? new ArrayList<>(this.paths) : Collections.emptyList();
+        final List<DocumentFile> documentFiles = this.documentFiles != null ? new ArrayList<>(this.documentFiles) : Collections.emptyList();
 
-        boolean success = false;
+        final List<String> modifiedPaths = Collections.synchronizedList(new ArrayList<>());
 
-        boolean requiresPermission = TaggerUtils.requiresPermission(applicationContext, paths);
-
-        boolean shouldContinue = true;
-        for (int i = 0; i < paths.size() && shouldContinue; i++) {
-            final String path = paths.get(i);
-            try (AudioFile audioFile = AudioFileIO.read(new File(path))) {
-                Tag tag = audioFile.getTag();
-                if (tag == null) {
-                    shouldContinue = false;
-                    continue;
-                }
-        
-                TagUpdate tagUpdate = new TagUpdate(tag);
-
-                tagUpdate.softSetArtist(artistText);
-                tagUpdate.softSetAlbumArtist(albumArtistText);
-                tagUpdate.softSetGenre(genreText);
-                tagUpdate.softSetYear(yearText);
-
-                if (showAlbum) {
-                    tagUpdate.softSetAlbum(albumText);
-                    tagUpdate.softSetDiscTotal(discTotalText);
-                }
-
-                if (showTrack) {
-                    tagUpdate.softSetTitle(titleText);
-                    tagUpdate.softSetTrack(trackText);
-                    tagUpdate.softSetTrackTotal(trackTotalText);
-                    tagUpdate.softSetDisc(discText);
-                    tagUpdate.softSetLyrics(lyricsText);
-                    tagUpdate.softSetComment(commentText);
-                }
+        final int[] progress = new int[1];
+        final boolean[] success = new boolean[1];
 
-                File temp = null;
-                if (tagUpdate.hasChanged()) {
-
-                    if (TaggerUtils.requiresPermission(applicationContext, paths)) {
-                        temp = new File(applicationContext.getFilesDir(), orig.getName());
-                        tempFiles.add(temp);
-                        TaggerUtils.copyFile(orig, temp);
-
-                        audioFile = AudioFileIO.read(temp);
-                        tag = audioFile.getTag();
-                        if (tag == null) {
-                            break;
-                        }
-                    }
-
-                    tagUpdate.updateTag(tag);
-                    AudioFileIO.write(audioFile);
-
-                    if (requiresPermission && temp != null) {
-                        DocumentFile documentFile = documentFiles.get(i);
-                        if (documentFile != null) {
-                            ParcelFileDescriptor pfd = applicationContext.getContentResolver().openFileDescriptor(documentFile.getUri(), "w");
-                            if (pfd != null) {
-                                FileOutputStream fileOutputStream = new FileOutputStream(pfd.getFileDescriptor());
-                                TaggerUtils.copyFile(temp, fileOutputStream);
-                                pfd.close();
+        Single.fromCallable(() -> TaggerUtils.getExtSdCardPaths(applicationContext))
+                .flatMapObservable(extSdCardPaths -> Observable.range(0, paths.size())
+                        .flatMap(i -> Observable.defer(() -> {
+                            if (isCancelled.get()) {
+                                return Observable.<Boolean>empty();
                             }
-                            try {
-                                Files.delete(Paths.get(temp.getPath()));
-                                if (tempFiles.contains(temp)) {
-                                    tempFiles.remove(temp);
-                                }
+                            String path = paths.get(i);
+                            DocumentFile documentFile = i < documentFiles.size() ? documentFiles.get(i) : null;
+                            boolean requiresPermission = TaggerUtils.getExtSdCardFolder(extSdCardPaths, new File(path)) != null;
+                            return Observable.just(tagFile(path, requiresPermission ? documentFile : null, requiresPermission, modifiedPaths));
+                        }).subscribeOn(Schedulers.io()), MAX_CONCURRENT_WRITES))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        fileSuccess -> {
+                            success[0] |= fileSuccess;
+                            progress[0]++;
+                            if (tagCompletionListener != null) {
+                                tagCompletionListener.onProgress(progress[0]);
                             }
-                        }
-                    }
-                }
-
-                publishProgress(i);
-                success = true;
-            } catch (CannotWriteException | IOException | CannotReadException | InvalidAudioFrameException | TagException | ReadOnlyFileException e) {
-                e.printStackTrace();
-            } finally {
-                //Try to clean up our temp files
-                if (tempFiles != null && tempFiles.size() != 0) {
-                    for (int j = tempFiles.size() - 1; j >= 0; j--) {
-                        File file = tempFiles.get(j);
-                        file.delete();
-                        tempFiles.remove(j);
-                    }
-                }
-            }
-        }
+                        },
+                        error -> {
+                            LogUtils.logException(TAG, "Failed to write tags", error);
+                            onComplete(modifiedPaths, false);
+                        },
+                        () -> onComplete(modifiedPaths, success[0]));
+    }
 
-        return success;
+    /**
+     * Stops writing tags to any files which haven't been started yet. Files which are currently being written are completed.
+     */
+    public void cancel() {
+        isCancelled.set(true);
     }
 
-    @Override
-    protected void onPostExecute(Boolean success) {
+    private void onComplete(List<String> modifiedPaths, boolean success) {
+        if (!modifiedPaths.isEmpty()) {
+            // The files may have been modified within the same second as their last scan, so they're never skipped as unchanged
+            CustomMediaScanner.scanFiles(applicationContext, new ArrayList<>(modifiedPaths), CustomMediaScanner.DEFAULT_MAX_IN_FLIGHT, false, null);
+        }
 
         if (tagCompletionListener != null) {
             if (success) {
@@ -193,12 +168,91 @@ public class TaggerTask extends AsyncTask<Object, Integer, Boolean> {
         }
     }
 
-    @Override
-    protected void onProgressUpdate(Integer... object) {
+    /**
+     * @return true if the tags of the file at the passed in path were successfully updated (or didn't need to be)
+     */
+    private boolean tagFile(String path, @Nullable DocumentFile documentFile, boolean requiresPermission, List<String> modifiedPaths) {
+        File temp = null;
+        try {
+            File file = new File(path);
+            AudioFile audioFile = AudioFileIO.read(file);
+            Tag tag = audioFile.getTag();
+            if (tag == null) {
+                return false;
+            }
 
-        if (tagCompletionListener != null) {
-            tagCompletionListener.onProgress(object[0] + 1);
+            TagUpdate tagUpdate = createTagUpdate(tag);
+            if (!tagUpdate.hasChanged()) {
+                return true;
+            }
+
+            if (requiresPermission) {
+                if (documentFile == null) {
+                    return false;
+                }
+
+                // We can't write to the file directly, so write to a copy and then copy it back via the document file.
+                temp = File.createTempFile("tagger", "." + FileHelper.getExtension(file.getName()), applicationContext.getCacheDir());
+                TaggerUtils.copyFile(file, temp);
+
+                audioFile = AudioFileIO.read(temp);
+                tag = audioFile.getTag();
+                if (tag == null) {
+                    return false;
+                }
+            }
+
+            tagUpdate.updateTag(tag);
+            AudioFileIO.write(audioFile);
+
+            if (temp != null) {
+                ParcelFileDescriptor pfd = applicationContext.getContentResolver().openFileDescriptor(documentFile.getUri(), "rwt");
+                if (pfd == null) {
+                    return false;
+                }
+                try {
+                    TaggerUtils.copyFile(temp, new FileOutputStream(pfd.getFileDescriptor()));
+                } finally {
+                    pfd.close();
+                }
+            }
+
+            TagCache.getInstance().invalidate(path);
+            modifiedPaths.add(path);
+            return true;
+        } catch (CannotWriteException | IOException | CannotReadException | InvalidAudioFrameException | TagException | ReadOnlyFileException | SecurityException | OutOfMemoryError e) {
+            LogUtils.logException(TAG, "Failed to write tags for " + path, e);
+            return false;
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private TagUpdate createTagUpdate(Tag tag) {
+        TagUpdate tagUpdate = new TagUpdate(tag);
+
+        tagUpdate.softSetArtist(artistText);
+        tagUpdate.softSetAlbumArtist(albumArtistText);
+        tagUpdate.softSetGenre(genreText);
+        tagUpdate.softSetYear(yearText);
+
+        if (showAlbum) {
+            tagUpdate.softSetAlbum(albumText);
+            tagUpdate.softSetDiscTotal(discTotalText);
         }
+
+        if (showTrack) {
+            tagUpdate.softSetTitle(titleText);
+            tagUpdate.softSetTrack(trackText);
+            tagUpdate.softSetTrackTotal(trackTotalText);
+            tagUpdate.softSetDisc(discText);
+            tagUpdate.softSetLyrics(lyricsText);
+            tagUpdate.softSetComment(commentText);
+        }
+
+        return tagUpdate;
     }
 
     //Builders
@@ -17,7 +17,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TaggerUtils {
 
@@ -57,11 +59,15 @@ public class TaggerUtils {
             return false;
         }
 
+        String[] extSdPaths = getExtSdCardPaths(context);
+        DocumentFile root = DocumentFile.fromTreeUri(context, Uri.parse(treeUri));
+        Map<Uri, Map<String, DocumentFile>> children = new HashMap<>();
+
         //Find the file in the document tree. If it's not there, or it doesn't have permission,
         //we're satisfied we don't have permission.
         for (String path : paths) {
             File file = new File(path);
-            DocumentFile documentFile = getDocumentFile(context, Uri.parse(treeUri), file);
+            DocumentFile documentFile = getDocumentFile(extSdPaths, root, children, file);
             if (documentFile != null) {
                 hasDocumentTreePermission = documentFile.canWrite();
             }
@@ -76,13 +82,25 @@ public class TaggerUtils {
     }
 
     static DocumentFile getDocumentFile(Context context, Uri treeUri, final File file) {
-        String baseFolder = getExtSdCardFolder(context, file);
+        if (treeUri == null) {
+            return null;
+        }
+        return getDocumentFile(getExtSdCardPaths(context), DocumentFile.fromTreeUri(context, treeUri), new HashMap<>(), file);
+    }
+
+    /**
+     * @param root the root of the document tree
+     * @param children the children of each directory already listed, keyed by directory uri. Files in the same directory are
+     * usually resolved together, and listing a directory's children is expensive, so each directory is only listed once.
+     */
+    private static DocumentFile getDocumentFile(String[] extSdPaths, DocumentFile root, Map<Uri, Map<String, DocumentFile>> children, final File file) {
+        String baseFolder = getExtSdCardFolder(extSdPaths, file);
 
         if (baseFolder == null) {
             return null;
         }
 
-        if (treeUri == null) {
+        if (root == null) {
             return null;
         }
 
@@ -95,11 +113,22 @@ public class TaggerUtils {
         }
 
         // start with root of SD card and then parse through document tree.
-        DocumentFile document = DocumentFile.fromTreeUri(context, treeUri);
+        DocumentFile document = root;
 
         String[] parts = relativePath.split("/");
         for (String part : parts) {
-            DocumentFile nextDocument = document.findFile(part);
+            Map<String, DocumentFile> documentChildren = children.get(document.getUri());
+            if (documentChildren == null) {
+                documentChildren = new HashMap<>();
+                for (DocumentFile child : document.listFiles()) {
+                    // Matches DocumentFile.findFile(), which returns the first child with the given name
+                    if (!documentChildren.containsKey(child.getName())) {
+                        documentChildren.put(child.getName(), child);
+                    }
+                }
+                children.put(document.getUri(), documentChildren);
+            }
+            DocumentFile nextDocument = documentChildren.get(part);
             if (nextDocument != null) {
                 document = nextDocument;
             }
@@ -112,7 +141,13 @@ public class TaggerUtils {
 
     @TargetApi(Build.VERSION_CODES.KITKAT)
     static String getExtSdCardFolder(Context context, File file) {
-        String[] extSdPaths = getExtSdCardPaths(context);
+        return getExtSdCardFolder(getExtSdCardPaths(context), file);
+    }
+
+    /**
+     * @param extSdPaths the paths returned by {@link #getExtSdCardPaths(Context)}, so they can be reused across files.
+     */
+    static String getExtSdCardFolder(String[] extSdPaths, File file) {
         try {
             for (String extSdPath : extSdPaths) {
                 if (file.getCanonicalPath().startsWith(extSdPath)) {
@@ -126,10 +161,11 @@ public class TaggerUtils {
     }
 
     static boolean requiresPermission(Context context, List<String> paths) {
+        String[] extSdPaths = getExtSdCardPaths(context);
         boolean requiresPermission = false;
         for (String path : paths) {
             File file = new File(path);
-            requiresPermission = getExtSdCardFolder(context, file) != null;
+            requiresPermission = getExtSdCardFolder(extSdPaths, file) != null;
             if (requiresPermission) {
                 break;
             }
@@ -140,7 +176,7 @@ public class TaggerUtils {
 
     @TargetApi(Build.VERSION_CODES.KITKAT)
     static String[] getExtSdCardPaths(Context context) {
-        List<String> paths = new List<>();
+        List<String> paths = new ArrayList<>();
         try {
             File[] externalFilesDirs = context.getExternalFilesDirs("external");
             if (externalFilesDirs != null && externalFilesDirs.length > 0) {
@@ -29,6 +29,7 @@ import com.jakewharton.rxbinding2.widget.SeekBarStopChangeEvent
 import com.simplecity.amp_library.R
 import com.simplecity.amp_library.ShuttleApplication
 import com.simplecity.amp_library.glide.palette.ColorSet
+import com.simplecity.amp_library.glide.palette.ColorSetCache
 import com.simplecity.amp_library.glide.palette.ColorSetTranscoder
 import com.simplecity.amp_library.model.Song
 import com.simplecity.amp_library.rx.UnsafeAction
@@ -146,10 +147,17 @@ class UpNextView constructor(context: Context, attrs: AttributeSet? = null, defS
 
                     Glide.clear(paletteTarget)
 
+                    // Skip decoding the artwork entirely if we already know its colors
+                    val cachedColorSet = song?.let { ColorSetCache.getInstance().getCached(it) }
+                    if (cachedColorSet != null) {
+                        paletteTarget.onResourceReady(cachedColorSet, null)
+                        return
+                    }
+
                     Glide.with(getContext())
                         .load(song)
                         .asBitmap()
-                        .transcode(ColorSetTranscoder(getContext()), ColorSet::class.java)
+                        .transcode(ColorSetTranscoder(getContext(), song), ColorSet::class.java)
                         .override(250, 250)
                         .priority(Priority.HIGH)
                         .diskCacheStrategy(DiskCacheStrategy.ALL)
@@ -328,7 +336,7 @@ class UpNextView constructor(context: Context, attrs: AttributeSet? = null, defS
     }
 
     private val paletteTarget = object : SimpleTarget<ColorSet>() {
-        override fun onResourceReady(newColorSet: ColorSet, glideAnimation: GlideAnimation<in ColorSet>) {
+        override fun onResourceReady(newColorSet: ColorSet, glideAnimation: GlideAnimation<in ColorSet>?) {
 
             if (colorSet === newColorSet) {
                 return
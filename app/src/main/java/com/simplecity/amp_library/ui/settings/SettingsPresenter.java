@@ -15,7 +15,10 @@ import com.bumptech.glide.Glide;
 import com.simplecity.amp_library.R;
 import com.simplecity.amp_library.ShuttleApplication;
 import com.simplecity.amp_library.billing.BillingManager;
+import com.simplecity.amp_library.glide.fetcher.ArtworkMissCache;
+import com.simplecity.amp_library.glide.palette.ColorSetCache;
 import com.simplecity.amp_library.model.CategoryItem;
+import com.simplecity.amp_library.services.ArtworkDownloadQueue;
 import com.simplecity.amp_library.services.ArtworkDownloadService;
 import com.simplecity.amp_library.ui.common.PurchasePresenter;
 import com.simplecity.amp_library.utils.AnalyticsManager;
@@ -266,7 +269,12 @@ public class SettingsPresenter extends PurchasePresenter<SettingsView> {
 
         Glide.get(application).clearMemory();
 
-        Completable.fromAction(() -> Glide.get(application).clearDiskCache())
+        Completable.fromAction(() -> {
+            Glide.get(application).clearDiskCache();
+            ArtworkDownloadQueue.getInstance().clearDownloaded(application);
+            ArtworkMissCache.getInstance().clear();
+            ColorSetCache.getInstance().clear();
+        })
                 .subscribeOn(Schedulers.io())
                 .subscribe();
     }
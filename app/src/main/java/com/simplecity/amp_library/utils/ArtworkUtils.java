@@ -9,19 +9,15 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 import android.util.Log;
-import com.annimon.stream.Stream;
 import com.simplecity.amp_library.model.Album;
 import com.simplecity.amp_library.model.Song;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
 import org.jaudiotagger.audio.AudioFile;
 import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.audio.exceptions.CannotReadException;
@@ -40,58 +36,31 @@ public abstract class ArtworkUtils {
     }
 
     /**
-     * Searches the parent directory of the passed in path for [cover/album/artwork].[png/jpg/jpeg]
-     * using regex and returns a {@link InputStream} representing the artwork
+     * Returns a {@link InputStream} for the best [cover/album/artwork].[png/jpg/jpeg] file in the parent directory of the passed in path.
+     *
+     * @throws IOException if the artwork file couldn't be opened
      */
     @WorkerThread
-    public static InputStream getFolderArtwork(@Nullable final String path) {
-
-        InputStream fileInputStream = null;
-
-        if (path != null) {
-            File[] files;
-            File file = new File(path);
-            File parent = file.getParentFile();
-            if (parent.exists() && parent.isDirectory()) {
-                final Pattern pattern = Pattern.compile("(folder|cover|album).*\\.(jpg|jpeg|png)", Pattern.CASE_INSENSITIVE);
-                files = parent.listFiles(file1 -> pattern.matcher(file1.getName()).matches());
-
-                if (files.length > 0) {
-                    try {
-                        File artworkFile = Stream.of(files)
-                                .filter(aFile -> aFile.exists() && aFile.length() > 1024)
-                                .max((a, b) -> (int) (a.length() / 1024 - b.length() / 1024))
-                                .get();
-
-                        fileInputStream = getFileArtwork(artworkFile);
-                    } catch (NoSuchElementException e) {
-                        Log.e(TAG, "getFolderArtwork failed: " + e.toString());
-                    }
-                }
-            }
+    public static InputStream getFolderArtwork(@Nullable final String path) throws IOException {
+        if (path == null) {
+            return null;
         }
-        return fileInputStream;
+        return getFileArtwork(FolderArtworkIndex.getBestArtworkFile(new File(path).getParentFile()));
     }
 
     /**
      * Returns a FileInputStream for the given file, or null if the file is invalid
+     *
+     * @throws IOException if the file exists but couldn't be opened
      */
     @WorkerThread
-    public static InputStream getFileArtwork(@Nullable File file) {
+    public static InputStream getFileArtwork(@Nullable File file) throws IOException {
 
         if (file == null || !file.exists() || file.length() < 10 * 1024) {
             return null;
         }
 
-        FileInputStream fileInputStream = null;
-
-        try {
-            fileInputStream = new FileInputStream(file);
-        } catch (FileNotFoundException | NoSuchElementException e) {
-            Log.e(TAG, "getFileArtwork failed: " + e.toString());
-        }
-
-        return fileInputStream;
+        return new FileInputStream(file);
     }
 
     /**
@@ -137,16 +106,34 @@ public abstract class ArtworkUtils {
 
     /**
      * Retrieves the Artwork from the id3 tags of the file at the given path.
+     * <p>
+     * Returns null if the file has no artwork, or its tags can't be parsed.
+     *
+     * @throws IOException if the file couldn't be read
      */
     @WorkerThread
-    public static InputStream getTagArtwork(@Nullable String filePath) {
+    public static InputStream getTagArtwork(@Nullable String filePath) throws IOException {
 
         InputStream inputStream = null;
 
         if (filePath != null) {
-            AudioFile audioFIle = AudioFileIO.read(new File(filePath));
-                if (audioFIle != null) {
-                    Tag tag = audioFIle.getTag();
+            // Skip parsing files which are already known to have no embedded artwork. A cache miss isn't filled from here, since that
+            // would parse the file a second time.
+            TagCache.Entry entry = TagCache.getInstance().getCached(filePath);
+            if (entry != null && (!entry.readable || !entry.hasArtwork)) {
+                return null;
+            }
+
+            // Stream the picture straight from the file where possible, and only fall back to a full tag read if that fails
+            inputStream = EmbeddedArtworkReader.open(new File(filePath));
+            if (inputStream != null) {
+                return inputStream;
+            }
+
+            try {
+                AudioFile audioFile = AudioFileIO.read(new File(filePath));
+                if (audioFile != null) {
+                    Tag tag = audioFile.getTag();
                     if (tag != null) {
                         org.jaudiotagger.tag.datatype.Artwork artwork = tag.getFirstArtwork();
                         if (artwork != null) {
@@ -154,41 +141,24 @@ public abstract class ArtworkUtils {
                         }
                     }
                 }
+            } catch (CannotReadException | TagException | InvalidAudioFrameException | UnsupportedOperationException e) {
+                Log.e(TAG, "Failed to read tag artwork: " + e.toString());
+            } catch (ReadOnlyFileException e) {
+                throw new IOException(e);
+            }
         }
 
         return inputStream;
     }
 
     /**
-     * Searches the parent directory of the passed in path for [cover/album/artwork].[png/jpg/jpeg]
-     * using regex and returns a {@link List<File>} representing the artwork
+     * Returns all [cover/album/artwork].[png/jpg/jpeg] files in the parent directory of the passed in path.
      */
     @WorkerThread
     public static List<File> getAllFolderArtwork(@Nullable final String path) {
         if (path == null) {
             return new ArrayList<>();
         }
-
-        File parent = new File(path).getParentFile();
-        if (!parent.exists() || !parent.isDirectory()) {
-            return new ArrayList<>();
-        }
-
-        return getArtworkFiles(parent);
-    }
-
-    private static List<File> getArtworkFiles(File parent) {
-        final Pattern pattern = Pattern.compile("(folder|cover|album).*\\.(jpg|jpeg|png)", Pattern.CASE_INSENSITIVE);
-        File[] files = parent.listFiles(file1 -> pattern.matcher(file1.getName()).matches());
-
-        List<File> fileArray = new ArrayList<>();
-        if (files.length != 0) {
-            for (File file : files) {
-                if (file.exists()) {
-                    fileArray.add(file);
-                }
-            }
-        }
-        return fileArray;
+        return FolderArtworkIndex.getArtworkFiles(new File(path).getParentFile());
     }
 }
@@ -1,6 +1,8 @@
 package com.simplecity.amp_library.utils;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.Locale;
 
@@ -47,4 +49,11 @@ public class ComparisonUtils {
             return collator.compare(str1, str2);
         }
     }
+
+    /**
+     * @return a {@link CollationKey} which orders the same as {@link #compare(String, String)}, but is much cheaper to compare repeatedly.
+     */
+    public static CollationKey getCollationKey(@NonNull String str) {
+        return collator.getCollationKey(str);
+    }
 }
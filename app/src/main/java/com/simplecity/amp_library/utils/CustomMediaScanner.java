@@ -2,10 +2,14 @@ package com.simplecity.amp_library.utils;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.database.Cursor;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.SystemClock;
+import android.provider.MediaStore;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,84 +18,250 @@ import com.afollestad.materialdialogs.MaterialDialog;
 import com.simplecity.amp_library.R;
 import com.simplecity.amp_library.model.FolderObject;
 import com.simplecity.amp_library.rx.UnsafeConsumer;
+import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import me.zhanghai.android.materialprogressbar.MaterialProgressBar;
 
+/**
+ * Scans a batch of files via {@link MediaScannerConnection}.
+ * <p>
+ * Several scan requests are kept in flight at once, rather than waiting for each to complete before sending the next. Files whose
+ * last modified time matches MediaStore's {@link MediaStore.Audio.Media#DATE_MODIFIED} are skipped, since scanning them wouldn't change
+ * anything. Progress is reported at most every {@link #PROGRESS_INTERVAL_MILLIS}, and content observers are notified once, at the end.
+ */
 public class CustomMediaScanner implements MediaScannerConnection.MediaScannerConnectionClient {
 
     private static final String TAG = "CustomMediaScanner";
 
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    // 10 Hz
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    // Keeps the number of bound arguments in the DATE_MODIFIED query under SQLite's limit
+    private static final int QUERY_BATCH_SIZE = 500;
+
     public interface ScanCompletionListener {
-        void onPathScanned(String path);
+
+        /**
+         * Called at most every {@link #PROGRESS_INTERVAL_MILLIS}, and once all paths have been scanned.
+         *
+         * @param scannedCount the number of paths scanned (or skipped) so far
+         * @param totalCount the total number of paths
+         * @param path the most recently scanned path
+         */
+        default void onScanProgress(int scannedCount, int totalCount, String path) {
+
+        }
 
         void onScanCompleted();
     }
 
     private Context applicationContext;
 
+    // The paths which still need to be scanned
     private final List<String> paths;
 
+    private final int totalCount;
+
+    private final int maxInFlight;
+
     @Nullable
     private final ScanCompletionListener scanCompletionListener;
 
     private MediaScannerConnection connection;
-    private int nextPath;
 
     private Handler handler;
 
-    private CustomMediaScanner(Context context, List<String> paths, @Nullable ScanCompletionListener listener) {
+    // Guarded by this
+    private int nextPath;
+    private int scannedCount;
+    private int skippedCount;
+    private long lastProgressTime;
+    private boolean isProgressPosted;
+    private String lastScannedPath;
+    private boolean isComplete;
+
+    private long startTime;
+
+    private CustomMediaScanner(Context context, List<String> paths, int totalCount, int maxInFlight, @Nullable ScanCompletionListener listener) {
         this.applicationContext = context.getApplicationContext();
         this.paths = paths;
+        this.totalCount = totalCount;
+        this.maxInFlight = Math.max(1, maxInFlight);
         scanCompletionListener = listener;
         handler = new Handler(context.getMainLooper());
+
+        skippedCount = totalCount - paths.size();
+        scannedCount = skippedCount;
     }
 
     public static void scanFiles(Context context, List<String> paths, @Nullable ScanCompletionListener listener) {
-        CustomMediaScanner client = new CustomMediaScanner(context, paths, listener);
-        MediaScannerConnection connection = new MediaScannerConnection(context, client);
-        client.connection = connection;
+        scanFiles(context, paths, DEFAULT_MAX_IN_FLIGHT, true, listener);
+    }
+
+    /**
+     * @param maxInFlight the maximum number of scan requests sent to the media scanner before it has completed them
+     * @param skipUnchanged whether to skip files which MediaStore already has, with the same last modified time. Pass false if the
+     * files may have been changed within the last second.
+     */
+    @SuppressLint("CheckResult")
+    public static void scanFiles(Context context, List<String> paths, int maxInFlight, boolean skipUnchanged, @Nullable ScanCompletionListener listener) {
+        final Context applicationContext = context.getApplicationContext();
+        final List<String> allPaths = new ArrayList<>(paths);
+
+        Single.fromCallable(() -> skipUnchanged ? getChangedPaths(applicationContext, allPaths) : allPaths)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        changedPaths -> {
+                            CustomMediaScanner client = new CustomMediaScanner(applicationContext, changedPaths, allPaths.size(), maxInFlight, listener);
+                            client.start();
+                        },
+                        error -> LogUtils.logException(TAG, "Failed to scan files", error));
+    }
+
+    /**
+     * @return the passed in paths, excluding files which MediaStore already has with the same last modified time.
+     */
+    private static List<String> getChangedPaths(Context context, List<String> paths) {
+        Map<String, Long> dateModified = new HashMap<>(paths.size());
+        for (int start = 0; start < paths.size(); start += QUERY_BATCH_SIZE) {
+            List<String> batch = paths.subList(start, Math.min(paths.size(), start + QUERY_BATCH_SIZE));
+            String selection = MediaStore.Audio.Media.DATA + " IN (" + TextUtils.join(",", Collections.nCopies(batch.size(), "?")) + ")";
+            try (Cursor cursor = context.getContentResolver().query(
+                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    new String[] { MediaStore.Audio.Media.DATA, MediaStore.Audio.Media.DATE_MODIFIED },
+                    selection,
+                    batch.toArray(new String[0]),
+                    null)) {
+                if (cursor != null) {
+                    while (cursor.moveToNext()) {
+                        dateModified.put(cursor.getString(0), cursor.getLong(1));
+                    }
+                }
+            } catch (SecurityException | IllegalArgumentException e) {
+                LogUtils.logException(TAG, "Failed to query date modified", e);
+                return paths;
+            }
+        }
+
+        List<String> changedPaths = new ArrayList<>();
+        for (String path : paths) {
+            Long mediaStoreModified = dateModified.get(path);
+            // Files which no longer exist (lastModified() == 0) still need to be scanned, so MediaStore removes them.
+            long modified = new File(path).lastModified() / 1000;
+            if (mediaStoreModified == null || modified == 0 || modified != mediaStoreModified) {
+                changedPaths.add(path);
+            }
+        }
+        return changedPaths;
+    }
+
+    private void start() {
+        startTime = SystemClock.elapsedRealtime();
+        if (paths.isEmpty()) {
+            scanComplete();
+            return;
+        }
+        connection = new MediaScannerConnection(applicationContext, this);
         connection.connect();
     }
 
     @Override
     public void onMediaScannerConnected() {
-        scanNextPath();
+        synchronized (this) {
+            while (nextPath < paths.size() && nextPath - (scannedCount - skippedCount) < maxInFlight) {
+                scanNextPath();
+            }
+        }
     }
 
     @Override
     public void onScanCompleted(String path, Uri uri) {
+        boolean complete;
+        synchronized (this) {
+            scannedCount++;
+            lastScannedPath = path;
 
-        Log.d(TAG, "Scan complete. Path: " + path);
+            if (nextPath < paths.size()) {
+                scanNextPath();
+            }
+
+            complete = scannedCount == totalCount && !isComplete;
+            if (complete) {
+                isComplete = true;
+            } else {
+                postProgress(false);
+            }
+        }
 
-        scanNextPath();
+        if (complete) {
+            scanComplete();
+        }
     }
 
+    /**
+     * Must be called while holding the lock.
+     */
     private void scanNextPath() {
-        if (nextPath >= paths.size()) {
-            scanComplete(applicationContext);
-            return;
-        }
         String path = paths.get(nextPath);
-
-        connection.scanFile(path, null);
         nextPath++;
+        connection.scanFile(path, null);
+    }
 
-        if (handler != null && scanCompletionListener != null) {
-            handler.post(() -> scanCompletionListener.onPathScanned(path));
+    /**
+     * Must be called while holding the lock. Posts a progress update, unless one was posted within the last
+     * {@link #PROGRESS_INTERVAL_MILLIS} or is still waiting to be delivered.
+     */
+    private void postProgress(boolean force) {
+        if (handler == null || scanCompletionListener == null) {
+            return;
         }
-
-        Log.d(TAG, "Scanning file: " + path);
+        long now = SystemClock.elapsedRealtime();
+        if (!force && (isProgressPosted || now - lastProgressTime < PROGRESS_INTERVAL_MILLIS)) {
+            return;
+        }
+        lastProgressTime = now;
+        isProgressPosted = true;
+        handler.post(() -> {
+            int scannedCount;
+            String path;
+            synchronized (CustomMediaScanner.this) {
+                isProgressPosted = false;
+                scannedCount = this.scannedCount;
+                path = lastScannedPath;
+            }
+            scanCompletionListener.onScanProgress(scannedCount, totalCount, path);
+        });
     }
 
-    private void scanComplete(Context context) {
-        connection.disconnect();
+    private void scanComplete() {
+        if (connection != null) {
+            connection.disconnect();
+        }
+
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - startTime);
+        int scanned = paths.size();
+        Log.d(TAG, String.format("Scanned %d files (skipped %d unchanged) in %dms, %.1f files/s",
+                scanned, skippedCount, elapsed, scanned * 1000f / elapsed));
 
         //Notify all media uris of change. This will in turn update any content observers.
-        context.getContentResolver().notifyChange(Uri.parse("content://media"), null);
+        if (scanned > 0) {
+            applicationContext.getContentResolver().notifyChange(Uri.parse("content://media"), null);
+        }
+
+        synchronized (this) {
+            postProgress(true);
+        }
 
         if (handler != null) {
             handler.post(() -> {
@@ -135,9 +305,11 @@ public class CustomMediaScanner implements MediaScannerConnection.MediaScannerCo
 
                     CustomMediaScanner.scanFiles(context, paths, new ScanCompletionListener() {
                         @Override
-                        public void onPathScanned(String path) {
-                            horizontalProgress.setProgress(horizontalProgress.getProgress() + 1);
-                            pathsTextView.setText(path);
+                        public void onScanProgress(int scannedCount, int totalCount, String path) {
+                            horizontalProgress.setProgress(scannedCount);
+                            if (path != null) {
+                                pathsTextView.setText(path);
+                            }
                         }
 
                         @Override
@@ -151,7 +323,8 @@ public class CustomMediaScanner implements MediaScannerConnection.MediaScannerCo
     }
 
     public static void scanFile(Context context, String path, UnsafeConsumer<String> message) {
-        CustomMediaScanner.scanFiles(context, Collections.singletonList(path), new CustomMediaScanner.ScanCompletionListener() {
+        // Explicitly requested, so scanned even if unchanged
+        CustomMediaScanner.scanFiles(context, Collections.singletonList(path), 1, false, new CustomMediaScanner.ScanCompletionListener() {
             @Override
             public void onScanCompleted() {
                 message.accept(context.getString(R.string.scan_complete));
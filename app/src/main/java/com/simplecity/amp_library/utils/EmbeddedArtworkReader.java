@@ -0,0 +1,439 @@
+package com.simplecity.amp_library.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+/**
+ * Locates the embedded picture in ID3v2 (APIC/PIC), FLAC (PICTURE) and MP4 (covr) files, and returns a stream over just that part of
+ * the file.
+ * <p>
+ * Unlike a full tag read, this doesn't decode the rest of the tag, or copy the picture onto the heap before it's decoded.
+ */
+final class EmbeddedArtworkReader {
+
+    private static final String TAG = "EmbeddedArtworkReader";
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    // The most of an APIC frame read while looking for the start of the picture data. The mime type and description are rarely
+    // more than a few bytes.
+    private static final int MAX_APIC_HEADER_SIZE = 4096;
+
+    private static final int FLAC_BLOCK_PICTURE = 6;
+
+    private static final String[] MP4_COVER_PATH = { "moov", "udta", "meta", "ilst", "covr", "data" };
+
+    private EmbeddedArtworkReader() {
+    }
+
+    /**
+     * @return a stream over the first embedded picture in the passed in file, or null if it couldn't be located. In that case the
+     * caller should fall back to reading the full tag, since the file may use a format or tag feature which isn't handled here.
+     */
+    @Nullable
+    @WorkerThread
+    static InputStream open(@NonNull File file) {
+        long[] range;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            range = findPicture(randomAccessFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to locate embedded artwork: " + e.toString());
+            return null;
+        }
+
+        if (range == null) {
+            return null;
+        }
+
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            inputStream.getChannel().position(range[0]);
+            return new BoundedInputStream(inputStream, range[1]);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open embedded artwork: " + e.toString());
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return the offset and length of the picture, or null if it couldn't be located.
+     */
+    @Nullable
+    private static long[] findPicture(RandomAccessFile file) throws IOException {
+        long fileLength = file.length();
+        if (fileLength < 12) {
+            return null;
+        }
+
+        byte[] header = new byte[12];
+        file.readFully(header);
+
+        if (matches(header, 0, "ID3")) {
+            long[] range = findId3Picture(file, fileLength);
+            if (range != null) {
+                return range;
+            }
+
+            // FLAC files are sometimes preceded by an ID3 tag. Skip it (and its footer, if present) and check for FLAC metadata.
+            long flacStart = 10 + readSyncsafeInt(header, 6) + ((header[5] & 0x10) != 0 ? 10 : 0);
+            if (flacStart + 4 <= fileLength) {
+                byte[] marker = new byte[4];
+                file.seek(flacStart);
+                file.readFully(marker);
+                if (matches(marker, 0, "fLaC")) {
+                    return findFlacPicture(file, flacStart + 4, fileLength);
+                }
+            }
+            return null;
+        }
+
+        if (matches(header, 0, "fLaC")) {
+            return findFlacPicture(file, 4, fileLength);
+        }
+
+        if (matches(header, 4, "ftyp")) {
+            return findMp4Picture(file, 0, fileLength, 0);
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static long[] findId3Picture(RandomAccessFile file, long fileLength) throws IOException {
+        byte[] header = new byte[10];
+        file.seek(0);
+        file.readFully(header);
+
+        int version = header[3];
+        int flags = header[5] & 0xFF;
+
+        // Unsynchronised tags (and compressed v2.2 tags) would need decoding, so they're left to the full tag reader
+        if (version < 2 || version > 4 || (flags & 0x80) != 0 || (version == 2 && (flags & 0x40) != 0)) {
+            return null;
+        }
+
+        long tagEnd = Math.min(10 + readSyncsafeInt(header, 6), fileLength);
+        long position = 10;
+
+        if (version >= 3 && (flags & 0x40) != 0) {
+            byte[] extendedHeaderSize = new byte[4];
+            file.seek(position);
+            file.readFully(extendedHeaderSize);
+            // The v2.3 extended header size excludes the size field itself, the v2.4 one includes it
+            position += version == 3 ? 4 + readUnsignedInt(extendedHeaderSize, 0) : readSyncsafeInt(extendedHeaderSize, 0);
+        }
+
+        int frameHeaderSize = version == 2 ? 6 : 10;
+        byte[] frameHeader = new byte[frameHeaderSize];
+        String pictureFrameId = version == 2 ? "PIC" : "APIC";
+
+        while (position + frameHeaderSize <= tagEnd) {
+            file.seek(position);
+            file.readFully(frameHeader);
+
+            // Padding
+            if (frameHeader[0] == 0) {
+                break;
+            }
+
+            long frameSize;
+            int frameFlags = 0;
+            if (version == 2) {
+                frameSize = readInt24(frameHeader, 3);
+            } else if (version == 3) {
+                frameSize = readUnsignedInt(frameHeader, 4);
+                frameFlags = ((frameHeader[8] & 0xFF) << 8) | (frameHeader[9] & 0xFF);
+            } else {
+                frameSize = readSyncsafeInt(frameHeader, 4);
+                frameFlags = ((frameHeader[8] & 0xFF) << 8) | (frameHeader[9] & 0xFF);
+            }
+
+            long dataStart = position + frameHeaderSize;
+            long dataEnd = dataStart + frameSize;
+            if (frameSize <= 0 || dataEnd > tagEnd) {
+                break;
+            }
+
+            if (matches(frameHeader, 0, pictureFrameId)) {
+                return findApicData(file, version, frameFlags, dataStart, dataEnd);
+            }
+
+            position = dataEnd;
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static long[] findApicData(RandomAccessFile file, int version, int frameFlags, long dataStart, long dataEnd) throws IOException {
+        if (version == 3) {
+            // Compressed or encrypted
+            if ((frameFlags & 0x00C0) != 0) {
+                return null;
+            }
+            // Grouping identity
+            if ((frameFlags & 0x0020) != 0) {
+                dataStart += 1;
+            }
+        } else if (version == 4) {
+            // Compressed, encrypted or unsynchronised
+            if ((frameFlags & 0x000E) != 0) {
+                return null;
+            }
+            // Grouping identity
+            if ((frameFlags & 0x0040) != 0) {
+                dataStart += 1;
+            }
+            // Data length indicator
+            if ((frameFlags & 0x0001) != 0) {
+                dataStart += 4;
+            }
+        }
+
+        int length = (int) Math.min(dataEnd - dataStart, MAX_APIC_HEADER_SIZE);
+        if (length <= 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        file.seek(dataStart);
+        file.readFully(data);
+
+        int encoding = data[0];
+        int index = 1;
+
+        // Image format (v2.2) or mime type
+        if (version == 2) {
+            index += 3;
+        } else {
+            index = indexOfTerminator(data, index, 1);
+            if (index < 0) {
+                return null;
+            }
+        }
+
+        // Picture type
+        index += 1;
+
+        // Description, which is terminated by two zero bytes for UTF-16 encodings
+        index = indexOfTerminator(data, index, encoding == 1 || encoding == 2 ? 2 : 1);
+        if (index < 0) {
+            return null;
+        }
+
+        long pictureStart = dataStart + index;
+        if (pictureStart >= dataEnd) {
+            return null;
+        }
+        return new long[] { pictureStart, dataEnd - pictureStart };
+    }
+
+    @Nullable
+    private static long[] findFlacPicture(RandomAccessFile file, long position, long fileLength) throws IOException {
+        byte[] blockHeader = new byte[4];
+        while (position + 4 <= fileLength) {
+            file.seek(position);
+            file.readFully(blockHeader);
+
+            boolean isLast = (blockHeader[0] & 0x80) != 0;
+            int type = blockHeader[0] & 0x7F;
+            long blockStart = position + 4;
+            long blockEnd = blockStart + readInt24(blockHeader, 1);
+            if (blockEnd > fileLength) {
+                return null;
+            }
+
+            if (type == FLAC_BLOCK_PICTURE) {
+                // Picture type
+                long offset = blockStart + 4;
+
+                file.seek(offset);
+                int mimeLength = file.readInt();
+                offset += 4 + mimeLength;
+
+                file.seek(offset);
+                int descriptionLength = file.readInt();
+                // Width, height, color depth and number of colors
+                offset += 4 + descriptionLength + 16;
+
+                file.seek(offset);
+                int pictureLength = file.readInt();
+                offset += 4;
+
+                if (mimeLength < 0 || descriptionLength < 0 || pictureLength <= 0 || offset + pictureLength > blockEnd) {
+                    return null;
+                }
+                return new long[] { offset, pictureLength };
+            }
+
+            if (isLast) {
+                break;
+            }
+            position = blockEnd;
+        }
+        return null;
+    }
+
+    @Nullable
+    private static long[] findMp4Picture(RandomAccessFile file, long start, long end, int depth) throws IOException {
+        String atomType = MP4_COVER_PATH[depth];
+        byte[] atomHeader = new byte[8];
+
+        long position = start;
+        while (position + 8 <= end) {
+            file.seek(position);
+            file.readFully(atomHeader);
+
+            long size = readUnsignedInt(atomHeader, 0);
+            int headerSize = 8;
+            if (size == 1) {
+                size = file.readLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                // Extends to the end of the file
+                size = end - position;
+            }
+            if (size < headerSize || position + size > end) {
+                return null;
+            }
+
+            if (matches(atomHeader, 4, atomType)) {
+                long childStart = position + headerSize;
+                long atomEnd = position + size;
+
+                if (depth == MP4_COVER_PATH.length - 1) {
+                    // The data atom starts with a type indicator and locale
+                    long pictureStart = childStart + 8;
+                    return pictureStart < atomEnd ? new long[] { pictureStart, atomEnd - pictureStart } : null;
+                }
+
+                if (atomType.equals("meta")) {
+                    // Version and flags
+                    childStart += 4;
+                }
+
+                long[] range = findMp4Picture(file, childStart, atomEnd, depth + 1);
+                if (range != null) {
+                    return range;
+                }
+            }
+
+            position += size;
+        }
+        return null;
+    }
+
+    /**
+     * @return the index following the first terminator of the passed in width at or after the passed in index, or -1 if there is none.
+     */
+    private static int indexOfTerminator(byte[] data, int index, int width) {
+        if (width == 1) {
+            for (int i = index; i < data.length; i++) {
+                if (data[i] == 0) {
+                    return i + 1;
+                }
+            }
+        } else {
+            for (int i = index; i + 1 < data.length; i += 2) {
+                if (data[i] == 0 && data[i + 1] == 0) {
+                    return i + 2;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] data, int offset, String id) {
+        byte[] idBytes = id.getBytes(ISO_8859_1);
+        if (offset + idBytes.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < idBytes.length; i++) {
+            if (data[offset + i] != idBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long readSyncsafeInt(byte[] data, int offset) {
+        return ((data[offset] & 0x7F) << 21) | ((data[offset + 1] & 0x7F) << 14) | ((data[offset + 2] & 0x7F) << 7) | (data[offset + 3] & 0x7F);
+    }
+
+    private static long readUnsignedInt(byte[] data, int offset) {
+        return ((long) (data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static long readInt24(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 16) | ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+    }
+
+    /**
+     * Reads at most the passed in number of bytes from the wrapped stream.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream inputStream, long length) {
+            super(inputStream);
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int result = super.read();
+            if (result >= 0) {
+                remaining--;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(Math.min(count, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.simplecity.amp_library.utils;
 
+import android.os.Build;
 import android.os.Environment;
 import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
+import android.util.LruCache;
 import com.simplecity.amp_library.R;
 import com.simplecity.amp_library.interfaces.FileType;
 import com.simplecity.amp_library.model.BaseFileObject;
@@ -11,7 +13,15 @@ import com.simplecity.amp_library.model.FileObject;
 import com.simplecity.amp_library.model.FolderObject;
 import com.simplecity.amp_library.model.TagInfo;
 import com.simplecity.amp_library.utils.sorting.SortManager;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
 import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -19,8 +29,39 @@ import java.util.List;
 
 public class FileBrowser {
 
+    private static final String TAG = "FileBrowser";
+
+    private static final int INITIAL_PAGE_SIZE = 20;
+
+    // Caps the page size, so scrolling is picked up reasonably quickly in large folders
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private static final int FOLDER_COUNTS_CACHE_SIZE = 1000;
+
+    /**
+     * The child counts of a folder, as of its last modified time.
+     */
+    private static class FolderCounts {
+
+        final long modified;
+        final int folderCount;
+        final int fileCount;
+
+        FolderCounts(long modified, int folderCount, int fileCount) {
+            this.modified = modified;
+            this.folderCount = folderCount;
+            this.fileCount = fileCount;
+        }
+    }
+
+    // Keyed by path. Entries are only valid while the folder's last modified time is unchanged.
+    private static final LruCache<String, FolderCounts> folderCountsCache = new LruCache<>(FOLDER_COUNTS_CACHE_SIZE);
+
     @Nullable
-    private File currentDir;
+    private volatile File currentDir;
+
+    private volatile int firstVisibleRow;
+    private volatile int lastVisibleRow;
 
     private SettingsManager settingsManager;
 
@@ -30,29 +71,133 @@ public class FileBrowser {
 
     /**
      * Loads the specified folder.
+     * <p>
+     * The first emission contains every entry in the folder, in its final order. If the sort order depends on files' {@link TagInfo} or
+     * sub-folders' child counts, those are loaded before the first emission. Otherwise files don't yet have their {@link TagInfo}, and
+     * sub-folders only have their child counts if they're cached. Subsequent emissions fill these in without reordering anything, in
+     * pages of increasing size, starting from the rows passed to {@link #setVisibleRows(int, int)}.
      *
      * @param directory The file object to points to the directory to load.
-     * @return An {@link List<BaseFileObject>} object that holds the data of the specified directory.
+     * @return An {@link Observable} emitting {@link List<BaseFileObject>}s that hold the data of the specified directory.
      */
-    @WorkerThread
-    public List<BaseFileObject> loadDir(File directory) {
-        ThreadUtils.ensureNotOnMainThread();
-        currentDir = directory;
+    public Observable<List<BaseFileObject>> loadDir(File directory) {
+        return Observable.create(emitter -> {
+            ThreadUtils.ensureNotOnMainThread();
+            currentDir = directory;
+            setVisibleRows(0, INITIAL_PAGE_SIZE - 1);
+
+            List<BaseFileObject> folderObjects = new ArrayList<>();
+            List<BaseFileObject> fileObjects = new ArrayList<>();
+            processFiles(listFiles(directory), folderObjects, fileObjects);
+
+            // Anything the sort order depends on is loaded up front, so rows don't move once they're displayed
+            if (settingsManager.getFolderBrowserFoldersSortOrder() == SortManager.SortFolders.COUNT) {
+                completeAll(folderObjects, emitter);
+            }
+            int filesSortOrder = settingsManager.getFolderBrowserFilesSortOrder();
+            if (filesSortOrder != SortManager.SortFiles.FILE_NAME && filesSortOrder != SortManager.SortFiles.SIZE) {
+                completeAll(fileObjects, emitter);
+            }
+
+            if (emitter.isDisposed()) {
+                return;
+            }
+
+            List<BaseFileObject> items = sortAndAddObjects(folderObjects, fileObjects);
+            emitter.onNext(new ArrayList<>(items));
+
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (!isComplete(items.get(i))) {
+                    pending.add(i);
+                }
+            }
+
+            int pageSize = INITIAL_PAGE_SIZE;
+            while (!pending.isEmpty() && !emitter.isDisposed()) {
+                // The visible rows may have changed since the last page
+                Collections.sort(pending, visibleRowsFirstComparator(firstVisibleRow, lastVisibleRow));
+
+                int count = Math.min(pageSize, pending.size());
+                for (int i = 0; i < count && !emitter.isDisposed(); i++) {
+                    int index = pending.get(i);
+                    items.set(index, complete(items.get(index)));
+                }
+                pending = new ArrayList<>(pending.subList(count, pending.size()));
+
+                if (!emitter.isDisposed()) {
+                    emitter.onNext(new ArrayList<>(items));
+                }
+                pageSize = Math.min(pageSize * 2, MAX_PAGE_SIZE);
+            }
+
+            if (!emitter.isDisposed()) {
+                emitter.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Sets the range of rows (indices into the list emitted by {@link #loadDir(File)}) currently on screen, whose tags & counts are loaded
+     * first.
+     */
+    public void setVisibleRows(int first, int last) {
+        firstVisibleRow = first;
+        lastVisibleRow = last;
+    }
 
-        List<BaseFileObject> folderObjects = new ArrayList<>();
-        List<BaseFileObject> fileObjects = new ArrayList<>();
+    /**
+     * Orders row indices by their distance from the visible rows, and then by position.
+     */
+    private static Comparator<Integer> visibleRowsFirstComparator(int first, int last) {
+        return (lhs, rhs) -> {
+            int result = Integer.compare(distance(lhs, first, last), distance(rhs, first, last));
+            return result != 0 ? result : Integer.compare(lhs, rhs);
+        };
+    }
 
-        File[] files = directory.listFiles(FileHelper.getAudioFilter());
-        if (files != null) {
-            processFiles(files, folderObjects, fileObjects);
+    private static int distance(int row, int first, int last) {
+        if (row < first) {
+            return first - row;
         }
+        return row > last ? row - last : 0;
+    }
 
-        sortAndAddObjects(folderObjects, fileObjects);
+    private void completeAll(List<BaseFileObject> baseFileObjects, ObservableEmitter<?> emitter) {
+        for (int i = 0; i < baseFileObjects.size() && !emitter.isDisposed(); i++) {
+            if (!isComplete(baseFileObjects.get(i))) {
+                baseFileObjects.set(i, complete(baseFileObjects.get(i)));
+            }
+        }
+    }
 
-        return folderObjects;
+    /**
+     * @return the readable audio files & folders in the passed in directory.
+     */
+    private static List<File> listFiles(File directory) {
+        List<File> files = new ArrayList<>();
+        FileFilter audioFilter = FileHelper.getAudioFilter();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory.toPath())) {
+                for (Path path : directoryStream) {
+                    File file = path.toFile();
+                    if (audioFilter.accept(file)) {
+                        files.add(file);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException | SecurityException e) {
+                LogUtils.logException(TAG, "Failed to list directory", e);
+            }
+        } else {
+            File[] array = directory.listFiles(audioFilter);
+            if (array != null) {
+                Collections.addAll(files, array);
+            }
+        }
+        return files;
     }
 
-    private void processFiles(File[] files, List<BaseFileObject> folderObjects, List<BaseFileObject> fileObjects) {
+    private void processFiles(List<File> files, List<BaseFileObject> folderObjects, List<BaseFileObject> fileObjects) {
         for (File file : files) {
             BaseFileObject baseFileObject = createBaseFileObject(file);
             if (baseFileObject != null) {
@@ -77,32 +222,14 @@ public class FileBrowser {
         FolderObject folderObject = new FolderObject();
         folderObject.path = FileHelper.getPath(file);
         folderObject.name = file.getName();
-        File[] listOfFiles = file.listFiles(FileHelper.getAudioFilter());
-        if (listOfFiles != null && listOfFiles.length > 0) {
-            folderObject.folderCount = countFolders(listOfFiles);
-            folderObject.fileCount = countFiles(listOfFiles);
-        }
-        return folderObject;
-    }
 
-    private int countFolders(File[] files) {
-        int count = 0;
-        for (File file : files) {
-            if (file.isDirectory()) {
-                count++;
-            }
-        }
-        return count;
-    }
-
-    private int countFiles(File[] files) {
-        int count = 0;
-        for (File file : files) {
-            if (!file.isDirectory()) {
-                count++;
-            }
+        FolderCounts folderCounts = folderCountsCache.get(folderObject.path);
+        if (folderCounts != null && folderCounts.modified == file.lastModified()) {
+            folderObject.folderCount = folderCounts.folderCount;
+            folderObject.fileCount = folderCounts.fileCount;
+            folderObject.hasCounts = true;
         }
-        return count;
+        return folderObject;
     }
 
     private FileObject createFileObject(File file) {
@@ -114,37 +241,56 @@ public class FileBrowser {
         if (TextUtils.isEmpty(fileObject.extension)) {
             return null;
         }
-        fileObject.tagInfo = new TagInfo(fileObject.path);
         return fileObject;
     }
 
-    private void sortAndAddObjects(List<BaseFileObject> folderObjects, List<BaseFileObject> fileObjects) {
-        sortFileObjects(fileObjects);
-        sortFolderObjects(folderObjects);
-
-        if (!settingsManager.getFolderBrowserFilesAscending()) {
-            Collections.reverse(fileObjects);
+    private static boolean isComplete(BaseFileObject baseFileObject) {
+        if (baseFileObject.fileType == FileType.FOLDER) {
+            return ((FolderObject) baseFileObject).hasCounts;
         }
-
-        if (!settingsManager.getFolderBrowserFoldersAscending()) {
-            Collections.reverse(folderObjects);
+        if (baseFileObject.fileType == FileType.FILE) {
+            return ((FileObject) baseFileObject).tagInfo != null;
         }
+        return true;
+    }
 
-        folderObjects.addAll(fileObjects);
+    /**
+     * @return a copy of the passed in object with its child counts or tag info filled in. Must only be called for incomplete objects.
+     */
+    private BaseFileObject complete(BaseFileObject baseFileObject) {
+        if (baseFileObject.fileType == FileType.FOLDER) {
+            FolderObject folderObject = (FolderObject) baseFileObject;
+            File file = new File(folderObject.path);
+            long modified = file.lastModified();
+
+            FolderObject completed = new FolderObject();
+            completed.path = folderObject.path;
+            completed.name = folderObject.name;
+            for (File child : listFiles(file)) {
+                if (child.isDirectory()) {
+                    completed.folderCount++;
+                } else {
+                    completed.fileCount++;
+                }
+            }
+            completed.hasCounts = true;
 
-        if (!FileHelper.isRootDirectory(currentDir)) {
-            folderObjects.add(0, createParentObject());
+            folderCountsCache.put(completed.path, new FolderCounts(modified, completed.folderCount, completed.fileCount));
+            return completed;
         }
-    }
 
-    private FolderObject createParentObject() {
-        FolderObject parentObject = new FolderObject();
-        parentObject.fileType = FileType.PARENT;
-        parentObject.name = FileHelper.PARENT_DIRECTORY;
-        parentObject.path = FileHelper.getPath(currentDir) + FileHelper.PARENT_DIRECTORY;
-        return parentObject;
+        FileObject fileObject = (FileObject) baseFileObject;
+
+        FileObject completed = new FileObject();
+        completed.path = fileObject.path;
+        completed.name = fileObject.name;
+        completed.size = fileObject.size;
+        completed.extension = fileObject.extension;
+        completed.tagInfo = new TagInfo(fileObject.path);
+        return completed;
     }
 
+    private List<BaseFileObject> sortAndAddObjects(List<BaseFileObject> folderObjects, List<BaseFileObject> fileObjects) {
         sortFileObjects(fileObjects);
         sortFolderObjects(folderObjects);
 
@@ -156,17 +302,24 @@ public class FileBrowser {
             Collections.reverse(folderObjects);
         }
 
-        folderObjects.addAll(fileObjects);
+        List<BaseFileObject> items = new ArrayList<>(folderObjects.size() + fileObjects.size() + 1);
 
         if (!FileHelper.isRootDirectory(currentDir)) {
-            FolderObject parentObject = new FolderObject();
-            parentObject.fileType = FileType.PARENT;
-            parentObject.name = FileHelper.PARENT_DIRECTORY;
-            parentObject.path = FileHelper.getPath(currentDir) + FileHelper.PARENT_DIRECTORY;
-            folderObjects.add(0, parentObject);
+            items.add(createParentObject());
         }
 
-        return folderObjects;
+        items.addAll(folderObjects);
+        items.addAll(fileObjects);
+
+        return items;
+    }
+
+    private FolderObject createParentObject() {
+        FolderObject parentObject = new FolderObject();
+        parentObject.fileType = FileType.PARENT;
+        parentObject.name = FileHelper.PARENT_DIRECTORY;
+        parentObject.path = FileHelper.getPath(currentDir) + FileHelper.PARENT_DIRECTORY;
+        return parentObject;
     }
 
     @Nullable
@@ -235,6 +388,9 @@ public class FileBrowser {
 
     public void sortFolderObjects(List<BaseFileObject> baseFileObjects) {
 
+        // Sorted by name first, so folders with equal counts stay in name order
+        Collections.sort(baseFileObjects, filenameComparator());
+
         switch (settingsManager.getFolderBrowserFoldersSortOrder()) {
             case SortManager.SortFolders.COUNT:
                 Collections.sort(baseFileObjects, fileCountComparator());
@@ -243,18 +399,20 @@ public class FileBrowser {
 
             case SortManager.SortFolders.DEFAULT:
             default:
-                Collections.sort(baseFileObjects, filenameComparator());
                 break;
         }
     }
 
     public void sortFileObjects(List<BaseFileObject> baseFileObjects) {
+
+        // Sorted by name first, so files with equal keys stay in name order
+        Collections.sort(baseFileObjects, filenameComparator());
+
         switch (settingsManager.getFolderBrowserFilesSortOrder()) {
             case SortManager.SortFiles.SIZE:
                 Collections.sort(baseFileObjects, sizeComparator());
                 break;
             case SortManager.SortFiles.FILE_NAME:
-                Collections.sort(baseFileObjects, filenameComparator());
                 break;
             case SortManager.SortFiles.ARTIST_NAME:
                 Collections.sort(baseFileObjects, artistNameComparator());
@@ -319,61 +477,89 @@ public class FileBrowser {
     }
 
     private Comparator<BaseFileObject> sizeComparator() {
-        return (Comparator<BaseFileObject>) (lhs, rhs) -> (int) (rhs.size - lhs.size);
+        return (lhs, rhs) -> Long.compare(rhs.size, lhs.size);
     }
 
     private Comparator<BaseFileObject> filenameComparator() {
-        return (Comparator<BaseFileObject>) (lhs, rhs) -> lhs.name.compareToIgnoreCase(rhs.name);
+        return (lhs, rhs) -> lhs.name.compareToIgnoreCase(rhs.name);
     }
 
     private Comparator<BaseFileObject> trackNumberComparator() {
-        return (Comparator<FileObject>) (lhs, rhs) -> lhs.tagInfo.trackNumber - rhs.tagInfo.trackNumber;
+        return (lhs, rhs) -> {
+            TagInfo lhsTagInfo = getTagInfo(lhs);
+            TagInfo rhsTagInfo = getTagInfo(rhs);
+            if (lhsTagInfo == null || rhsTagInfo == null) {
+                return nullCompare(lhsTagInfo, rhsTagInfo);
+            }
+            return Integer.compare(lhsTagInfo.trackNumber, rhsTagInfo.trackNumber);
+        };
     }
 
     private Comparator<BaseFileObject> folderCountComparator() {
-        return (Comparator<FolderObject>) (lhs, rhs) -> rhs.folderCount - lhs.folderCount;
+        return (lhs, rhs) -> Integer.compare(((FolderObject) rhs).folderCount, ((FolderObject) lhs).folderCount);
     }
 
     private Comparator<BaseFileObject> fileCountComparator() {
-        return (Comparator<FolderObject>) (lhs, rhs) -> rhs.fileCount - lhs.fileCount;
+        return (lhs, rhs) -> Integer.compare(((FolderObject) rhs).fileCount, ((FolderObject) lhs).fileCount);
     }
 
     private Comparator<BaseFileObject> artistNameComparator() {
-        return (Comparator<FileObject>) (lhs, rhs) -> {
-            if (lhs.tagInfo.artistName == null || rhs.tagInfo.artistName == null) {
-                return nullCompare(lhs.tagInfo.artistName, rhs.tagInfo.artistName);
+        return (lhs, rhs) -> {
+            TagInfo lhsTagInfo = getTagInfo(lhs);
+            TagInfo rhsTagInfo = getTagInfo(rhs);
+            if (lhsTagInfo == null || rhsTagInfo == null) {
+                return nullCompare(lhsTagInfo, rhsTagInfo);
+            }
+            if (lhsTagInfo.artistName == null || rhsTagInfo.artistName == null) {
+                return nullCompare(lhsTagInfo.artistName, rhsTagInfo.artistName);
             }
-            return lhs.tagInfo.artistName.compareToIgnoreCase(rhs.tagInfo.artistName);
+            return lhsTagInfo.artistName.compareToIgnoreCase(rhsTagInfo.artistName);
         };
     }
 
     private Comparator<BaseFileObject> albumNameComparator() {
-        return (Comparator<FileObject>) (lhs, rhs) -> {
-            if (lhs.tagInfo.albumName == null || rhs.tagInfo.albumName == null) {
-                return nullCompare(lhs.tagInfo.albumName, rhs.tagInfo.albumName);
+        return (lhs, rhs) -> {
+            TagInfo lhsTagInfo = getTagInfo(lhs);
+            TagInfo rhsTagInfo = getTagInfo(rhs);
+            if (lhsTagInfo == null || rhsTagInfo == null) {
+                return nullCompare(lhsTagInfo, rhsTagInfo);
+            }
+            if (lhsTagInfo.albumName == null || rhsTagInfo.albumName == null) {
+                return nullCompare(lhsTagInfo.albumName, rhsTagInfo.albumName);
             }
-            return lhs.tagInfo.albumName.compareToIgnoreCase(rhs.tagInfo.albumName);
+            return lhsTagInfo.albumName.compareToIgnoreCase(rhsTagInfo.albumName);
         };
     }
 
     private Comparator<BaseFileObject> trackNameComparator() {
-        return (Comparator<FileObject>) (lhs, rhs) -> {
-            if (lhs.tagInfo.trackName == null || rhs.tagInfo.trackName == null) {
-                return nullCompare(lhs.tagInfo.trackName, rhs.tagInfo.trackName);
+        return (lhs, rhs) -> {
+            TagInfo lhsTagInfo = getTagInfo(lhs);
+            TagInfo rhsTagInfo = getTagInfo(rhs);
+            if (lhsTagInfo == null || rhsTagInfo == null) {
+                return nullCompare(lhsTagInfo, rhsTagInfo);
             }
-            return lhs.tagInfo.trackName.compareToIgnoreCase(rhs.tagInfo.trackName);
+            if (lhsTagInfo.trackName == null || rhsTagInfo.trackName == null) {
+                return nullCompare(lhsTagInfo.trackName, rhsTagInfo.trackName);
+            }
+            return lhsTagInfo.trackName.compareToIgnoreCase(rhsTagInfo.trackName);
         };
     }
 
-    <T extends Comparable<T>> int nullCompare(T a, T b) {
+    @Nullable
+    private static TagInfo getTagInfo(BaseFileObject baseFileObject) {
+        return baseFileObject instanceof FileObject ? ((FileObject) baseFileObject).tagInfo : null;
+    }
+
+    /**
+     * Orders nulls last. Only meaningful if at least one of the arguments is null.
+     */
+    private static int nullCompare(@Nullable Object a, @Nullable Object b) {
         if (a == null && b == null) {
             return 0;
         } else if (a == null) {
-            return Integer.MIN_VALUE;
-        } else if (b == null) {
-            return Integer.MAX_VALUE;
+            return 1;
         } else {
-            return a.compareTo(b);
+            return -1;
         }
     }
 }
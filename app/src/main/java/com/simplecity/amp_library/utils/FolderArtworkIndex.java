@@ -0,0 +1,146 @@
+package com.simplecity.amp_library.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LruCache;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * An index of the artwork files in each directory, so resolving folder artwork for a song or album doesn't require listing and
+ * matching the directory every time.
+ * <p>
+ * Directories are indexed lazily, and re-indexed when their last modified time changes (which happens whenever a file is added,
+ * removed or renamed), or when any of their artwork files' size or last modified time changes (which happens when a file is overwritten
+ * in place).
+ */
+final class FolderArtworkIndex {
+
+    private static final Pattern ARTWORK_PATTERN = Pattern.compile("(folder|cover|album).*\\.(jpg|jpeg|png)", Pattern.CASE_INSENSITIVE);
+
+    // Files this small are usually placeholders rather than real artwork
+    private static final long MIN_ARTWORK_SIZE = 1024;
+
+    private static final int CACHE_SIZE = 500;
+
+    private static class Entry {
+
+        final long lastModified;
+
+        @NonNull
+        final List<File> artworkFiles;
+
+        // The length & last modified time of each artwork file, when it was indexed
+        final long[] lengths;
+        final long[] lastModifieds;
+
+        // The largest artwork file, or null if there's no usable artwork in the directory
+        @Nullable
+        final File bestArtworkFile;
+
+        Entry(long lastModified, @NonNull List<File> artworkFiles, long[] lengths, long[] lastModifieds, @Nullable File bestArtworkFile) {
+            this.lastModified = lastModified;
+            this.artworkFiles = artworkFiles;
+            this.lengths = lengths;
+            this.lastModifieds = lastModifieds;
+            this.bestArtworkFile = bestArtworkFile;
+        }
+
+        boolean isValid(long directoryLastModified) {
+            if (lastModified != directoryLastModified) {
+                return false;
+            }
+            for (int i = 0, size = artworkFiles.size(); i < size; i++) {
+                File file = artworkFiles.get(i);
+                if (file.length() != lengths[i] || file.lastModified() != lastModifieds[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final LruCache<String, Entry> cache = new LruCache<>(CACHE_SIZE);
+
+    private FolderArtworkIndex() {
+    }
+
+    /**
+     * @return the best artwork file in the passed in directory, or null if there is none.
+     */
+    @Nullable
+    @WorkerThread
+    static File getBestArtworkFile(@Nullable File directory) {
+        Entry entry = getEntry(directory);
+        return entry != null ? entry.bestArtworkFile : null;
+    }
+
+    /**
+     * @return all artwork files in the passed in directory.
+     */
+    @NonNull
+    @WorkerThread
+    static List<File> getArtworkFiles(@Nullable File directory) {
+        Entry entry = getEntry(directory);
+        return entry != null ? new ArrayList<>(entry.artworkFiles) : new ArrayList<>();
+    }
+
+    @Nullable
+    private static Entry getEntry(@Nullable File directory) {
+        if (directory == null) {
+            return null;
+        }
+
+        // lastModified() returns 0 if the directory doesn't exist, which saves a separate exists() check
+        long lastModified = directory.lastModified();
+        if (lastModified == 0) {
+            return null;
+        }
+
+        String key = directory.getPath();
+        Entry entry = cache.get(key);
+        if (entry == null || !entry.isValid(lastModified)) {
+            entry = buildEntry(directory, lastModified);
+            if (entry == null) {
+                return null;
+            }
+            cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    @Nullable
+    private static Entry buildEntry(File directory, long lastModified) {
+        File[] files = directory.listFiles(file -> ARTWORK_PATTERN.matcher(file.getName()).matches());
+        if (files == null) {
+            return null;
+        }
+
+        List<File> artworkFiles = new ArrayList<>(files.length);
+        long[] lengths = new long[files.length];
+        long[] lastModifieds = new long[files.length];
+        File bestArtworkFile = null;
+        long bestLength = MIN_ARTWORK_SIZE;
+        for (File file : files) {
+            long length = file.length();
+            long fileLastModified = file.lastModified();
+            if (fileLastModified == 0) {
+                // The file doesn't exist (anymore)
+                continue;
+            }
+            lengths[artworkFiles.size()] = length;
+            lastModifieds[artworkFiles.size()] = fileLastModified;
+            artworkFiles.add(file);
+            if (length > bestLength) {
+                bestArtworkFile = file;
+                bestLength = length;
+            }
+        }
+
+        return new Entry(lastModified, Collections.unmodifiableList(artworkFiles), lengths, lastModifieds, bestArtworkFile);
+    }
+}
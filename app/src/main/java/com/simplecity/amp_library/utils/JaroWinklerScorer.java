@@ -0,0 +1,201 @@
+package com.simplecity.amp_library.utils;
+
+import android.support.annotation.NonNull;
+import java.text.Normalizer;
+
+/**
+ * Scores candidate strings against a fixed query, using the Jaro-Winkler similarity.
+ * <p>
+ * Candidates are expected to be pre-normalized via {@link #normalize(String)}, so they can be scored repeatedly without being lowercased
+ * or normalized again. Scoring uses per-thread scratch buffers, and doesn't allocate.
+ * <p>
+ * Given a threshold, scoring bails out as soon as the number of characters matched so far means the score can no longer exceed it.
+ */
+public final class JaroWinklerScorer {
+
+    private static final double DEFAULT_SCALING_FACTOR = 0.1;
+
+    private static final ThreadLocal<boolean[]> scratch = new ThreadLocal<boolean[]>() {
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[64];
+        }
+    };
+
+    private final char[] query;
+
+    public JaroWinklerScorer(@NonNull String query) {
+        this.query = normalize(query);
+    }
+
+    /**
+     * @return the passed in string, lowercased and decomposed (NFD), as expected by the score methods.
+     */
+    @NonNull
+    public static char[] normalize(@NonNull String string) {
+        return Normalizer.normalize(string.toLowerCase(), Normalizer.Form.NFD).toCharArray();
+    }
+
+    /**
+     * Equivalent to {@link StringUtils#getJaroWinklerSimilarity(String, String)}.
+     *
+     * @param candidate the normalized candidate
+     * @param threshold scores which can't exceed this threshold are reported as 0. Pass a negative value to always compute the score.
+     */
+    public double score(@NonNull char[] candidate, double threshold) {
+        return score(candidate, 0, candidate.length, query, threshold);
+    }
+
+    /**
+     * Equivalent to {@link StringUtils#getAdjustedJaroWinklerSimilarity(String, String)}: the best score between the query and either the
+     * whole candidate, or any of its whitespace separated tokens.
+     *
+     * @param candidate the normalized candidate
+     * @param threshold scores which can't exceed this threshold are reported as 0. Pass a negative value to always compute the score.
+     */
+    public double adjustedScore(@NonNull char[] candidate, double threshold) {
+        if (candidate.length == 0 || query.length == 0) {
+            return 0;
+        }
+
+        double score = score(candidate, 0, candidate.length, query, threshold);
+
+        if (!hasInnerWhitespace(candidate)) {
+            return score;
+        }
+
+        int tokenStart = 0;
+        for (int i = 0; i <= candidate.length; i++) {
+            if (i == candidate.length || isWhitespace(candidate[i])) {
+                if (i > tokenStart) {
+                    score = Math.max(score, score(candidate, tokenStart, i - tokenStart, query, Math.max(threshold, score)));
+                }
+                tokenStart = i + 1;
+            }
+        }
+        return score;
+    }
+
+    static double score(char[] first, int firstOffset, int firstLength, char[] second, double threshold) {
+        final int secondLength = second.length;
+
+        if (firstLength == 0 || secondLength == 0) {
+            return 0;
+        }
+
+        final boolean firstIsMax = firstLength > secondLength;
+        final int maxLength = firstIsMax ? firstLength : secondLength;
+        final int minLength = firstIsMax ? secondLength : firstLength;
+
+        int prefix = 0;
+        while (prefix < minLength && first[firstOffset + prefix] == second[prefix]) {
+            prefix++;
+        }
+
+        // The fewest matches needed to exceed the threshold, assuming no transpositions.
+        int requiredMatches = 0;
+        if (threshold >= 0) {
+            requiredMatches = minLength + 1;
+            for (int m = 1; m <= minLength; m++) {
+                if (round(jaroWinkler(m, 0, prefix, firstLength, secondLength, maxLength)) > threshold) {
+                    requiredMatches = m;
+                    break;
+                }
+            }
+            if (requiredMatches > minLength) {
+                return 0;
+            }
+        }
+
+        // flags[0, maxLength) marks matched characters of the longer string, flags[maxLength, maxLength + minLength) those of the shorter.
+        boolean[] flags = scratch.get();
+        if (flags.length < maxLength + minLength) {
+            flags = new boolean[Math.max(maxLength + minLength, flags.length * 2)];
+            scratch.set(flags);
+        }
+
+        final int range = Math.max(maxLength / 2 - 1, 0);
+
+        int matches = 0;
+        for (int mi = 0; mi < minLength; mi++) {
+            final char c1 = firstIsMax ? second[mi] : first[firstOffset + mi];
+            for (int xi = Math.max(mi - range, 0), xn = Math.min(mi + range + 1, maxLength); xi < xn; xi++) {
+                if (!flags[xi] && c1 == (firstIsMax ? first[firstOffset + xi] : second[xi])) {
+                    flags[xi] = true;
+                    flags[maxLength + mi] = true;
+                    matches++;
+                    break;
+                }
+            }
+            if (matches + (minLength - mi - 1) < requiredMatches) {
+                clear(flags, maxLength + minLength);
+                return 0;
+            }
+        }
+
+        if (matches == 0) {
+            clear(flags, maxLength + minLength);
+            return 0;
+        }
+
+        // Walk the matched characters of both strings in order, counting those which are out of place.
+        int transpositions = 0;
+        for (int mi = 0, xi = 0; mi < minLength; mi++) {
+            if (flags[maxLength + mi]) {
+                while (!flags[xi]) {
+                    xi++;
+                }
+                final char minChar = firstIsMax ? second[mi] : first[firstOffset + mi];
+                final char maxChar = firstIsMax ? first[firstOffset + xi] : second[xi];
+                if (minChar != maxChar) {
+                    transpositions++;
+                }
+                xi++;
+            }
+        }
+
+        clear(flags, maxLength + minLength);
+
+        double score = round(jaroWinkler(matches, transpositions / 2, prefix, firstLength, secondLength, maxLength));
+
+        // Report every score which doesn't exceed the threshold the same way, whether or not we bailed out early
+        return score > threshold ? score : 0;
+    }
+
+    private static double jaroWinkler(double matches, int transpositions, int prefix, int firstLength, int secondLength, int maxLength) {
+        final double j = (matches / firstLength + matches / secondLength + (matches - transpositions) / matches) / 3;
+        return j < 0.7D ? j : j + Math.min(DEFAULT_SCALING_FACTOR, 1D / maxLength) * prefix * (1D - j);
+    }
+
+    private static double round(double score) {
+        return Math.round(score * 100.0D) / 100.0D;
+    }
+
+    private static void clear(boolean[] flags, int length) {
+        for (int i = 0; i < length; i++) {
+            flags[i] = false;
+        }
+    }
+
+    /**
+     * @return true if splitting the candidate at whitespace (as {@link String#split(String)} would) results in more than one token.
+     */
+    private static boolean hasInnerWhitespace(char[] candidate) {
+        boolean seenWhitespace = false;
+        for (char c : candidate) {
+            if (isWhitespace(c)) {
+                seenWhitespace = true;
+            } else if (seenWhitespace) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches the regex character class '\s'
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
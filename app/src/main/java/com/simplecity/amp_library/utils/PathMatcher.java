@@ -0,0 +1,203 @@
+package com.simplecity.amp_library.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Matches a path against a fixed set of (case insensitive) path fragments.
+ * <p>
+ * This is equivalent to calling {@link StringUtils#containsIgnoreCase(String, String)} for each fragment, but the fragments are compiled
+ * once into an Aho-Corasick automaton, so a match costs O(path length) regardless of the number of fragments, and doesn't allocate.
+ * <p>
+ * Instances are immutable, and safe to share between threads.
+ */
+public final class PathMatcher {
+
+    private static final int ROOT = 0;
+
+    // Per-state transitions, sorted by character so they can be binary searched.
+    private final char[][] keys;
+    private final int[][] targets;
+
+    private final int[] failure;
+    private final boolean[] terminal;
+
+    private final boolean isEmpty;
+    private final boolean matchesAll;
+
+    public PathMatcher(@NonNull Collection<String> fragments) {
+
+        isEmpty = fragments.isEmpty();
+
+        Builder builder = new Builder(fragments);
+        keys = builder.keys;
+        targets = builder.targets;
+        failure = builder.failure;
+        terminal = builder.terminal;
+        matchesAll = builder.matchesAll;
+    }
+
+    /**
+     * @return true if no fragments were supplied.
+     */
+    public boolean isEmpty() {
+        return isEmpty;
+    }
+
+    /**
+     * @return true if the passed in path contains any of the fragments, ignoring case.
+     */
+    public boolean matches(@Nullable String path) {
+        if (path == null || isEmpty) {
+            return false;
+        }
+        if (matchesAll) {
+            return true;
+        }
+
+        int state = ROOT;
+        for (int i = 0, length = path.length(); i < length; i++) {
+            char c = Character.toLowerCase(path.charAt(i));
+
+            int next = transition(keys, targets, state, c);
+            while (next == -1 && state != ROOT) {
+                state = failure[state];
+                next = transition(keys, targets, state, c);
+            }
+            state = next == -1 ? ROOT : next;
+
+            if (terminal[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int transition(char[][] keys, int[][] targets, int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        return index < 0 ? -1 : targets[state][index];
+    }
+
+    /**
+     * Builds the automaton's tables. Only used during construction, so the matcher itself never mutates them.
+     */
+    private static final class Builder {
+
+        char[][] keys;
+        int[][] targets;
+
+        int[] failure;
+        boolean[] terminal;
+
+        boolean matchesAll;
+
+        private int stateCount;
+
+        Builder(Collection<String> fragments) {
+            int capacity = 1;
+            for (String fragment : fragments) {
+                capacity += fragment.length();
+            }
+
+            keys = new char[capacity][];
+            targets = new int[capacity][];
+            failure = new int[capacity];
+            terminal = new boolean[capacity];
+
+            keys[ROOT] = new char[0];
+            targets[ROOT] = new int[0];
+            stateCount = 1;
+
+            for (String fragment : fragments) {
+                addFragment(fragment);
+            }
+
+            buildFailureLinks();
+        }
+
+        private void addFragment(String fragment) {
+            if (fragment.isEmpty()) {
+                // Every path contains the empty string
+                matchesAll = true;
+                return;
+            }
+
+            int state = ROOT;
+            for (int i = 0, length = fragment.length(); i < length; i++) {
+                char c = Character.toLowerCase(fragment.charAt(i));
+                int next = transition(keys, targets, state, c);
+                if (next == -1) {
+                    next = stateCount++;
+                    keys[next] = new char[0];
+                    targets[next] = new int[0];
+                    addTransition(state, c, next);
+                }
+                state = next;
+            }
+            terminal[state] = true;
+        }
+
+        private void addTransition(int state, char c, int target) {
+            char[] stateKeys = keys[state];
+            int[] stateTargets = targets[state];
+
+            int insertionPoint = -(Arrays.binarySearch(stateKeys, c) + 1);
+
+            char[] newKeys = new char[stateKeys.length + 1];
+            int[] newTargets = new int[stateTargets.length + 1];
+            System.arraycopy(stateKeys, 0, newKeys, 0, insertionPoint);
+            System.arraycopy(stateTargets, 0, newTargets, 0, insertionPoint);
+            newKeys[insertionPoint] = c;
+            newTargets[insertionPoint] = target;
+            System.arraycopy(stateKeys, insertionPoint, newKeys, insertionPoint + 1, stateKeys.length - insertionPoint);
+            System.arraycopy(stateTargets, insertionPoint, newTargets, insertionPoint + 1, stateTargets.length - insertionPoint);
+
+            keys[state] = newKeys;
+            targets[state] = newTargets;
+        }
+
+        /**
+         * Breadth-first walk of the trie, pointing each state at the state representing its longest proper suffix. A state is terminal if
+         * any of its suffixes is terminal, so {@link PathMatcher#matches(String)} only needs to check the current state.
+         */
+        private void buildFailureLinks() {
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+            for (int child : targets[ROOT]) {
+                failure[child] = ROOT;
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                char[] stateKeys = keys[state];
+                int[] stateTargets = targets[state];
+
+                for (int i = 0; i < stateKeys.length; i++) {
+                    char c = stateKeys[i];
+                    int child = stateTargets[i];
+
+                    int fallback = failure[state];
+                    int next = transition(keys, targets, fallback, c);
+                    while (next == -1 && fallback != ROOT) {
+                        fallback = failure[fallback];
+                        next = transition(keys, targets, fallback, c);
+                    }
+                    failure[child] = next == -1 ? ROOT : next;
+                    terminal[child] |= terminal[failure[child]];
+
+                    queue.add(child);
+                }
+            }
+
+            // Trim to the number of states actually used
+            keys = Arrays.copyOf(keys, stateCount);
+            targets = Arrays.copyOf(targets, stateCount);
+            failure = Arrays.copyOf(failure, stateCount);
+            terminal = Arrays.copyOf(terminal, stateCount);
+        }
+    }
+}
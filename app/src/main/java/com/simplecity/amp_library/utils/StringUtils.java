@@ -5,9 +5,8 @@ import android.content.res.Resources;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
+import android.util.LruCache;
 import com.simplecity.amp_library.R;
-import java.text.Normalizer;
-import java.util.Arrays;
 import java.util.Formatter;
 import java.util.Locale;
 import java.util.regex.Pattern;
@@ -20,6 +19,18 @@ public class StringUtils {
 
     private static Pattern pattern = Pattern.compile("^(?i)\\s*(?:the |an |a )|(?:, the|, an|, a)\\s*$|[\\[\\]()!?.,']");
 
+    // The total number of chars of the names & keys held by the sort key cache. Enough for the titles, albums & artists of a large library.
+    private static final int SORT_KEY_CACHE_SIZE = 1024 * 1024;
+
+    // Caches the results of keyFor(), since the library is re-read (and its sort keys recomputed) whenever the media store changes.
+    private static final LruCache<String, String> sortKeys = new LruCache<String, String>(SORT_KEY_CACHE_SIZE) {
+        @Override
+        protected int sizeOf(String name, String key) {
+            // The key is often the name itself, in which case it takes no extra space
+            return name.length() + (key == name ? 0 : key.length());
+        }
+    };
+
     private StringUtils() {
 
     }
@@ -183,16 +194,20 @@ public class StringUtils {
      */
     public static String keyFor(String name) {
 
-        if (!TextUtils.isEmpty(name)) {
-            name = pattern.matcher(name)
+        if (TextUtils.isEmpty(name)) {
+            return "";
+        }
+
+        String key = sortKeys.get(name);
+        if (key == null) {
+            key = pattern.matcher(name)
                     .replaceAll("")
                     .trim()
                     .toLowerCase();
-        } else {
-            name = "";
+            sortKeys.put(name, key);
         }
 
-        return name;
+        return key;
     }
 
     /**
@@ -214,20 +229,7 @@ public class StringUtils {
             return 0;
         }
 
-        String[] split = first.split("\\s");
-        if (split.length > 1) {
-            double score = 0;
-            for (String str : split) {
-                double curScore = getJaroWinklerSimilarity(str, second);
-                if (curScore > score) {
-                    score = curScore;
-                }
-            }
-            //Make sure we do a normal (non-adjusted) test as well, in case that comes out as our best match.
-            return Math.max(getJaroWinklerSimilarity(first, second), score);
-        } else {
-            return getJaroWinklerSimilarity(first, second);
-        }
+        return new JaroWinklerScorer(second).adjustedScore(JaroWinklerScorer.normalize(first), -1);
     }
 
     /**
@@ -239,87 +241,14 @@ public class StringUtils {
      * <p>This implementation is based on the Jaro Winkler similarity algorithm
      * from <a href="http://en.wikipedia.org/wiki/Jaro%E2%80%93Winkler_distance">http://en.wikipedia.org/wiki/Jaro%E2%80%93Winkler_distance</a>.</p>
      * <p>
+     * <p>When scoring many candidates against the same query, prefer {@link JaroWinklerScorer}.</p>
      *
      * @param first the first String, must not be null
      * @param second the second String, must not be null
      * @return result similarity
      */
     public static double getJaroWinklerSimilarity(@NonNull String first, @NonNull String second) {
-
-        final double DEFAULT_SCALING_FACTOR = 0.1;
-
-        first = first.toLowerCase();
-        second = second.toLowerCase();
-        first = Normalizer.normalize(first, Normalizer.Form.NFD);
-        second = Normalizer.normalize(second, Normalizer.Form.NFD);
-
-        final int[] mtp = matches(first, second);
-        final double m = mtp[0];
-        if (m == 0) {
-            return 0D;
-        }
-        final double j = (m / first.length() + m / second.length() + (m - mtp[1]) / m) / 3;
-        final double jw = j < 0.7D ? j : j + Math.min(DEFAULT_SCALING_FACTOR, 1D / mtp[3]) * mtp[2] * (1D - j);
-        return Math.round(jw * 100.0D) / 100.0D;
-    }
-
-    private static int[] matches(final CharSequence first, final CharSequence second) {
-        CharSequence max;
-        CharSequence min;
-
-        if (first.length() > second.length()) {
-            max = first;
-            min = second;
-        } else {
-            max = second;
-            min = first;
-        }
-        final int range = Math.max(max.length() / 2 - 1, 0);
-        final int[] matchIndexes = new int[min.length()];
-        Arrays.fill(matchIndexes, -1);
-        final boolean[] matchFlags = new boolean[max.length()];
-        int matches = 0;
-        for (int mi = 0; mi < min.length(); mi++) {
-            final char c1 = min.charAt(mi);
-            for (int xi = Math.max(mi - range, 0), xn = Math.min(mi + range + 1, max.length()); xi < xn; xi++) {
-                if (!matchFlags[xi] && c1 == max.charAt(xi)) {
-                    matchIndexes[mi] = xi;
-                    matchFlags[xi] = true;
-                    matches++;
-                    break;
-                }
-            }
-        }
-        final char[] ms1 = new char[matches];
-        final char[] ms2 = new char[matches];
-        int si = 0;
-        for (int i = 0; i < min.length(); i++) {
-            if (matchIndexes[i] != -1) {
-                ms1[si] = min.charAt(i);
-                si++;
-            }
-        }
-        for (int i = 0; i < max.length(); i++) {
-            if (matchFlags[i]) {
-                ms2[si] = max.charAt(i);
-                si++;
-            }
-        }
-        int transpositions = 0;
-        for (int mi = 0; mi < ms1.length; mi++) {
-            if (ms1[mi] != ms2[mi]) {
-                transpositions++;
-            }
-        }
-        int prefix = 0;
-        for (int mi = 0; mi < min.length(); mi++) {
-            if (first.charAt(mi) == second.charAt(mi)) {
-                prefix++;
-            } else {
-                break;
-            }
-        }
-        return new int[] { matches, transpositions / 2, prefix, max.length() };
+        return new JaroWinklerScorer(second).score(JaroWinklerScorer.normalize(first), -1);
     }
 
     public static int parseInt(@Nullable String string) {
@@ -0,0 +1,355 @@
+package com.simplecity.amp_library.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+import android.util.LruCache;
+import com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper;
+import java.io.File;
+import java.io.IOException;
+import org.jaudiotagger.audio.AudioFile;
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.audio.AudioHeader;
+import org.jaudiotagger.audio.exceptions.CannotReadException;
+import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
+import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.TagException;
+
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_ALBUM;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_ALBUM_ARTIST;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_ARTIST;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_BITRATE;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_DISC;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_DISC_TOTAL;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_FORMAT;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_GENRE;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_HAS_ARTWORK;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_LYRICS;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_MODIFIED;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_PATH;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_READABLE;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_SAMPLE_RATE;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_SIZE;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_TITLE;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_TRACK;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_TRACK_TOTAL;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.COLUMN_YEAR;
+import static com.simplecity.amp_library.sql.databases.TagCacheDbOpenHelper.TABLE_NAME;
+
+/**
+ * A persistent cache of the tags read from audio files via {@link AudioFileIO}, so that each file only needs to be parsed once.
+ * <p>
+ * Entries are keyed by path, and are only valid while the file's size & last modified time are unchanged. Files which are modified by
+ * the app itself should be {@link #invalidate(String)}'d, since the last modified time isn't always granular enough to notice.
+ * <p>
+ * Embedded artwork isn't stored or decoded, but whether it's present is, so callers can skip parsing files which have no artwork.
+ */
+public final class TagCache {
+
+    private static final String TAG = "TagCache";
+
+    private static final int MEMORY_CACHE_SIZE = 500;
+
+    private static final String[] PROJECTION = new String[] {
+            COLUMN_SIZE, COLUMN_MODIFIED, COLUMN_READABLE, COLUMN_ARTIST, COLUMN_ALBUM_ARTIST, COLUMN_ALBUM, COLUMN_TITLE, COLUMN_TRACK,
+            COLUMN_TRACK_TOTAL, COLUMN_DISC, COLUMN_DISC_TOTAL, COLUMN_YEAR, COLUMN_GENRE, COLUMN_BITRATE, COLUMN_FORMAT, COLUMN_SAMPLE_RATE,
+            COLUMN_LYRICS, COLUMN_HAS_ARTWORK
+    };
+
+    public static class Entry {
+
+        final long size;
+        final long modified;
+
+        /**
+         * False if the file couldn't be parsed. The remaining fields are then empty.
+         */
+        public final boolean readable;
+
+        @Nullable public String artist;
+        @Nullable public String albumArtist;
+        @Nullable public String album;
+        @Nullable public String title;
+        @Nullable public String track;
+        @Nullable public String trackTotal;
+        @Nullable public String disc;
+        @Nullable public String discTotal;
+        @Nullable public String year;
+        @Nullable public String genre;
+        @Nullable public String bitrate;
+        @Nullable public String format;
+        public int sampleRate = -1;
+        @Nullable public String lyrics;
+
+        /**
+         * True if the file has embedded artwork.
+         */
+        public boolean hasArtwork;
+
+        Entry(long size, long modified, boolean readable) {
+            this.size = size;
+            this.modified = modified;
+            this.readable = readable;
+        }
+    }
+
+    private static TagCache instance;
+
+    @Nullable
+    private TagCacheDbOpenHelper dbOpenHelper;
+
+    private final LruCache<String, Entry> memoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+
+    public static synchronized TagCache getInstance() {
+        if (instance == null) {
+            instance = new TagCache();
+        }
+        return instance;
+    }
+
+    private TagCache() {
+    }
+
+    /**
+     * Enables persistence. Until this is called, entries are only cached in memory.
+     */
+    public synchronized void init(@NonNull Context context) {
+        if (dbOpenHelper == null) {
+            dbOpenHelper = new TagCacheDbOpenHelper(context.getApplicationContext());
+        }
+    }
+
+    /**
+     * @return the tags for the file at the passed in path, parsing the file if they're not already cached, or null if the file doesn't
+     * exist.
+     */
+    @Nullable
+    @WorkerThread
+    public Entry get(@Nullable String path) {
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+
+        File file = new File(path);
+        long size = file.length();
+        long modified = file.lastModified();
+        if (modified == 0) {
+            // The file doesn't exist
+            return null;
+        }
+
+        Entry entry = memoryCache.get(path);
+        if (entry != null && entry.size == size && entry.modified == modified) {
+            return entry;
+        }
+
+        entry = query(path);
+        if (entry == null || entry.size != size || entry.modified != modified) {
+            try {
+                entry = read(file, size, modified);
+            } catch (IOException | ReadOnlyFileException e) {
+                // The file couldn't be accessed, which may well be temporary (it's being written, or storage was unmounted), so the
+                // failure isn't cached
+                LogUtils.logException(TAG, "Failed to access file", e);
+                return new Entry(size, modified, false);
+            }
+            insert(path, entry);
+        }
+        memoryCache.put(path, entry);
+        return entry;
+    }
+
+    /**
+     * @return the cached tags for the file at the passed in path, or null if they're not cached (or are stale). Never parses the file.
+     */
+    @Nullable
+    @WorkerThread
+    public Entry getCached(@Nullable String path) {
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+
+        File file = new File(path);
+        long size = file.length();
+        long modified = file.lastModified();
+        if (modified == 0) {
+            return null;
+        }
+
+        Entry entry = memoryCache.get(path);
+        if (entry == null) {
+            entry = query(path);
+            if (entry != null) {
+                memoryCache.put(path, entry);
+            }
+        }
+        return entry != null && entry.size == size && entry.modified == modified ? entry : null;
+    }
+
+    /**
+     * Discards any cached tags for the file at the passed in path.
+     */
+    public void invalidate(@Nullable String path) {
+        if (path == null) {
+            return;
+        }
+        memoryCache.remove(path);
+
+        SQLiteDatabase database = getDatabase();
+        if (database != null) {
+            try {
+                database.delete(TABLE_NAME, COLUMN_PATH + "=?", new String[] { path });
+            } catch (SQLiteException e) {
+                LogUtils.logException(TAG, "Failed to invalidate tags", e);
+            }
+        }
+    }
+
+    /**
+     * @return the tags read from the passed in file, or an unreadable entry if the file couldn't be parsed.
+     * @throws IOException           if the file couldn't be read at all
+     * @throws ReadOnlyFileException if the file couldn't be opened
+     */
+    @NonNull
+    private static Entry read(File file, long size, long modified) throws IOException, ReadOnlyFileException {
+        try {
+            AudioFile audioFile = AudioFileIO.read(file);
+
+            Entry entry = new Entry(size, modified, true);
+
+            Tag tag = audioFile.getTag();
+            if (tag != null) {
+                entry.artist = getField(tag, FieldKey.ARTIST);
+                entry.albumArtist = getField(tag, FieldKey.ALBUM_ARTIST);
+                entry.album = getField(tag, FieldKey.ALBUM);
+                entry.title = getField(tag, FieldKey.TITLE);
+                entry.track = getField(tag, FieldKey.TRACK);
+                entry.trackTotal = getField(tag, FieldKey.TRACK_TOTAL);
+                entry.disc = getField(tag, FieldKey.DISC_NO);
+                entry.discTotal = getField(tag, FieldKey.DISC_TOTAL);
+                entry.year = getField(tag, FieldKey.YEAR);
+                entry.genre = getField(tag, FieldKey.GENRE);
+                entry.lyrics = getField(tag, FieldKey.LYRICS);
+
+                try {
+                    entry.hasArtwork = tag.hasField(FieldKey.COVER_ART);
+                } catch (UnsupportedOperationException ignored) {
+                }
+            }
+
+            AudioHeader audioHeader = audioFile.getAudioHeader();
+            if (audioHeader != null) {
+                try {
+                    entry.bitrate = audioHeader.getBitRate();
+                    entry.format = audioHeader.getFormat();
+                    entry.sampleRate = audioHeader.getSampleRateAsNumber();
+                } catch (UnsupportedOperationException ignored) {
+                }
+            }
+
+            return entry;
+        } catch (CannotReadException | TagException | InvalidAudioFrameException e) {
+            LogUtils.logException(TAG, "Failed to parse tags", e);
+            return new Entry(size, modified, false);
+        }
+    }
+
+    @Nullable
+    private static String getField(Tag tag, FieldKey key) {
+        try {
+            String value = tag.getFirst(key);
+            return TextUtils.isEmpty(value) ? null : value;
+        } catch (UnsupportedOperationException ignored) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private synchronized SQLiteDatabase getDatabase() {
+        if (dbOpenHelper == null) {
+            return null;
+        }
+        try {
+            return dbOpenHelper.getWritableDatabase();
+        } catch (SQLiteException e) {
+            LogUtils.logException(TAG, "Failed to open tag cache", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private Entry query(String path) {
+        SQLiteDatabase database = getDatabase();
+        if (database == null) {
+            return null;
+        }
+
+        try (Cursor cursor = database.query(TABLE_NAME, PROJECTION, COLUMN_PATH + "=?", new String[] { path }, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Entry entry = new Entry(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2) != 0);
+            entry.artist = cursor.getString(3);
+            entry.albumArtist = cursor.getString(4);
+            entry.album = cursor.getString(5);
+            entry.title = cursor.getString(6);
+            entry.track = cursor.getString(7);
+            entry.trackTotal = cursor.getString(8);
+            entry.disc = cursor.getString(9);
+            entry.discTotal = cursor.getString(10);
+            entry.year = cursor.getString(11);
+            entry.genre = cursor.getString(12);
+            entry.bitrate = cursor.getString(13);
+            entry.format = cursor.getString(14);
+            entry.sampleRate = cursor.getInt(15);
+            entry.lyrics = cursor.getString(16);
+            entry.hasArtwork = cursor.getInt(17) != 0;
+            return entry;
+        } catch (SQLiteException e) {
+            LogUtils.logException(TAG, "Failed to query tag cache", e);
+            return null;
+        }
+    }
+
+    private void insert(String path, Entry entry) {
+        SQLiteDatabase database = getDatabase();
+        if (database == null) {
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PATH, path);
+        values.put(COLUMN_SIZE, entry.size);
+        values.put(COLUMN_MODIFIED, entry.modified);
+        values.put(COLUMN_READABLE, entry.readable ? 1 : 0);
+        values.put(COLUMN_ARTIST, entry.artist);
+        values.put(COLUMN_ALBUM_ARTIST, entry.albumArtist);
+        values.put(COLUMN_ALBUM, entry.album);
+        values.put(COLUMN_TITLE, entry.title);
+        values.put(COLUMN_TRACK, entry.track);
+        values.put(COLUMN_TRACK_TOTAL, entry.trackTotal);
+        values.put(COLUMN_DISC, entry.disc);
+        values.put(COLUMN_DISC_TOTAL, entry.discTotal);
+        values.put(COLUMN_YEAR, entry.year);
+        values.put(COLUMN_GENRE, entry.genre);
+        values.put(COLUMN_BITRATE, entry.bitrate);
+        values.put(COLUMN_FORMAT, entry.format);
+        values.put(COLUMN_SAMPLE_RATE, entry.sampleRate);
+        values.put(COLUMN_LYRICS, entry.lyrics);
+        values.put(COLUMN_HAS_ARTWORK, entry.hasArtwork ? 1 : 0);
+
+        try {
+            database.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (SQLiteException e) {
+            LogUtils.logException(TAG, "Failed to write tag cache", e);
+        }
+    }
+}
@@ -18,8 +18,10 @@ package com.simplecity.amp_library.utils.color;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.support.annotation.Nullable;
 import android.support.v4.util.Pair;
 import android.support.v7.graphics.Palette;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -56,34 +58,58 @@ public class BitmapPaletteProcessor {
     private static final float BLACK_MAX_LIGHTNESS = 0.08f;
     private static final float WHITE_MIN_LIGHTNESS = 0.90f;
     private static final int RESIZE_BITMAP_AREA = 150 * 150;
-    private float[] mFilteredBackgroundHsl = null;
-    private Palette.Filter mBlackWhiteFilter = (rgb, hsl) -> !isWhiteOrBlack(hsl);
 
+    /**
+     * The minimum hue difference (in degrees) between the background and foreground colors
+     */
+    private static final float MIN_HUE_DIFFERENCE = 10;
 
     /**
      * Processes a builder of a media notification and calculates the appropriate colors that should
      * be used.
      *
+     * The bitmap is only quantized once. The foreground color is chosen from the same swatches as the background color, after
+     * filtering out those which are too close in hue to the background, or too close to black or white.
+     *
      * @param bitmap
      *
      * returns a {@link Pair} of integers. The first is the background colour, second is foreground colour.
      */
     public Pair<Integer, Integer> processBitmap(Bitmap bitmap) {
-        int backgroundColor = 0;
-        Palette.Builder paletteBuilder = Palette.from(bitmap).clearFilters();
-        Palette palette = paletteBuilder.generate();
-        backgroundColor = findBackgroundColorAndFilter(palette);
-        if (mFilteredBackgroundHsl != null) {
-            paletteBuilder.addFilter((rgb, hsl) -> {
-                // at least 10 degrees hue difference
-                float diff = Math.abs(hsl[0] - mFilteredBackgroundHsl[0]);
-                return diff > 10 && diff < 350;
-            });
+        Palette palette = Palette.from(bitmap)
+                .clearFilters()
+                .resizeBitmapArea(RESIZE_BITMAP_AREA)
+                .generate();
+
+        Palette.Swatch backgroundSwatch = findBackgroundSwatch(palette);
+        int backgroundColor = backgroundSwatch != null ? backgroundSwatch.getRgb() : Color.WHITE;
+
+        // If the background is black or white, any hue will do for the foreground
+        float[] filteredBackgroundHsl = backgroundSwatch != null && !isWhiteOrBlack(backgroundSwatch.getHsl()) ? backgroundSwatch.getHsl() : null;
+
+        List<Palette.Swatch> swatches = palette.getSwatches();
+        List<Palette.Swatch> foregroundSwatches = new ArrayList<>(swatches.size());
+        for (Palette.Swatch swatch : swatches) {
+            float[] hsl = swatch.getHsl();
+            if (isWhiteOrBlack(hsl)) {
+                continue;
+            }
+            if (filteredBackgroundHsl != null) {
+                float diff = Math.abs(hsl[0] - filteredBackgroundHsl[0]);
+                if (diff <= MIN_HUE_DIFFERENCE || diff >= 360 - MIN_HUE_DIFFERENCE) {
+                    continue;
+                }
+            }
+            foregroundSwatches.add(swatch);
         }
-        paletteBuilder.addFilter(mBlackWhiteFilter);
-        palette = paletteBuilder.generate();
 
-        int foregroundColor = selectForegroundColor(backgroundColor, palette);
+        int foregroundColor;
+        if (foregroundSwatches.isEmpty()) {
+            foregroundColor = ColorHelper.isColorLight(backgroundColor) ? Color.BLACK : Color.WHITE;
+        } else {
+            // Scores the already quantized swatches against the default targets, without another pass over the bitmap
+            foregroundColor = selectForegroundColor(backgroundColor, Palette.from(foregroundSwatches));
+        }
 
         return new Pair<>(backgroundColor, foregroundColor);
     }
@@ -177,18 +203,15 @@ public class BitmapPaletteProcessor {
                 && (swatch.getPopulation() / (float) RESIZE_BITMAP_AREA > MINIMUM_IMAGE_FRACTION);
     }
 
-    private int findBackgroundColorAndFilter(Palette palette) {
+    /**
+     * @return the swatch to use for the background, or null if the palette is empty (in which case the background should be white).
+     */
+    @Nullable
+    private Palette.Swatch findBackgroundSwatch(Palette palette) {
         // by default we use the dominant palette
         Palette.Swatch dominantSwatch = palette.getDominantSwatch();
-        if (dominantSwatch == null) {
-            // We're not filtering on white or black
-            mFilteredBackgroundHsl = null;
-            return Color.WHITE;
-        }
-
-        if (!isWhiteOrBlack(dominantSwatch.getHsl())) {
-            mFilteredBackgroundHsl = dominantSwatch.getHsl();
-            return dominantSwatch.getRgb();
+        if (dominantSwatch == null || !isWhiteOrBlack(dominantSwatch.getHsl())) {
+            return dominantSwatch;
         }
         // Oh well, we selected black or white. Lets look at the second color!
         List<Palette.Swatch> swatches = palette.getSwatches();
@@ -203,19 +226,14 @@ public class BitmapPaletteProcessor {
             }
         }
         if (second == null) {
-            // We're not filtering on white or black
-            mFilteredBackgroundHsl = null;
-            return dominantSwatch.getRgb();
+            return dominantSwatch;
         }
         if (dominantSwatch.getPopulation() / highestNonWhitePopulation
                 > POPULATION_FRACTION_FOR_WHITE_OR_BLACK) {
             // The dominant swatch is very dominant, lets take it!
-            // We're not filtering on white or black
-            mFilteredBackgroundHsl = null;
-            return dominantSwatch.getRgb();
+            return dominantSwatch;
         } else {
-            mFilteredBackgroundHsl = second.getHsl();
-            return second.getRgb();
+            return second;
         }
     }
 
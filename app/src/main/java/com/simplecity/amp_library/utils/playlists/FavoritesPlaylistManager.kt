@@ -4,12 +4,15 @@ import android.content.ContentValues
 import android.content.Context
 import android.provider.MediaStore
 import android.support.v4.util.Pair
+import com.jakewharton.rxrelay2.BehaviorRelay
 import com.simplecity.amp_library.R
 import com.simplecity.amp_library.data.PlaylistsRepository
 import com.simplecity.amp_library.data.SongsRepository
 import com.simplecity.amp_library.model.Playlist
 import com.simplecity.amp_library.model.Playlist.Type
+import com.simplecity.amp_library.model.Query
 import com.simplecity.amp_library.model.Song
+import com.simplecity.amp_library.sql.sqlbrite.SqlBriteUtils
 import com.simplecity.amp_library.utils.LogUtils
 import io.reactivex.Completable
 import io.reactivex.Maybe
@@ -18,11 +21,14 @@ import io.reactivex.Single
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.Disposable
 import io.reactivex.functions.BiFunction
+import io.reactivex.functions.Consumer
 import io.reactivex.schedulers.Schedulers
 import java.util.Collections
 import java.util.concurrent.TimeUnit
 import javax.inject.Inject
+import javax.inject.Singleton
 
+@Singleton
 class FavoritesPlaylistManager @Inject constructor(
     private val applicationContext: Context,
     private val playlistManager: PlaylistManager,
@@ -30,6 +36,9 @@ class FavoritesPlaylistManager @Inject constructor(
     private val songsRepository: SongsRepository
 ) {
 
+    private var favoriteSongIdsSubscription: Disposable? = null
+    private val favoriteSongIdsRelay = BehaviorRelay.create<SongIdSet>()
+
     fun getFavoritesPlaylist(): Single<Playlist?> {
         return playlistsRepository.getPlaylists()
             .first(Collections.emptyList())
@@ -40,12 +49,48 @@ class FavoritesPlaylistManager @Inject constructor(
             .doOnError { throwable -> LogUtils.logException(TAG, "getFavoritesPlaylist failed", throwable) }
     }
 
+    /**
+     * Returns a continuous [SongIdSet] of the songs in the favorites playlist.
+     *
+     * The members are loaded once, and reloaded when the playlist changes. [addToFavorites] and [removeFromFavorites] also update the set
+     * directly, so it's up to date as soon as they complete.
+     */
+    private fun getFavoriteSongIds(): Observable<SongIdSet> {
+        if (favoriteSongIdsSubscription == null || favoriteSongIdsSubscription?.isDisposed == true) {
+            favoriteSongIdsSubscription = playlistsRepository.getPlaylists()
+                .map { playlists -> playlists.firstOrNull { playlist -> playlist.type == Type.FAVORITES }?.id ?: -1L }
+                .distinctUntilChanged()
+                .switchMap { playlistId ->
+                    if (playlistId < 0) {
+                        Observable.just(SongIdSet.EMPTY)
+                    } else {
+                        val query = Query.Builder()
+                            .uri(MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId))
+                            .projection(arrayOf(MediaStore.Audio.Playlists.Members.AUDIO_ID))
+                            .build()
+                        SqlBriteUtils.createObservableFromCursor(applicationContext, { cursor -> SongIdSet.fromCursor(cursor) }, query, SongIdSet.EMPTY)
+                    }
+                }
+                .subscribe(
+                    favoriteSongIdsRelay,
+                    Consumer { error -> LogUtils.logException(TAG, "Failed to get favorite song ids", error) }
+                )
+        }
+        return favoriteSongIdsRelay.subscribeOn(Schedulers.io())
+    }
+
     fun isFavorite(song: Song?): Observable<Boolean> {
         return if (song == null) {
             Observable.just(false)
-        } else getFavoritesPlaylist().flatMapObservable { playlist -> songsRepository.getSongs(playlist) }
-            .map { songs -> songs.contains(song) }
+        } else getFavoriteSongIds()
+            .map { songIds -> songIds.contains(song.id) }
+            .distinctUntilChanged()
+    }
 
+    private fun updateFavoriteSongIds(update: (SongIdSet) -> SongIdSet) {
+        synchronized(favoriteSongIdsRelay) {
+            favoriteSongIdsRelay.value?.let { songIds -> favoriteSongIdsRelay.accept(update(songIds)) }
+        }
     }
 
     fun createFavoritePlaylist(): Playlist? {
@@ -64,6 +109,7 @@ class FavoritesPlaylistManager @Inject constructor(
                 Completable.fromAction {
                     val uri = MediaStore.Audio.Playlists.Members.getContentUri("external", playlist.id)
                     applicationContext.contentResolver.delete(uri, null, null)
+                    updateFavoriteSongIds { SongIdSet.EMPTY }
                 }
             }
             .subscribeOn(Schedulers.io())
@@ -111,6 +157,9 @@ class FavoritesPlaylistManager @Inject constructor(
                 values.put(MediaStore.Audio.Playlists.Members.PLAY_ORDER, pair.second!! + 1)
                 val newUri = applicationContext.contentResolver.insert(uri, values)
                 applicationContext.contentResolver.notifyChange(MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI, null)
+                if (newUri != null) {
+                    updateFavoriteSongIds { songIds -> songIds.plus(song.id) }
+                }
                 newUri != null
             }
             .delay(150, TimeUnit.MILLISECONDS)
@@ -127,7 +176,16 @@ class FavoritesPlaylistManager @Inject constructor(
             .subscribeOn(Schedulers.io())
             .observeOn(AndroidSchedulers.mainThread())
             .subscribe(
-                { playlist -> playlist?.let { playlistManager.removeFromPlaylist(it, song, callback) } },
+                { playlist ->
+                    playlist?.let {
+                        playlistManager.removeFromPlaylist(it, song) { success ->
+                            if (success) {
+                                updateFavoriteSongIds { songIds -> songIds.minus(song.id) }
+                            }
+                            callback(success)
+                        }
+                    }
+                },
                 { error -> LogUtils.logException(TAG, "PlaylistManager: Error Removing from favorites", error) }
             )
     }
@@ -52,6 +52,7 @@ class PlaylistManager @Inject constructor(
 
     fun clearMostPlayed() {
         applicationContext.contentResolver.delete(PlayCountTable.URI, null, null)
+        applicationContext.contentResolver.delete(PlayCountTable.EVENTS_URI, null, null)
     }
 
     fun addToPlaylist(playlist: Playlist, songs: List<Song>, callback: ((Int) -> Unit)?): Disposable? {
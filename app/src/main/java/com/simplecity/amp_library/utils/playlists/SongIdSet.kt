@@ -0,0 +1,91 @@
+package com.simplecity.amp_library.utils.playlists
+
+import android.database.Cursor
+
+/**
+ * An immutable set of song ids, backed by an open-addressing hash table of primitive longs, so membership checks are O(1) and don't
+ * allocate.
+ */
+class SongIdSet private constructor(private val table: LongArray, val size: Int) {
+
+    operator fun contains(id: Long): Boolean {
+        if (id == FREE) {
+            return false
+        }
+        val mask = table.size - 1
+        var index = hash(id) and mask
+        while (true) {
+            val value = table[index]
+            if (value == FREE) {
+                return false
+            }
+            if (value == id) {
+                return true
+            }
+            index = (index + 1) and mask
+        }
+    }
+
+    fun plus(id: Long): SongIdSet {
+        return if (contains(id)) this else of(toLongArray() + id)
+    }
+
+    fun minus(id: Long): SongIdSet {
+        return if (!contains(id)) this else of(toLongArray().filter { value -> value != id }.toLongArray())
+    }
+
+    private fun toLongArray(): LongArray {
+        return table.filter { value -> value != FREE }.toLongArray()
+    }
+
+    companion object {
+
+        // Marks an empty slot. Song ids are never negative, so this can't collide with a real id.
+        private const val FREE = Long.MIN_VALUE
+
+        val EMPTY = of(LongArray(0))
+
+        fun of(ids: LongArray): SongIdSet {
+            // Keep the load factor at or below 0.5, so probe sequences stay short
+            var capacity = 4
+            while (capacity < ids.size * 2) {
+                capacity = capacity shl 1
+            }
+
+            val table = LongArray(capacity) { FREE }
+            val mask = capacity - 1
+            var size = 0
+            ids.forEach { id ->
+                if (id != FREE) {
+                    var index = hash(id) and mask
+                    while (table[index] != FREE && table[index] != id) {
+                        index = (index + 1) and mask
+                    }
+                    if (table[index] == FREE) {
+                        table[index] = id
+                        size++
+                    }
+                }
+            }
+            return SongIdSet(table, size)
+        }
+
+        /**
+         * Builds a set from the ids in the first column of the passed in cursor.
+         */
+        fun fromCursor(cursor: Cursor): SongIdSet {
+            val ids = LongArray(cursor.count)
+            var index = 0
+            while (index < ids.size && cursor.moveToNext()) {
+                ids[index++] = cursor.getLong(0)
+            }
+            return of(if (index == ids.size) ids else ids.copyOf(index))
+        }
+
+        private fun hash(id: Long): Int {
+            // Fibonacci hashing spreads sequential ids across the table
+            val h = id * -0x61c8864680b583ebL
+            return (h xor (h ushr 32)).toInt()
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.simplecity.amp_library.utils.sorting;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.simplecity.amp_library.utils.ComparisonUtils;
+import java.text.CollationKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorts a list by several fields in a single, stable pass.
+ * <p>
+ * The sort keys are extracted once per item before sorting (strings are converted to {@link CollationKey}s, so the collator only runs
+ * once per distinct string), and an index array is sorted against them. Fields are compared in the order they're added to the
+ * {@link Builder}, and items which compare equal on every field keep their original order.
+ */
+public final class CompositeSorter<T> {
+
+    public interface StringKey<T> {
+        @Nullable
+        String get(T item);
+    }
+
+    public interface LongKey<T> {
+        long get(T item);
+    }
+
+    private interface Field<T> {
+        Column createColumn(List<T> items);
+    }
+
+    private interface Column {
+        int compare(int a, int b);
+    }
+
+    // Ranges smaller than this are insertion sorted rather than merged
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final List<Field<T>> fields;
+
+    private CompositeSorter(List<Field<T>> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Sorts the passed in list in place.
+     */
+    public void sort(@NonNull List<T> items) {
+        int[] order = sortedIndices(items);
+        List<T> copy = new ArrayList<>(items);
+        for (int i = 0; i < order.length; i++) {
+            items.set(i, copy.get(order[i]));
+        }
+    }
+
+    /**
+     * @return a sorted copy of the passed in list.
+     */
+    @NonNull
+    public List<T> sorted(@NonNull List<T> items) {
+        int[] order = sortedIndices(items);
+        List<T> sorted = new ArrayList<>(order.length);
+        for (int index : order) {
+            sorted.add(items.get(index));
+        }
+        return sorted;
+    }
+
+    private int[] sortedIndices(List<T> items) {
+        int size = items.size();
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        if (size < 2) {
+            return indices;
+        }
+
+        Column[] columns = new Column[fields.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = fields.get(i).createColumn(items);
+        }
+
+        mergeSort(indices, new int[size], 0, size, columns);
+        return indices;
+    }
+
+    private static int compare(Column[] columns, int a, int b) {
+        for (Column column : columns) {
+            int result = column.compare(a, b);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    private static void mergeSort(int[] indices, int[] buffer, int low, int high, Column[] columns) {
+        int length = high - low;
+        if (length < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                int index = indices[i];
+                int j = i - 1;
+                while (j >= low && compare(columns, indices[j], index) > 0) {
+                    indices[j + 1] = indices[j];
+                    j--;
+                }
+                indices[j + 1] = index;
+            }
+            return;
+        }
+
+        int mid = (low + high) >>> 1;
+        mergeSort(indices, buffer, low, mid, columns);
+        mergeSort(indices, buffer, mid, high, columns);
+
+        // The halves are already in order, which is common when re-sorting a list
+        if (compare(columns, indices[mid - 1], indices[mid]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(indices, low, buffer, low, length);
+        int i = low;
+        int j = mid;
+        int k = low;
+        while (i < mid && j < high) {
+            // Only take from the right half if it's strictly smaller, so the sort is stable
+            indices[k++] = compare(columns, buffer[j], buffer[i]) < 0 ? buffer[j++] : buffer[i++];
+        }
+        while (i < mid) {
+            indices[k++] = buffer[i++];
+        }
+        while (j < high) {
+            indices[k++] = buffer[j++];
+        }
+    }
+
+    public static class Builder<T> {
+
+        private final List<Field<T>> fields = new ArrayList<>();
+
+        /**
+         * Compares by the passed in string, using the same collation as {@link ComparisonUtils#compare(String, String)}. Nulls sort first.
+         */
+        public Builder<T> collated(@NonNull StringKey<T> key) {
+            fields.add(items -> {
+                Map<String, CollationKey> collationKeys = new HashMap<>();
+                CollationKey[] values = new CollationKey[items.size()];
+                for (int i = 0; i < values.length; i++) {
+                    String value = key.get(items.get(i));
+                    if (value != null) {
+                        CollationKey collationKey = collationKeys.get(value);
+                        if (collationKey == null) {
+                            collationKey = ComparisonUtils.getCollationKey(value);
+                            collationKeys.put(value, collationKey);
+                        }
+                        values[i] = collationKey;
+                    }
+                }
+                return (a, b) -> {
+                    CollationKey x = values[a];
+                    CollationKey y = values[b];
+                    if (x == null) {
+                        return y == null ? 0 : -1;
+                    } else if (y == null) {
+                        return 1;
+                    }
+                    return x.compareTo(y);
+                };
+            });
+            return this;
+        }
+
+        public Builder<T> ascending(@NonNull LongKey<T> key) {
+            fields.add(items -> {
+                long[] values = extract(items, key);
+                return (a, b) -> ComparisonUtils.compareLong(values[a], values[b]);
+            });
+            return this;
+        }
+
+        public Builder<T> descending(@NonNull LongKey<T> key) {
+            fields.add(items -> {
+                long[] values = extract(items, key);
+                return (a, b) -> ComparisonUtils.compareLong(values[b], values[a]);
+            });
+            return this;
+        }
+
+        public CompositeSorter<T> build() {
+            return new CompositeSorter<>(new ArrayList<>(fields));
+        }
+
+        private static <T> long[] extract(List<T> items, LongKey<T> key) {
+            long[] values = new long[items.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = key.get(items.get(i));
+            }
+            return values;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.simplecity.amp_library.utils.sorting;
 
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import android.support.annotation.Nullable;
 import com.simplecity.amp_library.ShuttleApplication;
 import com.simplecity.amp_library.model.Album;
 import com.simplecity.amp_library.model.AlbumArtist;
@@ -18,6 +19,97 @@ public class SortManager {
 
     private SharedPreferences mPrefs;
 
+    // Each sorter compares its most significant field first, and falls back to the following fields to break ties.
+
+    private static final CompositeSorter<Album> ALBUMS_DEFAULT = new CompositeSorter.Builder<Album>()
+            .collated(Album::getSortKey)
+            .build();
+
+    private static final CompositeSorter<Album> ALBUMS_NAME = new CompositeSorter.Builder<Album>()
+            .collated(album -> album.name)
+            .build();
+
+    private static final CompositeSorter<Album> ALBUMS_YEAR = new CompositeSorter.Builder<Album>()
+            .descending(album -> album.year)
+            .build();
+
+    private static final CompositeSorter<Album> ALBUMS_ARTIST_NAME = new CompositeSorter.Builder<Album>()
+            .collated(album -> album.albumArtistName)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_DEFAULT = new CompositeSorter.Builder<Song>()
+            .collated(Song::getSortKey)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_NAME = new CompositeSorter.Builder<Song>()
+            .collated(song -> song.name)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_TRACK_NUMBER = new CompositeSorter.Builder<Song>()
+            .ascending(song -> song.discNumber)
+            .ascending(song -> song.track)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_DURATION = new CompositeSorter.Builder<Song>()
+            .ascending(song -> song.duration)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_DATE = new CompositeSorter.Builder<Song>()
+            .descending(song -> song.dateAdded)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_YEAR = new CompositeSorter.Builder<Song>()
+            .descending(song -> song.year)
+            .collated(Song::getSortKey)
+            .collated(song -> song.albumName)
+            .collated(song -> song.albumArtistName)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_ALBUM_NAME = new CompositeSorter.Builder<Song>()
+            .collated(song -> song.albumName)
+            .ascending(song -> song.discNumber)
+            .ascending(song -> song.track)
+            .collated(song -> song.albumArtistName)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_ARTIST_NAME = new CompositeSorter.Builder<Song>()
+            .collated(song -> song.albumArtistName)
+            .ascending(song -> song.discNumber)
+            .ascending(song -> song.track)
+            .collated(song -> song.albumName)
+            .build();
+
+    private static final CompositeSorter<Song> SONGS_DETAIL_DEFAULT = new CompositeSorter.Builder<Song>()
+            .collated(song -> song.albumName)
+            .ascending(song -> song.discNumber)
+            .ascending(song -> song.track)
+            .descending(song -> song.year)
+            .collated(song -> song.albumArtistName)
+            .build();
+
+    /**
+     * Orders the songs of a genre by album artist, then album, disc & track.
+     */
+    public static final CompositeSorter<Song> GENRE_SONGS = new CompositeSorter.Builder<Song>()
+            .collated(song -> song.albumArtistName)
+            .collated(song -> song.albumName)
+            .ascending(song -> song.discNumber)
+            .ascending(song -> song.track)
+            .descending(song -> song.year)
+            .build();
+
+    /**
+     * Orders the 'recently added' playlist, newest first, then by album, disc & track.
+     */
+    public static final CompositeSorter<Song> RECENTLY_ADDED_SONGS = new CompositeSorter.Builder<Song>()
+            .descending(song -> song.dateAdded)
+            .collated(song -> song.albumName)
+            .ascending(song -> song.discNumber)
+            .ascending(song -> song.track)
+            .descending(song -> song.year)
+            .collated(song -> song.albumArtistName)
+            .build();
+
     @Inject
     public SortManager(ShuttleApplication application) {
         mPrefs = PreferenceManager.getDefaultSharedPreferences(application);
@@ -280,21 +372,9 @@ public class SortManager {
     }
 
     public void sortAlbums(List<Album> albums, int key) {
-        switch (key) {
-            case AlbumSort.DEFAULT:
-                Collections.sort(albums, Album::compareTo);
-                break;
-            case AlbumSort.NAME:
-                Collections.sort(albums, (a, b) -> ComparisonUtils.compare(a.name, b.name));
-                Collections.sort(albums, (a, b) -> ComparisonUtils.compare(a.name, b.name));
-                break;
-            case AlbumSort.YEAR:
-                Collections.sort(albums, (a, b) -> ComparisonUtils.compareInt(b.year, a.year));
-                break;
-            case AlbumSort.ARTIST_NAME:
-                Collections.sort(albums, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
-                break;
-            default break;
+        CompositeSorter<Album> sorter = getAlbumSorter(key);
+        if (sorter != null) {
+            sorter.sort(albums);
         }
     }
 
@@ -303,49 +383,51 @@ public class SortManager {
     }
 
     public void sortSongs(List<Song> songs, @SongSort int key) {
+        CompositeSorter<Song> sorter = getSongSorter(key);
+        if (sorter != null) {
+            sorter.sort(songs);
+        }
+    }
+
+    @Nullable
+    private static CompositeSorter<Album> getAlbumSorter(int key) {
+        switch (key) {
+            case AlbumSort.DEFAULT:
+                return ALBUMS_DEFAULT;
+            case AlbumSort.NAME:
+                return ALBUMS_NAME;
+            case AlbumSort.YEAR:
+                return ALBUMS_YEAR;
+            case AlbumSort.ARTIST_NAME:
+                return ALBUMS_ARTIST_NAME;
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private static CompositeSorter<Song> getSongSorter(@SongSort int key) {
         switch (key) {
             case SongSort.DEFAULT:
-                Collections.sort(songs, Song::compareTo);
-                break;
+                return SONGS_DEFAULT;
             case SongSort.NAME:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.name, b.name));
-                break;
+                return SONGS_NAME;
             case SongSort.TRACK_NUMBER:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.track, b.track));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.discNumber, b.discNumber));
-                break;
+                return SONGS_TRACK_NUMBER;
             case SongSort.DURATION:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareLong(a.duration, b.duration));
-                break;
+                return SONGS_DURATION;
             case SongSort.DATE:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(b.dateAdded, a.dateAdded));
-                break;
+                return SONGS_DATE;
             case SongSort.YEAR:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumName, b.albumName));
-                Collections.sort(songs, Song::compareTo);
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(b.year, a.year));
-                break;
+                return SONGS_YEAR;
             case SongSort.ALBUM_NAME:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.track, b.track));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.discNumber, b.discNumber));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumName, b.albumName));
-                break;
+                return SONGS_ALBUM_NAME;
             case SongSort.ARTIST_NAME:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumName, b.albumName));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.track, b.track));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.discNumber, b.discNumber));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
-                break;
+                return SONGS_ARTIST_NAME;
             case SongSort.DETAIL_DEFAULT:
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumArtistName, b.albumArtistName));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(b.year, a.year));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.track, b.track));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compareInt(a.discNumber, b.discNumber));
-                Collections.sort(songs, (a, b) -> ComparisonUtils.compare(a.albumName, b.albumName));
-                break;
-            default break;
+                return SONGS_DETAIL_DEFAULT;
+            default:
+                return null;
         }
     }
 
@@ -0,0 +1,124 @@
+package com.simplecity.amp_library.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class SearchIndexTest {
+
+    private class Item(val name: String?) : Comparable<Item> {
+
+        override fun compareTo(other: Item): Int {
+            return (name ?: "").compareTo(other.name ?: "")
+        }
+
+        override fun toString(): String {
+            return name ?: "null"
+        }
+    }
+
+    private val index = SearchIndex<Item> { item -> item.name }
+
+    @Test
+    fun searchReturnsMatchesInSourceOrder() {
+        val items = listOf(Item("Zebra Song"), Item("Another Song"), Item("Song of Songs"), Item("Unrelated"))
+        index.update(items)
+
+        assertEquals(listOf(items[0], items[1], items[2]), index.search("song"))
+        assertEquals(listOf(items[0], items[1], items[2]), index.search("so"))
+        assertEquals(items, index.search(""))
+        assertEquals(emptyList<Item>(), index.search("missing"))
+    }
+
+    @Test
+    fun updateAddsAndRemovesItems() {
+        val a = Item("Alpha")
+        val b = Item("Bravo")
+        val c = Item("Charlie")
+        index.update(listOf(a, b))
+
+        index.update(listOf(b, c))
+
+        assertEquals(emptyList<Item>(), index.search("alpha"))
+        assertEquals(listOf(b), index.search("bravo"))
+        assertEquals(listOf(c), index.search("charlie"))
+        assertEquals(listOf(b, c), index.search(""))
+    }
+
+    @Test
+    fun updateFollowsReordering() {
+        val a = Item("Track A")
+        val b = Item("Track B")
+        val c = Item("Track C")
+        index.update(listOf(a, b, c))
+
+        index.update(listOf(c, a, b))
+
+        assertEquals(listOf(c, a, b), index.search("track"))
+        assertEquals(listOf(c, a, b), index.search("tr"))
+    }
+
+    @Test
+    fun renamedItemIsReindexed() {
+        // A changed song is a new instance, with the previous one removed
+        val before = Item("Old Name")
+        index.update(listOf(before))
+
+        val after = Item("New Name")
+        index.update(listOf(after))
+
+        assertEquals(emptyList<Item>(), index.search("old"))
+        assertEquals(listOf(after), index.search("new name"))
+    }
+
+    @Test
+    fun itemsWithoutNamesAreSkipped() {
+        val named = Item("Named")
+        index.update(listOf(Item(null), named))
+
+        assertEquals(listOf(named), index.search(""))
+    }
+
+    @Test
+    fun duplicateReferencesAreIndexedOnce() {
+        val a = Item("Duplicate")
+        index.update(listOf(a, a))
+
+        assertEquals(listOf(a), index.search("duplicate"))
+    }
+
+    @Test
+    fun fuzzySearchOrdersByScore() {
+        val exact = Item("beatles")
+        val close = Item("beatle")
+        val unrelated = Item("zzzzzz")
+        index.update(listOf(unrelated, close, exact))
+
+        assertEquals(listOf(exact, close), index.fuzzySearch("beatles", 0.8))
+        assertEquals(listOf(close, exact, unrelated), index.fuzzySearch("", 0.8))
+    }
+
+    @Test
+    fun agreesWithLinearSearchAcrossRandomUpdates() {
+        val random = Random(7)
+        val pool = (0 until 400).map { i -> Item(randomName(random, i)) }
+
+        repeat(60) {
+            // Keep some items, drop some and add some, in a new order. Enough items come & go to trigger compaction.
+            val items = pool.filter { random.nextInt(3) != 0 }.shuffled(random)
+            index.update(items)
+
+            listOf("", "a", "ab", "abc", "bca", "cab", "aaa", "abcd").forEach { query ->
+                assertEquals(query, items.filter { item -> item.name!!.toLowerCase().contains(query) }, index.search(query))
+            }
+        }
+    }
+
+    private fun randomName(random: Random, i: Int): String {
+        val builder = StringBuilder()
+        repeat(3 + random.nextInt(8)) {
+            builder.append("abcABC "[random.nextInt(7)])
+        }
+        return builder.append(i).toString()
+    }
+}
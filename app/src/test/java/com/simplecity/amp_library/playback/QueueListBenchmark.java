@@ -0,0 +1,83 @@
+package com.simplecity.amp_library.playback;
+
+import com.simplecity.amp_library.ui.screens.queue.QueueItem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares QueueList against the ArrayList the queue used before, for the edits QueueManager makes on a 50k item queue: removing an item
+ * by reference (removeQueueItem), dragging an item to a new position (moveQueueItem) and looking up an item's position.
+ * <p>
+ * Not a rigorous benchmark (there's no JMH in this build), but each variant is warmed up before it's timed, and the resulting lists are
+ * checked against each other so the work can't be optimised away.
+ */
+public class QueueListBenchmark {
+
+    private static final int QUEUE_SIZE = 50_000;
+
+    private static final int EDIT_COUNT = 2_000;
+
+    private static final int WARMUP_RUNS = 1;
+    private static final int TIMED_RUNS = 3;
+
+    @Test
+    public void editLargeQueue() {
+        long[] ids = new long[QUEUE_SIZE];
+        for (int i = 0; i < QUEUE_SIZE; i++) {
+            ids[i] = i;
+        }
+        List<QueueItem> queueItems = QueueStoreTest.queueItems(ids);
+
+        assertEquals(edit(new ArrayList<>(queueItems)), edit(new QueueList(queueItems)));
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            edit(new ArrayList<>(queueItems));
+            edit(new QueueList(queueItems));
+        }
+
+        long arrayListNanos = 0;
+        long queueListNanos = 0;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            List<QueueItem> arrayList = new ArrayList<>(queueItems);
+            long start = System.nanoTime();
+            long expected = edit(arrayList);
+            arrayListNanos += System.nanoTime() - start;
+
+            QueueList queueList = new QueueList(queueItems);
+            start = System.nanoTime();
+            assertEquals(expected, edit(queueList));
+            queueListNanos += System.nanoTime() - start;
+        }
+
+        System.out.println(String.format(Locale.US, "%d edits on a %d item queue: ArrayList %.1fms, QueueList %.1fms",
+                EDIT_COUNT, QUEUE_SIZE, arrayListNanos / 1e6 / TIMED_RUNS, queueListNanos / 1e6 / TIMED_RUNS));
+    }
+
+    /**
+     * @return a checksum of the positions looked up along the way
+     */
+    private static long edit(List<QueueItem> queue) {
+        Random random = new Random(3);
+        long checksum = 0;
+        for (int i = 0; i < EDIT_COUNT; i++) {
+            // Drag an item from one position to another
+            int from = random.nextInt(queue.size());
+            int to = random.nextInt(queue.size());
+            QueueItem queueItem = queue.get(from);
+            queue.remove(queue.indexOf(queueItem));
+            queue.add(to, queueItem);
+
+            // Remove an item by reference, and put it back at the end
+            queueItem = queue.get(random.nextInt(queue.size()));
+            checksum += queue.indexOf(queueItem);
+            queue.remove(queueItem);
+            queue.add(queueItem);
+        }
+        return checksum + queue.get(0).getSong().id + queue.get(queue.size() - 1).getSong().id;
+    }
+}
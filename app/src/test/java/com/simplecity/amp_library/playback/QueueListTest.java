@@ -0,0 +1,222 @@
+package com.simplecity.amp_library.playback;
+
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.ui.screens.queue.QueueItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueueListTest {
+
+    @Test
+    public void matchesArrayListAcrossRandomEdits() {
+        Random random = new Random(31);
+        QueueList queueList = new QueueList();
+        List<QueueItem> oracle = new ArrayList<>();
+
+        // A small pool of songs, so the queue holds plenty of repeats
+        List<Song> songs = QueueStoreTest.songs(1, 2, 3, 4, 5, 6, 7, 8);
+
+        for (int i = 0; i < 5000; i++) {
+            switch (oracle.isEmpty() ? 0 : random.nextInt(8)) {
+                case 0: {
+                    QueueItem queueItem = new QueueItem(songs.get(random.nextInt(songs.size())), 1);
+                    int index = random.nextInt(oracle.size() + 1);
+                    queueList.add(index, queueItem);
+                    oracle.add(index, queueItem);
+                    break;
+                }
+                case 1: {
+                    List<QueueItem> queueItems = new ArrayList<>();
+                    for (int j = 0, count = 1 + random.nextInt(20); j < count; j++) {
+                        queueItems.add(new QueueItem(songs.get(random.nextInt(songs.size())), 1));
+                    }
+                    int index = random.nextInt(oracle.size() + 1);
+                    assertTrue(queueList.addAll(index, queueItems));
+                    oracle.addAll(index, queueItems);
+                    break;
+                }
+                case 2: {
+                    int index = random.nextInt(oracle.size());
+                    assertSame(oracle.remove(index), queueList.remove(index));
+                    break;
+                }
+                case 3: {
+                    QueueItem queueItem = oracle.get(random.nextInt(oracle.size()));
+                    assertTrue(queueList.remove(queueItem));
+                    oracle.remove(identityIndexOf(oracle, queueItem));
+                    break;
+                }
+                case 4: {
+                    int from = random.nextInt(oracle.size());
+                    int to = random.nextInt(oracle.size());
+                    queueList.move(from, to);
+                    oracle.add(to, oracle.remove(from));
+                    break;
+                }
+                case 5: {
+                    List<QueueItem> removed = new ArrayList<>();
+                    for (int j = 0, count = random.nextInt(Math.min(oracle.size(), 10)); j < count; j++) {
+                        QueueItem queueItem = oracle.get(random.nextInt(oracle.size()));
+                        if (identityIndexOf(removed, queueItem) == -1) {
+                            removed.add(queueItem);
+                        }
+                    }
+                    assertEquals(!removed.isEmpty(), queueList.removeAll(removed));
+                    for (QueueItem queueItem : removed) {
+                        oracle.remove(identityIndexOf(oracle, queueItem));
+                    }
+                    break;
+                }
+                case 6: {
+                    int index = random.nextInt(oracle.size());
+                    QueueItem queueItem = new QueueItem(songs.get(random.nextInt(songs.size())), 1);
+                    assertSame(oracle.set(index, queueItem), queueList.set(index, queueItem));
+                    break;
+                }
+                default: {
+                    QueueItem queueItem = oracle.get(random.nextInt(oracle.size()));
+                    assertEquals(identityIndexOf(oracle, queueItem), queueList.indexOf(queueItem));
+                    assertTrue(queueList.contains(queueItem));
+                    break;
+                }
+            }
+
+            assertSameItems(oracle, queueList);
+
+            if (i % 10 == 0) {
+                queueList.updateOccurrence();
+                assertOccurrences(oracle);
+            }
+        }
+    }
+
+    @Test
+    public void indexOfUnknownItemIsMinusOne() {
+        QueueList queueList = new QueueList(QueueStoreTest.queueItems(1, 2, 3));
+
+        QueueItem queueItem = new QueueItem(QueueStoreTest.songs(9).get(0), 1);
+        assertEquals(-1, queueList.indexOf(queueItem));
+        assertFalse(queueList.contains(queueItem));
+        assertFalse(queueList.remove(queueItem));
+    }
+
+    @Test
+    public void addingItemAlreadyPresentIsRejected() {
+        List<QueueItem> queueItems = QueueStoreTest.queueItems(1, 2, 3);
+        QueueList queueList = new QueueList(queueItems);
+
+        try {
+            queueList.add(queueItems.get(1));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertSameItems(queueItems, queueList);
+    }
+
+    @Test
+    public void batchWithDuplicateIsRejectedWithoutChanges() {
+        List<QueueItem> queueItems = QueueStoreTest.queueItems(1, 2, 3);
+        QueueList queueList = new QueueList(queueItems);
+
+        QueueItem queueItem = new QueueItem(QueueStoreTest.songs(4).get(0), 1);
+        try {
+            queueList.addAll(1, Arrays.asList(queueItem, queueItem));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertSameItems(queueItems, queueList);
+        assertFalse(queueList.contains(queueItem));
+    }
+
+    @Test
+    public void iteratorRemovesItems() {
+        List<QueueItem> queueItems = QueueStoreTest.queueItems(1, 2, 3, 4, 5);
+        QueueList queueList = new QueueList(queueItems);
+
+        Iterator<QueueItem> iterator = queueList.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getSong().id % 2 == 0) {
+                iterator.remove();
+            }
+        }
+
+        assertSameItems(Arrays.asList(queueItems.get(0), queueItems.get(2), queueItems.get(4)), queueList);
+    }
+
+    @Test
+    public void itemsOfReturnsItemsInListOrder() {
+        List<Song> songs = QueueStoreTest.songs(1, 2, 3);
+        List<QueueItem> queueItems = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            queueItems.add(new QueueItem(songs.get(i % 3), 1));
+        }
+        QueueList queueList = new QueueList(queueItems);
+        queueList.move(7, 0);
+
+        List<QueueItem> expected = new ArrayList<>();
+        for (QueueItem queueItem : queueList) {
+            if (queueItem.getSong() != songs.get(0)) {
+                expected.add(queueItem);
+            }
+        }
+        assertSameItems(expected, queueList.itemsOf(Arrays.asList(songs.get(1), songs.get(2))));
+    }
+
+    @Test
+    public void clearEmptiesList() {
+        QueueList queueList = new QueueList(QueueStoreTest.queueItems(1, 2, 3));
+
+        queueList.clear();
+
+        assertTrue(queueList.isEmpty());
+        assertEquals(Collections.emptyList(), queueList);
+    }
+
+    /**
+     * QueueItems with the same song & occurrence are equal, but QueueList tracks items by reference.
+     */
+    private static int identityIndexOf(List<QueueItem> queueItems, QueueItem queueItem) {
+        for (int i = 0; i < queueItems.size(); i++) {
+            if (queueItems.get(i) == queueItem) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void assertSameItems(List<QueueItem> expected, List<QueueItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        int i = 0;
+        for (QueueItem queueItem : actual) {
+            assertSame(expected.get(i), queueItem);
+            assertSame(expected.get(i), actual.get(i));
+            i++;
+        }
+    }
+
+    /**
+     * Each item's occurrence should be its 1-based index amongst the items with the same song, as per QueueItemKt.updateOccurrence().
+     */
+    private static void assertOccurrences(List<QueueItem> queueItems) {
+        Map<Song, Integer> counts = new HashMap<>();
+        for (QueueItem queueItem : queueItems) {
+            Integer count = counts.get(queueItem.getSong());
+            count = count == null ? 1 : count + 1;
+            counts.put(queueItem.getSong(), count);
+            assertEquals((int) count, queueItem.getOccurrence());
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.simplecity.amp_library.playback;
+
+import com.simplecity.amp_library.model.Song;
+import com.simplecity.amp_library.ui.screens.queue.QueueItem;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class QueueStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void loadReturnsNullWithoutSavedQueue() throws IOException {
+        assertNull(new QueueStore(queueFile()).load());
+    }
+
+    @Test
+    public void snapshotRoundTrips() throws IOException {
+        File file = queueFile();
+        QueueStore queueStore = new QueueStore(file);
+
+        List<QueueItem> playlist = queueItems(10, 20, 30);
+        List<QueueItem> shuffleList = Arrays.asList(playlist.get(2), playlist.get(0), playlist.get(1));
+        queueStore.save(playlist, shuffleList);
+        queueStore.flush();
+
+        QueueStore.Snapshot snapshot = new QueueStore(file).load();
+        assertNotNull(snapshot);
+        assertArrayEquals(new long[] { 10, 20, 30 }, snapshot.playlistIds);
+        assertArrayEquals(new int[] { 2, 0, 1 }, snapshot.shuffleOrder);
+    }
+
+    @Test
+    public void editsAreRejectedUntilQueueIsSaved() throws IOException {
+        QueueStore queueStore = new QueueStore(queueFile());
+
+        assertFalse(queueStore.append(QueueStore.Edit.move(false, 0, 1)));
+
+        queueStore.save(queueItems(1, 2), null);
+        assertTrue(queueStore.append(QueueStore.Edit.move(false, 0, 1)));
+    }
+
+    @Test
+    public void journalIsReplayedOverSnapshot() throws IOException {
+        File file = queueFile();
+        QueueStore queueStore = new QueueStore(file);
+        Model model = new Model(queueItems(1, 2, 3, 4, 5));
+        Random random = new Random(17);
+
+        queueStore.save(model.playlist, model.shuffleList);
+        queueStore.flush();
+
+        long nextId = 100;
+        for (int i = 0; i < 200; i++) {
+            QueueStore.Edit edit = model.randomEdit(random, nextId);
+            nextId += 3;
+            assertTrue(queueStore.append(edit));
+            if (i % 7 == 0) {
+                queueStore.flush();
+            }
+        }
+        queueStore.flush();
+
+        model.assertMatches(new QueueStore(file).load());
+    }
+
+    @Test
+    public void journalIsCompactedIntoSnapshot() throws IOException {
+        File file = queueFile();
+        QueueStore queueStore = new QueueStore(file);
+        Model model = new Model(queueItems(1, 2, 3));
+        Random random = new Random(23);
+
+        queueStore.save(model.playlist, model.shuffleList);
+        queueStore.flush();
+
+        // More edits than the journal holds before it's compacted
+        long nextId = 100;
+        for (int i = 0; i < 1200; i++) {
+            queueStore.append(model.randomEdit(random, nextId));
+            nextId += 3;
+            queueStore.flush();
+        }
+
+        model.assertMatches(new QueueStore(file).load());
+    }
+
+    @Test
+    public void partiallyWrittenEditIsIgnored() throws IOException {
+        File file = queueFile();
+        QueueStore queueStore = new QueueStore(file);
+
+        queueStore.save(queueItems(1, 2, 3), null);
+        queueStore.flush();
+        queueStore.append(QueueStore.Edit.move(false, 0, 2));
+        queueStore.flush();
+        queueStore.append(QueueStore.Edit.move(false, 0, 2));
+        queueStore.flush();
+
+        // Simulate dying part way through writing the last edit
+        File journalFile = new File(file.getPath() + ".journal");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 3);
+        }
+
+        QueueStore.Snapshot snapshot = new QueueStore(file).load();
+        assertNotNull(snapshot);
+        assertArrayEquals(new long[] { 2, 3, 1 }, snapshot.playlistIds);
+    }
+
+    @Test
+    public void journalFromPreviousSnapshotIsIgnored() throws IOException {
+        File file = queueFile();
+        QueueStore queueStore = new QueueStore(file);
+
+        queueStore.save(queueItems(1, 2, 3), null);
+        queueStore.flush();
+        queueStore.append(QueueStore.Edit.move(false, 0, 2));
+        queueStore.flush();
+
+        // A new snapshot supersedes the journal
+        queueStore.save(queueItems(7, 8), null);
+        queueStore.flush();
+
+        QueueStore.Snapshot snapshot = new QueueStore(file).load();
+        assertNotNull(snapshot);
+        assertArrayEquals(new long[] { 7, 8 }, snapshot.playlistIds);
+    }
+
+    @Test
+    public void legacyQueueWithDuplicateIdsMapsToDistinctItems() {
+        // Legacy ids are written least significant nibble first: "1" is 1, "01" is 16
+        QueueStore.Snapshot snapshot = QueueStore.fromLegacy("1;2;1;01;", "1;01;1;2;");
+
+        assertNotNull(snapshot);
+        assertArrayEquals(new long[] { 1, 2, 1, 16 }, snapshot.playlistIds);
+        assertArrayEquals(new int[] { 0, 3, 2, 1 }, snapshot.shuffleOrder);
+
+        QueueStore.Queue queue = QueueStore.toQueue(snapshot, songs(1, 2, 16));
+        assertEquals(4, queue.playlist.size());
+        assertNotNull(queue.shuffleList);
+        assertEquals(4, queue.shuffleList.size());
+        assertEquals(4, distinct(queue.shuffleList));
+        assertSame(queue.playlist.get(2), queue.shuffleList.get(2));
+        assertFalse(queue.isStale);
+    }
+
+    @Test
+    public void legacyShuffleWithMoreOccurrencesThanPlaylistIsDropped() {
+        QueueStore.Snapshot snapshot = QueueStore.fromLegacy("1;2;", "1;1;2;3;");
+
+        assertNotNull(snapshot);
+        assertArrayEquals(new int[] { 0, -1, 1, -1 }, snapshot.shuffleOrder);
+
+        QueueStore.Queue queue = QueueStore.toQueue(snapshot, songs(1, 2, 3));
+        assertNotNull(queue.shuffleList);
+        assertEquals(2, queue.shuffleList.size());
+        assertTrue(queue.isStale);
+    }
+
+    @Test
+    public void bogusLegacyQueueIsRejected() {
+        assertNull(QueueStore.fromLegacy("1;x;", null));
+    }
+
+    @Test
+    public void toQueueDropsMissingSongsAndRepeatedShuffleIndices() {
+        QueueStore.Snapshot snapshot = new QueueStore.Snapshot(new long[] { 1, 2, 3 }, new int[] { 2, 2, 0, 7, 1 });
+
+        QueueStore.Queue queue = QueueStore.toQueue(snapshot, songs(1, 3));
+
+        assertEquals(2, queue.playlist.size());
+        assertEquals(1, queue.playlist.get(0).getSong().id);
+        assertEquals(3, queue.playlist.get(1).getSong().id);
+        assertNotNull(queue.shuffleList);
+        assertEquals(Arrays.asList(queue.playlist.get(1), queue.playlist.get(0)), queue.shuffleList);
+        assertTrue(queue.isStale);
+    }
+
+    @Test
+    public void toQueueIsNotStaleWhenEverythingResolves() {
+        QueueStore.Snapshot snapshot = new QueueStore.Snapshot(new long[] { 1, 2 }, new int[] { 1, 0 });
+
+        assertFalse(QueueStore.toQueue(snapshot, songs(1, 2)).isStale);
+        assertFalse(QueueStore.toQueue(new QueueStore.Snapshot(new long[] { 1, 2 }, null), songs(1, 2)).isStale);
+    }
+
+    private File queueFile() throws IOException {
+        return new File(temporaryFolder.newFolder(), "queue");
+    }
+
+    private static int distinct(List<QueueItem> queueItems) {
+        Set<QueueItem> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(queueItems);
+        return set.size();
+    }
+
+    static List<Song> songs(long... ids) {
+        List<Song> songs = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Song song = new Song();
+            song.id = id;
+            songs.add(song);
+        }
+        return songs;
+    }
+
+    static List<QueueItem> queueItems(long... ids) {
+        List<QueueItem> queueItems = new ArrayList<>(ids.length);
+        for (Song song : songs(ids)) {
+            queueItems.add(new QueueItem(song, 1));
+        }
+        return queueItems;
+    }
+
+    /**
+     * The queue as QueueManager holds it, against which the journaled edits are checked.
+     */
+    private static class Model {
+
+        final List<QueueItem> playlist;
+        final List<QueueItem> shuffleList;
+
+        Model(List<QueueItem> playlist) {
+            this.playlist = new ArrayList<>(playlist);
+            this.shuffleList = new ArrayList<>(playlist);
+            Collections.reverse(shuffleList);
+        }
+
+        QueueStore.Edit randomEdit(Random random, long nextId) {
+            switch (playlist.size() < 2 ? 0 : random.nextInt(4)) {
+                case 0: {
+                    List<QueueItem> queueItems = queueItems(nextId, nextId + 1, nextId + 2).subList(0, 1 + random.nextInt(3));
+                    int playlistIndex = random.nextInt(playlist.size() + 1);
+                    int shuffleIndex = random.nextInt(shuffleList.size() + 1);
+                    playlist.addAll(playlistIndex, queueItems);
+                    shuffleList.addAll(shuffleIndex, queueItems);
+                    return QueueStore.Edit.insert(playlistIndex, shuffleIndex, queueItems);
+                }
+                case 1: {
+                    QueueItem queueItem = playlist.get(random.nextInt(playlist.size()));
+                    int playlistIndex = playlist.indexOf(queueItem);
+                    int shuffleIndex = shuffleList.indexOf(queueItem);
+                    playlist.remove(playlistIndex);
+                    shuffleList.remove(shuffleIndex);
+                    return QueueStore.Edit.remove(new int[] { playlistIndex }, new int[] { shuffleIndex });
+                }
+                case 2: {
+                    int from = random.nextInt(playlist.size());
+                    int to = random.nextInt(playlist.size());
+                    playlist.add(to, playlist.remove(from));
+                    return QueueStore.Edit.move(false, from, to);
+                }
+                default: {
+                    int from = random.nextInt(shuffleList.size());
+                    int to = random.nextInt(shuffleList.size());
+                    shuffleList.add(to, shuffleList.remove(from));
+                    return QueueStore.Edit.move(true, from, to);
+                }
+            }
+        }
+
+        void assertMatches(QueueStore.Snapshot snapshot) {
+            assertNotNull(snapshot);
+
+            long[] playlistIds = new long[playlist.size()];
+            for (int i = 0; i < playlistIds.length; i++) {
+                playlistIds[i] = playlist.get(i).getSong().id;
+            }
+            assertArrayEquals(playlistIds, snapshot.playlistIds);
+
+            assertNotNull(snapshot.shuffleOrder);
+            int[] shuffleOrder = new int[shuffleList.size()];
+            for (int i = 0; i < shuffleOrder.length; i++) {
+                shuffleOrder[i] = playlist.indexOf(shuffleList.get(i));
+            }
+            assertArrayEquals(shuffleOrder, snapshot.shuffleOrder);
+        }
+    }
+}
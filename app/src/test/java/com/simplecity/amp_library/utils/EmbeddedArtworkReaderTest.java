@@ -0,0 +1,261 @@
+package com.simplecity.amp_library.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The fixtures are built here rather than checked in, with just enough structure for EmbeddedArtworkReader to find the picture: the
+ * audio data it never reads is left out.
+ */
+public class EmbeddedArtworkReaderTest {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset UTF_16 = Charset.forName("UTF-16");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final byte[] picture = picture(5000);
+
+    @Test
+    public void readsId3v22Picture() throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(0);
+        frame.write("JPG".getBytes(ISO_8859_1));
+        frame.write(3);
+        frame.write("cover\0".getBytes(ISO_8859_1));
+        frame.write(picture);
+
+        byte[] tag = concat(id3v22Frame("TT2", text("Title")), id3v22Frame("PIC", frame.toByteArray()));
+        assertPicture(write(id3Tag(2, 0, tag, 64)));
+    }
+
+    @Test
+    public void readsId3v23Picture() throws IOException {
+        byte[] tag = concat(id3v23Frame("TIT2", 0, text("Title")), id3v23Frame("APIC", 0, apic("image/jpeg", 0, "cover".getBytes(ISO_8859_1))));
+        assertPicture(write(id3Tag(3, 0, tag, 64)));
+    }
+
+    @Test
+    public void readsId3v23PictureWithUtf16Description() throws IOException {
+        // The description's terminator is two zero bytes, and the description itself contains zero bytes
+        byte[] description = "A\u0100".getBytes(UTF_16);
+        assertPicture(write(id3Tag(3, 0, id3v23Frame("APIC", 0, apic("image/png", 1, description)), 0)));
+    }
+
+    @Test
+    public void readsId3v23PictureAfterExtendedHeader() throws IOException {
+        // A 6 byte extended header, whose size field excludes itself
+        byte[] extendedHeader = { 0, 0, 0, 6, 0, 0, 0, 0, 0, 0 };
+        byte[] tag = concat(extendedHeader, id3v23Frame("APIC", 0, apic("image/jpeg", 0, new byte[0])));
+        assertPicture(write(id3Tag(3, 0x40, tag, 16)));
+    }
+
+    @Test
+    public void readsId3v24Picture() throws IOException {
+        byte[] tag = concat(id3v24Frame("TIT2", 0, text("Title")), id3v24Frame("APIC", 0, apic("image/jpeg", 3, "cover".getBytes(UTF_8))));
+        assertPicture(write(id3Tag(4, 0, tag, 64)));
+    }
+
+    @Test
+    public void readsId3v24PictureWithDataLengthIndicator() throws IOException {
+        byte[] data = apic("image/jpeg", 0, new byte[0]);
+        byte[] frame = id3v24Frame("APIC", 0x0001, concat(syncsafe(data.length), data));
+        assertPicture(write(id3Tag(4, 0, frame, 0)));
+    }
+
+    @Test
+    public void leavesUnsynchronisedId3TagsToFullTagReader() throws IOException {
+        byte[] tag = id3v23Frame("APIC", 0, apic("image/jpeg", 0, new byte[0]));
+        assertNull(EmbeddedArtworkReader.open(write(id3Tag(3, 0x80, tag, 0))));
+    }
+
+    @Test
+    public void leavesCompressedId3v24FramesToFullTagReader() throws IOException {
+        byte[] tag = id3v24Frame("APIC", 0x0008, apic("image/jpeg", 0, new byte[0]));
+        assertNull(EmbeddedArtworkReader.open(write(id3Tag(4, 0, tag, 0))));
+    }
+
+    @Test
+    public void id3TagWithoutPictureReturnsNull() throws IOException {
+        assertNull(EmbeddedArtworkReader.open(write(concat(id3Tag(3, 0, id3v23Frame("TIT2", 0, text("Title")), 64), new byte[256]))));
+    }
+
+    @Test
+    public void readsFlacPicture() throws IOException {
+        assertPicture(write(flac()));
+    }
+
+    @Test
+    public void readsFlacPictureAfterId3Tag() throws IOException {
+        assertPicture(write(concat(id3Tag(3, 0, id3v23Frame("TIT2", 0, text("Title")), 32), flac())));
+    }
+
+    @Test
+    public void flacWithoutPictureReturnsNull() throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write("fLaC".getBytes(ISO_8859_1));
+        file.write(flacBlock(0, true, new byte[34]));
+        file.write(new byte[256]);
+        assertNull(EmbeddedArtworkReader.open(write(file.toByteArray())));
+    }
+
+    @Test
+    public void readsMp4Picture() throws IOException {
+        byte[] data = atom("data", concat(new byte[] { 0, 0, 0, 13, 0, 0, 0, 0 }, picture));
+        byte[] ilst = atom("ilst", concat(atom("\u00a9nam", atom("data", concat(new byte[8], text("Title")))), atom("covr", data)));
+        byte[] meta = atom("meta", concat(new byte[4], atom("hdlr", new byte[25]), ilst));
+        byte[] moov = atom("moov", concat(atom("mvhd", new byte[100]), atom("udta", meta)));
+
+        byte[] ftyp = atom("ftyp", "M4A \0\0\0\0M4A mp42isom".getBytes(ISO_8859_1));
+        assertPicture(write(concat(ftyp, atom("mdat", new byte[1000]), moov)));
+    }
+
+    @Test
+    public void mp4WithoutPictureReturnsNull() throws IOException {
+        byte[] ilst = atom("ilst", atom("\u00a9nam", atom("data", concat(new byte[8], text("Title")))));
+        byte[] moov = atom("moov", atom("udta", atom("meta", concat(new byte[4], ilst))));
+        assertNull(EmbeddedArtworkReader.open(write(concat(atom("ftyp", "M4A \0\0\0\0".getBytes(ISO_8859_1)), moov))));
+    }
+
+    @Test
+    public void unknownFormatReturnsNull() throws IOException {
+        assertNull(EmbeddedArtworkReader.open(write(picture(1000))));
+        assertNull(EmbeddedArtworkReader.open(write(new byte[4])));
+    }
+
+    private void assertPicture(File file) throws IOException {
+        InputStream inputStream = EmbeddedArtworkReader.open(file);
+        assertNotNull(inputStream);
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            assertArrayEquals(picture, outputStream.toByteArray());
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private File write(byte[] data) throws IOException {
+        File file = temporaryFolder.newFile();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(data);
+        }
+        return file;
+    }
+
+    private static byte[] picture(int length) {
+        byte[] picture = new byte[length];
+        new Random(length).nextBytes(picture);
+        // A JPEG start of image marker, so the data starts the same way real artwork would
+        picture[0] = (byte) 0xFF;
+        picture[1] = (byte) 0xD8;
+        return picture;
+    }
+
+    private static byte[] text(String text) {
+        return concat(new byte[] { 0 }, text.getBytes(ISO_8859_1));
+    }
+
+    /**
+     * @return the body of an APIC frame holding the picture.
+     */
+    private byte[] apic(String mimeType, int encoding, byte[] description) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(encoding);
+        frame.write(mimeType.getBytes(ISO_8859_1));
+        frame.write(0);
+        frame.write(3);
+        frame.write(description);
+        if (encoding == 1 || encoding == 2) {
+            frame.write(0);
+        }
+        frame.write(0);
+        frame.write(picture);
+        return frame.toByteArray();
+    }
+
+    private static byte[] id3Tag(int version, int flags, byte[] frames, int padding) {
+        byte[] header = { 'I', 'D', '3', (byte) version, 0, (byte) flags };
+        return concat(header, syncsafe(frames.length + padding), frames, new byte[padding]);
+    }
+
+    private static byte[] id3v22Frame(String id, byte[] data) {
+        byte[] header = concat(id.getBytes(ISO_8859_1), new byte[] { (byte) (data.length >> 16), (byte) (data.length >> 8), (byte) data.length });
+        return concat(header, data);
+    }
+
+    private static byte[] id3v23Frame(String id, int flags, byte[] data) {
+        return concat(id.getBytes(ISO_8859_1), int32(data.length), new byte[] { (byte) (flags >> 8), (byte) flags }, data);
+    }
+
+    private static byte[] id3v24Frame(String id, int flags, byte[] data) {
+        return concat(id.getBytes(ISO_8859_1), syncsafe(data.length), new byte[] { (byte) (flags >> 8), (byte) flags }, data);
+    }
+
+    private byte[] flac() throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(block);
+        dataOutputStream.writeInt(3);
+        dataOutputStream.writeInt("image/jpeg".length());
+        dataOutputStream.write("image/jpeg".getBytes(ISO_8859_1));
+        dataOutputStream.writeInt("cover".length());
+        dataOutputStream.write("cover".getBytes(UTF_8));
+        // Width, height, color depth and number of colors
+        dataOutputStream.write(new byte[16]);
+        dataOutputStream.writeInt(picture.length);
+        dataOutputStream.write(picture);
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write("fLaC".getBytes(ISO_8859_1));
+        file.write(flacBlock(0, false, new byte[34]));
+        // Padding
+        file.write(flacBlock(1, false, new byte[100]));
+        file.write(flacBlock(6, true, block.toByteArray()));
+        file.write(new byte[256]);
+        return file.toByteArray();
+    }
+
+    private static byte[] flacBlock(int type, boolean isLast, byte[] data) {
+        byte[] header = { (byte) (type | (isLast ? 0x80 : 0)), (byte) (data.length >> 16), (byte) (data.length >> 8), (byte) data.length };
+        return concat(header, data);
+    }
+
+    private static byte[] atom(String type, byte[] data) {
+        return concat(int32(8 + data.length), type.getBytes(ISO_8859_1), data);
+    }
+
+    private static byte[] int32(int value) {
+        return new byte[] { (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value };
+    }
+
+    private static byte[] syncsafe(int value) {
+        return new byte[] { (byte) ((value >> 21) & 0x7F), (byte) ((value >> 14) & 0x7F), (byte) ((value >> 7) & 0x7F), (byte) (value & 0x7F) };
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            outputStream.write(array, 0, array.length);
+        }
+        return outputStream.toByteArray();
+    }
+}
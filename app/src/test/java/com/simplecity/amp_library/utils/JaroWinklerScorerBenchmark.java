@@ -0,0 +1,103 @@
+package com.simplecity.amp_library.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares a fuzzy search pass over 50k names using the previous String based Jaro-Winkler implementation, against JaroWinklerScorer
+ * on pre-normalized names with the search threshold.
+ * <p>
+ * Not a rigorous benchmark (there's no JMH in this build), but each variant is warmed up before it's timed, and the match counts are
+ * checked against each other so the work can't be optimised away.
+ */
+public class JaroWinklerScorerBenchmark {
+
+    private static final int NAME_COUNT = 50_000;
+
+    // SearchPresenter.SCORE_THRESHOLD
+    private static final double THRESHOLD = 0.80;
+
+    private static final String[] QUERIES = { "beatles", "love song", "the", "symphony no 5", "xyzzy" };
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 3;
+
+    @Test
+    public void fuzzySearchNames() {
+        Random random = new Random(11);
+        String[] words = { "love", "song", "the", "beatles", "night", "blue", "symphony", "no", "5", "live", "remastered", "version",
+                "dancing", "queen", "moon", "river", "heart", "of", "gold", "rain" };
+
+        List<String> names = new ArrayList<>(NAME_COUNT);
+        for (int i = 0; i < NAME_COUNT; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = 0, wordCount = 1 + random.nextInt(4); j < wordCount; j++) {
+                if (j > 0) {
+                    builder.append(' ');
+                }
+                builder.append(words[random.nextInt(words.length)]);
+            }
+            names.add(builder.toString());
+        }
+
+        List<char[]> normalizedNames = new ArrayList<>(NAME_COUNT);
+        for (String name : names) {
+            normalizedNames.add(JaroWinklerScorer.normalize(name));
+        }
+
+        for (String query : QUERIES) {
+            assertEquals(query, countReference(names, query), countScorer(normalizedNames, query));
+        }
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            for (String query : QUERIES) {
+                countReference(names, query);
+                countScorer(normalizedNames, query);
+            }
+        }
+
+        long referenceNanos = 0;
+        long scorerNanos = 0;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            for (String query : QUERIES) {
+                long start = System.nanoTime();
+                int expected = countReference(names, query);
+                referenceNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                assertEquals(expected, countScorer(normalizedNames, query));
+                scorerNanos += System.nanoTime() - start;
+            }
+        }
+
+        int passes = TIMED_RUNS * QUERIES.length;
+        System.out.println(String.format(Locale.US, "Fuzzy search, %d names: previous implementation %.1fms, JaroWinklerScorer %.1fms per query",
+                NAME_COUNT, referenceNanos / 1e6 / passes, scorerNanos / 1e6 / passes));
+    }
+
+    private static int countReference(List<String> names, String query) {
+        int count = 0;
+        for (String name : names) {
+            if (JaroWinklerScorerTest.Reference.getAdjustedJaroWinklerSimilarity(name, query) > THRESHOLD) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countScorer(List<char[]> names, String query) {
+        JaroWinklerScorer scorer = new JaroWinklerScorer(query);
+        int count = 0;
+        for (char[] name : names) {
+            if (scorer.adjustedScore(name, THRESHOLD) > THRESHOLD) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
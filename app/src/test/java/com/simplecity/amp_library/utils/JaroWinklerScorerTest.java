@@ -0,0 +1,216 @@
+package com.simplecity.amp_library.utils;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class JaroWinklerScorerTest {
+
+    private static final double DELTA = 0;
+
+    @Test
+    public void scoresKnownPairs() {
+        assertEquals(1.0, score("martha", "martha"), DELTA);
+        assertEquals(0.96, score("martha", "marhta"), DELTA);
+        assertEquals(0.84, score("dwayne", "duane"), DELTA);
+        assertEquals(0.81, score("dixon", "dicksonx"), DELTA);
+        assertEquals(0.0, score("abc", "xyz"), DELTA);
+        assertEquals(0.0, score("", "abc"), DELTA);
+    }
+
+    @Test
+    public void ignoresCaseAndUnicodeComposition() {
+        assertEquals(1.0, score("BEYONCE", "beyonce"), DELTA);
+        // Precomposed vs. combining accent
+        assertEquals(1.0, score("Sigur R\u00f3s", "sigur ro\u0301s"), DELTA);
+    }
+
+    @Test
+    public void adjustedScoreUsesBestToken() {
+        JaroWinklerScorer scorer = new JaroWinklerScorer("beatles");
+
+        assertEquals(1.0, scorer.adjustedScore(JaroWinklerScorer.normalize("The Beatles"), -1), DELTA);
+        assertEquals(0.0, scorer.adjustedScore(JaroWinklerScorer.normalize(""), -1), DELTA);
+        assertEquals(0.0, new JaroWinklerScorer("").adjustedScore(JaroWinklerScorer.normalize("The Beatles"), -1), DELTA);
+    }
+
+    @Test
+    public void matchesPreviousImplementation() {
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            String first = randomString(random);
+            String second = randomString(random);
+
+            assertEquals(first + " / " + second, Reference.getJaroWinklerSimilarity(first, second), score(first, second), DELTA);
+            assertEquals(first + " / " + second,
+                    Reference.getAdjustedJaroWinklerSimilarity(first, second),
+                    new JaroWinklerScorer(second).adjustedScore(JaroWinklerScorer.normalize(first), -1),
+                    DELTA);
+        }
+    }
+
+    @Test
+    public void earlyExitNeverDropsScoresAboveThreshold() {
+        Random random = new Random(5);
+        double[] thresholds = { 0, 0.5, 0.7, 0.8, 0.9, 0.99 };
+
+        for (int i = 0; i < 20_000; i++) {
+            String first = randomString(random);
+            String second = randomString(random);
+            JaroWinklerScorer scorer = new JaroWinklerScorer(second);
+            char[] candidate = JaroWinklerScorer.normalize(first);
+
+            for (double threshold : thresholds) {
+                String message = first + " / " + second + " @ " + threshold;
+
+                double expected = Reference.getJaroWinklerSimilarity(first, second);
+                double actual = scorer.score(candidate, threshold);
+                assertThresholded(message, expected, actual, threshold);
+
+                expected = Reference.getAdjustedJaroWinklerSimilarity(first, second);
+                actual = scorer.adjustedScore(candidate, threshold);
+                assertThresholded(message, expected, actual, threshold);
+            }
+        }
+    }
+
+    @Test
+    public void scratchBufferGrowsForLongStrings() {
+        char[] chars = new char[500];
+        Arrays.fill(chars, 'a');
+        String longString = new String(chars);
+
+        assertEquals(1.0, score(longString, longString), DELTA);
+        assertEquals(Reference.getJaroWinklerSimilarity(longString, "aaa"), score(longString, "aaa"), DELTA);
+    }
+
+    /**
+     * Scores above the threshold must be exact, and anything else reported as 0.
+     */
+    private static void assertThresholded(String message, double expected, double actual, double threshold) {
+        assertEquals(message, expected > threshold ? expected : 0, actual, DELTA);
+    }
+
+    private static double score(String first, String second) {
+        return new JaroWinklerScorer(second).score(JaroWinklerScorer.normalize(first), -1);
+    }
+
+    static String randomString(Random random) {
+        String alphabet = "aabbcde\u00e9E ";
+        int length = random.nextInt(12);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The array based implementation StringUtils used before JaroWinklerScorer. The only change is resetting the index before filling the
+     * second match array, without which it threw for any pair of strings with a match.
+     */
+    static final class Reference {
+
+        static double getAdjustedJaroWinklerSimilarity(String first, String second) {
+            if (first == null || first.isEmpty() || second == null || second.isEmpty()) {
+                return 0;
+            }
+
+            String[] split = first.split("\\s");
+            if (split.length > 1) {
+                double score = 0;
+                for (String str : split) {
+                    double curScore = getJaroWinklerSimilarity(str, second);
+                    if (curScore > score) {
+                        score = curScore;
+                    }
+                }
+                return Math.max(getJaroWinklerSimilarity(first, second), score);
+            } else {
+                return getJaroWinklerSimilarity(first, second);
+            }
+        }
+
+        static double getJaroWinklerSimilarity(String first, String second) {
+
+            final double DEFAULT_SCALING_FACTOR = 0.1;
+
+            first = first.toLowerCase();
+            second = second.toLowerCase();
+            first = Normalizer.normalize(first, Normalizer.Form.NFD);
+            second = Normalizer.normalize(second, Normalizer.Form.NFD);
+
+            final int[] mtp = matches(first, second);
+            final double m = mtp[0];
+            if (m == 0) {
+                return 0D;
+            }
+            final double j = (m / first.length() + m / second.length() + (m - mtp[1]) / m) / 3;
+            final double jw = j < 0.7D ? j : j + Math.min(DEFAULT_SCALING_FACTOR, 1D / mtp[3]) * mtp[2] * (1D - j);
+            return Math.round(jw * 100.0D) / 100.0D;
+        }
+
+        private static int[] matches(final CharSequence first, final CharSequence second) {
+            CharSequence max;
+            CharSequence min;
+
+            if (first.length() > second.length()) {
+                max = first;
+                min = second;
+            } else {
+                max = second;
+                min = first;
+            }
+            final int range = Math.max(max.length() / 2 - 1, 0);
+            final int[] matchIndexes = new int[min.length()];
+            Arrays.fill(matchIndexes, -1);
+            final boolean[] matchFlags = new boolean[max.length()];
+            int matches = 0;
+            for (int mi = 0; mi < min.length(); mi++) {
+                final char c1 = min.charAt(mi);
+                for (int xi = Math.max(mi - range, 0), xn = Math.min(mi + range + 1, max.length()); xi < xn; xi++) {
+                    if (!matchFlags[xi] && c1 == max.charAt(xi)) {
+                        matchIndexes[mi] = xi;
+                        matchFlags[xi] = true;
+                        matches++;
+                        break;
+                    }
+                }
+            }
+            final char[] ms1 = new char[matches];
+            final char[] ms2 = new char[matches];
+            int si = 0;
+            for (int i = 0; i < min.length(); i++) {
+                if (matchIndexes[i] != -1) {
+                    ms1[si] = min.charAt(i);
+                    si++;
+                }
+            }
+            si = 0;
+            for (int i = 0; i < max.length(); i++) {
+                if (matchFlags[i]) {
+                    ms2[si] = max.charAt(i);
+                    si++;
+                }
+            }
+            int transpositions = 0;
+            for (int mi = 0; mi < ms1.length; mi++) {
+                if (ms1[mi] != ms2[mi]) {
+                    transpositions++;
+                }
+            }
+            int prefix = 0;
+            for (int mi = 0; mi < min.length(); mi++) {
+                if (first.charAt(mi) == second.charAt(mi)) {
+                    prefix++;
+                } else {
+                    break;
+                }
+            }
+            return new int[] { matches, transpositions / 2, prefix, max.length() };
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.simplecity.amp_library.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the include/exclude filter against the per-rule containsIgnoreCase() loop it replaced, for 50k songs and 200 rules.
+ * <p>
+ * Not a rigorous benchmark (there's no JMH in this build), but each variant is warmed up before it's timed, and the match counts are
+ * checked against each other so the work can't be optimised away.
+ */
+public class PathMatcherBenchmark {
+
+    private static final int SONG_COUNT = 50_000;
+    private static final int RULE_COUNT = 200;
+
+    private static final int WARMUP_RUNS = 1;
+    private static final int TIMED_RUNS = 3;
+
+    @Test
+    public void filterSongsByRules() {
+        Random random = new Random(1);
+
+        List<String> rules = new ArrayList<>(RULE_COUNT);
+        for (int i = 0; i < RULE_COUNT; i++) {
+            rules.add(String.format(Locale.US, "/storage/emulated/0/Music/Artist %d/Album %d", random.nextInt(2000), random.nextInt(10)));
+        }
+
+        List<String> paths = new ArrayList<>(SONG_COUNT);
+        for (int i = 0; i < SONG_COUNT; i++) {
+            paths.add(String.format(Locale.US, "/storage/emulated/0/Music/Artist %d/Album %d/%02d - Track Title %d.mp3",
+                    random.nextInt(2000), random.nextInt(10), random.nextInt(20), i));
+        }
+
+        PathMatcher matcher = new PathMatcher(rules);
+
+        int expected = countContainsIgnoreCase(paths, rules);
+        assertEquals(expected, countPathMatcher(paths, matcher));
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            countContainsIgnoreCase(paths, rules);
+            countPathMatcher(paths, matcher);
+        }
+
+        long containsNanos = 0;
+        long matcherNanos = 0;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            assertEquals(expected, countContainsIgnoreCase(paths, rules));
+            containsNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertEquals(expected, countPathMatcher(paths, matcher));
+            matcherNanos += System.nanoTime() - start;
+        }
+
+        System.out.println(String.format(Locale.US, "Include/exclude filter, %d songs x %d rules: containsIgnoreCase %.1fms, PathMatcher %.1fms",
+                SONG_COUNT, RULE_COUNT, containsNanos / 1e6 / TIMED_RUNS, matcherNanos / 1e6 / TIMED_RUNS));
+    }
+
+    private static int countContainsIgnoreCase(List<String> paths, List<String> rules) {
+        int count = 0;
+        for (String path : paths) {
+            if (PathMatcherTest.containsAnyIgnoreCase(path, rules)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countPathMatcher(List<String> paths, PathMatcher matcher) {
+        int count = 0;
+        for (String path : paths) {
+            if (matcher.matches(path)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
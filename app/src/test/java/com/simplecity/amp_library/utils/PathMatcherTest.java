@@ -0,0 +1,116 @@
+package com.simplecity.amp_library.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathMatcherTest {
+
+    @Test
+    public void emptyMatcherMatchesNothing() {
+        PathMatcher matcher = new PathMatcher(Collections.emptyList());
+
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches("/storage/emulated/0/Music/song.mp3"));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void matchesFolderPrefix() {
+        PathMatcher matcher = new PathMatcher(Arrays.asList("/storage/emulated/0/Music", "/sdcard/Podcasts"));
+
+        assertFalse(matcher.isEmpty());
+        assertTrue(matcher.matches("/storage/emulated/0/Music/Artist/Album/01.mp3"));
+        assertTrue(matcher.matches("/sdcard/Podcasts/episode.mp3"));
+        assertFalse(matcher.matches("/storage/emulated/0/Download/song.mp3"));
+        assertFalse(matcher.matches("/storage/emulated/0/Musi"));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void ignoresCase() {
+        PathMatcher matcher = new PathMatcher(Collections.singletonList("/Storage/Emulated/0/MUSIC"));
+
+        assertTrue(matcher.matches("/storage/emulated/0/music/song.mp3"));
+        assertTrue(matcher.matches("/STORAGE/EMULATED/0/Music/song.mp3"));
+    }
+
+    @Test
+    public void matchesFragmentAnywhereInPath() {
+        // Same semantics as StringUtils.containsIgnoreCase(), which the include/exclude filter used before
+        PathMatcher matcher = new PathMatcher(Collections.singletonList("Ringtones"));
+
+        assertTrue(matcher.matches("/storage/emulated/0/Ringtones/ring.ogg"));
+        assertTrue(matcher.matches("/sdcard/media/ringtones"));
+        assertFalse(matcher.matches("/sdcard/media/notifications/ding.ogg"));
+    }
+
+    @Test
+    public void emptyFragmentMatchesEveryPath() {
+        PathMatcher matcher = new PathMatcher(Arrays.asList("/nowhere", ""));
+
+        assertTrue(matcher.matches("/storage/emulated/0/Music/song.mp3"));
+        assertTrue(matcher.matches(""));
+    }
+
+    @Test
+    public void followsFailureLinksBetweenOverlappingFragments() {
+        // 'abcd' fails at 'e', and the match has to continue from the 'bc' suffix rather than restarting
+        PathMatcher matcher = new PathMatcher(Arrays.asList("abcd", "bce"));
+
+        assertTrue(matcher.matches("/abce"));
+        assertTrue(matcher.matches("/xabcd"));
+        assertFalse(matcher.matches("/abc/de"));
+
+        // A fragment which is a suffix of a longer, unfinished fragment
+        matcher = new PathMatcher(Arrays.asList("music/rock", "sic"));
+        assertTrue(matcher.matches("/music/pop"));
+    }
+
+    @Test
+    public void agreesWithContainsIgnoreCase() {
+        Random random = new Random(42);
+        String alphabet = "abAB/._";
+
+        for (int run = 0; run < 200; run++) {
+            List<String> fragments = new ArrayList<>();
+            int fragmentCount = 1 + random.nextInt(8);
+            for (int i = 0; i < fragmentCount; i++) {
+                fragments.add(randomString(random, alphabet, 1 + random.nextInt(5)));
+            }
+            PathMatcher matcher = new PathMatcher(fragments);
+
+            for (int i = 0; i < 50; i++) {
+                String path = randomString(random, alphabet, random.nextInt(30));
+                assertEquals(fragments + " / " + path, containsAnyIgnoreCase(path, fragments), matcher.matches(path));
+            }
+        }
+    }
+
+    /**
+     * The filter this replaced: StringUtils.containsIgnoreCase() for each fragment.
+     */
+    static boolean containsAnyIgnoreCase(String path, List<String> fragments) {
+        for (String fragment : fragments) {
+            if (path.toLowerCase().contains(fragment.toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.simplecity.amp_library.utils.color;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the previous two pass BitmapPaletteProcessor (BitmapPaletteProcessorTest.Reference) against the current one, on artwork-like
+ * bitmaps with thousands of colors, so the quantizer has to do its full work.
+ * <p>
+ * The bitmaps are the size Palette scales artwork down to, so neither variant scales them (Robolectric's scaled bitmaps don't carry
+ * pixels anyway). On a device the previous implementation also scaled the artwork down twice.
+ * <p>
+ * Not a rigorous benchmark (there's no JMH in this build), but each variant is warmed up before it's timed, and the background colors are
+ * checked against each other so the work can't be optimised away. The foreground colors can legitimately differ once there are more
+ * colors than swatches, since the previous implementation filtered colors before quantizing them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BitmapPaletteProcessorBenchmark {
+
+    private static final int BITMAP_COUNT = 50;
+
+    // Palette's default resize area is 112 * 112
+    private static final int SIZE = 112;
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 3;
+
+    @Test
+    public void processArtwork() {
+        Random random = new Random(13);
+        List<Bitmap> bitmaps = new ArrayList<>(BITMAP_COUNT);
+        for (int i = 0; i < BITMAP_COUNT; i++) {
+            bitmaps.add(artwork(random));
+        }
+
+        BitmapPaletteProcessor processor = new BitmapPaletteProcessor();
+
+        assertEquals(processReference(bitmaps), process(processor, bitmaps));
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            processReference(bitmaps);
+            process(processor, bitmaps);
+        }
+
+        long referenceNanos = 0;
+        long processorNanos = 0;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            long expected = processReference(bitmaps);
+            referenceNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertEquals(expected, process(processor, bitmaps));
+            processorNanos += System.nanoTime() - start;
+        }
+
+        int passes = TIMED_RUNS * BITMAP_COUNT;
+        System.out.println(String.format(Locale.US, "%dx%d artwork: two pass %.2fms, single pass %.2fms per bitmap",
+                SIZE, SIZE, referenceNanos / 1e6 / passes, processorNanos / 1e6 / passes));
+    }
+
+    /**
+     * @return a checksum of the background colors
+     */
+    private static long processReference(List<Bitmap> bitmaps) {
+        long checksum = 0;
+        for (Bitmap bitmap : bitmaps) {
+            checksum = checksum * 31 + new BitmapPaletteProcessorTest.Reference().processBitmap(bitmap).first;
+        }
+        return checksum;
+    }
+
+    private static long process(BitmapPaletteProcessor processor, List<Bitmap> bitmaps) {
+        long checksum = 0;
+        for (Bitmap bitmap : bitmaps) {
+            checksum = checksum * 31 + processor.processBitmap(bitmap).first;
+        }
+        return checksum;
+    }
+
+    /**
+     * @return a bitmap with a gradient between two random colors, a block of a third, and some noise.
+     */
+    private static Bitmap artwork(Random random) {
+        int from = random.nextInt() | 0xFF000000;
+        int to = random.nextInt() | 0xFF000000;
+        int block = random.nextInt() | 0xFF000000;
+
+        int[] pixels = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int color;
+                if (x > SIZE / 2 && y > SIZE / 2) {
+                    color = block;
+                } else {
+                    float fraction = (x + y) / (2f * SIZE);
+                    color = Color.rgb(
+                            mix(Color.red(from), Color.red(to), fraction) + random.nextInt(9) - 4,
+                            mix(Color.green(from), Color.green(to), fraction) + random.nextInt(9) - 4,
+                            mix(Color.blue(from), Color.blue(to), fraction) + random.nextInt(9) - 4);
+                }
+                pixels[y * SIZE + x] = color;
+            }
+        }
+        return BitmapPaletteProcessorTest.bitmap(pixels, SIZE, SIZE);
+    }
+
+    private static int mix(int from, int to, float fraction) {
+        return Math.max(4, Math.min(251, Math.round(from + (to - from) * fraction)));
+    }
+}
@@ -0,0 +1,286 @@
+package com.simplecityapps.recycler_adapter.adapter;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import com.simplecityapps.recycler_adapter.model.ContentsComparator;
+import com.simplecityapps.recycler_adapter.model.StableKeys;
+import com.simplecityapps.recycler_adapter.model.ViewModel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The updates required to transform one list of {@link ViewModel}s into another.
+ * <p>
+ * Item keys (and contents hashes, for {@link StableKeys} items) are computed once per item. Items whose keys differ are never compared
+ * with equals(). The common prefix & suffix of the two lists are matched in linear time, so appends, removals and in-place changes
+ * don't require a full {@link DiffUtil} pass. DiffUtil only runs over the differing middle section, and is skipped altogether if the
+ * middle sections have no items in common.
+ */
+final class ListDiff {
+
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int CHANGED = 2;
+
+    private static final Object PAYLOAD = 0;
+
+    // Updates as (type, position, count) triples, dispatched before and after the middle section's diffResult
+    private final List<int[]> updatesBefore = new ArrayList<>();
+    private final List<int[]> updatesAfter = new ArrayList<>();
+
+    @Nullable
+    private DiffUtil.DiffResult diffResult;
+
+    private int diffOffset;
+
+    private ListDiff() {
+    }
+
+    static ListDiff calculate(@Nullable List<ViewModel> oldList, @Nullable List<ViewModel> newList, boolean detectMoves) {
+        Items oldItems = new Items(oldList);
+        Items newItems = new Items(newList);
+
+        ListDiff listDiff = new ListDiff();
+
+        int oldSize = oldItems.size();
+        int newSize = newItems.size();
+        int minSize = Math.min(oldSize, newSize);
+
+        int prefix = 0;
+        while (prefix < minSize && areItemsTheSame(oldItems, prefix, newItems, prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < minSize - prefix && areItemsTheSame(oldItems, oldSize - 1 - suffix, newItems, newSize - 1 - suffix)) {
+            suffix++;
+        }
+
+        for (int i = 0; i < prefix; i++) {
+            if (!areContentsTheSame(oldItems, i, newItems, i)) {
+                addChange(listDiff.updatesBefore, i);
+            }
+        }
+
+        int oldMiddle = oldSize - prefix - suffix;
+        int newMiddle = newSize - prefix - suffix;
+
+        if (oldMiddle > 0 && newMiddle > 0) {
+            if (haveCommonKeys(oldItems, newItems, prefix, oldMiddle, newMiddle)) {
+                listDiff.diffResult = DiffUtil.calculateDiff(new DiffCallback(oldItems, newItems, prefix, oldMiddle, newMiddle), detectMoves);
+                listDiff.diffOffset = prefix;
+            } else {
+                // Nothing in common, replace the whole middle section
+                listDiff.updatesBefore.add(new int[] { REMOVED, prefix, oldMiddle });
+                listDiff.updatesBefore.add(new int[] { INSERTED, prefix, newMiddle });
+            }
+        } else if (oldMiddle > 0) {
+            listDiff.updatesBefore.add(new int[] { REMOVED, prefix, oldMiddle });
+        } else if (newMiddle > 0) {
+            listDiff.updatesBefore.add(new int[] { INSERTED, prefix, newMiddle });
+        }
+
+        for (int i = 0; i < suffix; i++) {
+            if (!areContentsTheSame(oldItems, oldSize - suffix + i, newItems, newSize - suffix + i)) {
+                addChange(listDiff.updatesAfter, prefix + newMiddle + i);
+            }
+        }
+
+        return listDiff;
+    }
+
+    void dispatchUpdatesTo(@NonNull ListUpdateCallback callback) {
+        dispatch(updatesBefore, callback);
+        if (diffResult != null) {
+            diffResult.dispatchUpdatesTo(new OffsetListUpdateCallback(callback, diffOffset));
+        }
+        dispatch(updatesAfter, callback);
+    }
+
+    private static void dispatch(List<int[]> updates, ListUpdateCallback callback) {
+        for (int[] update : updates) {
+            switch (update[0]) {
+                case INSERTED:
+                    callback.onInserted(update[1], update[2]);
+                    break;
+                case REMOVED:
+                    callback.onRemoved(update[1], update[2]);
+                    break;
+                case CHANGED:
+                    callback.onChanged(update[1], update[2], PAYLOAD);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Adds a change at the passed in position, extending the previous change if it's adjacent.
+     */
+    private static void addChange(List<int[]> updates, int position) {
+        if (!updates.isEmpty()) {
+            int[] last = updates.get(updates.size() - 1);
+            if (last[0] == CHANGED && last[1] + last[2] == position) {
+                last[2]++;
+                return;
+            }
+        }
+        updates.add(new int[] { CHANGED, position, 1 });
+    }
+
+    private static boolean haveCommonKeys(Items oldItems, Items newItems, int offset, int oldCount, int newCount) {
+        Set<Long> oldKeys = new HashSet<>(oldCount * 2);
+        for (int i = offset; i < offset + oldCount; i++) {
+            oldKeys.add(oldItems.keys[i]);
+        }
+        for (int i = offset; i < offset + newCount; i++) {
+            if (oldKeys.contains(newItems.keys[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean areItemsTheSame(Items oldItems, int oldPosition, Items newItems, int newPosition) {
+        if (oldItems.keys[oldPosition] != newItems.keys[newPosition]) {
+            return false;
+        }
+
+        Object oldItem = oldItems.list.get(oldPosition);
+        Object newItem = newItems.list.get(newPosition);
+        if (oldItem == null || newItem == null) {
+            return false;
+        }
+        if (oldItems.stableKeys[oldPosition] && newItems.stableKeys[newPosition]) {
+            return true;
+        }
+        return oldItem.equals(newItem);
+    }
+
+    static boolean areContentsTheSame(Items oldItems, int oldPosition, Items newItems, int newPosition) {
+        if (oldItems.stableKeys[oldPosition] && newItems.stableKeys[newPosition]) {
+            return oldItems.contentsHashes[oldPosition] == newItems.contentsHashes[newPosition];
+        }
+
+        Object oldItem = oldItems.list.get(oldPosition);
+        Object newItem = newItems.list.get(newPosition);
+        if (oldItem instanceof ContentsComparator) {
+            return ((ContentsComparator) oldItem).areContentsEqual(newItem);
+        } else {
+            return areItemsTheSame(oldItems, oldPosition, newItems, newPosition);
+        }
+    }
+
+    /**
+     * A list of items, along with their keys: {@link StableKeys#getItemKey()} if implemented, or hashCode() otherwise.
+     */
+    static final class Items {
+
+        final List<ViewModel> list;
+        final long[] keys;
+        final boolean[] stableKeys;
+        final long[] contentsHashes;
+
+        Items(@Nullable List<ViewModel> list) {
+            this.list = list != null ? list : new ArrayList<>();
+
+            int size = this.list.size();
+            keys = new long[size];
+            stableKeys = new boolean[size];
+            contentsHashes = new long[size];
+            for (int i = 0; i < size; i++) {
+                Object item = this.list.get(i);
+                if (item instanceof StableKeys) {
+                    keys[i] = ((StableKeys) item).getItemKey();
+                    contentsHashes[i] = ((StableKeys) item).getContentsHash();
+                    stableKeys[i] = true;
+                } else if (item != null) {
+                    keys[i] = item.hashCode();
+                }
+            }
+        }
+
+        int size() {
+            return keys.length;
+        }
+    }
+
+    /**
+     * Compares the [offset, offset + count) sections of the old & new lists.
+     */
+    private static class DiffCallback extends DiffUtil.Callback {
+
+        private final Items oldItems;
+        private final Items newItems;
+        private final int offset;
+        private final int oldCount;
+        private final int newCount;
+
+        DiffCallback(Items oldItems, Items newItems, int offset, int oldCount, int newCount) {
+            this.oldItems = oldItems;
+            this.newItems = newItems;
+            this.offset = offset;
+            this.oldCount = oldCount;
+            this.newCount = newCount;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldCount;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newCount;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return ListDiff.areItemsTheSame(oldItems, offset + oldItemPosition, newItems, offset + newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return ListDiff.areContentsTheSame(oldItems, offset + oldItemPosition, newItems, offset + newItemPosition);
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return PAYLOAD;
+        }
+    }
+
+    private static class OffsetListUpdateCallback implements ListUpdateCallback {
+
+        private final ListUpdateCallback callback;
+        private final int offset;
+
+        OffsetListUpdateCallback(ListUpdateCallback callback, int offset) {
+            this.callback = callback;
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            callback.onInserted(offset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            callback.onRemoved(offset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            callback.onMoved(offset + fromPosition, offset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            callback.onChanged(offset + position, count, payload);
+        }
+    }
+}
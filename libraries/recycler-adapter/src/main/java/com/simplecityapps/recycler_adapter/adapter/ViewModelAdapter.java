@@ -2,13 +2,11 @@ package com.simplecityapps.recycler_adapter.adapter;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v7.util.DiffUtil;
 import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.ViewGroup;
 import com.simplecityapps.recycler_adapter.BuildConfig;
-import com.simplecityapps.recycler_adapter.model.ContentsComparator;
 import com.simplecityapps.recycler_adapter.model.ViewModel;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
@@ -34,7 +32,17 @@ public class ViewModelAdapter extends RecyclerView.Adapter {
     /**
      * The dataset for this RecyclerView Adapter
      */
-    public List<ViewModel> items = new List<>();
+    public List<ViewModel> items = new ArrayList<>();
+
+    private boolean detectMoves = true;
+
+    /**
+     * Whether {@link #setItems(List)} should detect moved items. Disabling this makes diffing large lists considerably cheaper, at the
+     * cost of moves being animated as a removal & insertion.
+     */
+    public void setDetectMoves(boolean detectMoves) {
+        this.detectMoves = detectMoves;
+    }
 
     @Override
     public int getItemViewType(int position) {
@@ -99,7 +107,10 @@ public class ViewModelAdapter extends RecyclerView.Adapter {
             setItemsDisposable.dispose();
         }
 
-        setItemsDisposable = Single.fromCallable(() -> DiffUtil.calculateDiff(new DiffCallback(this.items, items)))
+        List<ViewModel> oldItems = this.items;
+        boolean detectMoves = this.detectMoves;
+
+        setItemsDisposable = Single.fromCallable(() -> ListDiff.calculate(oldItems, items, detectMoves))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(diffResult -> {
@@ -119,7 +130,7 @@ public class ViewModelAdapter extends RecyclerView.Adapter {
         return setItemsDisposable;
     }
 
-    private void logDiffResult(DiffUtil.DiffResult diffResult) {
+    private void logDiffResult(ListDiff diffResult) {
         diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
             @Override
             public void onInserted(int position, int count) {
@@ -224,61 +235,4 @@ public class ViewModelAdapter extends RecyclerView.Adapter {
         items.add(toPosition, model);
         notifyItemMoved(fromPosition, toPosition);
     }
-
-    private static class DiffCallback extends DiffUtil.Callback {
-
-        private List<ViewModel> oldList;
-        private List<ViewModel> newList;
-
-        DiffCallback(List<ViewModel> oldList, List<ViewModel> newList) {
-            this.oldList = oldList;
-            this.newList = newList;
-        }
-
-        @Override
-        public int getOldListSize() {
-            return oldList != null ? oldList.size() : 0;
-        }
-
-        @Override
-        public int getNewListSize() {
-            return newList != null ? newList.size() : 0;
-        }
-
-        Object getOldItem(int oldItemPosition) {
-            return oldList.get(oldItemPosition);
-        }
-
-        Object getNewItem(int newItemPosition) {
-            return newList.get(newItemPosition);
-        }
-
-        @Override
-        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-
-            Object oldItem = getOldItem(oldItemPosition);
-            Object newItem = getNewItem(newItemPosition);
-
-            return !(oldItem == null || newItem == null) && oldItem.equals(newItem);
-        }
-
-        @Override
-        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-
-            Object oldItem = getOldItem(oldItemPosition);
-            Object newItem = getNewItem(newItemPosition);
-
-            if (oldItem instanceof ContentsComparator) {
-                return ((ContentsComparator) oldItem).areContentsEqual(newItem);
-            } else {
-                return areItemsTheSame(oldItemPosition, newItemPosition);
-            }
-        }
-
-        @Nullable
-        @Override
-        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
-            return 0;
-        }
-    }
 }
\ No newline at end of file
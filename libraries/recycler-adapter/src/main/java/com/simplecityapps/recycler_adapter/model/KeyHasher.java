@@ -0,0 +1,39 @@
+package com.simplecityapps.recycler_adapter.model;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Helpers for building 64-bit {@link StableKeys}.
+ */
+public final class KeyHasher {
+
+    public static final long SEED = 0xcbf29ce484222325L;
+
+    private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    private KeyHasher() {
+    }
+
+    /**
+     * @return the passed in hash, combined with value.
+     */
+    public static long mix(long hash, long value) {
+        long h = (hash ^ value) * MULTIPLIER;
+        return h ^ (h >>> 32);
+    }
+
+    public static long mix(long hash, boolean value) {
+        return mix(hash, value ? 1 : 0);
+    }
+
+    public static long mix(long hash, @Nullable char[] chars) {
+        if (chars == null) {
+            return mix(hash, -1);
+        }
+        hash = mix(hash, chars.length);
+        for (char c : chars) {
+            hash = mix(hash, c);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,21 @@
+package com.simplecityapps.recycler_adapter.model;
+
+/**
+ * Optionally implemented by {@link ViewModel}s, to allow {@link com.simplecityapps.recycler_adapter.adapter.ViewModelAdapter} to
+ * compare items by 64-bit keys, rather than calling {@link Object#equals(Object)} and {@link ContentsComparator#areContentsEqual(Object)}.
+ * <p>
+ * Both methods are called once per item, per diff.
+ */
+public interface StableKeys {
+
+    /**
+     * @return a key which is equal for two items if, and only if, they are equal (see {@link Object#equals(Object)}).
+     */
+    long getItemKey();
+
+    /**
+     * @return a hash which is equal for two items if, and only if, their contents are equal (see
+     * {@link ContentsComparator#areContentsEqual(Object)}).
+     */
+    long getContentsHash();
+}